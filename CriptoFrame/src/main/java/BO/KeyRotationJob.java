@@ -0,0 +1,378 @@
+package BO;
+
+import Crypt.EncryptService;
+import Crypt.EncryptServiceFactory;
+import Crypt.PasswordHasher;
+import DAO.KeyRotationDAO;
+import DAO.KeyRotationDAO.Checkpoint;
+import DAO.KeyRotationDAO.Row;
+import DAO.KeyRotationDAO.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * KeyRotationJob class re-encrypts the User and Token rows from the old keys of their users to
+ * new ones while the application keeps serving requests.
+ *
+ * Each table is read in chunks through KeyRotationDAO. The row of a user is decrypted with the
+ * old key of that user and encrypted with the new one on a dedicated pool, then written back
+ * with a JDBC batch in the same transaction as the checkpoint. Rows are never decrypted with
+ * the key of another user: an unauthenticated cipher such as AES/ECB can decrypt a value with
+ * a wrong key into garbage with valid padding, which would then be stored under the new key.
+ * Rows of users whose keys are not known to the job are left alone. A job stopped or interrupted part way
+ * resumes after the last committed chunk when it is run again with the same id.
+ *
+ * The job is throttled to a maximum number of rows per second and uses a pool of its own, so
+ * it leaves the common fork-join pool and most of the database capacity to live traffic.
+ * Passwords already stored as PasswordHasher hashes are not encrypted and are left alone,
+ * as are rows that do not decrypt with the old key of their user.
+ */
+public class KeyRotationJob implements Runnable {
+
+    // Logger for logging the rotation progress
+    private static final Logger logger = LoggerFactory.getLogger(KeyRotationJob.class);
+
+    // Rows read per chunk, overridable with -DBO.keyRotation.chunkSize
+    private static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("BO.keyRotation.chunkSize", 500);
+
+    // Threads re-encrypting rows, overridable with -DBO.keyRotation.threads
+    private static final int DEFAULT_THREADS = Integer.getInteger("BO.keyRotation.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    // Rows rotated per second at most, overridable with -DBO.keyRotation.maxRowsPerSecond
+    private static final int DEFAULT_MAX_ROWS_PER_SECOND = Integer.getInteger("BO.keyRotation.maxRowsPerSecond", 2000);
+
+    // Data access object of the rotation
+    private final KeyRotationDAO dao;
+
+    // Id of the job, under which its checkpoints are stored
+    private final String jobId;
+
+    // Services decrypting with the old key of each user, returning null for unknown users
+    private final Function<String, EncryptService> oldServices;
+
+    // Services encrypting with the new key of each user, returning null for unknown users
+    private final Function<String, EncryptService> newServices;
+
+    // Rows read per chunk
+    private final int chunkSize;
+
+    // Rows rotated per second at most, or 0 for no limit
+    private final int maxRowsPerSecond;
+
+    // Pool re-encrypting the rows of a chunk
+    private final ForkJoinPool pool;
+
+    // Set when the job should stop after the current chunk
+    private volatile boolean stopped;
+
+    // Set when every table has been rotated
+    private volatile boolean finished;
+
+    // Number of rows in the rotated tables when the job started
+    private volatile long totalRows;
+
+    // Time the job started, in nanoseconds
+    private volatile long startNanos;
+
+    // Rows processed in this run, whatever their outcome
+    private final LongAdder processed = new LongAdder();
+
+    // Rows processed by earlier runs of the same job
+    private final LongAdder resumed = new LongAdder();
+
+    // Rows re-encrypted and written back
+    private final LongAdder rotated = new LongAdder();
+
+    // Rows left alone because they hold a hash, no value, belong to a user without keys, or were changed concurrently
+    private final LongAdder skipped = new LongAdder();
+
+    // Rows left alone because they do not decrypt with the old key
+    private final LongAdder failed = new LongAdder();
+
+    // Chunks committed
+    private final LongAdder chunks = new LongAdder();
+
+    /**
+     * Constructs a KeyRotationJob with the default chunk size, pool size and throttle.
+     *
+     * @param jobId   the id of the job, used to resume it
+     * @param oldType the encryption type the rows are stored with
+     * @param oldKeys the keys the rows are stored with, by username
+     * @param newType the encryption type to store the rows with
+     * @param newKeys the keys to store the rows with, by username
+     */
+    public KeyRotationJob(String jobId, String oldType, Map<String, byte[]> oldKeys, String newType, Map<String, byte[]> newKeys) {
+        this(new KeyRotationDAO(), jobId, services(oldType, oldKeys), services(newType, newKeys),
+                DEFAULT_CHUNK_SIZE, DEFAULT_THREADS, DEFAULT_MAX_ROWS_PER_SECOND);
+    }
+
+    /**
+     * Constructs a KeyRotationJob.
+     *
+     * @param dao              the data access object of the rotation, closed when the job ends
+     * @param jobId            the id of the job, used to resume it
+     * @param oldServices      the services decrypting with the old key of each user, returning null for unknown users
+     * @param newServices      the services encrypting with the new key of each user, returning null for unknown users
+     * @param chunkSize        the number of rows read per chunk
+     * @param threads          the number of threads re-encrypting rows
+     * @param maxRowsPerSecond the number of rows rotated per second at most, or 0 for no limit
+     * @throws IllegalArgumentException if chunkSize or threads is not positive, or maxRowsPerSecond is negative
+     */
+    public KeyRotationJob(KeyRotationDAO dao, String jobId, Function<String, EncryptService> oldServices,
+                          Function<String, EncryptService> newServices, int chunkSize, int threads, int maxRowsPerSecond) {
+        if (chunkSize <= 0 || threads <= 0 || maxRowsPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid key rotation settings");
+        }
+        this.dao = dao;
+        this.jobId = jobId;
+        this.oldServices = oldServices;
+        this.newServices = newServices;
+        this.chunkSize = chunkSize;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Rotates every table, resuming after the last committed chunk of an earlier run. Once a
+     * chunk is committed, the services cached for the old keys of its rotated rows are invalidated.
+     *
+     * @throws RuntimeException if a database error occurs; committed chunks are kept
+     */
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        logger.info("Starting key rotation " + jobId);
+        try (dao) {
+            dao.createCheckpointTable();
+            long total = 0;
+            for (Table table : Table.values()) {
+                total += dao.count(table);
+            }
+            totalRows = total;
+            for (Table table : Table.values()) {
+                if (!stopped) {
+                    rotate(table);
+                }
+            }
+            if (!stopped) {
+                finished = true;
+                logger.info("Key rotation " + jobId + " finished: " + getRotatedCount() + " rotated, "
+                        + getSkippedCount() + " skipped, " + getFailedCount() + " failed");
+            } else {
+                logger.info("Key rotation " + jobId + " stopped after " + getProcessedCount() + " rows");
+            }
+        } catch (SQLException e) {
+            logger.error("Key rotation " + jobId + " failed after " + getProcessedCount() + " rows", e);
+            throw new RuntimeException("Error rotating keys", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Asks the job to stop after the current chunk. It can be resumed by running a job with the same id.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Checks if every table has been rotated.
+     *
+     * @return true if the job finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Gets the number of rows processed by this job, including earlier runs with the same id.
+     *
+     * @return the processed row count
+     */
+    public long getProcessedCount() {
+        return resumed.sum() + processed.sum();
+    }
+
+    /**
+     * Gets the number of rows re-encrypted and written back in this run.
+     *
+     * @return the rotated row count
+     */
+    public long getRotatedCount() {
+        return rotated.sum();
+    }
+
+    /**
+     * Gets the number of rows left alone in this run because they hold a password hash or no value,
+     * because the job does not know the keys of their user, or because live traffic changed them
+     * while their chunk was being rotated.
+     *
+     * @return the skipped row count
+     */
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * Gets the number of rows left alone in this run because they do not decrypt with the old key.
+     *
+     * @return the failed row count
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Gets the number of chunks committed in this run.
+     *
+     * @return the chunk count
+     */
+    public long getChunkCount() {
+        return chunks.sum();
+    }
+
+    /**
+     * Gets the fraction of the rows processed so far.
+     *
+     * @return the progress, from 0 to 1
+     */
+    public double getProgress() {
+        if (finished) {
+            return 1;
+        }
+        long total = totalRows;
+        return total == 0 ? 0 : Math.min(1, (double) getProcessedCount() / total);
+    }
+
+    /**
+     * Gets the throughput of this run.
+     *
+     * @return the rows processed per second since the job started, or 0 if it has not started
+     */
+    public double getRowsPerSecond() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        return processed.sum() * 1e9 / Math.max(1, System.nanoTime() - start);
+    }
+
+    /**
+     * Rotates one table chunk by chunk, starting after its checkpoint.
+     */
+    private void rotate(Table table) throws SQLException {
+        Checkpoint checkpoint = dao.loadCheckpoint(jobId, table);
+        resumed.add(checkpoint.rows());
+        if (checkpoint.done()) {
+            return;
+        }
+        String lastUsername = checkpoint.lastUsername();
+        long rows = checkpoint.rows();
+        while (!stopped) {
+            long chunkStart = System.nanoTime();
+            List<Row> chunk = dao.fetchChunk(table, lastUsername, chunkSize);
+            boolean done = chunk.size() < chunkSize;
+            if (!chunk.isEmpty()) {
+                lastUsername = chunk.get(chunk.size() - 1).username();
+            }
+            rows += chunk.size();
+            String[] values = reencrypt(table, chunk);
+            int pending = 0;
+            for (String value : values) {
+                pending += value == null ? 0 : 1;
+            }
+            int updated = dao.writeChunk(jobId, table, chunk, values, new Checkpoint(lastUsername, rows, done));
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    EncryptServiceFactory.getInstance().invalidate(oldServices.apply(chunk.get(i).username()).getKey());
+                }
+            }
+            if (table == Table.TOKEN && pending > 0) {
+                // Searches cached under the old values must not outlive them
+                TokenBO.tokensChanged(chunk.stream().map(Row::username).toList(),
+                        Arrays.stream(values).filter(Objects::nonNull).toList());
+            }
+            rotated.add(updated);
+            skipped.add(pending - updated);
+            processed.add(chunk.size());
+            chunks.increment();
+            if (done) {
+                return;
+            }
+            throttle(chunk.size(), chunkStart);
+        }
+    }
+
+    /**
+     * Re-encrypts the values of a chunk on the rotation pool.
+     *
+     * @return the new values, or null for rows to be left alone
+     */
+    private String[] reencrypt(Table table, List<Row> chunk) {
+        String[] values = new String[chunk.size()];
+        pool.submit(() -> IntStream.range(0, values.length).parallel()
+                .forEach(i -> values[i] = reencrypt(table, chunk.get(i)))).join();
+        return values;
+    }
+
+    private String reencrypt(Table table, Row row) {
+        String value = row.value();
+        if (value == null || (table == Table.USER && PasswordHasher.isHash(value))) {
+            skipped.increment();
+            return null;
+        }
+        EncryptService oldService = oldServices.apply(row.username());
+        EncryptService newService = newServices.apply(row.username());
+        if (oldService == null || newService == null) {
+            skipped.increment();
+            return null;
+        }
+        try {
+            return newService.encrypt(oldService.decrypt(value));
+        } catch (RuntimeException e) {
+            failed.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the services of the keys of each user in a map of keys by username.
+     */
+    private static Function<String, EncryptService> services(String type, Map<String, byte[]> keys) {
+        return username -> {
+            byte[] key = keys.get(username);
+            return key == null ? null : EncryptServiceFactory.getInstance().get(type, key);
+        };
+    }
+
+    /**
+     * Waits until the chunk has taken as long as the throughput limit allows.
+     */
+    private void throttle(int rows, long chunkStart) {
+        if (maxRowsPerSecond == 0) {
+            return;
+        }
+        long remaining = rows * 1_000_000_000L / maxRowsPerSecond - (System.nanoTime() - chunkStart);
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+        }
+    }
+}
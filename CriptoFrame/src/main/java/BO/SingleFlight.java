@@ -0,0 +1,105 @@
+package BO;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight class coalesces concurrent calls made for the same key.
+ *
+ * The first caller of a key runs the call, and every caller arriving while it is in flight
+ * waits for it and is handed the same result, or the same failure. The key is dropped as soon
+ * as the call completes, so nothing is cached: the next caller runs the call again. Results
+ * are shared between the callers, so they must not be modified by them.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    // Calls in flight, by key
+    private final Map<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    // Calls run
+    private final LongAdder callCount = new LongAdder();
+
+    // Calls that waited for a call in flight instead of running their own
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * Runs a call for the specified key, or waits for the one in flight for the same key.
+     *
+     * @param key  the key of the call
+     * @param call the call to run if none is in flight for the key
+     * @return the result of the call
+     * @throws RuntimeException the failure of the call, whether it ran here or not
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            coalescedCount.increment();
+            return await(inFlight);
+        }
+        callCount.increment();
+        V result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            calls.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        calls.remove(key, flight);
+        flight.complete(result);
+        return result;
+    }
+
+    /**
+     * Gets the number of calls run.
+     *
+     * @return the call count
+     */
+    public long getCallCount() {
+        return callCount.sum();
+    }
+
+    /**
+     * Gets the number of calls that were handed the result of a call in flight.
+     *
+     * @return the coalesced call count
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Gets the number of calls in flight.
+     *
+     * @return the in-flight call count
+     */
+    public int getInFlightCount() {
+        return calls.size();
+    }
+
+    /**
+     * Waits for a call run by another caller, rethrowing its failure as it was thrown.
+     */
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
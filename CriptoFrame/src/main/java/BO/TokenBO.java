@@ -5,6 +5,7 @@ import DAO.TokenDAO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -12,6 +13,9 @@ import java.util.List;
  *
  * This class encapsulates the business logic for handling authentication tokens,
  * including insertion, listing, updating, deletion, and searching for tokens.
+ * Searches by value go through a TokenValidationCache shared by every TokenBO, which the
+ * insertions, updates and deletions made here keep up to date. Writers that change the Token
+ * table without going through TokenBO report their changes with tokensChanged.
  */
 public class TokenBO {
 
@@ -21,6 +25,9 @@ public class TokenBO {
     // Data Access Object for handling token-related database operations
     private static final TokenDAO tokenDAO = new TokenDAO();
 
+    // Cache of the searches by token value
+    private static final TokenValidationCache validationCache = new TokenValidationCache(tokenDAO::findByValue);
+
     /**
      * Inserts a new authentication token into the database.
      *
@@ -33,8 +40,11 @@ public class TokenBO {
 
         // Check if a token already exists for the user
         if (!tokenDAO.exists(token.getUser().getUsername())) {
-            boolean result = tokenDAO.insert(token, encryptionType);
+            // The cache is keyed by stored values, which are encrypted
+            String stored = tokenDAO.insert(token, encryptionType);
+            boolean result = stored != null;
             if (result) {
+                validationCache.invalidate(stored);
                 logger.info("Token inserted successfully: " + token);
             } else {
                 logger.error("Failed to insert token: " + token);
@@ -65,7 +75,12 @@ public class TokenBO {
      */
     public boolean update(Token token, String encryptionType) {
         logger.info("Updating token: " + token);
-        return tokenDAO.update(token.getUser().getUsername(),token.getValue(), encryptionType, token.getUser().getKey());
+        String stored = tokenDAO.update(token.getUser().getUsername(),token.getValue(), encryptionType, token.getUser().getKey());
+        validationCache.invalidateUser(token.getUser().getUsername());
+        if (stored != null) {
+            validationCache.invalidate(stored);
+        }
+        return stored != null;
     }
 
     /**
@@ -76,18 +91,43 @@ public class TokenBO {
      */
     public boolean delete(String username) {
         logger.info("Deleting token for user: " + username);
-        return tokenDAO.delete(username);
+        boolean result = tokenDAO.delete(username);
+        validationCache.invalidateUser(username);
+        return result;
     }
 
     /**
-     * Searches for an authentication token based on its value.
+     * Searches for an authentication token based on its value. Recent results, including
+     * values that matched no token, are served from the cache without querying the database.
      *
      * @param value the value of the authentication token to search for
      * @return the authentication token if found, or null if not found
      */
     public Token searchForTokenValue(String value) {
-        logger.info("Searching for token: " + value);
-        return tokenDAO.searchForValue(value);
+        logger.debug("Searching for token: " + value);
+        return validationCache.get(value);
+    }
+
+    /**
+     * Drops the cached searches affected by token changes written without going through a
+     * TokenBO, such as those of TokenWriteBehind and KeyRotationJob. It must be called once the
+     * changes are committed.
+     *
+     * @param usernames the users whose token was replaced or deleted
+     * @param values    the token values written, as stored: encrypted
+     */
+    public static void tokensChanged(Collection<String> usernames, Collection<String> values) {
+        usernames.forEach(validationCache::invalidateUser);
+        values.forEach(validationCache::invalidate);
+    }
+
+    /**
+     * Gets the cache of the searches by token value, to read its hit ratio and load latency.
+     *
+     * @return the shared TokenValidationCache
+     */
+    public TokenValidationCache getValidationCache() {
+        return validationCache;
     }
 
     /**
@@ -0,0 +1,421 @@
+package BO;
+
+import DTO.Token;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TokenValidationCache class caches the results of token lookups by value, so that validating
+ * the same token again does not query the database.
+ *
+ * Both found tokens and unknown values are cached, the latter with a shorter time to live so
+ * that a token inserted elsewhere is not refused for long. A found token read during the last
+ * part of its time to live is reloaded in the background, so tokens in constant use never
+ * expire from the cache and their callers never wait for the database. Lookups that fail are
+ * not cached, and a failed reload keeps the previous result until it expires.
+ *
+ * The cache holds at most maxSize values. Once full, the entry expiring soonest among a few
+ * sampled ones is evicted. Changes made through TokenBO invalidate the affected entries; a load
+ * running while an entry is invalidated returns its result without caching it. TokenWriteBehind
+ * and KeyRotationJob, which write the Token table directly, invalidate the entries of the users
+ * they change through TokenBO.tokensChanged. Changes made to the Token table by other means are
+ * seen once the cached entries expire.
+ */
+public class TokenValidationCache {
+
+    // Logger for logging failed lookups
+    private static final Logger logger = LoggerFactory.getLogger(TokenValidationCache.class);
+
+    // Values cached by default, overridable with -DBO.tokenCache.size
+    private static final int DEFAULT_MAX_SIZE = Integer.getInteger("BO.tokenCache.size", 10_000);
+
+    // Time to live of found tokens, overridable with -DBO.tokenCache.ttlSeconds
+    private static final long DEFAULT_TTL_SECONDS = Long.getLong("BO.tokenCache.ttlSeconds", 60);
+
+    // Time to live of unknown values, overridable with -DBO.tokenCache.negativeTtlSeconds
+    private static final long DEFAULT_NEGATIVE_TTL_SECONDS = Long.getLong("BO.tokenCache.negativeTtlSeconds", 5);
+
+    // Last part of the time to live in which a read reloads the token, overridable with -DBO.tokenCache.refreshAheadSeconds
+    private static final long DEFAULT_REFRESH_AHEAD_SECONDS = Long.getLong("BO.tokenCache.refreshAheadSeconds", 15);
+
+    // Entries sampled to choose one to evict
+    private static final int EVICTION_SAMPLES = 8;
+
+    // Threads reloading tokens in the background for every cache, with a bounded queue
+    private static final ThreadPoolExecutor refreshThreads = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1024), r -> {
+        Thread thread = new Thread(r, "token-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        refreshThreads.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Source of the cached lookups.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Looks up a token by value.
+         *
+         * @param value the token value
+         * @return the token, or null if no token has this value
+         * @throws SQLException if the lookup fails
+         */
+        Token load(String value) throws SQLException;
+    }
+
+    // Source of the cached lookups
+    private final Loader loader;
+
+    // Maximum number of cached values
+    private final int maxSize;
+
+    // Time to live of found tokens, in nanoseconds
+    private final long ttlNanos;
+
+    // Time to live of unknown values, in nanoseconds
+    private final long negativeTtlNanos;
+
+    // Last part of the time to live in which a read reloads the token, in nanoseconds
+    private final long refreshAheadNanos;
+
+    // Cached lookups by token value
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Value of the cached token of each user; the Token table holds one token per user
+    private final ConcurrentHashMap<String, String> valuesByUser = new ConcurrentHashMap<>();
+
+    // Incremented by every invalidation, so loads running meanwhile do not cache their result
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Lookups served from the cache
+    private final LongAdder hits = new LongAdder();
+
+    // Lookups that had to query the loader
+    private final LongAdder misses = new LongAdder();
+
+    // Queries of the loader, including background reloads
+    private final LongAdder loads = new LongAdder();
+
+    // Queries of the loader that failed
+    private final LongAdder loadFailures = new LongAdder();
+
+    // Time spent in the loader, in nanoseconds
+    private final LongAdder loadNanos = new LongAdder();
+
+    // Background reloads that replaced an entry
+    private final LongAdder refreshes = new LongAdder();
+
+    // Entries evicted to respect the size bound
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a TokenValidationCache with the default size and times to live.
+     *
+     * @param loader the source of the cached lookups
+     */
+    public TokenValidationCache(Loader loader) {
+        this(loader, DEFAULT_MAX_SIZE, Duration.ofSeconds(DEFAULT_TTL_SECONDS),
+                Duration.ofSeconds(DEFAULT_NEGATIVE_TTL_SECONDS), Duration.ofSeconds(DEFAULT_REFRESH_AHEAD_SECONDS));
+    }
+
+    /**
+     * Constructs a TokenValidationCache.
+     *
+     * @param loader       the source of the cached lookups
+     * @param maxSize      the maximum number of cached values
+     * @param ttl          the time to live of found tokens
+     * @param negativeTtl  the time to live of unknown values
+     * @param refreshAhead the last part of the time to live of a found token in which a read
+     *                     reloads it in the background, or zero to never reload
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    public TokenValidationCache(Loader loader, int maxSize, Duration ttl, Duration negativeTtl, Duration refreshAhead) {
+        if (maxSize <= 0 || ttl.isNegative() || ttl.isZero() || negativeTtl.isNegative() || negativeTtl.isZero()
+                || refreshAhead.isNegative() || refreshAhead.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("Invalid token cache settings");
+        }
+        this.loader = loader;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.refreshAheadNanos = refreshAhead.toNanos();
+    }
+
+    /**
+     * Gets the token with the given value, from the cache or else from the loader.
+     *
+     * @param value the token value
+     * @return the token, or null if no token has this value or the lookup failed
+     */
+    public Token get(String value) {
+        if (value == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Entry entry = entries.get(value);
+        if (entry != null && now - entry.expiresAt < 0) {
+            hits.increment();
+            if (entry.token != null && refreshAheadNanos > 0 && now - entry.refreshAt >= 0
+                    && entry.refreshing.compareAndSet(false, true)) {
+                refresh(value, entry);
+            }
+            return entry.token;
+        }
+        misses.increment();
+        long generation = invalidations.get();
+        Token token;
+        try {
+            token = load(value);
+        } catch (SQLException e) {
+            logger.error("Exception occurred while searching for token: " + value, e);
+            return null;
+        }
+        Entry loaded = newEntry(token);
+        Entry previous = entries.put(value, loaded);
+        if (token != null) {
+            valuesByUser.put(token.getUser().getUsername(), value);
+        }
+        if (invalidations.get() != generation) {
+            remove(value, loaded);
+        } else if (previous == null && entries.size() > maxSize) {
+            evictOne();
+        }
+        return token;
+    }
+
+    /**
+     * Removes the cached lookup of a token value, for example once a token with this value has
+     * been stored.
+     *
+     * @param value the token value
+     */
+    public void invalidate(String value) {
+        if (value != null) {
+            invalidations.incrementAndGet();
+            Entry entry = entries.remove(value);
+            if (entry != null && entry.token != null) {
+                valuesByUser.remove(entry.token.getUser().getUsername(), value);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached token of a user, for example once it has been updated or deleted.
+     *
+     * @param username the username of the user
+     */
+    public void invalidateUser(String username) {
+        if (username != null) {
+            invalidations.incrementAndGet();
+            String value = valuesByUser.remove(username);
+            if (value != null) {
+                entries.remove(value);
+            }
+        }
+    }
+
+    /**
+     * Removes every cached lookup.
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+        valuesByUser.clear();
+    }
+
+    /**
+     * Gets the number of cached values, including expired values not removed yet.
+     *
+     * @return the cache size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to query the loader.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the share of lookups served from the cache.
+     *
+     * @return the hit ratio, between 0 and 1, or 0 before the first lookup
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Gets the number of queries of the loader, including background reloads.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * Gets the number of queries of the loader that failed.
+     *
+     * @return the load failure count
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Gets the average time spent in one query of the loader.
+     *
+     * @return the average load latency in milliseconds, or 0 before the first load
+     */
+    public double getAverageLoadMillis() {
+        long count = loads.sum();
+        return count == 0 ? 0 : loadNanos.sum() / 1_000_000.0 / count;
+    }
+
+    /**
+     * Gets the number of background reloads that replaced an entry before it expired.
+     *
+     * @return the refresh count
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Gets the number of entries evicted because the cache was full.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Token load(String value) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return loader.load(value);
+        } catch (SQLException e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Reloads a token in the background. The entry is replaced only if it is still cached, so
+     * an invalidated entry is never brought back.
+     */
+    private void refresh(String value, Entry entry) {
+        try {
+            refreshThreads.execute(() -> {
+                try {
+                    Token token = load(value);
+                    Entry loaded = newEntry(token);
+                    if (entries.replace(value, entry, loaded)) {
+                        refreshes.increment();
+                        if (token == null) {
+                            valuesByUser.remove(entry.token.getUser().getUsername(), value);
+                        }
+                    }
+                } catch (SQLException e) {
+                    logger.warn("Exception occurred while refreshing token: " + value, e);
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Too many reloads queued; a later read of the entry will try again
+            entry.refreshing.set(false);
+        }
+    }
+
+    private Entry newEntry(Token token) {
+        long now = System.nanoTime();
+        return token != null
+                ? new Entry(token, now + ttlNanos, now + ttlNanos - refreshAheadNanos)
+                : new Entry(null, now + negativeTtlNanos, now + negativeTtlNanos);
+    }
+
+    private void remove(String value, Entry entry) {
+        if (entries.remove(value, entry) && entry.token != null) {
+            valuesByUser.remove(entry.token.getUser().getUsername(), value);
+        }
+    }
+
+    /**
+     * Evicts an expired entry, or else the one expiring soonest, among a few sampled ones.
+     * Iteration follows the hash order of the values, so the sample is effectively random.
+     */
+    private void evictOne() {
+        long now = System.nanoTime();
+        Map.Entry<String, Entry> victim = null;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        for (int i = 0; i < EVICTION_SAMPLES && iterator.hasNext(); i++) {
+            Map.Entry<String, Entry> candidate = iterator.next();
+            if (victim == null || candidate.getValue().expiresAt - victim.getValue().expiresAt < 0) {
+                victim = candidate;
+            }
+            if (now - victim.getValue().expiresAt >= 0) {
+                break;
+            }
+        }
+        if (victim != null) {
+            remove(victim.getKey(), victim.getValue());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * A cached lookup, with a null token for an unknown value.
+     */
+    private static final class Entry {
+
+        private final Token token;
+        private final long expiresAt;
+        private final long refreshAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Token token, long expiresAt, long refreshAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package BO;
 
+import Crypt.EncryptServiceFactory;
 import DTO.User;
 import DAO.UserDAO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * UserBO class provides business operations related to user management.
  *
  * This class encapsulates the business logic for handling user operations,
  * including insertion, listing, updating, deletion, and searching for users.
+ *
+ * Searches and existence checks first consult a UsernameFilter shared by every UserBO, loaded
+ * from the User table at startup, so unknown usernames are answered without a query. Users
+ * inserted by other nodes are unknown to the filter until its next rebuild, so a refused
+ * username is still queried at the limited rate of UsernameFilter.allowMissCheck, and added to
+ * the filter if found. Beyond that rate, such users are not found until the rebuild.
  */
 public class UserBO {
 
@@ -21,20 +31,36 @@ public class UserBO {
     // Data Access Object for handling user-related database operations
     private static final UserDAO userDAO = new UserDAO();
 
+    // Lookups in flight, shared by the concurrent searches for the same username
+    private static final SingleFlight<String, User> lookups = new SingleFlight<>();
+
+    // Filter of the existing usernames, loaded in the background when the class is first used
+    private static final UsernameFilter usernames = new UsernameFilter(new UsernameFilter.Source() {
+        @Override
+        public long count() throws SQLException {
+            return userDAO.countUsers();
+        }
+
+        @Override
+        public void forEachUsername(Consumer<String> action) throws SQLException {
+            userDAO.forEachUsername(action);
+        }
+    });
+
     /**
      * Inserts a new user into the database.
      *
-     * @param user       the user to be inserted
-     * @param encryptType the encryption type used for storing user information
+     * @param user the user to be inserted, holding the plain password
      * @return true if the user is inserted successfully, false otherwise
      */
-    public boolean insert(User user, String encryptType) {
+    public boolean insert(User user) {
         logger.info("Inserting user: " + user);
 
         // Check if a user with the same username already exists
         if (!exists(user.getUsername())) {
-            boolean result = userDAO.insert(user, encryptType);
+            boolean result = userDAO.insert(user);
             if (result) {
+                usernames.add(user.getUsername());
                 logger.info("User inserted successfully: " + user);
             } else {
                 logger.error("Failed to insert user: " + user);
@@ -59,13 +85,31 @@ public class UserBO {
     /**
      * Updates an existing user in the database.
      *
-     * @param user       the user to be updated
-     * @param encryptType the encryption type used for storing user information
+     * @param user the user to be updated, holding the plain password
      * @return true if the user is updated successfully, false otherwise
      */
-    public boolean update(User user, String encryptType) {
+    public boolean update(User user) {
         logger.info("Updating user: " + user);
-        return userDAO.update(user, encryptType);
+        return userDAO.update(user);
+    }
+
+    /**
+     * Changes the key of a user. Services cached for the old key are invalidated, so the old
+     * key is not kept in memory. The stored password is a PasswordHasher hash that does not
+     * depend on the key, so nothing is written to the User table; data encrypted under the old
+     * key, such as the token of the user, must be encrypted again by the caller.
+     *
+     * @param user   the user whose key changes
+     * @param newKey the new key of the user
+     */
+    public void changeKey(User user, byte[] newKey) {
+        logger.info("Changing key of user: " + user.getUsername());
+        byte[] oldKey = user.getKey();
+        user.setKey(newKey);
+        if (oldKey != null) {
+            EncryptServiceFactory.getInstance().invalidate(oldKey);
+            Arrays.fill(oldKey, (byte) 0);
+        }
     }
 
     /**
@@ -76,18 +120,47 @@ public class UserBO {
      */
     public boolean delete(String username) {
         logger.info("Deleting user: " + username);
-        return userDAO.delete(username);
+        boolean result = userDAO.delete(username);
+        if (result) {
+            usernames.remove(username);
+        }
+        return result;
     }
 
     /**
      * Searches for a user based on the username.
      *
+     * Usernames the filter knows to be unknown are only queried at the rate of its miss checks.
+     * Concurrent searches for the same username share a single query, and each caller gets its
+     * own copy of the user found.
+     *
      * @param username the username of the user to search for
      * @return the user if found, or null if not found
      */
     public User searchForUser(String username) {
         logger.info("Searching for user: " + username);
-        return userDAO.searchForUser(username);
+        boolean known = usernames.mightContain(username);
+        if (!known && (username == null || !usernames.allowMissCheck())) {
+            logger.debug("Unknown user: " + username);
+            return null;
+        }
+        User user = lookups.execute(username, () -> userDAO.searchForUser(username));
+        if (user == null) {
+            return null;
+        }
+        if (!known) {
+            usernames.add(username);
+        }
+        return new User(user);
+    }
+
+    /**
+     * Gets the number of user searches that shared the query of a concurrent search.
+     *
+     * @return the coalesced lookup count
+     */
+    public long getCoalescedLookupCount() {
+        return lookups.getCoalescedCount();
     }
 
     /**
@@ -98,7 +171,23 @@ public class UserBO {
      */
     public boolean exists(String username) {
         logger.info("Checking if user exists: " + username);
-        return userDAO.exists(username);
+        if (usernames.mightContain(username)) {
+            return userDAO.exists(username);
+        }
+        if (username != null && usernames.allowMissCheck() && userDAO.exists(username)) {
+            usernames.add(username);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the filter of the existing usernames shared by every UserBO.
+     *
+     * @return the shared UsernameFilter
+     */
+    public UsernameFilter getUsernameFilter() {
+        return usernames;
     }
 }
 
@@ -0,0 +1,349 @@
+package BO;
+
+import Management.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * UsernameFilter class keeps a BloomFilter over the usernames of the User table, so that
+ * lookups of usernames that do not exist can be refused without querying the database.
+ *
+ * The filter is loaded in the background when it is created, by streaming the usernames from
+ * its source, and rebuilt periodically. Until a load succeeds every username is let through.
+ * Users inserted through UserBO are added once stored; users inserted by other means are only
+ * known after the next rebuild. Deleted usernames cannot be removed from a Bloom filter, so the
+ * filter is rebuilt early once many were deleted, or once more usernames were added than it
+ * was sized for. While a rebuild streams the usernames, new ones are added to both the old and
+ * the new filter, so no stored username is ever refused.
+ *
+ * Users inserted elsewhere, such as on another node replicating the tokens, are not in the
+ * filter until its next rebuild. A refused username may therefore still be checked against the
+ * database with allowMissCheck, which lets through a limited number of refused lookups per
+ * second; beyond that rate such users are only found after the next rebuild.
+ */
+public class UsernameFilter {
+
+    // Logger for logging failed loads
+    private static final Logger logger = LoggerFactory.getLogger(UsernameFilter.class);
+
+    // False positive rate of the filter, overridable with -DBO.usernameFilter.falsePositiveRate
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = Double.parseDouble(
+            System.getProperty("BO.usernameFilter.falsePositiveRate", "0.01"));
+
+    // Time between two rebuilds, overridable with -DBO.usernameFilter.rebuildSeconds
+    private static final long DEFAULT_REBUILD_SECONDS = Long.getLong("BO.usernameFilter.rebuildSeconds", 600);
+
+    // Refused lookups checked against the database per second, overridable with -DBO.usernameFilter.missChecksPerSecond
+    private static final int DEFAULT_MISS_CHECKS_PER_SECOND = Integer.getInteger("BO.usernameFilter.missChecksPerSecond", 20);
+
+    // Smallest number of usernames a filter is sized for
+    private static final long MIN_EXPECTED_USERNAMES = 1024;
+
+    // Thread loading the filters of every UsernameFilter
+    private static final ScheduledExecutorService rebuildThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "username-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Source of the filtered usernames.
+     */
+    public interface Source {
+
+        /**
+         * Counts the usernames, to size the filter.
+         *
+         * @return the number of usernames
+         * @throws SQLException if the count fails
+         */
+        long count() throws SQLException;
+
+        /**
+         * Streams every username to the given action.
+         *
+         * @param action the action receiving each username
+         * @throws SQLException if the read fails
+         */
+        void forEachUsername(Consumer<String> action) throws SQLException;
+    }
+
+    // Source of the filtered usernames
+    private final Source source;
+
+    // False positive rate of the filter at its expected size
+    private final double falsePositiveRate;
+
+    // Filter answering lookups, or null until the first load succeeds
+    private volatile BloomFilter current;
+
+    // Filter being loaded from the source, or null outside of a rebuild
+    private volatile BloomFilter pending;
+
+    // Whether an early rebuild is queued or running
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // Usernames deleted since the last rebuild started
+    private final LongAdder removals = new LongAdder();
+
+    // Lookups refused because the username is certainly unknown
+    private final LongAdder rejections = new LongAdder();
+
+    // Successful loads of the filter
+    private final LongAdder rebuilds = new LongAdder();
+
+    // Failed loads of the filter
+    private final LongAdder rebuildFailures = new LongAdder();
+
+    // Refused lookups checked against the database
+    private final LongAdder missChecks = new LongAdder();
+
+    // Refused lookups that may be checked against the database per second
+    private final int missChecksPerSecond;
+
+    // Lock guarding the rate of miss checks, apart from the monitor held by rebuilds
+    private final Object missCheckLock = new Object();
+
+    // Second of the current window of miss checks, in System.nanoTime() seconds
+    private long missCheckSecond;
+
+    // Miss checks left in the current window
+    private int missChecksLeft;
+
+    // Scheduled periodic rebuild
+    private final ScheduledFuture<?> rebuildTask;
+
+    /**
+     * Constructs a UsernameFilter with the default false positive rate and rebuild interval.
+     *
+     * @param source the source of the filtered usernames
+     */
+    public UsernameFilter(Source source) {
+        this(source, DEFAULT_FALSE_POSITIVE_RATE, Duration.ofSeconds(DEFAULT_REBUILD_SECONDS));
+    }
+
+    /**
+     * Constructs a UsernameFilter with the default rate of miss checks and starts loading it in
+     * the background.
+     *
+     * @param source            the source of the filtered usernames
+     * @param falsePositiveRate the rate of unknown usernames let through to the database, between 0 and 1
+     * @param rebuildInterval   the time between two rebuilds dropping deleted usernames
+     * @throws IllegalArgumentException if the rate or interval is out of range
+     */
+    public UsernameFilter(Source source, double falsePositiveRate, Duration rebuildInterval) {
+        this(source, falsePositiveRate, rebuildInterval, DEFAULT_MISS_CHECKS_PER_SECOND);
+    }
+
+    /**
+     * Constructs a UsernameFilter and starts loading it in the background.
+     *
+     * @param source              the source of the filtered usernames
+     * @param falsePositiveRate   the rate of unknown usernames let through to the database, between 0 and 1
+     * @param rebuildInterval     the time between two rebuilds dropping deleted usernames
+     * @param missChecksPerSecond the refused lookups that may be checked against the database per second
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    public UsernameFilter(Source source, double falsePositiveRate, Duration rebuildInterval, int missChecksPerSecond) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1) || rebuildInterval.isNegative() || rebuildInterval.isZero()
+                || missChecksPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid username filter settings");
+        }
+        this.source = source;
+        this.falsePositiveRate = falsePositiveRate;
+        this.missChecksPerSecond = missChecksPerSecond;
+        RebuildTask task = new RebuildTask(this);
+        this.rebuildTask = rebuildThread.scheduleWithFixedDelay(task, 0, rebuildInterval.toNanos(), TimeUnit.NANOSECONDS);
+        task.future = rebuildTask;
+    }
+
+    /**
+     * Checks if a username may exist. Unknown usernames are counted as rejections.
+     *
+     * @param username the username to check
+     * @return false if the username certainly does not exist, true if it may
+     */
+    public boolean mightContain(String username) {
+        if (username == null) {
+            return false;
+        }
+        BloomFilter filter = current;
+        if (filter == null || filter.mightContain(username)) {
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * Checks if a lookup refused by mightContain may still be checked against the database,
+     * for usernames inserted elsewhere since the last rebuild. At most missChecksPerSecond
+     * lookups are let through per second; a username found this way should be added.
+     *
+     * @return true if the refused lookup may be checked
+     */
+    public boolean allowMissCheck() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        synchronized (missCheckLock) {
+            if (second != missCheckSecond) {
+                missCheckSecond = second;
+                missChecksLeft = missChecksPerSecond;
+            }
+            if (missChecksLeft == 0) {
+                return false;
+            }
+            missChecksLeft--;
+        }
+        missChecks.increment();
+        return true;
+    }
+
+    /**
+     * Adds a username already stored in the source.
+     *
+     * @param username the username to add
+     */
+    public void add(String username) {
+        // The pending filter is read before the current one: a rebuild that misses this username
+        // in the source has published its pending filter before, and swaps it in after
+        BloomFilter building = pending;
+        if (building != null) {
+            building.put(username);
+        }
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(username);
+            if (filter.isSaturated()) {
+                requestRebuild();
+            }
+        }
+    }
+
+    /**
+     * Records a username deleted from the source. It is let through until the next rebuild,
+     * which is started early once a quarter of the usernames were deleted.
+     *
+     * @param username the deleted username
+     */
+    public void remove(String username) {
+        removals.increment();
+        BloomFilter filter = current;
+        if (filter != null && removals.sum() > filter.getInsertionCount() / 4) {
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Loads a new filter from the source and swaps it in. If the load fails, the previous
+     * filter is kept.
+     */
+    public synchronized void rebuild() {
+        try {
+            long count = source.count();
+            BloomFilter rebuilt = new BloomFilter(Math.max(MIN_EXPECTED_USERNAMES, 2L * count), falsePositiveRate);
+            pending = rebuilt;
+            removals.reset();
+            source.forEachUsername(rebuilt::put);
+            current = rebuilt;
+            rebuilds.increment();
+        } catch (SQLException | RuntimeException e) {
+            rebuildFailures.increment();
+            logger.warn("Failed to load the usernames, keeping the previous username filter", e);
+        } finally {
+            pending = null;
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Checks if the filter was loaded, so that unknown usernames are refused.
+     *
+     * @return true if a load succeeded
+     */
+    public boolean isLoaded() {
+        return current != null;
+    }
+
+    /**
+     * Gets the number of lookups refused because the username is certainly unknown.
+     *
+     * @return the rejection count
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Gets the number of refused lookups let through to the database by allowMissCheck.
+     *
+     * @return the miss check count
+     */
+    public long getMissCheckCount() {
+        return missChecks.sum();
+    }
+
+    /**
+     * Gets the number of successful loads of the filter, including the initial one.
+     *
+     * @return the rebuild count
+     */
+    public long getRebuildCount() {
+        return rebuilds.sum();
+    }
+
+    /**
+     * Gets the number of failed loads of the filter.
+     *
+     * @return the rebuild failure count
+     */
+    public long getRebuildFailureCount() {
+        return rebuildFailures.sum();
+    }
+
+    /**
+     * Stops the periodic rebuilds.
+     */
+    public void close() {
+        rebuildTask.cancel(false);
+    }
+
+    private void requestRebuild() {
+        if (rebuilding.compareAndSet(false, true)) {
+            rebuildThread.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Periodic rebuild holding its filter weakly, so an unclosed filter can still be collected.
+     */
+    private static final class RebuildTask implements Runnable {
+
+        private final WeakReference<UsernameFilter> filter;
+        private volatile ScheduledFuture<?> future;
+
+        RebuildTask(UsernameFilter filter) {
+            this.filter = new WeakReference<>(filter);
+        }
+
+        @Override
+        public void run() {
+            UsernameFilter target = filter.get();
+            if (target != null) {
+                target.rebuild();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This class contains JMH benchmarks for the parallel AES_CTR_Crypt class.
+ */
+package Benchmarks;
+
+import Crypt.AES_CTR_Crypt;
+import DTO.KeyGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AES_CTR_CryptBenchmark {
+
+    // Number of fork-join workers; values above the number of cores are capped
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    // Size of the encrypted payload in bytes
+    @Param({"16777216"})
+    private int size;
+
+    private ForkJoinPool pool;
+    private AES_CTR_Crypt crypt;
+    private byte[] data;
+    private byte[] encrypted;
+
+    /**
+     * Prepares a pool with the requested parallelism and a random payload.
+     */
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+        crypt = new AES_CTR_Crypt(KeyGenerator.generateAesKey(32), pool);
+        data = new byte[size];
+        new Random(1).nextBytes(data);
+        encrypted = crypt.encrypt(data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Measures encryption of the whole payload; bytes per second is the score times the size.
+     */
+    @Benchmark
+    public byte[] encrypt() {
+        return crypt.encrypt(data);
+    }
+
+    /**
+     * Measures decryption of the whole payload.
+     */
+    @Benchmark
+    public byte[] decrypt() {
+        return crypt.decrypt(encrypted);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AES_CTR_CryptBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
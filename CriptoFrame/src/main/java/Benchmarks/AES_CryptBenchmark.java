@@ -0,0 +1,99 @@
+/**
+ * This class contains JMH benchmarks for the AES_Crypt class.
+ */
+package Benchmarks;
+
+import Crypt.AES_Crypt;
+import DTO.KeyGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AES_CryptBenchmark {
+
+    // AES key length in bytes
+    @Param({"16", "24", "32"})
+    private int keySize;
+
+    // Length of the plain text in characters; 36 is the size of a token value
+    @Param({"36", "1024", "16384"})
+    private int payloadSize;
+
+    private String data;
+    private AES_Crypt crypt;
+    private byte[] key;
+    private String encrypted;
+
+    /**
+     * Prepares a shared AES_Crypt instance and an encrypted sample for the decrypt benchmarks.
+     */
+    @Setup
+    public void setUp() {
+        data = "x".repeat(payloadSize);
+        key = KeyGenerator.generateAesKey(keySize);
+        crypt = new AES_Crypt(key);
+        encrypted = crypt.encrypt(data);
+    }
+
+    /**
+     * Measures encryption through the per-thread cached cipher.
+     */
+    @Benchmark
+    @Threads(4)
+    public String encryptCached() {
+        return crypt.encrypt(data);
+    }
+
+    /**
+     * Measures decryption through the per-thread cached cipher.
+     */
+    @Benchmark
+    @Threads(4)
+    public String decryptCached() {
+        return crypt.decrypt(encrypted);
+    }
+
+    /**
+     * Measures encryption with a cipher looked up and initialized on every call,
+     * as AES_Crypt did before the cipher cache was added.
+     */
+    @Benchmark
+    @Threads(4)
+    public String encryptPerCall() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        return Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes()));
+    }
+
+    /**
+     * Measures decryption with a cipher looked up and initialized on every call,
+     * as AES_Crypt did before the cipher cache was added.
+     */
+    @Benchmark
+    @Threads(4)
+    public String decryptPerCall() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"));
+        return new String(cipher.doFinal(Base64.getDecoder().decode(encrypted)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AES_CryptBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * This class contains JMH benchmarks for the AuthenticationManagement class with the database stubbed out.
+ */
+package Benchmarks;
+
+import BO.UserBO;
+import Crypt.EncryptService;
+import Crypt.PasswordHasher;
+import DTO.KeyGenerator;
+import DTO.Token;
+import DTO.User;
+import Management.AuthenticationManagement;
+import Management.TokenManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    private static final String USERNAME = "benchmarkUser";
+    private static final String PASSWORD = "benchmarkPassword";
+
+    private AuthenticationManagement authenticationManagement;
+    private TokenManager tokenManager;
+
+    /**
+     * Prepares an AuthenticationManagement whose user lookup returns a stored user from memory.
+     */
+    @Setup
+    public void setUp() {
+        EncryptService encryptService = new EncryptService("AES", KeyGenerator.generateAesKey(32));
+        User stored = new User(USERNAME, PasswordHasher.getInstance().hash(PASSWORD), "admin");
+        UserBO userBO = new UserBO() {
+            @Override
+            public User searchForUser(String username) {
+                return USERNAME.equals(username) ? stored : null;
+            }
+        };
+        tokenManager = new TokenManager();
+        authenticationManagement = new AuthenticationManagement(encryptService, tokenManager, userBO);
+    }
+
+    /**
+     * Measures a successful login, invalidating the issued token so the token store does not grow.
+     */
+    @Benchmark
+    @Threads(4)
+    public Token authenticateUser() {
+        Token token = authenticationManagement.authenticateUser(USERNAME, PASSWORD);
+        tokenManager.invalidateToken(token.getValue());
+        return token;
+    }
+
+    /**
+     * Measures a login rejected because of a wrong password.
+     */
+    @Benchmark
+    @Threads(4)
+    public Token authenticateUserWrongPassword() {
+        return authenticationManagement.authenticateUser(USERNAME, "wrongPassword");
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * This class contains JMH benchmarks comparing Base64Codec with java.util.Base64.
+ */
+package Benchmarks;
+
+import Crypt.Base64Codec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class Base64CodecBenchmark {
+
+    // Size of the encoded payload in bytes; 48 is an encrypted token, the others are larger records
+    @Param({"48", "1024", "16384"})
+    private int payloadSize;
+
+    private byte[] data;
+    private byte[] encoded;
+    private byte[] output;
+
+    /**
+     * Creates the payload and the output arrays reused by every invocation.
+     */
+    @Setup
+    public void setUp() {
+        data = new byte[payloadSize];
+        new Random(42).nextBytes(data);
+        encoded = Base64.getEncoder().encode(data);
+        output = new byte[Base64Codec.encodedLength(payloadSize)];
+    }
+
+    /**
+     * Measures encoding with java.util.Base64, which allocates the result.
+     */
+    @Benchmark
+    public byte[] encodeJdk() {
+        return Base64.getEncoder().encode(data);
+    }
+
+    /**
+     * Measures encoding into a reused array.
+     */
+    @Benchmark
+    public int encodeCodec() {
+        return Base64Codec.encode(data, 0, data.length, output, 0);
+    }
+
+    /**
+     * Measures decoding with java.util.Base64, which allocates the result.
+     */
+    @Benchmark
+    public byte[] decodeJdk() {
+        return Base64.getDecoder().decode(encoded);
+    }
+
+    /**
+     * Measures decoding into a reused array.
+     */
+    @Benchmark
+    public int decodeCodec() {
+        return Base64Codec.decode(encoded, 0, encoded.length, output, 0);
+    }
+
+    /**
+     * Measures the String round trip used by CipherCrypt with java.util.Base64.
+     */
+    @Benchmark
+    public byte[] stringRoundTripJdk() {
+        return Base64.getDecoder().decode(Base64.getEncoder().encodeToString(data));
+    }
+
+    /**
+     * Measures the String round trip used by CipherCrypt with Base64Codec.
+     */
+    @Benchmark
+    public int stringRoundTripCodec() {
+        return Base64Codec.decode(Base64Codec.encodeToString(data, 0, data.length), output, 0);
+    }
+}
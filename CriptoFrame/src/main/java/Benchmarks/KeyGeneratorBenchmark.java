@@ -0,0 +1,39 @@
+/**
+ * This class contains JMH benchmarks for the KeyGenerator class.
+ */
+package Benchmarks;
+
+import DTO.KeyGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyGeneratorBenchmark {
+
+    // AES key length in bytes
+    @Param({"16", "24", "32"})
+    private int keySize;
+
+    /**
+     * Measures the generation of a single AES key.
+     */
+    @Benchmark
+    public byte[] generateAesKey() {
+        return KeyGenerator.generateAesKey(keySize);
+    }
+
+    /**
+     * Measures key generation while several registrations run at the same time.
+     */
+    @Benchmark
+    @Threads(4)
+    public byte[] generateAesKeyContended() {
+        return KeyGenerator.generateAesKey(keySize);
+    }
+}
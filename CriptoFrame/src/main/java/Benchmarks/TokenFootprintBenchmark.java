@@ -0,0 +1,64 @@
+/**
+ * This class measures the heap retained per session by the opaque token backends.
+ */
+package Benchmarks;
+
+import DTO.User;
+import Management.TokenBackend;
+import Management.TokenIndex;
+import Management.TokenStore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+public class TokenFootprintBenchmark {
+
+    // Sessions stored by default; a different count can be given as the first argument
+    private static final int DEFAULT_SESSIONS = 1_000_000;
+
+    // Distinct users the sessions belong to
+    private static final int USERS = 10_000;
+
+    /**
+     * Fills each backend with the same number of sessions and prints the heap they retain, in
+     * bytes per session. This is not a JMH benchmark, since it measures retained memory rather
+     * than time; run it with a fixed heap, for example -Xms2g -Xmx2g, so the results are stable.
+     *
+     * @param args the number of sessions, optionally
+     */
+    public static void main(String[] args) {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        Duration ttl = Duration.ofMinutes(30);
+        User[] users = new User[USERS];
+        for (int i = 0; i < USERS; i++) {
+            users[i] = new User("user" + i, "password", "user");
+        }
+
+        measure("TokenStore", () -> new TokenStore(ttl, 0, Duration.ofSeconds(1)), sessions, users);
+        measure("TokenIndex", () -> new TokenIndex(ttl, 0, Duration.ofSeconds(30)), sessions, users);
+    }
+
+    private static void measure(String name, Supplier<TokenBackend> factory, int sessions, User[] users) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeap(memory);
+        TokenBackend backend = factory.get();
+        // Tokens are created here, so their strings are retained by the backend only, as in production
+        for (int i = 0; i < sessions; i++) {
+            backend.put(UUID.randomUUID().toString(), users[i % users.length]);
+        }
+        long after = usedHeap(memory);
+        System.out.printf("%s: %d sessions, %.1f bytes per session%n",
+                name, backend.size(), (double) (after - before) / sessions);
+        backend.close();
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * This class contains JMH benchmarks for the TokenManager class under multi-threaded contention.
+ */
+package Benchmarks;
+
+import DTO.User;
+import Management.TokenManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenManagerBenchmark {
+
+    // Number of tokens issued before measuring, so lookups hit a populated store
+    private static final int PREPOPULATED = 10_000;
+
+    private TokenManager tokenManager;
+    private User user;
+    private String[] tokens;
+    private String[] sealedTokens;
+    private String[] unknownTokens;
+
+    /**
+     * Prepares a TokenManager holding a fixed set of valid tokens.
+     */
+    @Setup
+    public void setUp() {
+        tokenManager = new TokenManager();
+        user = new User("benchmarkUser", "password", "admin");
+        tokens = new String[PREPOPULATED];
+        sealedTokens = new String[PREPOPULATED];
+        unknownTokens = new String[PREPOPULATED];
+        for (int i = 0; i < PREPOPULATED; i++) {
+            tokens[i] = tokenManager.createToken(user);
+            sealedTokens[i] = tokenManager.createSealedToken(user);
+            unknownTokens[i] = UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Issues and immediately invalidates a token, so the store does not grow during the run.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public String createToken() {
+        String token = tokenManager.createToken(user);
+        tokenManager.invalidateToken(token);
+        return token;
+    }
+
+    /**
+     * Validates one of the prepopulated tokens while other threads create tokens.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(6)
+    public boolean validateToken() {
+        return tokenManager.validateToken(tokens[ThreadLocalRandom.current().nextInt(PREPOPULATED)]);
+    }
+
+    /**
+     * Validates one of the prepopulated sealed tokens, which needs no lookup in the store.
+     */
+    @Benchmark
+    @Group("sealed")
+    @GroupThreads(6)
+    public boolean validateSealedToken() {
+        return tokenManager.validateToken(sealedTokens[ThreadLocalRandom.current().nextInt(PREPOPULATED)]);
+    }
+
+    /**
+     * Validates a token that was never issued, which the filter rejects without a lookup in the store.
+     */
+    @Benchmark
+    @Group("unknown")
+    @GroupThreads(6)
+    public boolean validateUnknownToken() {
+        return tokenManager.validateToken(unknownTokens[ThreadLocalRandom.current().nextInt(PREPOPULATED)]);
+    }
+}
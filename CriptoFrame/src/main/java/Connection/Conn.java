@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 
 /**
  * Conn class provides a static method for establishing a connection to a MySQL database.
@@ -21,22 +22,23 @@ public class Conn {
     private static final Logger logger = LoggerFactory.getLogger(Conn.class);
 
     // Singleton instance
-    private static Connection instance;
+    private static volatile Connection instance;
 
     // Private constructor to prevent instantiation
     private Conn() {
     }
 
     /**
-     * Returns the singleton instance of the Connection.
+     * Returns the singleton instance of the Connection. The DAOs close the connection after
+     * each statement, so a closed instance is replaced by a new connection.
      *
      * @return a Connection object representing the database connection if successful,
      *         or null if an error occurs
      */
     public static Connection getInstance() {
-        if (instance == null) {
+        if (!isOpen(instance)) {
             synchronized (Conn.class) {
-                if (instance == null) {
+                if (!isOpen(instance)) {
                     instance = createConnection();
                 }
             }
@@ -44,6 +46,24 @@ public class Conn {
         return instance;
     }
 
+    /**
+     * Opens a dedicated connection, separate from the singleton instance, for long-running
+     * work that uses its own transactions. The caller is responsible for closing it.
+     *
+     * @return a new Connection object if successful, or null if an error occurs
+     */
+    public static Connection newConnection() {
+        return createConnection();
+    }
+
+    private static boolean isOpen(Connection conn) {
+        try {
+            return conn != null && !conn.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
     private static Connection createConnection() {
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
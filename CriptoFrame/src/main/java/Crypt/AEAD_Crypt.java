@@ -0,0 +1,281 @@
+package Crypt;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+/**
+ * AEAD_Crypt class is the base of the authenticated encryption algorithms.
+ *
+ * Every message gets a fresh random 12-byte nonce, stored in front of the ciphertext and the
+ * authentication tag, so tampered or truncated data is rejected on decryption. Ciphers are
+ * cached per thread and re-initialized with the new nonce on each call; the provider keeps
+ * the expanded key between initializations with the same key.
+ *
+ * Authenticated decryption only releases plaintext once the tag has been verified, so streams
+ * are split into segments sealed separately: each one is encrypted under a nonce derived from
+ * the stream nonce, the segment number and a flag marking the last segment, and carries its own
+ * tag. Segments are decrypted one at a time, so reordered, truncated or extended streams are
+ * rejected without buffering the whole ciphertext.
+ */
+public abstract class AEAD_Crypt extends CipherCrypt {
+
+    // Length of the random nonce stored in front of the ciphertext
+    static final int NONCE_LENGTH = 12;
+
+    // Length of the authentication tag appended to the ciphertext
+    static final int TAG_LENGTH = 16;
+
+    // Source of random nonces, shared because SecureRandom is thread-safe
+    private static final SecureRandom random = new SecureRandom();
+
+    // Transformation of the underlying cipher
+    private final String transformation;
+
+    // Provider of the underlying cipher, or null for the default provider
+    private final Provider provider;
+
+    // Key specification built once and shared by every cached cipher
+    private final SecretKey secretKey;
+
+    // Per-thread cipher, re-initialized with the nonce of each message
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(this::newCipher);
+
+    /**
+     * Constructs an AEAD_Crypt object.
+     *
+     * @param key            the key used for encryption and decryption
+     * @param keyAlgorithm   the algorithm name of the key
+     * @param transformation the transformation of the underlying cipher
+     * @param provider       the provider of the underlying cipher, or null for the default provider
+     */
+    AEAD_Crypt(byte[] key, String keyAlgorithm, String transformation, Provider provider) {
+        super(key);
+        this.secretKey = secretKey(keyAlgorithm);
+        this.transformation = transformation;
+        this.provider = provider;
+    }
+
+    /**
+     * Constructs an AEAD_Crypt object with a key stored in a KeyVault.
+     *
+     * @param keyHandle      the handle of the key used for encryption and decryption
+     * @param keyAlgorithm   the algorithm name of the key
+     * @param transformation the transformation of the underlying cipher
+     * @param provider       the provider of the underlying cipher, or null for the default provider
+     */
+    AEAD_Crypt(KeyHandle keyHandle, String keyAlgorithm, String transformation, Provider provider) {
+        super(keyHandle);
+        this.secretKey = secretKey(keyAlgorithm);
+        this.transformation = transformation;
+        this.provider = provider;
+    }
+
+    /**
+     * Builds the cipher parameters for the given nonce.
+     *
+     * @param nonce the nonce of the message
+     * @return the parameters used to initialize the cipher
+     */
+    abstract AlgorithmParameterSpec parameters(byte[] nonce);
+
+    /**
+     * Encrypts and authenticates the given bytes.
+     *
+     * @param data the data to be encrypted
+     * @return the nonce followed by the encrypted bytes and the authentication tag
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public byte[] encrypt(byte[] data) {
+        byte[] nonce = newNonce();
+        try {
+            Cipher current = init(Cipher.ENCRYPT_MODE, nonce);
+            byte[] output = new byte[NONCE_LENGTH + current.getOutputSize(data.length)];
+            System.arraycopy(nonce, 0, output, 0, NONCE_LENGTH);
+            int written = current.doFinal(data, 0, data.length, output, NONCE_LENGTH);
+            return written + NONCE_LENGTH == output.length ? output : Arrays.copyOf(output, written + NONCE_LENGTH);
+        } catch (Exception e) {
+            cipher.remove();
+            throw new RuntimeException("Error encrypting data", e);
+        }
+    }
+
+    /**
+     * Verifies and decrypts the given bytes.
+     *
+     * @param data the nonce followed by the encrypted bytes and the authentication tag
+     * @return the decrypted bytes
+     * @throws RuntimeException if the data is malformed or fails authentication
+     */
+    @Override
+    public byte[] decrypt(byte[] data) {
+        try {
+            if (data.length < NONCE_LENGTH + TAG_LENGTH) {
+                throw new IllegalArgumentException("Encrypted data too short");
+            }
+            Cipher current = init(Cipher.DECRYPT_MODE, Arrays.copyOf(data, NONCE_LENGTH));
+            return current.doFinal(data, NONCE_LENGTH, data.length - NONCE_LENGTH);
+        } catch (Exception e) {
+            cipher.remove();
+            throw new RuntimeException("Error decrypting data", e);
+        }
+    }
+
+    /**
+     * Encrypts and authenticates the remaining bytes of the input buffer into the output buffer.
+     *
+     * @param input  the buffer holding the data to be encrypted
+     * @param output the buffer receiving the nonce, the encrypted data and the authentication tag
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            if (output.remaining() < getOutputSize(input.remaining())) {
+                throw new IllegalArgumentException("Output buffer too small");
+            }
+            byte[] nonce = newNonce();
+            Cipher current = init(Cipher.ENCRYPT_MODE, nonce);
+            output.put(nonce);
+            return NONCE_LENGTH + doFinal(current, input, output);
+        } catch (Exception e) {
+            cipher.remove();
+            throw new RuntimeException("Error encrypting data", e);
+        }
+    }
+
+    /**
+     * Verifies and decrypts the remaining bytes of the input buffer into the output buffer.
+     *
+     * @param input  the buffer holding the nonce, the encrypted data and the authentication tag
+     * @param output the buffer receiving the decrypted data
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if the data is malformed or fails authentication
+     */
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            if (input.remaining() < NONCE_LENGTH + TAG_LENGTH) {
+                throw new IllegalArgumentException("Encrypted data too short");
+            }
+            byte[] nonce = new byte[NONCE_LENGTH];
+            input.get(nonce);
+            return doFinal(init(Cipher.DECRYPT_MODE, nonce), input, output);
+        } catch (Exception e) {
+            cipher.remove();
+            throw new RuntimeException("Error decrypting data", e);
+        }
+    }
+
+    /**
+     * Gets the maximum output size for an input of the given length, which is the input plus
+     * the nonce and the authentication tag.
+     *
+     * @param inputLength the length of the input in bytes
+     * @return the size the output buffer must have available
+     */
+    @Override
+    public int getOutputSize(int inputLength) {
+        return inputLength + NONCE_LENGTH + TAG_LENGTH;
+    }
+
+    /**
+     * Gets the length of the header written before streamed ciphertext, which is the nonce.
+     *
+     * @return the header length in bytes
+     */
+    @Override
+    int headerLength() {
+        return NONCE_LENGTH;
+    }
+
+    /**
+     * Creates a dedicated cipher for a streaming operation, generating the stream nonce when
+     * encrypting. The cipher is initialized for each segment by initSegment.
+     *
+     * @param mode   the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header the stream nonce, filled in when encrypting and read when decrypting
+     * @return the cipher
+     */
+    @Override
+    Cipher streamCipher(int mode, byte[] header) {
+        if (mode == Cipher.ENCRYPT_MODE) {
+            random.nextBytes(header);
+        }
+        return newCipher();
+    }
+
+    /**
+     * Gets the length of the authentication tag sealing each segment of streamed ciphertext.
+     *
+     * @return the tag length in bytes
+     */
+    @Override
+    int segmentTagLength() {
+        return TAG_LENGTH;
+    }
+
+    /**
+     * Initializes the stream cipher for one segment. The nonce of the segment is the stream
+     * nonce with the segment number XORed into bytes 7 to 10 and the last segment flag into
+     * byte 11, so no two segments of a stream share a nonce.
+     *
+     * @param cipher  the cipher created by streamCipher
+     * @param mode    the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header  the stream nonce
+     * @param segment the number of the segment, from 0
+     * @param last    true for the last segment of the stream
+     */
+    @Override
+    void initSegment(Cipher cipher, int mode, byte[] header, long segment, boolean last) {
+        if (segment > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Encrypted stream too long");
+        }
+        byte[] nonce = header.clone();
+        nonce[7] ^= (byte) (segment >>> 24);
+        nonce[8] ^= (byte) (segment >>> 16);
+        nonce[9] ^= (byte) (segment >>> 8);
+        nonce[10] ^= (byte) segment;
+        nonce[11] ^= last ? 1 : 0;
+        try {
+            cipher.init(mode, secretKey, parameters(nonce));
+        } catch (Exception e) {
+            throw new RuntimeException("Error initializing cipher", e);
+        }
+    }
+
+    /**
+     * Gets the name of the provider of the underlying cipher.
+     *
+     * @return the provider name
+     */
+    public String getProviderName() {
+        return cipher.get().getProvider().getName();
+    }
+
+    private Cipher init(int mode, byte[] nonce) throws Exception {
+        Cipher current = cipher.get();
+        current.init(mode, secretKey, parameters(nonce));
+        return current;
+    }
+
+    private static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    private Cipher newCipher() {
+        try {
+            return provider == null ? Cipher.getInstance(transformation) : Cipher.getInstance(transformation, provider);
+        } catch (Exception e) {
+            throw new RuntimeException("Error initializing cipher", e);
+        }
+    }
+}
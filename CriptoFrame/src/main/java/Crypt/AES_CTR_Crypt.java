@@ -0,0 +1,316 @@
+package Crypt;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * AES_CTR_Crypt class provides methods for encrypting and decrypting data using AES in counter mode.
+ *
+ * Each message starts with a random 16-byte IV followed by the ciphertext. Because every block of
+ * a CTR keystream depends only on the IV and the block index, a large payload is split into
+ * independent segments whose counters start at the IV plus the segment offset. The segments are
+ * encrypted on a ForkJoinPool and the result is identical to encrypting the payload sequentially.
+ * Small payloads stay on the caller's thread.
+ */
+public class AES_CTR_Crypt extends CipherCrypt {
+
+    // Algorithm used for AES encryption and decryption
+    private static final String ALGORITHM = "AES";
+
+    // Transformation of the underlying cipher
+    private static final String TRANSFORMATION = "AES/CTR/NoPadding";
+
+    // Length of the IV stored in front of the ciphertext
+    private static final int IV_LENGTH = 16;
+
+    // AES block size in bytes; segment boundaries must be multiples of it
+    private static final int BLOCK_SIZE = 16;
+
+    // Size of the segments processed by a single fork-join task
+    private static final int SEGMENT_SIZE = 256 * 1024;
+
+    // Payloads smaller than this are processed on the caller's thread
+    private static final int PARALLEL_THRESHOLD = 2 * SEGMENT_SIZE;
+
+    // Source of random IVs, shared because SecureRandom is thread-safe
+    private static final SecureRandom random = new SecureRandom();
+
+    // Key specification built once and shared by every cached cipher
+    private final SecretKey secretKey;
+
+    // Pool running the segments of large payloads
+    private final ForkJoinPool pool;
+
+    // Per-thread cipher, re-initialized with the counter of each segment
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(this::newCipher);
+
+    /**
+     * Constructs an AES_CTR_Crypt object that runs large payloads on the common fork-join pool.
+     *
+     * @param key the key used for encryption and decryption
+     */
+    public AES_CTR_Crypt(byte[] key) {
+        this(key, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an AES_CTR_Crypt object that runs large payloads on the given pool.
+     *
+     * @param key  the key used for encryption and decryption
+     * @param pool the pool running the segments of large payloads
+     */
+    public AES_CTR_Crypt(byte[] key, ForkJoinPool pool) {
+        super(key);
+        this.secretKey = secretKey(ALGORITHM);
+        this.pool = pool;
+    }
+
+    /**
+     * Constructs an AES_CTR_Crypt object with a key stored in a KeyVault, running large payloads
+     * on the common fork-join pool.
+     *
+     * @param keyHandle the handle of the key used for encryption and decryption
+     */
+    public AES_CTR_Crypt(KeyHandle keyHandle) {
+        super(keyHandle);
+        this.secretKey = secretKey(ALGORITHM);
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Encrypts the given bytes, splitting large payloads across the pool.
+     *
+     * @param data the data to be encrypted
+     * @return the IV followed by the encrypted bytes
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public byte[] encrypt(byte[] data) {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        byte[] output = new byte[IV_LENGTH + data.length];
+        System.arraycopy(iv, 0, output, 0, IV_LENGTH);
+        crypt(iv, data, 0, data.length, output, IV_LENGTH, "Error encrypting data");
+        return output;
+    }
+
+    /**
+     * Decrypts the given bytes, splitting large payloads across the pool.
+     *
+     * @param data the IV followed by the encrypted bytes
+     * @return the decrypted bytes
+     * @throws RuntimeException if an error occurs during decryption
+     */
+    @Override
+    public byte[] decrypt(byte[] data) {
+        if (data.length < IV_LENGTH) {
+            throw new RuntimeException("Error decrypting data", new IllegalArgumentException("Missing IV"));
+        }
+        byte[] iv = Arrays.copyOf(data, IV_LENGTH);
+        byte[] output = new byte[data.length - IV_LENGTH];
+        crypt(iv, data, IV_LENGTH, output.length, output, 0, "Error decrypting data");
+        return output;
+    }
+
+    /**
+     * Encrypts the remaining bytes of the input buffer into the output buffer. Array-backed
+     * buffers are split across the pool like byte arrays; direct buffers are processed on the
+     * caller's thread.
+     *
+     * @param input  the buffer holding the data to be encrypted
+     * @param output the buffer receiving the IV and the encrypted data
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        if (output.remaining() < getOutputSize(input.remaining())) {
+            throw new RuntimeException("Error encrypting data", new IllegalArgumentException("Output buffer too small"));
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        output.put(iv);
+        return IV_LENGTH + crypt(iv, input, output, "Error encrypting data");
+    }
+
+    /**
+     * Decrypts the remaining bytes of the input buffer into the output buffer. Array-backed
+     * buffers are split across the pool like byte arrays; direct buffers are processed on the
+     * caller's thread.
+     *
+     * @param input  the buffer holding the IV and the encrypted data
+     * @param output the buffer receiving the decrypted data
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if an error occurs during decryption
+     */
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        if (input.remaining() < IV_LENGTH || output.remaining() < input.remaining() - IV_LENGTH) {
+            throw new RuntimeException("Error decrypting data", new IllegalArgumentException("Invalid buffer sizes"));
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        input.get(iv);
+        return crypt(iv, input, output, "Error decrypting data");
+    }
+
+    /**
+     * Gets the maximum output size for an input of the given length. CTR needs no padding,
+     * so only the IV is added.
+     *
+     * @param inputLength the length of the input in bytes
+     * @return the size the output buffer must have available
+     */
+    @Override
+    public int getOutputSize(int inputLength) {
+        return inputLength + IV_LENGTH;
+    }
+
+    /**
+     * Gets the length of the header written before streamed ciphertext, which is the IV.
+     *
+     * @return the header length in bytes
+     */
+    @Override
+    int headerLength() {
+        return IV_LENGTH;
+    }
+
+    /**
+     * Creates a dedicated cipher for a streaming operation, generating the IV when encrypting.
+     *
+     * @param mode   the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header the IV, filled in when encrypting and read when decrypting
+     * @return the initialized cipher
+     */
+    @Override
+    Cipher streamCipher(int mode, byte[] header) {
+        if (mode == Cipher.ENCRYPT_MODE) {
+            random.nextBytes(header);
+        }
+        try {
+            Cipher streamCipher = newCipher();
+            streamCipher.init(mode, secretKey, new IvParameterSpec(header));
+            return streamCipher;
+        } catch (Exception e) {
+            throw new RuntimeException("Error initializing cipher", e);
+        }
+    }
+
+    /**
+     * Processes a range of an array, in parallel segments when the range is large.
+     */
+    private void crypt(byte[] iv, byte[] input, int inputOffset, int length, byte[] output, int outputOffset,
+                       String error) {
+        try {
+            if (length < PARALLEL_THRESHOLD) {
+                cryptSegment(iv, input, inputOffset, 0, length, output, outputOffset);
+            } else {
+                pool.invoke(new Segment(iv, input, inputOffset, output, outputOffset, 0, length));
+            }
+        } catch (Exception e) {
+            cipher.remove();
+            throw new RuntimeException(error, e);
+        }
+    }
+
+    /**
+     * Processes the remaining bytes of a buffer after the IV has been handled.
+     */
+    private int crypt(byte[] iv, ByteBuffer input, ByteBuffer output, String error) {
+        int length = input.remaining();
+        if (input.hasArray() && output.hasArray()) {
+            crypt(iv, input.array(), input.arrayOffset() + input.position(), length,
+                    output.array(), output.arrayOffset() + output.position(), error);
+            input.position(input.limit());
+            output.position(output.position() + length);
+            return length;
+        }
+        try {
+            Cipher current = cipher.get();
+            current.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(iv));
+            return doFinal(current, input, output);
+        } catch (Exception e) {
+            cipher.remove();
+            throw new RuntimeException(error, e);
+        }
+    }
+
+    /**
+     * Encrypts one segment starting at the given offset of the payload. The counter for the
+     * first block of the segment is the IV advanced by the number of preceding blocks.
+     */
+    private void cryptSegment(byte[] iv, byte[] input, int inputOffset, int offset, int length,
+                              byte[] output, int outputOffset) throws Exception {
+        Cipher current = cipher.get();
+        current.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(counter(iv, offset / BLOCK_SIZE)));
+        current.doFinal(input, inputOffset + offset, length, output, outputOffset + offset);
+    }
+
+    /**
+     * Adds a block count to a 128-bit big-endian counter, the way the CTR cipher increments it.
+     */
+    private static byte[] counter(byte[] iv, long blocks) {
+        byte[] counter = iv.clone();
+        long carry = blocks;
+        for (int i = counter.length - 1; i >= 0 && carry != 0; i--) {
+            long sum = (counter[i] & 0xFF) + (carry & 0xFF);
+            counter[i] = (byte) sum;
+            carry = (carry >>> 8) + (sum >>> 8);
+        }
+        return counter;
+    }
+
+    private Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (Exception e) {
+            throw new RuntimeException("Error initializing cipher", e);
+        }
+    }
+
+    /**
+     * Fork-join task that splits a range of the payload in halves until it fits in one segment.
+     */
+    private final class Segment extends RecursiveAction {
+
+        private final byte[] iv;
+        private final byte[] input;
+        private final int inputOffset;
+        private final byte[] output;
+        private final int outputOffset;
+        private final int offset;
+        private final int length;
+
+        Segment(byte[] iv, byte[] input, int inputOffset, byte[] output, int outputOffset, int offset, int length) {
+            this.iv = iv;
+            this.input = input;
+            this.inputOffset = inputOffset;
+            this.output = output;
+            this.outputOffset = outputOffset;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        protected void compute() {
+            if (length <= SEGMENT_SIZE) {
+                try {
+                    cryptSegment(iv, input, inputOffset, offset, length, output, outputOffset);
+                } catch (Exception e) {
+                    cipher.remove();
+                    throw new RuntimeException(e);
+                }
+                return;
+            }
+            int half = (length / 2 + SEGMENT_SIZE - 1) / SEGMENT_SIZE * SEGMENT_SIZE;
+            invokeAll(new Segment(iv, input, inputOffset, output, outputOffset, offset, half),
+                    new Segment(iv, input, inputOffset, output, outputOffset, offset + half, length - half));
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package Crypt;
 
 import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
-import java.util.Base64;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 
 /**
  * AES_Crypt class provides methods for encrypting and decrypting data using AES algorithm.
@@ -10,14 +10,26 @@ import java.util.Base64;
  * This class implements the Encrypt interface, defining the encrypt and decrypt methods.
  * The encryption is performed using the AES algorithm with a secret key specified by the
  * ALGORITHM constant.
+ *
+ * Cipher instances are cached per thread and initialized once with the key, so a single
+ * AES_Crypt can be shared by many threads without a provider lookup or key expansion per call.
  */
-public class AES_Crypt implements Encrypt {
+public class AES_Crypt extends CipherCrypt {
 
     // Algorithm used for AES encryption and decryption
     private static final String ALGORITHM = "AES";
 
-    // Secret key used for AES encryption and decryption
-    private final byte[] key;
+    // AES block size in bytes
+    private static final int BLOCK_SIZE = 16;
+
+    // Key specification built once and shared by every cached cipher
+    private final SecretKey secretKey;
+
+    // Per-thread cipher initialized for encryption, reset by doFinal between uses
+    private final ThreadLocal<Cipher> encryptCipher = ThreadLocal.withInitial(() -> newCipher(Cipher.ENCRYPT_MODE));
+
+    // Per-thread cipher initialized for decryption, reset by doFinal between uses
+    private final ThreadLocal<Cipher> decryptCipher = ThreadLocal.withInitial(() -> newCipher(Cipher.DECRYPT_MODE));
 
     /**
      * Constructs an AES_Crypt object with the specified key for encryption and decryption.
@@ -25,50 +37,142 @@ public class AES_Crypt implements Encrypt {
      * @param key the key used for encryption and decryption
      */
     public AES_Crypt(byte[] key) {
-        this.key = key;
+        super(key);
+        this.secretKey = secretKey(ALGORITHM);
     }
 
     /**
-     * Encrypts the given data using the AES algorithm and the provided key.
+     * Constructs an AES_Crypt object with a key stored in a KeyVault.
+     *
+     * @param keyHandle the handle of the key used for encryption and decryption
+     */
+    public AES_Crypt(KeyHandle keyHandle) {
+        super(keyHandle);
+        this.secretKey = secretKey(ALGORITHM);
+    }
+
+    /**
+     * Encrypts the given bytes using the AES algorithm and the provided key.
      *
      * @param data the data to be encrypted
-     * @return the encrypted data as a Base64-encoded string
+     * @return the encrypted bytes
      * @throws RuntimeException if an error occurs during encryption
      */
     @Override
-    public String encrypt(String data) {
+    public byte[] encrypt(byte[] data) {
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec secretKey = new SecretKeySpec(key, ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            byte[] encryptedData = cipher.doFinal(data.getBytes());
-            return Base64.getEncoder().encodeToString(encryptedData);
+            return encryptCipher.get().doFinal(data);
         } catch (Exception e) {
+            encryptCipher.remove();
             throw new RuntimeException("Error encrypting data", e);
         }
     }
 
     /**
-     * Decrypts the given data using the AES algorithm and the provided key.
+     * Decrypts the given bytes using the AES algorithm and the provided key.
      *
      * @param data the data to be decrypted
-     * @return the decrypted data as a string
+     * @return the decrypted bytes
      * @throws RuntimeException if an error occurs during decryption
      */
     @Override
-    public String decrypt(String data) {
+    public byte[] decrypt(byte[] data) {
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec secretKey = new SecretKeySpec(key, ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey);
-            byte[] decryptedData = cipher.doFinal(Base64.getDecoder().decode(data));
-            return new String(decryptedData);
+            return decryptCipher.get().doFinal(data);
+        } catch (Exception e) {
+            decryptCipher.remove();
+            throw new RuntimeException("Error decrypting data", e);
+        }
+    }
+
+    /**
+     * Encrypts the remaining bytes of the input buffer into the output buffer
+     * using the AES algorithm and the provided key.
+     *
+     * @param input  the buffer holding the data to be encrypted
+     * @param output the buffer receiving the encrypted data
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            return doFinal(encryptCipher.get(), input, output);
+        } catch (Exception e) {
+            encryptCipher.remove();
+            throw new RuntimeException("Error encrypting data", e);
+        }
+    }
+
+    /**
+     * Decrypts the remaining bytes of the input buffer into the output buffer
+     * using the AES algorithm and the provided key.
+     *
+     * @param input  the buffer holding the data to be decrypted
+     * @param output the buffer receiving the decrypted data
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if an error occurs during decryption
+     */
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        try {
+            return doFinal(decryptCipher.get(), input, output);
         } catch (Exception e) {
+            decryptCipher.remove();
             throw new RuntimeException("Error decrypting data", e);
         }
     }
 
-    public byte[] getKey() {
-        return key;
+    /**
+     * Gets the maximum output size for an input of the given length. With PKCS5
+     * padding this is the input rounded up to the next full AES block.
+     *
+     * @param inputLength the length of the input in bytes
+     * @return the size the output buffer must have available
+     */
+    @Override
+    public int getOutputSize(int inputLength) {
+        return (inputLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * Gets the length of the header written before streamed ciphertext. AES in ECB mode
+     * needs no IV, so streams have no header.
+     *
+     * @return the header length in bytes
+     */
+    @Override
+    int headerLength() {
+        return 0;
+    }
+
+    /**
+     * Creates a dedicated cipher for a streaming operation. Streams keep a cipher busy for
+     * a long time, so they get their own instance instead of the cached per-thread one.
+     *
+     * @param mode   the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header the stream header, unused because ECB has no IV
+     * @return the initialized cipher
+     */
+    @Override
+    Cipher streamCipher(int mode, byte[] header) {
+        return newCipher(mode);
+    }
+
+    /**
+     * Creates a cipher for the current thread and initializes it with the key.
+     *
+     * @param mode the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @return the initialized cipher
+     * @throws RuntimeException if the cipher cannot be created or initialized
+     */
+    private Cipher newCipher(int mode) {
+        try {
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(mode, secretKey);
+            return cipher;
+        } catch (Exception e) {
+            throw new RuntimeException("Error initializing cipher", e);
+        }
     }
 }
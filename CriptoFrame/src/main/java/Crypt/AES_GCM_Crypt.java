@@ -0,0 +1,60 @@
+package Crypt;
+
+import javax.crypto.spec.GCMParameterSpec;
+import java.security.Provider;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * AES_GCM_Crypt class provides authenticated encryption using AES in Galois/Counter Mode.
+ *
+ * This is the fastest authenticated engine on CPUs with AES instructions. Keys may be
+ * 16, 24 or 32 bytes long.
+ */
+public class AES_GCM_Crypt extends AEAD_Crypt {
+
+    // Transformation of the underlying cipher
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    /**
+     * Constructs an AES_GCM_Crypt object using the default provider.
+     *
+     * @param key the key used for encryption and decryption
+     */
+    public AES_GCM_Crypt(byte[] key) {
+        this(key, null);
+    }
+
+    /**
+     * Constructs an AES_GCM_Crypt object using the given provider.
+     *
+     * @param key      the key used for encryption and decryption
+     * @param provider the provider of the underlying cipher, or null for the default provider
+     */
+    public AES_GCM_Crypt(byte[] key, Provider provider) {
+        super(key, "AES", TRANSFORMATION, provider);
+    }
+
+    /**
+     * Constructs an AES_GCM_Crypt object with a key stored in a KeyVault.
+     *
+     * @param keyHandle the handle of the key used for encryption and decryption
+     * @param provider  the provider of the underlying cipher, or null for the default provider
+     */
+    public AES_GCM_Crypt(KeyHandle keyHandle, Provider provider) {
+        super(keyHandle, "AES", TRANSFORMATION, provider);
+    }
+
+    @Override
+    AlgorithmParameterSpec parameters(byte[] nonce) {
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    /**
+     * Gets the transformation implemented by this engine, used to look up providers.
+     *
+     * @return the transformation name
+     */
+    static String transformation() {
+        return TRANSFORMATION;
+    }
+}
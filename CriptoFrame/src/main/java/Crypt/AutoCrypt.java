@@ -0,0 +1,310 @@
+package Crypt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * AutoCrypt class provides authenticated encryption with the engine that is fastest on the current host.
+ *
+ * The first time the AUTO type is used, every available provider of AES-GCM and ChaCha20-Poly1305 is
+ * micro-benchmarked and the candidates are ranked by throughput. Hosts with AES instructions normally
+ * pick AES-GCM, hosts without them ChaCha20-Poly1305. Each message starts with a one-byte engine id,
+ * so data encrypted on one host can be decrypted on any other regardless of the engine it selected.
+ */
+public class AutoCrypt extends CipherCrypt {
+
+    // Logger for logging the engine selection
+    private static final Logger logger = LoggerFactory.getLogger(AutoCrypt.class);
+
+    // Engine id stored in front of AES-GCM messages
+    private static final byte AES_GCM_ID = 1;
+
+    // Engine id stored in front of ChaCha20-Poly1305 messages
+    private static final byte CHACHA20_ID = 2;
+
+    // Size of the payload encrypted during the selection benchmark
+    private static final int BENCHMARK_PAYLOAD = 1024;
+
+    // Time spent warming up each candidate so the JIT compiles the cipher intrinsics
+    private static final long WARMUP_NANOS = 200_000_000L;
+
+    // Time spent measuring each candidate
+    private static final long BENCHMARK_NANOS = 100_000_000L;
+
+    // Id of the engine used for encryption
+    private final byte engineId;
+
+    // Engine used for encryption
+    private final AEAD_Crypt engine;
+
+    // Engine decrypting messages written by the other engine, created on first use
+    private volatile AEAD_Crypt otherEngine;
+
+    /**
+     * Constructs an AutoCrypt object that encrypts with the fastest engine supporting the key.
+     * ChaCha20-Poly1305 needs a 32-byte key, so shorter keys always use AES-GCM.
+     *
+     * @param key the key used for encryption and decryption
+     */
+    public AutoCrypt(byte[] key) {
+        super(key);
+        Candidate selected = select(keyLength());
+        this.engineId = selected.id();
+        this.engine = create(selected.id(), key, selected.provider());
+    }
+
+    /**
+     * Constructs an AutoCrypt object with a key stored in a KeyVault.
+     *
+     * @param keyHandle the handle of the key used for encryption and decryption
+     */
+    public AutoCrypt(KeyHandle keyHandle) {
+        super(keyHandle);
+        Candidate selected = select(keyLength());
+        this.engineId = selected.id();
+        this.engine = create(selected.id(), keyHandle, selected.provider());
+    }
+
+    /**
+     * Encrypts the given bytes with the selected engine.
+     *
+     * @param data the data to be encrypted
+     * @return the engine id followed by the engine output
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public byte[] encrypt(byte[] data) {
+        byte[] output = new byte[getOutputSize(data.length)];
+        output[0] = engineId;
+        int written = 1 + engine.encrypt(ByteBuffer.wrap(data), ByteBuffer.wrap(output, 1, output.length - 1));
+        return written == output.length ? output : Arrays.copyOf(output, written);
+    }
+
+    /**
+     * Decrypts the given bytes with the engine named by their first byte.
+     *
+     * @param data the engine id followed by the engine output
+     * @return the decrypted bytes
+     * @throws RuntimeException if the data is malformed or fails authentication
+     */
+    @Override
+    public byte[] decrypt(byte[] data) {
+        if (data.length < 1 + AEAD_Crypt.NONCE_LENGTH + AEAD_Crypt.TAG_LENGTH) {
+            throw new RuntimeException("Error decrypting data", new IllegalArgumentException("Encrypted data too short"));
+        }
+        byte[] output = new byte[data.length - 1 - AEAD_Crypt.NONCE_LENGTH - AEAD_Crypt.TAG_LENGTH];
+        engineFor(data[0]).decrypt(ByteBuffer.wrap(data, 1, data.length - 1), ByteBuffer.wrap(output));
+        return output;
+    }
+
+    /**
+     * Encrypts the remaining bytes of the input buffer into the output buffer with the selected engine.
+     *
+     * @param input  the buffer holding the data to be encrypted
+     * @param output the buffer receiving the engine id and the engine output
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        if (output.remaining() < getOutputSize(input.remaining())) {
+            throw new RuntimeException("Error encrypting data", new IllegalArgumentException("Output buffer too small"));
+        }
+        output.put(engineId);
+        return 1 + engine.encrypt(input, output);
+    }
+
+    /**
+     * Decrypts the remaining bytes of the input buffer into the output buffer with the engine
+     * named by the first byte.
+     *
+     * @param input  the buffer holding the engine id and the engine output
+     * @param output the buffer receiving the decrypted data
+     * @return the number of bytes written to the output buffer
+     * @throws RuntimeException if the data is malformed or fails authentication
+     */
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        if (!input.hasRemaining()) {
+            throw new RuntimeException("Error decrypting data", new IllegalArgumentException("Encrypted data too short"));
+        }
+        return engineFor(input.get()).decrypt(input, output);
+    }
+
+    /**
+     * Gets the maximum output size for an input of the given length, which is the engine output plus the id.
+     *
+     * @param inputLength the length of the input in bytes
+     * @return the size the output buffer must have available
+     */
+    @Override
+    public int getOutputSize(int inputLength) {
+        return 1 + engine.getOutputSize(inputLength);
+    }
+
+    /**
+     * Gets the length of the header written before streamed ciphertext, which is the id and the nonce.
+     *
+     * @return the header length in bytes
+     */
+    @Override
+    int headerLength() {
+        return 1 + AEAD_Crypt.NONCE_LENGTH;
+    }
+
+    /**
+     * Creates a dedicated cipher for a streaming operation.
+     *
+     * @param mode   the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header the engine id and nonce, filled in when encrypting and read when decrypting
+     * @return the initialized cipher
+     */
+    @Override
+    Cipher streamCipher(int mode, byte[] header) {
+        byte[] nonce = Arrays.copyOfRange(header, 1, header.length);
+        if (mode == Cipher.ENCRYPT_MODE) {
+            Cipher cipher = engine.streamCipher(mode, nonce);
+            header[0] = engineId;
+            System.arraycopy(nonce, 0, header, 1, nonce.length);
+            return cipher;
+        }
+        return engineFor(header[0]).streamCipher(mode, nonce);
+    }
+
+    /**
+     * Gets the length of the authentication tag sealing each segment of streamed ciphertext.
+     *
+     * @return the tag length in bytes
+     */
+    @Override
+    int segmentTagLength() {
+        return AEAD_Crypt.TAG_LENGTH;
+    }
+
+    /**
+     * Initializes the stream cipher for one segment, with the engine named by the header.
+     *
+     * @param cipher  the cipher created by streamCipher
+     * @param mode    the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header  the engine id and stream nonce
+     * @param segment the number of the segment, from 0
+     * @param last    true for the last segment of the stream
+     */
+    @Override
+    void initSegment(Cipher cipher, int mode, byte[] header, long segment, boolean last) {
+        engineFor(header[0]).initSegment(cipher, mode, Arrays.copyOfRange(header, 1, header.length), segment, last);
+    }
+
+    /**
+     * Gets the name of the engine selected for encryption.
+     *
+     * @return the encryption type of the selected engine
+     */
+    public String getSelectedEngine() {
+        return name(engineId);
+    }
+
+    private AEAD_Crypt engineFor(byte id) {
+        if (id == engineId) {
+            return engine;
+        }
+        if (id != AES_GCM_ID && id != CHACHA20_ID) {
+            throw new RuntimeException("Error decrypting data", new IllegalArgumentException("Unknown engine id: " + id));
+        }
+        AEAD_Crypt other = otherEngine;
+        if (other == null) {
+            other = getKeyHandle() != null ? create(id, getKeyHandle(), null) : create(id, getKey(), null);
+            otherEngine = other;
+        }
+        return other;
+    }
+
+    private static Candidate select(int keyLength) {
+        return Ranking.CANDIDATES.stream()
+                .filter(candidate -> candidate.id() == AES_GCM_ID || keyLength == 32)
+                .findFirst()
+                .orElse(new Candidate(AES_GCM_ID, null, 0));
+    }
+
+    private static AEAD_Crypt create(byte id, byte[] key, Provider provider) {
+        return id == CHACHA20_ID ? new ChaCha20_Crypt(key, provider) : new AES_GCM_Crypt(key, provider);
+    }
+
+    private static AEAD_Crypt create(byte id, KeyHandle keyHandle, Provider provider) {
+        return id == CHACHA20_ID ? new ChaCha20_Crypt(keyHandle, provider) : new AES_GCM_Crypt(keyHandle, provider);
+    }
+
+    private static String name(byte id) {
+        return id == CHACHA20_ID ? "CHACHA20-POLY1305" : "AES-GCM";
+    }
+
+    /**
+     * An engine and provider pair with its measured throughput.
+     */
+    private record Candidate(byte id, Provider provider, double opsPerSecond) {
+    }
+
+    /**
+     * Holder of the candidate ranking, computed once when the AUTO type is first used.
+     */
+    private static final class Ranking {
+
+        // Candidates ordered from fastest to slowest
+        static final List<Candidate> CANDIDATES = rank();
+
+        private static List<Candidate> rank() {
+            byte[] key = new byte[32];
+            byte[] payload = new byte[BENCHMARK_PAYLOAD];
+            new SecureRandom().nextBytes(key);
+            List<Candidate> candidates = new ArrayList<>();
+            measureAll(candidates, AES_GCM_ID, AES_GCM_Crypt.transformation(), key, payload);
+            measureAll(candidates, CHACHA20_ID, ChaCha20_Crypt.transformation(), key, payload);
+            candidates.sort(Comparator.comparingDouble(Candidate::opsPerSecond).reversed());
+            for (Candidate candidate : candidates) {
+                logger.info(String.format("AUTO candidate %s (%s): %.0f ops/s", name(candidate.id()),
+                        candidate.provider().getName(), candidate.opsPerSecond()));
+            }
+            if (!candidates.isEmpty()) {
+                logger.info("AUTO selected " + name(candidates.get(0).id()) + " from " + candidates.get(0).provider().getName());
+            }
+            return candidates;
+        }
+
+        private static void measureAll(List<Candidate> candidates, byte id, String transformation, byte[] key, byte[] payload) {
+            Provider[] providers = Security.getProviders("Cipher." + transformation);
+            if (providers == null) {
+                return;
+            }
+            for (Provider provider : providers) {
+                try {
+                    AEAD_Crypt engine = create(id, key, provider);
+                    run(engine, payload, WARMUP_NANOS);
+                    long operations = run(engine, payload, BENCHMARK_NANOS);
+                    candidates.add(new Candidate(id, provider, operations * 1e9 / BENCHMARK_NANOS));
+                } catch (RuntimeException e) {
+                    logger.warn("Skipping AUTO candidate " + name(id) + " from " + provider.getName(), e);
+                }
+            }
+        }
+
+        private static long run(AEAD_Crypt engine, byte[] payload, long nanos) {
+            long operations = 0;
+            long end = System.nanoTime() + nanos;
+            while (System.nanoTime() < end) {
+                engine.decrypt(engine.encrypt(payload));
+                operations++;
+            }
+            return operations;
+        }
+    }
+}
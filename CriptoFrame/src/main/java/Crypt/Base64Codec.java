@@ -0,0 +1,513 @@
+package Crypt;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Base64Codec class encodes and decodes standard Base64 (RFC 4648, with padding) without allocating.
+ *
+ * Every method writes into a caller-provided byte array, char array or ByteBuffer and returns the
+ * number of bytes or characters written. The output is byte for byte the same as java.util.Base64's
+ * basic encoder, and decoding accepts and rejects the same inputs as its basic decoder, throwing
+ * IllegalArgumentException for malformed data.
+ *
+ * When the JVM is started with --add-modules jdk.incubator.vector, byte array conversions run
+ * through the SIMD kernels of VectorBase64 and the scalar code only handles the tail. Without the
+ * module, or with -DCrypt.base64.vector=false, everything runs through the scalar code.
+ */
+public final class Base64Codec {
+
+    // Characters of the Base64 alphabet, indexed by 6-bit value
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    // 6-bit value of each ASCII character, -1 for characters outside the alphabet
+    private static final int[] VALUES = new int[128];
+
+    // Padding character
+    private static final int PAD = '=';
+
+    // True when the Vector API kernels can be used
+    private static final boolean VECTORIZED = vectorAvailable();
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = i;
+        }
+    }
+
+    // Private constructor to prevent instantiation
+    private Base64Codec() {
+    }
+
+    /**
+     * Gets the number of characters produced by encoding the given number of bytes.
+     *
+     * @param length the number of bytes to encode
+     * @return the encoded length, including padding
+     */
+    public static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Gets the maximum number of bytes produced by decoding the given number of characters.
+     *
+     * @param length the number of characters to decode
+     * @return an upper bound of the decoded length
+     */
+    public static int maxDecodedLength(int length) {
+        return (length + 3) / 4 * 3;
+    }
+
+    /**
+     * Checks if the Vector API kernels are in use.
+     *
+     * @return true if byte array conversions are vectorized
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Encodes bytes into ASCII characters stored in a byte array.
+     *
+     * @param src    the bytes to encode
+     * @param offset the offset of the first byte
+     * @param length the number of bytes to encode
+     * @param dst    the array receiving the characters
+     * @param dstOffset the offset of the first character written
+     * @return the number of characters written
+     */
+    public static int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int sp = offset;
+        int end = offset + length;
+        int dp = dstOffset;
+        if (VECTORIZED) {
+            int consumed = VectorBase64.encode(src, sp, end, dst, dp);
+            sp += consumed;
+            dp += consumed / 3 * 4;
+        }
+        while (sp + 3 <= end) {
+            int bits = (src[sp++] & 0xFF) << 16 | (src[sp++] & 0xFF) << 8 | (src[sp++] & 0xFF);
+            dst[dp++] = ALPHABET[bits >>> 18];
+            dst[dp++] = ALPHABET[(bits >>> 12) & 0x3F];
+            dst[dp++] = ALPHABET[(bits >>> 6) & 0x3F];
+            dst[dp++] = ALPHABET[bits & 0x3F];
+        }
+        if (sp < end) {
+            int bits = (src[sp++] & 0xFF) << 16;
+            boolean two = sp < end;
+            if (two) {
+                bits |= (src[sp] & 0xFF) << 8;
+            }
+            dst[dp++] = ALPHABET[bits >>> 18];
+            dst[dp++] = ALPHABET[(bits >>> 12) & 0x3F];
+            dst[dp++] = two ? ALPHABET[(bits >>> 6) & 0x3F] : (byte) PAD;
+            dst[dp++] = (byte) PAD;
+        }
+        return dp - dstOffset;
+    }
+
+    /**
+     * Encodes bytes into a char array.
+     *
+     * @param src    the bytes to encode
+     * @param offset the offset of the first byte
+     * @param length the number of bytes to encode
+     * @param dst    the array receiving the characters
+     * @param dstOffset the offset of the first character written
+     * @return the number of characters written
+     */
+    public static int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+        int sp = offset;
+        int end = offset + length;
+        int dp = dstOffset;
+        while (sp + 3 <= end) {
+            int bits = (src[sp++] & 0xFF) << 16 | (src[sp++] & 0xFF) << 8 | (src[sp++] & 0xFF);
+            dst[dp++] = (char) ALPHABET[bits >>> 18];
+            dst[dp++] = (char) ALPHABET[(bits >>> 12) & 0x3F];
+            dst[dp++] = (char) ALPHABET[(bits >>> 6) & 0x3F];
+            dst[dp++] = (char) ALPHABET[bits & 0x3F];
+        }
+        if (sp < end) {
+            int bits = (src[sp++] & 0xFF) << 16;
+            boolean two = sp < end;
+            if (two) {
+                bits |= (src[sp] & 0xFF) << 8;
+            }
+            dst[dp++] = (char) ALPHABET[bits >>> 18];
+            dst[dp++] = (char) ALPHABET[(bits >>> 12) & 0x3F];
+            dst[dp++] = two ? (char) ALPHABET[(bits >>> 6) & 0x3F] : (char) PAD;
+            dst[dp++] = (char) PAD;
+        }
+        return dp - dstOffset;
+    }
+
+    /**
+     * Encodes the remaining bytes of the source buffer into ASCII characters in the target buffer.
+     * Both positions are advanced.
+     *
+     * @param src the buffer holding the bytes to encode
+     * @param dst the buffer receiving the characters, with at least encodedLength bytes remaining
+     * @return the number of characters written
+     * @throws BufferOverflowException if the target buffer is too small
+     */
+    public static int encode(ByteBuffer src, ByteBuffer dst) {
+        int length = src.remaining();
+        int encodedLength = encodedLength(length);
+        if (dst.remaining() < encodedLength) {
+            throw new BufferOverflowException();
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            encode(src.array(), src.arrayOffset() + src.position(), length, dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.limit());
+            dst.position(dst.position() + encodedLength);
+            return encodedLength;
+        }
+        while (src.remaining() >= 3) {
+            int bits = (src.get() & 0xFF) << 16 | (src.get() & 0xFF) << 8 | (src.get() & 0xFF);
+            dst.put(ALPHABET[bits >>> 18]);
+            dst.put(ALPHABET[(bits >>> 12) & 0x3F]);
+            dst.put(ALPHABET[(bits >>> 6) & 0x3F]);
+            dst.put(ALPHABET[bits & 0x3F]);
+        }
+        if (src.hasRemaining()) {
+            int bits = (src.get() & 0xFF) << 16;
+            boolean two = src.hasRemaining();
+            if (two) {
+                bits |= (src.get() & 0xFF) << 8;
+            }
+            dst.put(ALPHABET[bits >>> 18]);
+            dst.put(ALPHABET[(bits >>> 12) & 0x3F]);
+            dst.put(two ? ALPHABET[(bits >>> 6) & 0x3F] : (byte) PAD);
+            dst.put((byte) PAD);
+        }
+        return encodedLength;
+    }
+
+    /**
+     * Decodes ASCII characters stored in a byte array. Bytes of the target array after the
+     * decoded ones, up to maxDecodedLength of the input, may be overwritten.
+     *
+     * @param src    the characters to decode
+     * @param offset the offset of the first character
+     * @param length the number of characters to decode
+     * @param dst    the array receiving the bytes
+     * @param dstOffset the offset of the first byte written
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int sp = offset;
+        int end = offset + length;
+        int dp = dstOffset;
+        if (VECTORIZED) {
+            int limit = (int) Math.min(dst.length, (long) dstOffset + maxDecodedLength(length));
+            int consumed = VectorBase64.decode(src, sp, end, dst, dp, limit);
+            sp += consumed;
+            dp += consumed / 4 * 3;
+        }
+        // Whole units of four alphabet characters, without padding or error checks per character
+        while (sp + 4 <= end) {
+            int bits = VALUES[src[sp] & 0x7F] << 18 | VALUES[src[sp + 1] & 0x7F] << 12
+                    | VALUES[src[sp + 2] & 0x7F] << 6 | VALUES[src[sp + 3] & 0x7F];
+            if (bits < 0 || (src[sp] | src[sp + 1] | src[sp + 2] | src[sp + 3]) < 0) {
+                break;
+            }
+            dst[dp++] = (byte) (bits >> 16);
+            dst[dp++] = (byte) (bits >> 8);
+            dst[dp++] = (byte) bits;
+            sp += 4;
+        }
+        int bits = 0;
+        int shift = 18;
+        while (sp < end) {
+            int c = src[sp++] & 0xFF;
+            int value = c < 128 ? VALUES[c] : -1;
+            if (value < 0) {
+                if (c == PAD) {
+                    if (shift == 6 && (sp == end || src[sp++] != PAD) || shift == 18) {
+                        throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+                    }
+                    break;
+                }
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(c, 16));
+            }
+            bits |= value << shift;
+            shift -= 6;
+            if (shift < 0) {
+                dst[dp++] = (byte) (bits >> 16);
+                dst[dp++] = (byte) (bits >> 8);
+                dst[dp++] = (byte) bits;
+                shift = 18;
+                bits = 0;
+            }
+        }
+        dp += finish(bits, shift, dst, dp);
+        if (sp < end) {
+            throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (sp - offset));
+        }
+        return dp - dstOffset;
+    }
+
+    /**
+     * Decodes the characters of a char sequence, such as a String.
+     *
+     * @param src       the characters to decode
+     * @param dst       the array receiving the bytes
+     * @param dstOffset the offset of the first byte written
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(CharSequence src, byte[] dst, int dstOffset) {
+        int length = src.length();
+        Scratch scratch = Scratch.get(length);
+        char[] chars = scratch.chars(length);
+        if (src instanceof String string) {
+            string.getChars(0, length, chars, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[i] = src.charAt(i);
+            }
+        }
+        byte[] ascii = VECTORIZED ? scratch.narrow(length) : null;
+        if (ascii == null) {
+            return decode(chars, 0, length, dst, dstOffset);
+        }
+        return decode(ascii, 0, length, dst, dstOffset);
+    }
+
+    /**
+     * Decodes the characters of a char array.
+     *
+     * @param src    the characters to decode
+     * @param offset the offset of the first character
+     * @param length the number of characters to decode
+     * @param dst    the array receiving the bytes
+     * @param dstOffset the offset of the first byte written
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(char[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int sp = offset;
+        int end = offset + length;
+        int dp = dstOffset;
+        // Whole units of four alphabet characters, without padding or error checks per character
+        while (sp + 4 <= end) {
+            int c0 = src[sp];
+            int c1 = src[sp + 1];
+            int c2 = src[sp + 2];
+            int c3 = src[sp + 3];
+            if ((c0 | c1 | c2 | c3) >= 128) {
+                break;
+            }
+            int bits = VALUES[c0] << 18 | VALUES[c1] << 12 | VALUES[c2] << 6 | VALUES[c3];
+            if (bits < 0) {
+                break;
+            }
+            dst[dp++] = (byte) (bits >> 16);
+            dst[dp++] = (byte) (bits >> 8);
+            dst[dp++] = (byte) bits;
+            sp += 4;
+        }
+        int bits = 0;
+        int shift = 18;
+        while (sp < end) {
+            int c = src[sp++];
+            int value = c < 128 ? VALUES[c] : -1;
+            if (value < 0) {
+                if (c == PAD) {
+                    if (shift == 6 && (sp == end || src[sp++] != PAD) || shift == 18) {
+                        throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+                    }
+                    break;
+                }
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(c, 16));
+            }
+            bits |= value << shift;
+            shift -= 6;
+            if (shift < 0) {
+                dst[dp++] = (byte) (bits >> 16);
+                dst[dp++] = (byte) (bits >> 8);
+                dst[dp++] = (byte) bits;
+                shift = 18;
+                bits = 0;
+            }
+        }
+        dp += finish(bits, shift, dst, dp);
+        if (sp < end) {
+            throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (sp - offset));
+        }
+        return dp - dstOffset;
+    }
+
+    /**
+     * Decodes the remaining ASCII characters of the source buffer into the target buffer.
+     * Both positions are advanced.
+     *
+     * @param src the buffer holding the characters to decode
+     * @param dst the buffer receiving the bytes
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     * @throws BufferOverflowException  if the target buffer is too small
+     */
+    public static int decode(ByteBuffer src, ByteBuffer dst) {
+        int length = src.remaining();
+        if (src.hasArray() && dst.hasArray()) {
+            if (dst.remaining() < maxDecodedLength(length)) {
+                throw new BufferOverflowException();
+            }
+            int written = decode(src.array(), src.arrayOffset() + src.position(), length,
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.limit());
+            dst.position(dst.position() + written);
+            return written;
+        }
+        int start = dst.position();
+        int bits = 0;
+        int shift = 18;
+        while (src.hasRemaining()) {
+            int c = src.get() & 0xFF;
+            int value = c < 128 ? VALUES[c] : -1;
+            if (value < 0) {
+                if (c == PAD) {
+                    if (shift == 6 && (!src.hasRemaining() || src.get() != PAD) || shift == 18) {
+                        throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+                    }
+                    break;
+                }
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(c, 16));
+            }
+            bits |= value << shift;
+            shift -= 6;
+            if (shift < 0) {
+                dst.put((byte) (bits >> 16));
+                dst.put((byte) (bits >> 8));
+                dst.put((byte) bits);
+                shift = 18;
+                bits = 0;
+            }
+        }
+        if (shift == 6) {
+            dst.put((byte) (bits >> 16));
+        } else if (shift == 0) {
+            dst.put((byte) (bits >> 16));
+            dst.put((byte) (bits >> 8));
+        } else if (shift == 12) {
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        }
+        if (src.hasRemaining()) {
+            throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (length - src.remaining()));
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Encodes bytes into a String, using a per-thread scratch array so the only allocation is the String itself.
+     *
+     * @param src    the bytes to encode
+     * @param offset the offset of the first byte
+     * @param length the number of bytes to encode
+     * @return the encoded String
+     */
+    public static String encodeToString(byte[] src, int offset, int length) {
+        int size = encodedLength(length);
+        byte[] chars = Scratch.get(size).bytes(size);
+        int written = encode(src, offset, length, chars, 0);
+        return new String(chars, 0, written, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean vectorAvailable() {
+        if (!Boolean.parseBoolean(System.getProperty("Crypt.base64.vector", "true"))) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            byte[] probe = new byte[64];
+            VectorBase64.encode(probe, 0, probe.length, new byte[128], 0);
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the bytes of a final unit cut short by padding or by the end of the input.
+     *
+     * @return the number of bytes written
+     */
+    private static int finish(int bits, int shift, byte[] dst, int dp) {
+        if (shift == 6) {
+            dst[dp] = (byte) (bits >> 16);
+            return 1;
+        } else if (shift == 0) {
+            dst[dp] = (byte) (bits >> 16);
+            dst[dp + 1] = (byte) (bits >> 8);
+            return 2;
+        } else if (shift == 12) {
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        }
+        return 0;
+    }
+
+    /**
+     * Per-thread growable scratch arrays used by encodeToString and the char sequence decoder.
+     * They grow up to MAX_LENGTH elements; larger inputs get a Scratch of their own that is not
+     * kept, so one large message does not pin its size on the thread.
+     */
+    private static final class Scratch {
+
+        // Largest number of elements the per-thread arrays grow to
+        private static final int MAX_LENGTH = 64 * 1024;
+
+        private static final ThreadLocal<Scratch> current = ThreadLocal.withInitial(Scratch::new);
+
+        private final CharsetEncoder ascii = StandardCharsets.US_ASCII.newEncoder();
+        private byte[] bytes = new byte[256];
+        private char[] chars = new char[256];
+        private ByteBuffer byteView = ByteBuffer.wrap(bytes);
+        private CharBuffer charView = CharBuffer.wrap(chars);
+
+        static Scratch get(int size) {
+            return size > MAX_LENGTH ? new Scratch() : current.get();
+        }
+
+        byte[] bytes(int size) {
+            if (bytes.length < size) {
+                bytes = new byte[Math.max(size, Math.min(bytes.length * 2, MAX_LENGTH))];
+                byteView = ByteBuffer.wrap(bytes);
+            }
+            return bytes;
+        }
+
+        char[] chars(int size) {
+            if (chars.length < size) {
+                chars = new char[Math.max(size, Math.min(chars.length * 2, MAX_LENGTH))];
+                charView = CharBuffer.wrap(chars);
+            }
+            return chars;
+        }
+
+        /**
+         * Narrows the first characters of the char array into the byte array, so that the
+         * vector kernels can decode them.
+         *
+         * @return the byte array, or null if a character is not ASCII
+         */
+        byte[] narrow(int length) {
+            bytes(length);
+            charView.clear().limit(length);
+            byteView.clear();
+            ascii.reset();
+            return ascii.encode(charView, byteView, true).isError() ? null : bytes;
+        }
+    }
+}
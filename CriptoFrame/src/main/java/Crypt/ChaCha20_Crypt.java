@@ -0,0 +1,76 @@
+package Crypt;
+
+import javax.crypto.spec.IvParameterSpec;
+import java.security.Provider;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * ChaCha20_Crypt class provides authenticated encryption using ChaCha20-Poly1305.
+ *
+ * ChaCha20 runs in constant time without hardware support, which makes it the faster
+ * authenticated engine on CPUs without AES instructions. Keys must be 32 bytes long.
+ */
+public class ChaCha20_Crypt extends AEAD_Crypt {
+
+    // Transformation of the underlying cipher
+    private static final String TRANSFORMATION = "ChaCha20-Poly1305";
+
+    /**
+     * Constructs a ChaCha20_Crypt object using the default provider.
+     *
+     * @param key the 32-byte key used for encryption and decryption
+     */
+    public ChaCha20_Crypt(byte[] key) {
+        this(key, null);
+    }
+
+    /**
+     * Constructs a ChaCha20_Crypt object using the given provider.
+     *
+     * @param key      the 32-byte key used for encryption and decryption
+     * @param provider the provider of the underlying cipher, or null for the default provider
+     * @throws IllegalArgumentException if the key is not 32 bytes long
+     */
+    public ChaCha20_Crypt(byte[] key, Provider provider) {
+        super(checkKey(key), "ChaCha20", TRANSFORMATION, provider);
+    }
+
+    /**
+     * Constructs a ChaCha20_Crypt object with a key stored in a KeyVault.
+     *
+     * @param keyHandle the handle of the 32-byte key used for encryption and decryption
+     * @param provider  the provider of the underlying cipher, or null for the default provider
+     * @throws IllegalArgumentException if the key is not 32 bytes long
+     */
+    public ChaCha20_Crypt(KeyHandle keyHandle, Provider provider) {
+        super(checkKey(keyHandle), "ChaCha20", TRANSFORMATION, provider);
+    }
+
+    @Override
+    AlgorithmParameterSpec parameters(byte[] nonce) {
+        return new IvParameterSpec(nonce);
+    }
+
+    /**
+     * Gets the transformation implemented by this engine, used to look up providers.
+     *
+     * @return the transformation name
+     */
+    static String transformation() {
+        return TRANSFORMATION;
+    }
+
+    private static byte[] checkKey(byte[] key) {
+        if (key == null || key.length != 32) {
+            throw new IllegalArgumentException("ChaCha20 requires a 32-byte key");
+        }
+        return key;
+    }
+
+    private static KeyHandle checkKey(KeyHandle keyHandle) {
+        if (keyHandle == null || keyHandle.length() != 32) {
+            throw new IllegalArgumentException("ChaCha20 requires a 32-byte key");
+        }
+        return keyHandle;
+    }
+}
@@ -0,0 +1,248 @@
+package Crypt;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * CipherCrypt class is the base of the encryption algorithms backed by a javax.crypto Cipher.
+ *
+ * It keeps the key, either as an array or as a KeyHandle into a KeyVault, implements the String methods of the Encrypt interface on top of the
+ * buffer methods, and provides the hooks StreamCrypt uses to process data of any size.
+ * Subclasses live in this package and implement the byte array and buffer methods.
+ *
+ * The String methods run the cipher and Base64Codec through per-thread scratch arrays, so the
+ * only arrays allocated per call are the UTF-8 bytes of the input and the resulting String.
+ * The scratch arrays grow up to 64 KB; larger messages get arrays of their own, so one large
+ * message does not pin its size on every thread that ever handled one.
+ */
+public abstract class CipherCrypt implements Encrypt {
+
+    // Size of the chunks copied through the scratch arrays when a buffer has no backing array
+    private static final int CHUNK_SIZE = 8192;
+
+    // Extra room in the output scratch array for a final padding block or authentication tag
+    private static final int TAIL_SIZE = 64;
+
+    // Per-thread scratch arrays for direct buffers: [0] holds input, [1] holds output
+    private static final ThreadLocal<byte[][]> scratch =
+            ThreadLocal.withInitial(() -> new byte[][]{new byte[CHUNK_SIZE], new byte[CHUNK_SIZE + TAIL_SIZE]});
+
+    // Largest size the per-thread arrays of the String methods grow to
+    private static final int MAX_TEXT_SCRATCH_SIZE = 64 * 1024;
+
+    // Per-thread growable arrays of the String methods: [0] holds ciphertext, [1] holds plaintext
+    private static final ThreadLocal<byte[][]> textScratch =
+            ThreadLocal.withInitial(() -> new byte[][]{new byte[256], new byte[256]});
+
+    // Secret key used for encryption and decryption, or null when the key is in a vault
+    private final byte[] key;
+
+    // Handle of the key in a vault, or null when the key is an array
+    private final KeyHandle keyHandle;
+
+    /**
+     * Constructs a CipherCrypt object with the specified key.
+     *
+     * @param key the key used for encryption and decryption
+     */
+    CipherCrypt(byte[] key) {
+        this.key = key;
+        this.keyHandle = null;
+    }
+
+    /**
+     * Constructs a CipherCrypt object with a key stored in a vault.
+     *
+     * @param keyHandle the handle of the key used for encryption and decryption
+     */
+    CipherCrypt(KeyHandle keyHandle) {
+        this.key = null;
+        this.keyHandle = keyHandle;
+    }
+
+    /**
+     * Encrypts the given data and encodes the result as Base64.
+     *
+     * @param data the data to be encrypted
+     * @return the encrypted data as a Base64-encoded string
+     * @throws RuntimeException if an error occurs during encryption
+     */
+    @Override
+    public String encrypt(String data) {
+        byte[] plain = data.getBytes(StandardCharsets.UTF_8);
+        byte[] cipherText = textArray(0, getOutputSize(plain.length));
+        int written = encrypt(ByteBuffer.wrap(plain), ByteBuffer.wrap(cipherText));
+        return Base64Codec.encodeToString(cipherText, 0, written);
+    }
+
+    /**
+     * Decodes the given Base64 data and decrypts it.
+     *
+     * @param data the data to be decrypted
+     * @return the decrypted data as a string
+     * @throws RuntimeException if an error occurs during decryption
+     */
+    @Override
+    public String decrypt(String data) {
+        byte[] cipherText = textArray(0, Base64Codec.maxDecodedLength(data.length()));
+        int length = Base64Codec.decode(data, cipherText, 0);
+        byte[] plain = textArray(1, length);
+        int written = decrypt(ByteBuffer.wrap(cipherText, 0, length), ByteBuffer.wrap(plain));
+        try {
+            return new String(plain, 0, written, StandardCharsets.UTF_8);
+        } finally {
+            Arrays.fill(plain, 0, written, (byte) 0);
+        }
+    }
+
+    /**
+     * Gets the key used for encryption and decryption. A key held in a vault is copied out,
+     * and the caller should zero the copy once it is no longer needed.
+     *
+     * @return the key as a byte array
+     */
+    public byte[] getKey() {
+        return keyHandle == null ? key : keyHandle.vault().copy(keyHandle);
+    }
+
+    /**
+     * Gets the handle of the key in its vault.
+     *
+     * @return the key handle, or null if the key was given as an array
+     */
+    public KeyHandle getKeyHandle() {
+        return keyHandle;
+    }
+
+    /**
+     * Gets the length of the key without copying it.
+     *
+     * @return the key length in bytes, or 0 if there is no key
+     */
+    int keyLength() {
+        if (keyHandle != null) {
+            return keyHandle.length();
+        }
+        return key == null ? 0 : key.length;
+    }
+
+    /**
+     * Builds the SecretKey used to initialize ciphers. Keys held in a vault are read through a
+     * view, so no copy of the key outlives the cipher initialization.
+     *
+     * @param algorithm the algorithm name of the key
+     * @return the secret key
+     */
+    SecretKey secretKey(String algorithm) {
+        return keyHandle == null ? new SecretKeySpec(key, algorithm) : keyHandle.vault().secretKey(keyHandle, algorithm);
+    }
+
+    /**
+     * Gets the length of the header written before streamed ciphertext, such as an IV.
+     *
+     * @return the header length in bytes
+     */
+    abstract int headerLength();
+
+    /**
+     * Creates a dedicated cipher for a streaming operation.
+     *
+     * @param mode   the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header the stream header, filled in when encrypting and read when decrypting
+     * @return the initialized cipher
+     */
+    abstract Cipher streamCipher(int mode, byte[] header);
+
+    /**
+     * Gets the length of the authentication tag sealing each segment of streamed ciphertext,
+     * or 0 if a stream is encrypted as a single cipher operation.
+     *
+     * @return the tag length in bytes
+     */
+    int segmentTagLength() {
+        return 0;
+    }
+
+    /**
+     * Initializes the stream cipher for one segment of streamed ciphertext. Only called when
+     * segmentTagLength is positive.
+     *
+     * @param cipher  the cipher created by streamCipher
+     * @param mode    the cipher mode (Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE)
+     * @param header  the stream header
+     * @param segment the number of the segment, from 0
+     * @param last    true for the last segment of the stream
+     */
+    void initSegment(Cipher cipher, int mode, byte[] header, long segment, boolean last) {
+        throw new UnsupportedOperationException("Streams of this algorithm are not segmented");
+    }
+
+    /**
+     * Gets one of the per-thread arrays of the String methods, growing it to the given size.
+     * Sizes above MAX_TEXT_SCRATCH_SIZE get a new array that is not kept.
+     *
+     * @param index the index of the array (0 for ciphertext, 1 for plaintext)
+     * @param size  the minimum size of the array
+     * @return the array, at least size bytes long
+     */
+    private static byte[] textArray(int index, int size) {
+        if (size > MAX_TEXT_SCRATCH_SIZE) {
+            return new byte[size];
+        }
+        byte[][] arrays = textScratch.get();
+        if (arrays[index].length < size) {
+            arrays[index] = new byte[Math.max(size, Math.min(arrays[index].length * 2, MAX_TEXT_SCRATCH_SIZE))];
+        }
+        return arrays[index];
+    }
+
+    /**
+     * Runs the cipher over the remaining bytes of the input buffer. Array-backed buffers are
+     * processed in place; other buffers are copied in chunks through the per-thread scratch
+     * arrays, so no temporary arrays are allocated for direct buffers. Authenticated decryption
+     * holds back the plaintext until the tag is checked and releases all of it at the end, so
+     * a final output larger than the scratch array is written to the output buffer directly.
+     *
+     * @param cipher the initialized cipher
+     * @param input  the buffer holding the input data
+     * @param output the buffer receiving the output data
+     * @return the number of bytes written to the output buffer
+     * @throws GeneralSecurityException if the cipher fails or the output buffer is too small
+     */
+    static int doFinal(Cipher cipher, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        if (output.remaining() < cipher.getOutputSize(input.remaining())) {
+            throw new ShortBufferException("Output buffer too small");
+        }
+        if (input.hasArray() && output.hasArray()) {
+            int written = cipher.doFinal(input.array(), input.arrayOffset() + input.position(), input.remaining(),
+                    output.array(), output.arrayOffset() + output.position());
+            input.position(input.limit());
+            output.position(output.position() + written);
+            return written;
+        }
+        byte[][] buffers = scratch.get();
+        byte[] in = buffers[0];
+        byte[] out = buffers[1];
+        int written = 0;
+        while (input.remaining() > CHUNK_SIZE) {
+            input.get(in, 0, CHUNK_SIZE);
+            int count = cipher.update(in, 0, CHUNK_SIZE, out, 0);
+            output.put(out, 0, count);
+            written += count;
+        }
+        int length = input.remaining();
+        input.get(in, 0, length);
+        if (cipher.getOutputSize(length) > out.length) {
+            return written + cipher.doFinal(ByteBuffer.wrap(in, 0, length), output);
+        }
+        int count = cipher.doFinal(in, 0, length, out, 0);
+        output.put(out, 0, count);
+        return written + count;
+    }
+}
@@ -0,0 +1,121 @@
+package Crypt;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * CryptRegistry class maps encryption type names to the algorithms implementing them.
+ *
+ * EncryptService resolves the type it is given through this registry, so new algorithms
+ * become available to every caller once they are registered. Names are case-insensitive.
+ * The built-in types are AES, AES-CTR, AES-GCM, CHACHA20-POLY1305 and AUTO.
+ */
+public final class CryptRegistry {
+
+    // Factories of the registered algorithms, keyed by upper-case type name
+    private static final Map<String, Function<byte[], Encrypt>> factories = new ConcurrentHashMap<>();
+
+    // Factories of the algorithms that read their key from a KeyVault, keyed by upper-case type name
+    private static final Map<String, Function<KeyHandle, Encrypt>> handleFactories = new ConcurrentHashMap<>();
+
+    static {
+        register("AES", AES_Crypt::new, AES_Crypt::new);
+        register("AES-CTR", AES_CTR_Crypt::new, AES_CTR_Crypt::new);
+        register("AES-GCM", AES_GCM_Crypt::new, handle -> new AES_GCM_Crypt(handle, null));
+        register("CHACHA20-POLY1305", ChaCha20_Crypt::new, handle -> new ChaCha20_Crypt(handle, null));
+        register("AUTO", AutoCrypt::new, AutoCrypt::new);
+    }
+
+    // Private constructor to prevent instantiation
+    private CryptRegistry() {
+    }
+
+    /**
+     * Registers an algorithm under the given type name, replacing any previous registration.
+     *
+     * @param encryptionType the type name
+     * @param factory        the factory creating the algorithm from a key
+     */
+    public static void register(String encryptionType, Function<byte[], Encrypt> factory) {
+        String name = normalize(encryptionType);
+        factories.put(name, factory);
+        handleFactories.remove(name);
+    }
+
+    /**
+     * Registers an algorithm that can also read its key from a KeyVault, replacing any previous
+     * registration.
+     *
+     * @param encryptionType the type name
+     * @param factory        the factory creating the algorithm from a key
+     * @param handleFactory  the factory creating the algorithm from a key handle
+     */
+    public static void register(String encryptionType, Function<byte[], Encrypt> factory,
+                                Function<KeyHandle, Encrypt> handleFactory) {
+        String name = normalize(encryptionType);
+        factories.put(name, factory);
+        handleFactories.put(name, handleFactory);
+    }
+
+    /**
+     * Creates the algorithm registered under the given type name.
+     *
+     * @param encryptionType the type name
+     * @param key            the key used for encryption and decryption
+     * @return the algorithm initialized with the key
+     * @throws IllegalArgumentException if no algorithm is registered under the name
+     */
+    public static Encrypt resolve(String encryptionType, byte[] key) {
+        Function<byte[], Encrypt> factory = encryptionType == null ? null : factories.get(normalize(encryptionType));
+        if (factory == null) {
+            throw new IllegalArgumentException("Invalid encryption type: " + encryptionType);
+        }
+        return factory.apply(key);
+    }
+
+    /**
+     * Creates the algorithm registered under the given type name with a key stored in a KeyVault.
+     * Algorithms registered without a handle factory receive a copy of the key instead.
+     *
+     * @param encryptionType the type name
+     * @param keyHandle      the handle of the key used for encryption and decryption
+     * @return the algorithm initialized with the key
+     * @throws IllegalArgumentException if no algorithm is registered under the name
+     */
+    public static Encrypt resolve(String encryptionType, KeyHandle keyHandle) {
+        if (encryptionType != null) {
+            Function<KeyHandle, Encrypt> handleFactory = handleFactories.get(normalize(encryptionType));
+            if (handleFactory != null) {
+                return handleFactory.apply(keyHandle);
+            }
+        }
+        return resolve(encryptionType, keyHandle.vault().copy(keyHandle));
+    }
+
+    /**
+     * Checks if an algorithm is registered under the given type name.
+     *
+     * @param encryptionType the type name
+     * @return true if the type is registered, false otherwise
+     */
+    public static boolean isRegistered(String encryptionType) {
+        return encryptionType != null && factories.containsKey(normalize(encryptionType));
+    }
+
+    /**
+     * Gets the names of every registered type.
+     *
+     * @return the registered type names, sorted
+     */
+    public static Set<String> getEncryptionTypes() {
+        return new TreeSet<>(factories.keySet());
+    }
+
+    static String normalize(String encryptionType) {
+        return encryptionType.toUpperCase(Locale.ROOT);
+    }
+}
@@ -1,5 +1,7 @@
 package Crypt;
 
+import java.nio.ByteBuffer;
+
 /**
  * The Encrypt interface defines methods for encrypting and decrypting data.
  * Classes implementing this interface should provide implementations for both
@@ -22,4 +24,53 @@ public interface Encrypt {
      * @return the decrypted data
      */
     String decrypt(String data);
+
+    /**
+     * Encrypts the given bytes.
+     *
+     * @param data the data to be encrypted
+     * @return the encrypted bytes
+     */
+    byte[] encrypt(byte[] data);
+
+    /**
+     * Decrypts the given bytes.
+     *
+     * @param data the data to be decrypted
+     * @return the decrypted bytes
+     */
+    byte[] decrypt(byte[] data);
+
+    /**
+     * Encrypts the remaining bytes of the input buffer into the output buffer.
+     * Both buffers may be heap or direct buffers; their positions are advanced
+     * by the number of bytes read and written.
+     *
+     * @param input  the buffer holding the data to be encrypted
+     * @param output the buffer receiving the encrypted data, with at least
+     *               {@link #getOutputSize(int)} bytes remaining
+     * @return the number of bytes written to the output buffer
+     */
+    int encrypt(ByteBuffer input, ByteBuffer output);
+
+    /**
+     * Decrypts the remaining bytes of the input buffer into the output buffer.
+     * Both buffers may be heap or direct buffers; their positions are advanced
+     * by the number of bytes read and written.
+     *
+     * @param input  the buffer holding the data to be decrypted
+     * @param output the buffer receiving the decrypted data, with at least
+     *               {@link #getOutputSize(int)} bytes remaining
+     * @return the number of bytes written to the output buffer
+     */
+    int decrypt(ByteBuffer input, ByteBuffer output);
+
+    /**
+     * Gets the maximum number of bytes an encrypt or decrypt call can produce
+     * for an input of the given length.
+     *
+     * @param inputLength the length of the input in bytes
+     * @return the size the output buffer must have available
+     */
+    int getOutputSize(int inputLength);
 }
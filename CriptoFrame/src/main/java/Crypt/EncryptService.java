@@ -1,14 +1,25 @@
 package Crypt;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
 /**
  * EncryptService class provides a service for encrypting and decrypting data using different encryption algorithms.
  *
  * This class implements the Encrypt interface, allowing clients to use the encrypt and decrypt methods
- * without being aware of the specific encryption algorithm being used. The available encryption algorithms
- * are AES and RSA.
+ * without being aware of the specific encryption algorithm being used. The algorithm is resolved by name
+ * through CryptRegistry: AES, AES-CTR (counter mode, encrypts large payloads in parallel), the authenticated
+ * AES-GCM and CHACHA20-POLY1305, and AUTO, which picks the fastest authenticated engine for the host.
  */
 public class EncryptService implements Encrypt {
 
+    // Batches smaller than this are processed on the caller's thread
+    private static final int PARALLEL_THRESHOLD = 64;
+
     // Instance of the selected encryption algorithm
     private final Encrypt crypto;
 
@@ -16,16 +27,24 @@ public class EncryptService implements Encrypt {
      * Private constructor for EncryptService.
      * Initializes the EncryptService with the specified encryption algorithm.
      *
-     * @param encryptionType the type of encryption algorithm to use (AES)
+     * @param encryptionType the type of encryption algorithm to use, as registered in CryptRegistry
      * @param key            the key to be used for encryption and decryption
      * @throws IllegalArgumentException if an invalid encryption type is provided
      */
     public EncryptService(String encryptionType, byte[] key) {
-        if ("AES".equalsIgnoreCase(encryptionType)) {
-            this.crypto = new AES_Crypt(key);
-        } else {
-            throw new IllegalArgumentException("Invalid encryption type: " + encryptionType);
-        }
+        this.crypto = CryptRegistry.resolve(encryptionType, key);
+    }
+
+    /**
+     * Initializes the EncryptService with the specified encryption algorithm and a key stored
+     * in a KeyVault, so the service holds no heap copy of the key.
+     *
+     * @param encryptionType the type of encryption algorithm to use, as registered in CryptRegistry
+     * @param keyHandle      the handle of the key to be used for encryption and decryption
+     * @throws IllegalArgumentException if an invalid encryption type is provided
+     */
+    public EncryptService(String encryptionType, KeyHandle keyHandle) {
+        this.crypto = CryptRegistry.resolve(encryptionType, keyHandle);
     }
 
     /**
@@ -50,6 +69,137 @@ public class EncryptService implements Encrypt {
         return crypto.decrypt(data);
     }
 
+    /**
+     * Encrypts every value of the given array using the selected encryption algorithm.
+     * Large batches are spread across the common fork-join pool; each worker reuses its own
+     * cached cipher state.
+     *
+     * @param data the values to be encrypted
+     * @return the encrypted values, in the same order as the input
+     */
+    public String[] encryptAll(String[] data) {
+        return processAll(data, crypto::encrypt);
+    }
+
+    /**
+     * Encrypts every value of the given collection using the selected encryption algorithm.
+     *
+     * @param data the values to be encrypted
+     * @return the encrypted values, in the iteration order of the input
+     */
+    public List<String> encryptAll(Collection<String> data) {
+        return Arrays.asList(encryptAll(data.toArray(new String[0])));
+    }
+
+    /**
+     * Decrypts every value of the given array using the selected encryption algorithm.
+     * Large batches are spread across the common fork-join pool; each worker reuses its own
+     * cached cipher state.
+     *
+     * @param data the values to be decrypted
+     * @return the decrypted values, in the same order as the input
+     */
+    public String[] decryptAll(String[] data) {
+        return processAll(data, crypto::decrypt);
+    }
+
+    /**
+     * Decrypts every value of the given collection using the selected encryption algorithm.
+     *
+     * @param data the values to be decrypted
+     * @return the decrypted values, in the iteration order of the input
+     */
+    public List<String> decryptAll(Collection<String> data) {
+        return Arrays.asList(decryptAll(data.toArray(new String[0])));
+    }
+
+    /**
+     * Encrypts the given bytes using the selected encryption algorithm.
+     *
+     * @param data the data to be encrypted
+     * @return the encrypted bytes
+     */
+    @Override
+    public byte[] encrypt(byte[] data) {
+        return crypto.encrypt(data);
+    }
+
+    /**
+     * Decrypts the given bytes using the selected encryption algorithm.
+     *
+     * @param data the data to be decrypted
+     * @return the decrypted bytes
+     */
+    @Override
+    public byte[] decrypt(byte[] data) {
+        return crypto.decrypt(data);
+    }
+
+    /**
+     * Encrypts the remaining bytes of the input buffer into the output buffer
+     * using the selected encryption algorithm.
+     *
+     * @param input  the buffer holding the data to be encrypted
+     * @param output the buffer receiving the encrypted data
+     * @return the number of bytes written to the output buffer
+     */
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        return crypto.encrypt(input, output);
+    }
+
+    /**
+     * Decrypts the remaining bytes of the input buffer into the output buffer
+     * using the selected encryption algorithm.
+     *
+     * @param input  the buffer holding the data to be decrypted
+     * @param output the buffer receiving the decrypted data
+     * @return the number of bytes written to the output buffer
+     */
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        return crypto.decrypt(input, output);
+    }
+
+    /**
+     * Gets the maximum output size of the selected encryption algorithm for an input of the given length.
+     *
+     * @param inputLength the length of the input in bytes
+     * @return the size the output buffer must have available
+     */
+    @Override
+    public int getOutputSize(int inputLength) {
+        return crypto.getOutputSize(inputLength);
+    }
+
+    /**
+     * Applies the operation to every value, writing each result at the index of its input.
+     */
+    private static String[] processAll(String[] data, UnaryOperator<String> operation) {
+        String[] results = new String[data.length];
+        IntStream indexes = IntStream.range(0, data.length);
+        if (data.length >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> results[i] = operation.apply(data[i]));
+        return results;
+    }
+
+    /**
+     * Gets a streaming engine that encrypts and decrypts streams, channels and files
+     * of any size with the selected encryption algorithm.
+     *
+     * @return the streaming engine
+     * @throws IllegalStateException if the selected algorithm does not support streaming
+     */
+    public StreamCrypt getStreamCrypt() {
+        if (crypto instanceof CipherCrypt) {
+            return new StreamCrypt((CipherCrypt) crypto);
+        } else {
+            throw new IllegalStateException("Streaming not supported by " + getEncryptionType());
+        }
+    }
+
     /**
      * Gets the name of the selected encryption algorithm.
      *
@@ -65,8 +215,8 @@ public class EncryptService implements Encrypt {
      * @return the key as a byte array
      */
     public byte[] getKey() {
-        if (crypto instanceof AES_Crypt) {
-            return ((AES_Crypt) crypto).getKey();
+        if (crypto instanceof CipherCrypt) {
+            return ((CipherCrypt) crypto).getKey();
         } else {
             throw new IllegalStateException("Invalid encryption algorithm");
         }
@@ -0,0 +1,260 @@
+package Crypt;
+
+import java.lang.ref.Cleaner;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EncryptServiceFactory class hands out shared EncryptService instances, cached by encryption
+ * type and key.
+ *
+ * Building an EncryptService resolves the algorithm and expands the key, so callers that encrypt
+ * with the same user key over and over should get their services from here instead of
+ * constructing them. EncryptService is thread-safe, so one instance serves every caller.
+ *
+ * The cache holds at most maxSize services and evicts the least recently used one when it is
+ * full. Entries are keyed by the upper-case type name and a SHA-256 digest of the key, so the
+ * map never compares raw key bytes. When a user's key changes, the old key must be invalidated
+ * so its services do not keep the key material alive until they are evicted.
+ *
+ * Services are built on a copy of the key stored in the shared KeyVault, so the cache holds no
+ * key arrays; the copy is released once the service is evicted and no caller uses it anymore.
+ * Keys longer than the vault's slots are kept as arrays.
+ */
+public final class EncryptServiceFactory {
+
+    // Number of services kept by the shared instance, overridable with -DCrypt.serviceCache.size
+    private static final int DEFAULT_MAX_SIZE = Integer.getInteger("Crypt.serviceCache.size", 1024);
+
+    // Releases the vault keys of services that are no longer reachable
+    private static final Cleaner cleaner = Cleaner.create();
+
+    // Per-thread digest used to derive cache keys
+    private static final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(EncryptServiceFactory::newDigest);
+
+    // Maximum number of cached services
+    private final int maxSize;
+
+    // Cached services in access order, guarded by this map's monitor
+    private final LinkedHashMap<CacheKey, EncryptService> services;
+
+    // Number of lookups served from the cache
+    private final LongAdder hits = new LongAdder();
+
+    // Number of lookups that had to build a service
+    private final LongAdder misses = new LongAdder();
+
+    // Number of services evicted to respect the size bound
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an EncryptServiceFactory keeping at most the given number of services.
+     *
+     * @param maxSize the maximum number of cached services
+     * @throws IllegalArgumentException if maxSize is not positive
+     */
+    public EncryptServiceFactory(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.services = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, EncryptService> eldest) {
+                if (size() > EncryptServiceFactory.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the shared factory used by the DAOs.
+     *
+     * @return the shared EncryptServiceFactory
+     */
+    public static EncryptServiceFactory getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Gets the service for the given encryption type and key, building it on first use.
+     * The service is built outside the lock, so a slow algorithm such as AUTO does not block
+     * lookups of other keys; if two threads miss at once, the first one stored wins.
+     *
+     * @param encryptionType the type of encryption algorithm, as registered in CryptRegistry
+     * @param key            the key used for encryption and decryption
+     * @return the cached or newly built service
+     * @throws IllegalArgumentException if an invalid encryption type is provided
+     */
+    public EncryptService get(String encryptionType, byte[] key) {
+        if (encryptionType == null) {
+            throw new IllegalArgumentException("Invalid encryption type: null");
+        }
+        CacheKey cacheKey = new CacheKey(CryptRegistry.normalize(encryptionType), hash(key));
+        EncryptService service;
+        synchronized (services) {
+            service = services.get(cacheKey);
+        }
+        if (service != null) {
+            hits.increment();
+            return service;
+        }
+        misses.increment();
+        EncryptService created = create(encryptionType, key);
+        synchronized (services) {
+            service = services.putIfAbsent(cacheKey, created);
+        }
+        return service != null ? service : created;
+    }
+
+    /**
+     * Removes every cached service built with the given key, whatever its encryption type.
+     *
+     * @param key the key that is no longer in use
+     */
+    public void invalidate(byte[] key) {
+        byte[] keyHash = hash(key);
+        synchronized (services) {
+            services.keySet().removeIf(cacheKey -> Arrays.equals(cacheKey.keyHash, keyHash));
+        }
+    }
+
+    /**
+     * Removes the cached service built with the given encryption type and key.
+     *
+     * @param encryptionType the type of encryption algorithm
+     * @param key            the key that is no longer in use
+     */
+    public void invalidate(String encryptionType, byte[] key) {
+        CacheKey cacheKey = new CacheKey(CryptRegistry.normalize(encryptionType), hash(key));
+        synchronized (services) {
+            services.remove(cacheKey);
+        }
+    }
+
+    /**
+     * Removes every cached service, for example after CryptRegistry replaces an algorithm.
+     */
+    public void invalidateAll() {
+        synchronized (services) {
+            services.clear();
+        }
+    }
+
+    /**
+     * Gets the number of cached services.
+     *
+     * @return the cache size
+     */
+    public int size() {
+        synchronized (services) {
+            return services.size();
+        }
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that built a new service.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of services evicted because the cache was full.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Builds a service on a copy of the key stored in the shared KeyVault, released once the
+     * service is unreachable.
+     */
+    private static EncryptService create(String encryptionType, byte[] key) {
+        if (key == null || key.length == 0 || key.length > KeyVault.MAX_KEY_LENGTH) {
+            return new EncryptService(encryptionType, key);
+        }
+        KeyVault vault = KeyVault.getInstance();
+        KeyHandle handle = vault.store(key.clone());
+        EncryptService service;
+        try {
+            service = new EncryptService(encryptionType, handle);
+        } catch (RuntimeException e) {
+            vault.release(handle);
+            throw e;
+        }
+        cleaner.register(service, () -> vault.release(handle));
+        return service;
+    }
+
+    private static byte[] hash(byte[] key) {
+        return digest.get().digest(key);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error initializing digest", e);
+        }
+    }
+
+    /**
+     * Cache key made of the normalized type name and the digest of the key.
+     */
+    private static final class CacheKey {
+
+        private final String encryptionType;
+        private final byte[] keyHash;
+        private final int hashCode;
+
+        CacheKey(String encryptionType, byte[] keyHash) {
+            this.encryptionType = encryptionType;
+            this.keyHash = keyHash;
+            this.hashCode = 31 * encryptionType.hashCode() + Arrays.hashCode(keyHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey other)) {
+                return false;
+            }
+            return encryptionType.equals(other.encryptionType) && Arrays.equals(keyHash, other.keyHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static final class Holder {
+        private static final EncryptServiceFactory INSTANCE = new EncryptServiceFactory(DEFAULT_MAX_SIZE);
+    }
+}
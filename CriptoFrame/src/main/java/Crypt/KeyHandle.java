@@ -0,0 +1,69 @@
+package Crypt;
+
+/**
+ * KeyHandle class is an opaque reference to a key stored in a KeyVault.
+ *
+ * A handle only records where its key lives, so holding one keeps no key bytes on the heap;
+ * the ciphers initialized from it do keep key material, as described in KeyVault. Handles are
+ * invalidated when the key is released, and a released handle cannot reach a key stored later
+ * in the same slot.
+ */
+public final class KeyHandle {
+
+    // Vault holding the key
+    private final KeyVault vault;
+
+    // Slot of the key in the vault
+    private final int slot;
+
+    // Generation of the slot when the key was stored
+    private final int generation;
+
+    // Length of the key in bytes
+    private final int length;
+
+    /**
+     * Constructs a KeyHandle for a key stored by the vault.
+     */
+    KeyHandle(KeyVault vault, int slot, int generation, int length) {
+        this.vault = vault;
+        this.slot = slot;
+        this.generation = generation;
+        this.length = length;
+    }
+
+    /**
+     * Gets the length of the key.
+     *
+     * @return the key length in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Checks if the key is still stored in the vault.
+     *
+     * @return true if the key has not been released
+     */
+    public boolean isLive() {
+        return vault.isLive(this);
+    }
+
+    KeyVault vault() {
+        return vault;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyHandle{slot=" + slot + ", length=" + length + "}";
+    }
+}
@@ -0,0 +1,286 @@
+package Crypt;
+
+import javax.crypto.SecretKey;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * KeyVault class keeps keys in off-heap memory and hands out opaque KeyHandle references to them.
+ *
+ * Keys are copied into fixed 32-byte slots of direct ByteBuffer slabs, so they are not scanned or
+ * moved by the garbage collector and do not appear in heap dumps. A slot is zeroed as soon as its
+ * key is released and then reused for the next key. Slabs are allocated 256 slots at a time.
+ *
+ * Ciphers read a key through secretKey, a SecretKey view whose getEncoded copies the key out of
+ * the vault on each cipher initialization. Copies are read without the vault's monitor, under a
+ * version number that store and release bump, so ciphers re-initialized per message do not
+ * serialize on the vault. The vault only keeps the stored keys out of the heap: the JDK providers
+ * keep key material inside every initialized cipher, the AES provider even a plain copy of the
+ * last key, for as long as the cipher lives. A key should therefore be released together with
+ * the services using it, which drops their ciphers.
+ */
+public final class KeyVault {
+
+    // Size of a slot, which is the longest supported key
+    private static final int SLOT_SIZE = 32;
+
+    /**
+     * Length of the longest key the vault stores.
+     */
+    public static final int MAX_KEY_LENGTH = SLOT_SIZE;
+
+    // Number of slots in each slab
+    private static final int SLAB_SLOTS = 256;
+
+    // Off-heap slabs holding the slots
+    private ByteBuffer[] slabs = new ByteBuffer[0];
+
+    // Length of the key in each slot, 0 when the slot is free
+    private int[] lengths = new int[0];
+
+    // Generation of each slot, incremented when its key is released
+    private int[] generations = new int[0];
+
+    // Stack of free slots
+    private int[] free = new int[0];
+
+    // Number of entries in the free stack
+    private int freeCount;
+
+    // Number of keys currently stored
+    private int liveKeys;
+
+    // Version of the slots, odd while store or release changes them, so copy can read without the monitor
+    private volatile int version;
+
+    /**
+     * Constructs an empty KeyVault. Most callers should use the shared instance.
+     */
+    public KeyVault() {
+    }
+
+    /**
+     * Returns the shared vault.
+     *
+     * @return the shared KeyVault
+     */
+    public static KeyVault getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Stores a key in the vault. The given array is zeroed once the key has been copied, so the
+     * vault holds the only copy.
+     *
+     * @param key the key to store, 1 to 32 bytes long
+     * @return the handle of the stored key
+     * @throws IllegalArgumentException if the key is empty or longer than 32 bytes
+     */
+    public synchronized KeyHandle store(byte[] key) {
+        if (key == null || key.length == 0 || key.length > SLOT_SIZE) {
+            throw new IllegalArgumentException("Invalid key length");
+        }
+        beginChange();
+        try {
+            if (freeCount == 0) {
+                grow();
+            }
+            int slot = free[--freeCount];
+            slab(slot).put(offset(slot), key);
+            Arrays.fill(key, (byte) 0);
+            lengths[slot] = key.length;
+            liveKeys++;
+            return new KeyHandle(this, slot, generations[slot], key.length);
+        } finally {
+            version++;
+        }
+    }
+
+    /**
+     * Releases a key, zeroing its memory. Releasing a key twice has no effect.
+     *
+     * @param handle the handle of the key
+     */
+    public synchronized void release(KeyHandle handle) {
+        if (!isLive(handle)) {
+            return;
+        }
+        beginChange();
+        try {
+            int slot = handle.slot();
+            ByteBuffer slab = slab(slot);
+            for (int i = offset(slot); i < offset(slot) + SLOT_SIZE; i++) {
+                slab.put(i, (byte) 0);
+            }
+            lengths[slot] = 0;
+            generations[slot]++;
+            free[freeCount++] = slot;
+            liveKeys--;
+        } finally {
+            version++;
+        }
+    }
+
+    /**
+     * Gets a SecretKey view of a stored key, for initializing a cipher without keeping a heap copy.
+     *
+     * @param handle    the handle of the key
+     * @param algorithm the algorithm name of the key, such as AES or ChaCha20
+     * @return the SecretKey reading the key from the vault
+     */
+    public SecretKey secretKey(KeyHandle handle, String algorithm) {
+        checkOwner(handle);
+        return new VaultKey(handle, algorithm);
+    }
+
+    /**
+     * Copies a stored key to the heap, for algorithms that only accept key arrays. The caller
+     * should zero the copy once it is no longer needed. The copy is read without the monitor,
+     * and read again if a store or release ran meanwhile.
+     *
+     * @param handle the handle of the key
+     * @return a copy of the key
+     * @throws IllegalStateException if the key has been released
+     */
+    public byte[] copy(KeyHandle handle) {
+        checkOwner(handle);
+        int slot = handle.slot();
+        byte[] key = new byte[handle.length()];
+        while (true) {
+            int before = version;
+            if ((before & 1) == 0) {
+                int[] currentLengths = lengths;
+                int[] currentGenerations = generations;
+                ByteBuffer[] currentSlabs = slabs;
+                boolean live = slot < currentLengths.length && slot < currentGenerations.length
+                        && slot / SLAB_SLOTS < currentSlabs.length
+                        && currentLengths[slot] != 0 && currentGenerations[slot] == handle.generation();
+                if (live) {
+                    currentSlabs[slot / SLAB_SLOTS].get(offset(slot), key);
+                }
+                // Keeps the reads above from moving past the second read of the version
+                VarHandle.acquireFence();
+                if (version == before) {
+                    if (!live) {
+                        throw new IllegalStateException("Key has been released");
+                    }
+                    return key;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Checks if the key of a handle is still stored.
+     *
+     * @param handle the handle of the key
+     * @return true if the key has not been released
+     */
+    public synchronized boolean isLive(KeyHandle handle) {
+        checkOwner(handle);
+        int slot = handle.slot();
+        return slot < lengths.length && lengths[slot] != 0 && generations[slot] == handle.generation();
+    }
+
+    /**
+     * Gets the number of keys currently stored.
+     *
+     * @return the live key count
+     */
+    public synchronized int getLiveKeyCount() {
+        return liveKeys;
+    }
+
+    /**
+     * Gets the off-heap memory reserved by the vault.
+     *
+     * @return the reserved memory in bytes
+     */
+    public synchronized long getReservedBytes() {
+        return (long) slabs.length * SLAB_SLOTS * SLOT_SIZE;
+    }
+
+    /**
+     * Marks the slots as changing, before a store or release writes them; the change ends with
+     * the next increment of the version.
+     */
+    private void beginChange() {
+        version++;
+        // Keeps the writes of the change from moving before the odd version
+        VarHandle.storeStoreFence();
+    }
+
+    private void grow() {
+        int first = slabs.length * SLAB_SLOTS;
+        slabs = Arrays.copyOf(slabs, slabs.length + 1);
+        slabs[slabs.length - 1] = ByteBuffer.allocateDirect(SLAB_SLOTS * SLOT_SIZE);
+        lengths = Arrays.copyOf(lengths, first + SLAB_SLOTS);
+        generations = Arrays.copyOf(generations, first + SLAB_SLOTS);
+        free = Arrays.copyOf(free, first + SLAB_SLOTS);
+        for (int slot = first + SLAB_SLOTS - 1; slot >= first; slot--) {
+            free[freeCount++] = slot;
+        }
+    }
+
+    private ByteBuffer slab(int slot) {
+        return slabs[slot / SLAB_SLOTS];
+    }
+
+    private static int offset(int slot) {
+        return slot % SLAB_SLOTS * SLOT_SIZE;
+    }
+
+    private void checkOwner(KeyHandle handle) {
+        if (handle.vault() != this) {
+            throw new IllegalArgumentException("Key handle belongs to another vault");
+        }
+    }
+
+    /**
+     * SecretKey reading its encoded form from the vault on each call.
+     */
+    private static final class VaultKey implements SecretKey {
+
+        private final KeyHandle handle;
+        private final String algorithm;
+
+        VaultKey(KeyHandle handle, String algorithm) {
+            this.handle = handle;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return handle.vault().copy(handle);
+        }
+
+        @Override
+        public void destroy() {
+            handle.vault().release(handle);
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return !handle.isLive();
+        }
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static final class Holder {
+        private static final KeyVault INSTANCE = new KeyVault();
+    }
+}
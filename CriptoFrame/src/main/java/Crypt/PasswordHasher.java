@@ -0,0 +1,291 @@
+package Crypt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PasswordHasher class hashes and verifies passwords with PBKDF2-HMAC-SHA256.
+ *
+ * Hashes are stored as $pbkdf2-sha256$iterations$salt$hash, with a random 16-byte salt per
+ * password, so the work factor can be raised later without invalidating existing hashes.
+ * The shared instance calibrates the number of iterations when it is first used, so one
+ * verification takes about the target latency on the current host.
+ *
+ * Verifications run on a small bounded pool. A login burst therefore occupies at most that many
+ * cores and leaves the rest to token validation; requests that do not fit in the queue are
+ * rejected instead of piling up.
+ */
+public final class PasswordHasher implements AutoCloseable {
+
+    // Logger for logging the calibration
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+
+    // Prefix of the hashes produced by this class
+    private static final String PREFIX = "$pbkdf2-sha256$";
+
+    // Algorithm of the key derivation
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    // Length of the random salt in bytes
+    private static final int SALT_LENGTH = 16;
+
+    // Length of the derived hash in bits
+    private static final int HASH_BITS = 256;
+
+    // Lowest work factor the calibration may choose
+    private static final int MIN_ITERATIONS = 10_000;
+
+    // Target latency of one verification, overridable with -DCrypt.password.targetMillis
+    private static final int TARGET_MILLIS = Integer.getInteger("Crypt.password.targetMillis", 100);
+
+    // Threads verifying passwords, overridable with -DCrypt.password.threads
+    private static final int DEFAULT_THREADS = Integer.getInteger("Crypt.password.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    // Verifications allowed to wait for a thread, overridable with -DCrypt.password.queue
+    private static final int DEFAULT_QUEUE = Integer.getInteger("Crypt.password.queue", 256);
+
+    // Random generator for the salts
+    private static final SecureRandom random = new SecureRandom();
+
+    // Number of iterations used for new hashes
+    private final int iterations;
+
+    // Pool running the verifications
+    private final ThreadPoolExecutor pool;
+
+    // Hash verified when the stored hash is missing, so unknown users take as long as known ones
+    private final String dummyHash;
+
+    // Number of completed verifications
+    private final LongAdder verifications = new LongAdder();
+
+    // Number of verifications rejected because the pool was saturated
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Constructs a PasswordHasher with a fixed work factor and verification pool.
+     *
+     * @param iterations the number of PBKDF2 iterations used for new hashes
+     * @param threads    the number of threads verifying passwords
+     * @param queue      the number of verifications allowed to wait for a thread
+     * @throws IllegalArgumentException if any argument is not positive
+     */
+    public PasswordHasher(int iterations, int threads, int queue) {
+        if (iterations <= 0 || threads <= 0 || queue <= 0) {
+            throw new IllegalArgumentException("Invalid password hasher settings");
+        }
+        this.iterations = iterations;
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), task -> {
+            Thread thread = new Thread(task, "password-verify-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dummyHash = hash("");
+    }
+
+    /**
+     * Returns the shared hasher, calibrated for the current host on first use.
+     *
+     * @return the shared PasswordHasher
+     */
+    public static PasswordHasher getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Hashes a password with a new random salt.
+     *
+     * @param password the password to be hashed
+     * @return the encoded hash
+     * @throws RuntimeException if an error occurs during hashing
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + '$' + encoder.encodeToString(salt) + '$' + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Verifies a password against a stored hash on the verification pool, waiting for the result.
+     * A missing or malformed hash is checked against a dummy hash and fails, taking as long as a
+     * real verification.
+     *
+     * @param password the password to be checked
+     * @param stored   the stored hash, or null if the user does not exist
+     * @return true if the password matches, false otherwise or if the pool is saturated
+     */
+    public boolean verify(String password, String stored) {
+        try {
+            return verifyAsync(password, stored).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Verifies a password against a stored hash on the verification pool.
+     *
+     * @param password the password to be checked
+     * @param stored   the stored hash, or null if the user does not exist
+     * @return a future completing with true if the password matches, or exceptionally with
+     *         RejectedExecutionException if the pool is saturated
+     */
+    public CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        try {
+            return CompletableFuture.supplyAsync(() -> check(password, stored), pool);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Checks if a stored value was produced by this class.
+     *
+     * @param stored the stored value
+     * @return true if the value is a PBKDF2 hash
+     */
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Checks if a stored hash uses fewer iterations than new hashes, so it should be replaced
+     * the next time the password is known.
+     *
+     * @param stored the stored hash
+     * @return true if the hash is missing, malformed or weaker than the current work factor
+     */
+    public boolean needsRehash(String stored) {
+        String[] parts = parse(stored);
+        return parts == null || Integer.parseInt(parts[0]) < iterations;
+    }
+
+    /**
+     * Gets the number of iterations used for new hashes.
+     *
+     * @return the work factor
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Gets the number of completed verifications.
+     *
+     * @return the verification count
+     */
+    public long getVerificationCount() {
+        return verifications.sum();
+    }
+
+    /**
+     * Gets the number of verifications rejected because the pool was saturated.
+     *
+     * @return the rejection count
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Stops the verification threads. Later verifications are rejected.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private boolean check(String password, String stored) {
+        try {
+            String[] parts = parse(stored);
+            boolean known = parts != null;
+            if (!known) {
+                parts = parse(dummyHash);
+            }
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[2]);
+            byte[] actual = derive(password == null ? "" : password, decoder.decode(parts[1]), Integer.parseInt(parts[0]));
+            return MessageDigest.isEqual(expected, actual) && known;
+        } finally {
+            verifications.increment();
+        }
+    }
+
+    /**
+     * Splits a stored hash into iterations, salt and hash, or returns null if it is malformed.
+     */
+    private static String[] parse(String stored) {
+        if (!isHash(stored)) {
+            return null;
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(parts[0]) > 0 ? parts : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error hashing password", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Finds the number of iterations taking about the target latency on this host.
+     */
+    private static int calibrate(int targetMillis) {
+        byte[] salt = new byte[SALT_LENGTH];
+        for (int i = 0; i < 3; i++) {
+            derive("calibration", salt, MIN_ITERATIONS);
+        }
+        long start = System.nanoTime();
+        derive("calibration", salt, MIN_ITERATIONS);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        long scaled = MIN_ITERATIONS * (targetMillis * 1_000_000L) / elapsed;
+        int iterations = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_ITERATIONS, scaled / 1000 * 1000));
+        logger.info("Password hashing calibrated to " + iterations + " iterations for " + targetMillis + " ms");
+        return iterations;
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static final class Holder {
+        private static final PasswordHasher INSTANCE =
+                new PasswordHasher(calibrate(TARGET_MILLIS), DEFAULT_THREADS, DEFAULT_QUEUE);
+    }
+}
@@ -0,0 +1,278 @@
+package Crypt;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * StreamCrypt class encrypts and decrypts data of any size with constant memory.
+ *
+ * Data is pushed through Cipher.update in fixed-size chunks instead of a single doFinal,
+ * so exports and backups larger than the heap can be processed. Stream sources use a
+ * reusable per-thread array, file channels are read through memory-mapped windows and
+ * written from a reusable per-thread direct buffer. Unless the algorithm is authenticated,
+ * the output has the same format as its byte array methods, so either side can be used to
+ * read it back.
+ *
+ * Authenticated algorithms only release plaintext once a tag is verified, so their streams
+ * are split into segments of 64 KB of plaintext, each sealed with its own tag (see
+ * AEAD_Crypt). A segment shorter than that is the last one, so a stream whose length is a
+ * multiple of 64 KB ends with an empty segment. Segmented streams can only be read back by
+ * StreamCrypt.
+ */
+public class StreamCrypt {
+
+    // Size of the chunks passed to Cipher.update
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // Extra room in the output buffers for the final padding block or authentication tag
+    private static final int TAIL_SIZE = 64;
+
+    // Size of the memory-mapped windows used to read file channels
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+
+    // Per-thread arrays for streams: [0] holds input, [1] holds output
+    private static final ThreadLocal<byte[][]> arrays =
+            ThreadLocal.withInitial(() -> new byte[][]{new byte[CHUNK_SIZE + TAIL_SIZE], new byte[CHUNK_SIZE + TAIL_SIZE]});
+
+    // Per-thread direct buffer receiving cipher output for file channels
+    private static final ThreadLocal<ByteBuffer> directBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHUNK_SIZE + TAIL_SIZE));
+
+    // Algorithm providing the ciphers used for streaming
+    private final CipherCrypt crypto;
+
+    /**
+     * Constructs a StreamCrypt object backed by the given algorithm.
+     *
+     * @param crypto the algorithm providing the ciphers
+     */
+    StreamCrypt(CipherCrypt crypto) {
+        this.crypto = crypto;
+    }
+
+    /**
+     * Encrypts everything read from the input stream and writes it to the output stream.
+     * Neither stream is closed.
+     *
+     * @param in  the stream holding the data to be encrypted
+     * @param out the stream receiving the encrypted data
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public long encrypt(InputStream in, OutputStream out) throws IOException {
+        byte[] header = new byte[crypto.headerLength()];
+        Cipher cipher = crypto.streamCipher(Cipher.ENCRYPT_MODE, header);
+        out.write(header);
+        if (crypto.segmentTagLength() > 0) {
+            return header.length + transferSegments(cipher, Cipher.ENCRYPT_MODE, header, in, out);
+        }
+        return header.length + transfer(cipher, in, out);
+    }
+
+    /**
+     * Decrypts everything read from the input stream and writes it to the output stream.
+     * Neither stream is closed.
+     *
+     * @param in  the stream holding the data to be decrypted
+     * @param out the stream receiving the decrypted data
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public long decrypt(InputStream in, OutputStream out) throws IOException {
+        byte[] header = in.readNBytes(crypto.headerLength());
+        if (header.length != crypto.headerLength()) {
+            throw new IOException("Truncated encrypted stream");
+        }
+        Cipher cipher = crypto.streamCipher(Cipher.DECRYPT_MODE, header);
+        if (crypto.segmentTagLength() > 0) {
+            return transferSegments(cipher, Cipher.DECRYPT_MODE, header, in, out);
+        }
+        return transfer(cipher, in, out);
+    }
+
+    /**
+     * Encrypts the whole input channel, starting at position zero, and writes it to the
+     * output channel at its current position.
+     *
+     * @param in  the channel holding the data to be encrypted
+     * @param out the channel receiving the encrypted data
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public long encrypt(FileChannel in, FileChannel out) throws IOException {
+        byte[] header = new byte[crypto.headerLength()];
+        Cipher cipher = crypto.streamCipher(Cipher.ENCRYPT_MODE, header);
+        writeFully(out, ByteBuffer.wrap(header));
+        if (crypto.segmentTagLength() > 0) {
+            in.position(0);
+            return header.length + transferSegments(cipher, Cipher.ENCRYPT_MODE, header,
+                    Channels.newInputStream(in), Channels.newOutputStream(out));
+        }
+        return header.length + transfer(cipher, in, 0, out);
+    }
+
+    /**
+     * Decrypts the whole input channel, starting at position zero, and writes it to the
+     * output channel at its current position.
+     *
+     * @param in  the channel holding the data to be decrypted
+     * @param out the channel receiving the decrypted data
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public long decrypt(FileChannel in, FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(crypto.headerLength());
+        while (header.hasRemaining()) {
+            if (in.read(header, header.position()) < 0) {
+                throw new IOException("Truncated encrypted file");
+            }
+        }
+        Cipher cipher = crypto.streamCipher(Cipher.DECRYPT_MODE, header.array());
+        if (crypto.segmentTagLength() > 0) {
+            in.position(header.capacity());
+            return transferSegments(cipher, Cipher.DECRYPT_MODE, header.array(),
+                    Channels.newInputStream(in), Channels.newOutputStream(out));
+        }
+        return transfer(cipher, in, header.capacity(), out);
+    }
+
+    /**
+     * Encrypts the source file into the target file, replacing the target if it exists.
+     *
+     * @param source the file holding the data to be encrypted
+     * @param target the file receiving the encrypted data
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public long encrypt(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = openTarget(target)) {
+            return encrypt(in, out);
+        }
+    }
+
+    /**
+     * Decrypts the source file into the target file, replacing the target if it exists.
+     *
+     * @param source the file holding the data to be decrypted
+     * @param target the file receiving the decrypted data
+     * @return the number of bytes written
+     * @throws IOException if reading or writing fails
+     */
+    public long decrypt(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = openTarget(target)) {
+            return decrypt(in, out);
+        }
+    }
+
+    /**
+     * Pushes a stream through the cipher chunk by chunk.
+     */
+    private long transfer(Cipher cipher, InputStream in, OutputStream out) throws IOException {
+        byte[][] buffers = arrays.get();
+        byte[] input = buffers[0];
+        byte[] output = buffers[1];
+        long written = 0;
+        try {
+            int read;
+            while ((read = in.read(input)) > 0) {
+                int count = cipher.update(input, 0, read, output, 0);
+                out.write(output, 0, count);
+                written += count;
+            }
+            int count = cipher.doFinal(output, 0);
+            out.write(output, 0, count);
+            return written + count;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error processing encrypted stream", e);
+        }
+    }
+
+    /**
+     * Pushes a stream through the cipher one separately sealed segment at a time. A segment
+     * read short is the last one; decrypting it also checks that the stream was not truncated
+     * at a segment boundary, since the last segment is sealed as such.
+     */
+    private long transferSegments(Cipher cipher, int mode, byte[] header, InputStream in, OutputStream out)
+            throws IOException {
+        byte[][] buffers = arrays.get();
+        byte[] input = buffers[0];
+        byte[] output = buffers[1];
+        int tagLength = crypto.segmentTagLength();
+        int segmentLength = mode == Cipher.ENCRYPT_MODE ? CHUNK_SIZE : CHUNK_SIZE + tagLength;
+        long written = 0;
+        try {
+            for (long segment = 0; ; segment++) {
+                int read = in.readNBytes(input, 0, segmentLength);
+                boolean last = read < segmentLength;
+                if (mode == Cipher.DECRYPT_MODE && read < tagLength) {
+                    throw new IOException("Truncated encrypted stream");
+                }
+                crypto.initSegment(cipher, mode, header, segment, last);
+                int count = cipher.doFinal(input, 0, read, output, 0);
+                out.write(output, 0, count);
+                written += count;
+                if (last) {
+                    return written;
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error processing encrypted stream", e);
+        }
+    }
+
+    /**
+     * Pushes a file channel through the cipher one memory-mapped window at a time.
+     */
+    private long transfer(Cipher cipher, FileChannel in, long position, FileChannel out) throws IOException {
+        ByteBuffer output = directBuffer.get();
+        long size = in.size();
+        long written = 0;
+        try {
+            while (position < size) {
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position));
+                position += window.remaining();
+                while (window.hasRemaining()) {
+                    ByteBuffer chunk = window.slice(window.position(), Math.min(CHUNK_SIZE, window.remaining()));
+                    window.position(window.position() + chunk.remaining());
+                    output.clear();
+                    cipher.update(chunk, output);
+                    written += writeFully(out, output.flip());
+                }
+            }
+            output.clear();
+            cipher.doFinal(ByteBuffer.allocate(0), output);
+            return written + writeFully(out, output.flip());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error processing encrypted file", e);
+        }
+    }
+
+    private static int writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        int count = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return count;
+    }
+
+    private static FileChannel openTarget(Path target) throws IOException {
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,121 @@
+package Crypt;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorBase64 class holds the SIMD kernels of Base64Codec, written with the Vector API.
+ *
+ * Each iteration encodes three quarters of a vector of input bytes into a full vector of
+ * characters, or decodes a full vector of characters into three quarters of a vector of bytes.
+ * The kernels only process whole vectors and stop at anything they cannot handle, such as
+ * padding or an invalid character; Base64Codec finishes the rest with its scalar code, which
+ * also produces the error messages. This class is only loaded when the jdk.incubator.vector
+ * module is present.
+ */
+final class VectorBase64 {
+
+    // Byte species of at most 256 bits; wider byte rearranges are not cheaper on current CPUs
+    private static final VectorSpecies<Byte> SPECIES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.min(256, ByteVector.SPECIES_PREFERRED.vectorBitSize())));
+
+    // Number of byte lanes per vector
+    private static final int LANES = SPECIES.length();
+
+    // Number of input bytes consumed by one encoding iteration
+    private static final int ENCODE_STEP = LANES / 4 * 3;
+
+    // Places input bytes b0,b1,b2 of each group as b2,b1,b0,b0 so an int lane holds b0<<16|b1<<8|b2
+    private static final VectorShuffle<Byte> ENCODE_SHUFFLE = VectorShuffle.fromOp(SPECIES, lane -> {
+        int group = lane / 4 * 3;
+        int position = lane % 4;
+        return position == 3 ? group : group + 2 - position;
+    });
+
+    // Gathers bytes b0,b1,b2 from each int lane laid out as b2,b1,b0,0 after decoding
+    private static final VectorShuffle<Byte> DECODE_SHUFFLE = VectorShuffle.fromOp(SPECIES, lane -> {
+        if (lane >= ENCODE_STEP) {
+            return 0;
+        }
+        return lane / 3 * 4 + 2 - lane % 3;
+    });
+
+    // Private constructor to prevent instantiation
+    private VectorBase64() {
+    }
+
+    /**
+     * Encodes as many whole vectors of input as fit without reading past the end of the source.
+     *
+     * @return the number of source bytes consumed, always a multiple of three
+     */
+    static int encode(byte[] src, int sp, int sl, byte[] dst, int dp) {
+        int start = sp;
+        while (sp + LANES <= sl) {
+            IntVector groups = ByteVector.fromArray(SPECIES, src, sp)
+                    .rearrange(ENCODE_SHUFFLE)
+                    .reinterpretAsInts();
+            IntVector indexes = groups.lanewise(VectorOperators.LSHR, 18).and(0x3F)
+                    .or(groups.lanewise(VectorOperators.LSHR, 4).and(0x3F00))
+                    .or(groups.lanewise(VectorOperators.LSHL, 10).and(0x3F0000))
+                    .or(groups.lanewise(VectorOperators.LSHL, 24).and(0x3F000000));
+            ByteVector values = indexes.reinterpretAsBytes();
+            ByteVector offsets = ByteVector.broadcast(SPECIES, (byte) 'A')
+                    .blend((byte) ('a' - 26), values.compare(VectorOperators.GE, (byte) 26))
+                    .blend((byte) ('0' - 52), values.compare(VectorOperators.GE, (byte) 52))
+                    .blend((byte) ('+' - 62), values.compare(VectorOperators.EQ, (byte) 62))
+                    .blend((byte) ('/' - 63), values.compare(VectorOperators.EQ, (byte) 63));
+            values.add(offsets).intoArray(dst, dp);
+            sp += ENCODE_STEP;
+            dp += LANES;
+        }
+        return sp - start;
+    }
+
+    /**
+     * Decodes whole vectors of characters until the end of the source or the first vector
+     * holding a character outside the Base64 alphabet, including padding. Each iteration stores
+     * a full vector, so bytes before dl may be overwritten beyond the decoded length.
+     *
+     * @return the number of source characters consumed, always a multiple of four
+     */
+    static int decode(byte[] src, int sp, int sl, byte[] dst, int dp, int dl) {
+        int start = sp;
+        while (sp + LANES <= sl && dp + LANES <= dl) {
+            ByteVector chars = ByteVector.fromArray(SPECIES, src, sp);
+            VectorMask<Byte> upper = chars.compare(VectorOperators.GE, (byte) 'A')
+                    .and(chars.compare(VectorOperators.LE, (byte) 'Z'));
+            VectorMask<Byte> lower = chars.compare(VectorOperators.GE, (byte) 'a')
+                    .and(chars.compare(VectorOperators.LE, (byte) 'z'));
+            VectorMask<Byte> digit = chars.compare(VectorOperators.GE, (byte) '0')
+                    .and(chars.compare(VectorOperators.LE, (byte) '9'));
+            VectorMask<Byte> plus = chars.compare(VectorOperators.EQ, (byte) '+');
+            VectorMask<Byte> slash = chars.compare(VectorOperators.EQ, (byte) '/');
+            if (!upper.or(lower).or(digit).or(plus).or(slash).allTrue()) {
+                break;
+            }
+            ByteVector offsets = ByteVector.zero(SPECIES)
+                    .blend((byte) -'A', upper)
+                    .blend((byte) (26 - 'a'), lower)
+                    .blend((byte) (52 - '0'), digit)
+                    .blend((byte) (62 - '+'), plus)
+                    .blend((byte) (63 - '/'), slash);
+            IntVector sextets = chars.add(offsets).reinterpretAsInts();
+            IntVector groups = sextets.and(0x3F).lanewise(VectorOperators.LSHL, 18)
+                    .or(sextets.and(0x3F00).lanewise(VectorOperators.LSHL, 4))
+                    .or(sextets.and(0x3F0000).lanewise(VectorOperators.LSHR, 10))
+                    .or(sextets.lanewise(VectorOperators.LSHR, 24));
+            groups.reinterpretAsBytes()
+                    .rearrange(DECODE_SHUFFLE)
+                    .intoArray(dst, dp);
+            sp += LANES;
+            dp += ENCODE_STEP;
+        }
+        return sp - start;
+    }
+}
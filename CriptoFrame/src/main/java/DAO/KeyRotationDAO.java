@@ -0,0 +1,218 @@
+package DAO;
+
+import Connection.Conn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * KeyRotationDAO class provides the data access operations of a key rotation.
+ *
+ * Rows are read in chunks ordered by username, continuing after the last username of the
+ * previous chunk, so every chunk is an index range scan no matter how far the rotation has
+ * progressed. Each chunk is written back with a JDBC batch in one transaction together with
+ * its checkpoint, so a resumed rotation never rotates a row twice.
+ *
+ * The DAO keeps its own connection instead of the shared one, so the rotation transactions
+ * do not interfere with live traffic. It must be closed when the rotation ends.
+ */
+public class KeyRotationDAO implements AutoCloseable {
+
+    // Logger for logging rotation-related database operations
+    private static final Logger logger = LoggerFactory.getLogger(KeyRotationDAO.class);
+
+    /**
+     * Tables holding values encrypted with a user key, and the column holding the value.
+     * Tokens are keyed by username too, since each user has at most one token.
+     */
+    public enum Table {
+        USER("User", "password"),
+        TOKEN("Token", "value");
+
+        // Name of the table
+        private final String tableName;
+
+        // Name of the encrypted column
+        private final String column;
+
+        Table(String tableName, String column) {
+            this.tableName = tableName;
+            this.column = column;
+        }
+    }
+
+    /**
+     * A row to be rotated: its username and encrypted value.
+     */
+    public record Row(String username, String value) {
+    }
+
+    /**
+     * Progress of a rotation over one table.
+     *
+     * @param lastUsername the username of the last rotated row, or null if none was rotated yet
+     * @param rows         the number of rows processed so far
+     * @param done         true if the whole table has been processed
+     */
+    public record Checkpoint(String lastUsername, long rows, boolean done) {
+    }
+
+    // Dedicated connection of the rotation, opened on first use
+    private Connection connection;
+
+    /**
+     * Creates the checkpoint table if it does not exist yet.
+     *
+     * @throws SQLException if a database error occurs
+     */
+    public void createCheckpointTable() throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS KeyRotation (job VARCHAR(64) NOT NULL, tableName VARCHAR(16) NOT NULL, "
+                + "lastUsername VARCHAR(255), rowsDone BIGINT NOT NULL, done BOOLEAN NOT NULL, PRIMARY KEY (job, tableName))";
+        try (Statement stmt = connection().createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Loads the checkpoint of a rotation over a table.
+     *
+     * @param job   the id of the rotation
+     * @param table the table being rotated
+     * @return the checkpoint, or an empty checkpoint if the rotation has not started on the table
+     * @throws SQLException if a database error occurs
+     */
+    public Checkpoint loadCheckpoint(String job, Table table) throws SQLException {
+        String sql = "SELECT lastUsername, rowsDone, done FROM KeyRotation WHERE job = ? AND tableName = ?";
+        try (PreparedStatement pstmt = connection().prepareStatement(sql)) {
+            pstmt.setString(1, job);
+            pstmt.setString(2, table.name());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Checkpoint(rs.getString("lastUsername"), rs.getLong("rowsDone"), rs.getBoolean("done"));
+                }
+            }
+        }
+        return new Checkpoint(null, 0, false);
+    }
+
+    /**
+     * Counts the rows of a table.
+     *
+     * @param table the table to count
+     * @return the number of rows
+     * @throws SQLException if a database error occurs
+     */
+    public long count(Table table) throws SQLException {
+        try (Statement stmt = connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table.tableName)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Reads the next chunk of rows after the given username.
+     *
+     * @param table         the table being rotated
+     * @param afterUsername the username of the last row already read, or null to start at the beginning
+     * @param limit         the maximum number of rows to read
+     * @return the rows, ordered by username
+     * @throws SQLException if a database error occurs
+     */
+    public List<Row> fetchChunk(Table table, String afterUsername, int limit) throws SQLException {
+        String sql = "SELECT username, " + table.column + " FROM " + table.tableName
+                + " WHERE username > ? ORDER BY username LIMIT ?";
+        List<Row> rows = new ArrayList<>(limit);
+        try (PreparedStatement pstmt = connection().prepareStatement(sql)) {
+            pstmt.setString(1, afterUsername == null ? "" : afterUsername);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new Row(rs.getString(1), rs.getString(2)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes a rotated chunk and its checkpoint in one transaction. A row is only updated if its
+     * value is still the one that was read, so a value changed by live traffic in the meantime
+     * is left alone.
+     *
+     * @param job        the id of the rotation
+     * @param table      the table being rotated
+     * @param read       the rows as they were read
+     * @param rotated    the new values, at the index of their row, or null for rows left unchanged
+     * @param checkpoint the checkpoint reached after this chunk
+     * @return the number of rows updated
+     * @throws SQLException if a database error occurs; the transaction is rolled back
+     */
+    public int writeChunk(String job, Table table, List<Row> read, String[] rotated, Checkpoint checkpoint) throws SQLException {
+        String update = "UPDATE " + table.tableName + " SET " + table.column + " = ? WHERE username = ? AND "
+                + table.column + " = ?";
+        String save = "REPLACE INTO KeyRotation (job, tableName, lastUsername, rowsDone, done) VALUES (?, ?, ?, ?, ?)";
+        Connection conn = connection();
+        conn.setAutoCommit(false);
+        try (PreparedStatement updateStmt = conn.prepareStatement(update);
+             PreparedStatement saveStmt = conn.prepareStatement(save)) {
+            for (int i = 0; i < read.size(); i++) {
+                if (rotated[i] != null) {
+                    updateStmt.setString(1, rotated[i]);
+                    updateStmt.setString(2, read.get(i).username());
+                    updateStmt.setString(3, read.get(i).value());
+                    updateStmt.addBatch();
+                }
+            }
+            int updated = 0;
+            for (int count : updateStmt.executeBatch()) {
+                updated += Math.max(count, 0);
+            }
+            saveStmt.setString(1, job);
+            saveStmt.setString(2, table.name());
+            saveStmt.setString(3, checkpoint.lastUsername());
+            saveStmt.setLong(4, checkpoint.rows());
+            saveStmt.setBoolean(5, checkpoint.done());
+            saveStmt.executeUpdate();
+            conn.commit();
+            return updated;
+        } catch (SQLException e) {
+            logger.error("Exception occurred while writing rotated chunk of " + table.tableName, e);
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Closes the dedicated connection.
+     */
+    @Override
+    public void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.error("Exception occurred while closing rotation connection", e);
+            }
+            connection = null;
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = Conn.newConnection();
+            if (connection == null) {
+                throw new SQLException("Could not connect to the database");
+            }
+        }
+        return connection;
+    }
+}
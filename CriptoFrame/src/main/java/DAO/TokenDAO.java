@@ -1,6 +1,7 @@
 package DAO;
 
 import Crypt.EncryptService;
+import Crypt.EncryptServiceFactory;
 import Connection.Conn;
 import DTO.Token;
 import DTO.User;
@@ -11,29 +12,44 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * TokenDAO class provides data access operations related to authentication tokens in the database.
  * This class includes methods for inserting, searching, updating, and deleting authentication tokens,
  * as well as checking token existence and listing all tokens.
+ *
+ * Batched writes run on a dedicated connection, opened on first use and released by close(),
+ * so their transactions are not shared with the other operations.
  */
-public class TokenDAO {
+public class TokenDAO implements AutoCloseable {
 
     // Logger for logging token-related database operations
     private static final Logger logger = LoggerFactory.getLogger(TokenDAO.class);
 
+    // Dedicated connection of the batched writes, opened on first use
+    private Connection batchConnection;
+
+    // Whether the lastSeen column of the Token table is known to exist
+    private boolean lastSeenColumnChecked;
+
     /**
      * Inserts a new authentication token into the database.
      *
      * @param token          the authentication token to be inserted
      * @param encryptionType the encryption type used for storing the token
-     * @return true if the token is inserted successfully, false otherwise
+     * @return the encrypted value stored if the token is inserted successfully, null otherwise
      */
-    public boolean insert(Token token, String encryptionType) {
+    public String insert(Token token, String encryptionType) {
         logger.info("Inserting token: " + token);
-        EncryptService encryptService = new EncryptService(encryptionType,token.getUser().getKey());
+        EncryptService encryptService = EncryptServiceFactory.getInstance().get(encryptionType, token.getUser().getKey());
         String sql = "INSERT INTO Token (value, username) VALUES (?, ?)";
         String encryptedValue = encryptService.encrypt(token.getValue());
         try (Connection conn = Conn.getInstance();
@@ -46,10 +62,10 @@ public class TokenDAO {
             } else {
                 logger.error("Failed to insert token: " + token);
             }
-            return affectedRows > 0;
+            return affectedRows > 0 ? encryptedValue : null;
         } catch (SQLException e) {
             logger.error("Exception occurred while inserting token: " + token, e);
-            return false;
+            return null;
         }
     }
 
@@ -60,19 +76,40 @@ public class TokenDAO {
      * @return the authentication token if found, or null if not found
      */
     public Token searchForValue(String value) {
+        try {
+            return findByValue(value);
+        } catch (SQLException e) {
+            logger.error("Exception occurred while searching for token: " + value, e);
+            return null;
+        }
+    }
+
+    /**
+     * Searches for an authentication token based on its value, reporting database errors to
+     * the caller so that they are not mistaken for an unknown token. The search runs on its own
+     * connection, since the TokenValidationCache loads values concurrently and in the background,
+     * and the shared connection is closed by every statement run on it.
+     *
+     * @param value the value of the authentication token to search for
+     * @return the authentication token if found, or null if not found
+     * @throws SQLException if a database error occurs
+     */
+    public Token findByValue(String value) throws SQLException {
         logger.info("Searching for token: " + value);
         Token token = null;
         String sql = "SELECT * FROM Token WHERE value = ?";
-        try (Connection conn = Conn.getInstance();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, value);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                token = new Token(rs.getString("value"), new User(rs.getString("username")));
-                logger.info("Token found: " + token);
+        try (Connection conn = Conn.newConnection()) {
+            if (conn == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, value);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    token = new Token(rs.getString("value"), new User(rs.getString("username")));
+                    logger.info("Token found: " + token);
+                }
             }
-        } catch (SQLException e) {
-            logger.error("Exception occurred while searching for token: " + value, e);
         }
         return token;
     }
@@ -83,11 +120,11 @@ public class TokenDAO {
      * @param username        the username associated with the token to be updated
      * @param updatedToken    the updated token value
      * @param encryptionType  the encryption type used for storing token information
-     * @return true if the token is updated successfully, false otherwise
+     * @return the encrypted value stored if the token is updated successfully, null otherwise
      */
-    public boolean update(String username, String updatedToken, String encryptionType,byte[] key) {
+    public String update(String username, String updatedToken, String encryptionType,byte[] key) {
         logger.info("Updating token for user: " + username);
-        EncryptService encryptService = new EncryptService(encryptionType,key);
+        EncryptService encryptService = EncryptServiceFactory.getInstance().get(encryptionType, key);
         String encryptedToken = encryptService.encrypt(updatedToken);
         String sql = "UPDATE Token SET value = ? WHERE username = ?";
         try (Connection conn = Conn.getInstance();
@@ -100,10 +137,10 @@ public class TokenDAO {
             } else {
                 logger.error("Failed to update token for user: " + username);
             }
-            return affectedRows > 0;
+            return affectedRows > 0 ? encryptedToken : null;
         } catch (SQLException e) {
             logger.error("Exception occurred while updating token for user: " + username, e);
-            return false;
+            return null;
         }
     }
 
@@ -177,4 +214,149 @@ public class TokenDAO {
         }
         return tokens;
     }
+
+    /**
+     * Writes a batch of token changes in one transaction: the rows of every given username are
+     * deleted, then the given tokens are inserted. Each user thus ends up with the given token,
+     * or with none if only its username was given. Values are encrypted as in insert, with the
+     * key of their user, or with the storage key for users loaded without one, such as the
+     * users of authenticateUser. A token that still cannot be encrypted is not written at all:
+     * the stored row of its user is kept, while the rest of the batch is written.
+     *
+     * @param usernames      the users whose tokens are replaced or deleted
+     * @param tokens         the tokens to insert, at most one per user
+     * @param encryptionType the encryption type used for storing the tokens
+     * @param storageKey     the key encrypting the tokens of users without a key of their own
+     * @return the encrypted values written, without those of the tokens that could not be encrypted
+     * @throws SQLException if a database error occurs; the transaction is rolled back
+     */
+    public synchronized List<String> writeBatch(Collection<String> usernames, Collection<Token> tokens, String encryptionType,
+                                       byte[] storageKey) throws SQLException {
+        List<Token> encryptedTokens = new ArrayList<>(tokens.size());
+        Set<String> skipped = new HashSet<>();
+        for (Token token : tokens) {
+            byte[] key = token.getUser().getKey() != null ? token.getUser().getKey() : storageKey;
+            try {
+                EncryptService encryptService = EncryptServiceFactory.getInstance().get(encryptionType, key);
+                encryptedTokens.add(new Token(encryptService.encrypt(token.getValue()), token.getUser()));
+            } catch (RuntimeException e) {
+                logger.error("Cannot encrypt the token of user: " + token.getUser().getUsername(), e);
+                skipped.add(token.getUser().getUsername());
+            }
+        }
+        if (skipped.isEmpty()) {
+            writeRows(usernames, encryptedTokens);
+        } else {
+            writeRows(usernames.stream().filter(username -> !skipped.contains(username)).toList(), encryptedTokens);
+        }
+        return encryptedTokens.stream().map(Token::getValue).toList();
+    }
+
+    /**
+     * Deletes the rows of the given users and inserts the given encrypted tokens in one transaction.
+     *
+     * @param usernames       the users whose tokens are replaced or deleted
+     * @param encryptedTokens the tokens to insert, holding their encrypted values
+     * @throws SQLException if a database error occurs; the transaction is rolled back
+     */
+    protected void writeRows(Collection<String> usernames, List<Token> encryptedTokens) throws SQLException {
+        Connection conn = batchConnection();
+        conn.setAutoCommit(false);
+        try (PreparedStatement deleteStmt = conn.prepareStatement("DELETE FROM Token WHERE username = ?");
+             PreparedStatement insertStmt = conn.prepareStatement("INSERT INTO Token (value, username) VALUES (?, ?)")) {
+            for (String username : usernames) {
+                deleteStmt.setString(1, username);
+                deleteStmt.addBatch();
+            }
+            deleteStmt.executeBatch();
+            for (Token token : encryptedTokens) {
+                insertStmt.setString(1, token.getValue());
+                insertStmt.setString(2, token.getUser().getUsername());
+                insertStmt.addBatch();
+            }
+            insertStmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            logger.error("Exception occurred while writing a batch of " + usernames.size() + " tokens", e);
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Writes the last use of the tokens of the given users with one batched UPDATE in one
+     * transaction. Users without a token are ignored, and a use older than the one already
+     * stored does not replace it, so batches written out of order keep the latest use.
+     * <p>
+     * The lastSeen column is not part of the original Token table; it is added by the schema
+     * change in schema/token_last_seen.sql, which must be applied before sliding expiration is
+     * enabled with a TokenWriteBehind. The DAO does not alter the table itself.
+     * </p>
+     *
+     * @param lastSeen the last use of the token of each user, by username
+     * @throws SQLException if a database error occurs or the lastSeen column is missing; the
+     *                      transaction is rolled back
+     */
+    public synchronized void touchBatch(Map<String, Instant> lastSeen) throws SQLException {
+        Connection conn = batchConnection();
+        if (!lastSeenColumnChecked) {
+            checkLastSeenColumn(conn);
+            lastSeenColumnChecked = true;
+        }
+        conn.setAutoCommit(false);
+        String sql = "UPDATE Token SET lastSeen = ? WHERE username = ? AND (lastSeen IS NULL OR lastSeen < ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Instant> entry : lastSeen.entrySet()) {
+                Timestamp seen = Timestamp.from(entry.getValue());
+                pstmt.setTimestamp(1, seen);
+                pstmt.setString(2, entry.getKey());
+                pstmt.setTimestamp(3, seen);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            logger.error("Exception occurred while writing the last use of " + lastSeen.size() + " tokens", e);
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Closes the dedicated connection of the batched writes.
+     */
+    @Override
+    public synchronized void close() {
+        if (batchConnection != null) {
+            try {
+                batchConnection.close();
+            } catch (SQLException e) {
+                logger.error("Exception occurred while closing token batch connection", e);
+            }
+            batchConnection = null;
+        }
+    }
+
+    private static void checkLastSeenColumn(Connection conn) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, "Token", "lastSeen")) {
+            if (!rs.next()) {
+                throw new SQLException("The Token table has no lastSeen column; apply schema/token_last_seen.sql"
+                        + " before enabling sliding expiration", "42S22");
+            }
+        }
+    }
+
+    private Connection batchConnection() throws SQLException {
+        if (batchConnection == null || batchConnection.isClosed()) {
+            batchConnection = Conn.newConnection();
+            if (batchConnection == null) {
+                throw new SQLException("Could not connect to the database");
+            }
+        }
+        return batchConnection;
+    }
 }
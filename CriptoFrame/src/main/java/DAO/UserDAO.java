@@ -1,6 +1,6 @@
 package DAO;
 
-import Crypt.EncryptService;
+import Crypt.PasswordHasher;
 import Connection.Conn;
 import DTO.User;
 import org.slf4j.Logger;
@@ -13,6 +13,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Base64;
+import java.util.function.Consumer;
 
 /**
  * UserDAO class provides data access operations related to user information in the database.
@@ -26,17 +27,15 @@ public class UserDAO {
     private static final Logger logger = LoggerFactory.getLogger(UserDAO.class);
 
     /**
-     * Inserts a new user into the database.
+     * Inserts a new user into the database. The password is stored as a PasswordHasher hash.
      *
-     * @param user           the user to be inserted
-     * @param encryptionType the encryption type used for storing user information
+     * @param user the user to be inserted, holding the plain password
      * @return true if the user is inserted successfully, false otherwise
      */
-    public boolean insert(User user, String encryptionType) {
+    public boolean insert(User user) {
         logger.info("Inserting user: " + user);
-        EncryptService encryptService = new EncryptService(encryptionType, user.getKey());
         String sql = "INSERT INTO User (username, password, role) VALUES (?, ?, ?)";
-        String encryptedPassword = encryptService.encrypt(user.getPassword());
+        String encryptedPassword = PasswordHasher.getInstance().hash(user.getPassword());
         try (Connection conn = Conn.getInstance()) {
             assert conn != null;
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -59,7 +58,9 @@ public class UserDAO {
 
 
     /**
-     * Searches for a user based on the username.
+     * Searches for a user based on the username. The search runs on its own connection, since
+     * logins search for users concurrently and the shared connection is closed by every
+     * statement run on it.
      *
      * @param username the username of the user to search for
      * @return the user if found, or null if not found
@@ -68,13 +69,17 @@ public class UserDAO {
         logger.info("Searching for user: " + username);
         User user = null;
         String sql = "SELECT * FROM User WHERE username = ?";
-        try (Connection conn = Conn.getInstance();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                String storedPassword = rs.getString("password");
-                user = new User(rs.getString("username"), storedPassword, rs.getString("role"));
+        try (Connection conn = Conn.newConnection()) {
+            if (conn == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, username);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    String storedPassword = rs.getString("password");
+                    user = new User(rs.getString("username"), storedPassword, rs.getString("role"));
+                }
             }
         } catch (SQLException e) {
             logger.error("Exception occurred while searching for user: " + username, e);
@@ -106,16 +111,14 @@ public class UserDAO {
     }
 
     /**
-     * Updates an existing user in the database.
+     * Updates an existing user in the database. The password is stored as a PasswordHasher hash.
      *
-     * @param user           the user to be updated
-     * @param encryptionType the encryption type used for storing user information
+     * @param user the user to be updated, holding the plain password
      * @return true if the user is updated successfully, false otherwise
      */
-    public boolean update(User user, String encryptionType) {
+    public boolean update(User user) {
         logger.info("Updating user: " + user);
-        EncryptService encryptService = new EncryptService(encryptionType, user.getKey());
-        user.setPassword(encryptService.encrypt(user.getPassword()));
+        user.setPassword(PasswordHasher.getInstance().hash(user.getPassword()));
         String sql = "UPDATE User SET password = ? WHERE username = ?";
         try (Connection conn = Conn.getInstance();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -159,6 +162,51 @@ public class UserDAO {
         }
     }
 
+    /**
+     * Counts the users in the database. The count runs on a dedicated connection, since it is
+     * called by the username filter in the background while the shared connection is in use.
+     *
+     * @return the number of users
+     * @throws SQLException if a database error occurs
+     */
+    public long countUsers() throws SQLException {
+        try (Connection conn = Conn.newConnection()) {
+            if (conn == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM User");
+                 ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Streams the username of every user to the given action. The rows are read one at a time
+     * on a dedicated connection, so the table is never held in memory and the shared connection
+     * stays available meanwhile.
+     *
+     * @param action the action receiving each username
+     * @throws SQLException if a database error occurs
+     */
+    public void forEachUsername(Consumer<String> action) throws SQLException {
+        try (Connection conn = Conn.newConnection()) {
+            if (conn == null) {
+                throw new SQLException("No database connection");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT username FROM User",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // A fetch size of Integer.MIN_VALUE makes the MySQL driver stream the rows
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        action.accept(rs.getString(1));
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Checks if a user with the specified username exists in the database.
      *
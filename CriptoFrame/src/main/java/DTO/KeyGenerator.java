@@ -1,17 +1,20 @@
 package DTO;
 
-import java.security.SecureRandom;
-import java.util.Arrays;
-
 public class KeyGenerator {
 
+    /**
+     * Generates a random AES key. Keys are taken from the pre-generated pools of KeySupply,
+     * so this does not create or seed a SecureRandom per call.
+     *
+     * @param length the key length in bytes (16, 24 or 32)
+     * @return a new random key
+     * @throws IllegalArgumentException if the length is not a valid AES key length
+     */
     public static byte[] generateAesKey(int length) {
         if (length != 16 && length != 24 && length != 32) {
             throw new IllegalArgumentException("Invalid AES key length");
         }
 
-        byte[] key = new byte[length];
-        new SecureRandom().nextBytes(key);
-        return key;
+        return KeySupply.getInstance().take(length);
     }
 }
@@ -0,0 +1,273 @@
+package DTO;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * KeySupply class hands out random AES keys from pools filled ahead of time.
+ *
+ * Each supported key length (16, 24 and 32 bytes) has a bounded pool. Taking a key from a pool
+ * costs a queue poll; when a pool drops below half of its capacity, a background daemon thread
+ * tops every pool up again. If a pool is empty, the key is generated on the caller's thread,
+ * so a burst of registrations is never blocked on the refill.
+ *
+ * Keys come from a DRBG SecureRandom kept per thread. It is seeded once when the thread first
+ * needs it, instead of on every call as new SecureRandom() would be, so generating a key never
+ * waits on the entropy source after start-up.
+ */
+public class KeySupply implements AutoCloseable {
+
+    // Supported AES key lengths in bytes
+    private static final int[] LENGTHS = {16, 24, 32};
+
+    // Keys kept per length by the shared instance, overridable with -DDTO.keySupply.capacity
+    private static final int DEFAULT_CAPACITY = Integer.getInteger("DTO.keySupply.capacity", 64);
+
+    // Per-thread random generator, seeded once per thread
+    private static final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(KeySupply::newRandom);
+
+    // Pre-generated keys, indexed like LENGTHS
+    private final ArrayBlockingQueue<byte[]>[] pools;
+
+    // Number of keys kept per length
+    private final int capacity;
+
+    // Thread filling the pools in the background
+    private final ExecutorService refiller;
+
+    // True while a refill is queued or running, so at most one is pending
+    private final AtomicBoolean refillPending = new AtomicBoolean();
+
+    // Keys served from a pool
+    private final LongAdder poolHits = new LongAdder();
+
+    // Keys generated on the caller's thread because the pool was empty
+    private final LongAdder poolMisses = new LongAdder();
+
+    // Number of completed refills
+    private final LongAdder refills = new LongAdder();
+
+    // Total time spent refilling, in nanoseconds
+    private final LongAdder refillNanos = new LongAdder();
+
+    // Duration of the last refill, in nanoseconds
+    private final AtomicLong lastRefillNanos = new AtomicLong();
+
+    // Duration of the slowest refill, in nanoseconds
+    private final AtomicLong maxRefillNanos = new AtomicLong();
+
+    /**
+     * Constructs a KeySupply keeping up to the given number of keys per length, and starts
+     * filling the pools in the background.
+     *
+     * @param capacity the number of keys kept per length
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public KeySupply(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid key supply capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.pools = new ArrayBlockingQueue[LENGTHS.length];
+        for (int i = 0; i < LENGTHS.length; i++) {
+            pools[i] = new ArrayBlockingQueue<>(capacity);
+        }
+        this.refiller = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "key-supply-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleRefill();
+    }
+
+    /**
+     * Returns the shared supply used by KeyGenerator.
+     *
+     * @return the shared KeySupply
+     */
+    public static KeySupply getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Takes a random key of the given length, from the pool when one is available.
+     *
+     * @param length the key length in bytes (16, 24 or 32)
+     * @return a new random key, never handed out before
+     * @throws IllegalArgumentException if the length is not a valid AES key length
+     */
+    public byte[] take(int length) {
+        ArrayBlockingQueue<byte[]> pool = pools[indexOf(length)];
+        byte[] key = pool.poll();
+        if (pool.size() <= capacity / 2) {
+            scheduleRefill();
+        }
+        if (key != null) {
+            poolHits.increment();
+            return key;
+        }
+        poolMisses.increment();
+        return generate(length);
+    }
+
+    /**
+     * Gets the number of keys currently pooled for the given length.
+     *
+     * @param length the key length in bytes (16, 24 or 32)
+     * @return the pool depth
+     * @throws IllegalArgumentException if the length is not a valid AES key length
+     */
+    public int getDepth(int length) {
+        return pools[indexOf(length)].size();
+    }
+
+    /**
+     * Gets the number of keys kept per length when the pools are full.
+     *
+     * @return the pool capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of keys served from a pool.
+     *
+     * @return the pool hit count
+     */
+    public long getPoolHitCount() {
+        return poolHits.sum();
+    }
+
+    /**
+     * Gets the number of keys generated on the caller's thread because the pool was empty.
+     *
+     * @return the pool miss count
+     */
+    public long getPoolMissCount() {
+        return poolMisses.sum();
+    }
+
+    /**
+     * Gets the number of completed refills.
+     *
+     * @return the refill count
+     */
+    public long getRefillCount() {
+        return refills.sum();
+    }
+
+    /**
+     * Gets the duration of the last refill.
+     *
+     * @return the latency in nanoseconds, or 0 if no refill completed yet
+     */
+    public long getLastRefillLatencyNanos() {
+        return lastRefillNanos.get();
+    }
+
+    /**
+     * Gets the duration of the slowest refill.
+     *
+     * @return the latency in nanoseconds, or 0 if no refill completed yet
+     */
+    public long getMaxRefillLatencyNanos() {
+        return maxRefillNanos.get();
+    }
+
+    /**
+     * Gets the average duration of a refill.
+     *
+     * @return the latency in nanoseconds, or 0 if no refill completed yet
+     */
+    public long getAverageRefillLatencyNanos() {
+        long count = refills.sum();
+        return count == 0 ? 0 : refillNanos.sum() / count;
+    }
+
+    /**
+     * Stops the refill thread. Keys can still be taken; they are generated on the caller's thread
+     * once the pools are empty.
+     */
+    @Override
+    public void close() {
+        refiller.shutdownNow();
+    }
+
+    private void scheduleRefill() {
+        if (refillPending.compareAndSet(false, true)) {
+            try {
+                refiller.execute(this::refill);
+            } catch (RuntimeException e) {
+                refillPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Tops every pool up to its capacity and records how long it took.
+     */
+    private void refill() {
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < LENGTHS.length; i++) {
+                while (pools[i].remainingCapacity() > 0) {
+                    if (!pools[i].offer(generate(LENGTHS[i]))) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            refills.increment();
+            refillNanos.add(elapsed);
+            lastRefillNanos.set(elapsed);
+            maxRefillNanos.accumulateAndGet(elapsed, Math::max);
+            refillPending.set(false);
+        }
+        // Keys taken while this refill was finishing did not schedule another one
+        for (ArrayBlockingQueue<byte[]> pool : pools) {
+            if (pool.size() <= capacity / 2) {
+                scheduleRefill();
+                break;
+            }
+        }
+    }
+
+    private static byte[] generate(int length) {
+        byte[] key = new byte[length];
+        random.get().nextBytes(key);
+        return key;
+    }
+
+    private static int indexOf(int length) {
+        for (int i = 0; i < LENGTHS.length; i++) {
+            if (LENGTHS[i] == length) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid AES key length");
+    }
+
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static final class Holder {
+        private static final KeySupply INSTANCE = new KeySupply(DEFAULT_CAPACITY);
+    }
+}
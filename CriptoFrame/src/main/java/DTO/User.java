@@ -1,12 +1,22 @@
 package DTO;
 
-import java.util.Arrays;
+import Crypt.KeyHandle;
+import Crypt.KeyVault;
+
+import java.lang.ref.Cleaner;
 
 /**
  * User class represents a user in the system with associated information such as username, password, and role.
+ *
+ * The key of the user is kept in the shared KeyVault, off the heap. getKey hands out a copy,
+ * which callers should not keep; the key is released when it is replaced, or once the user is
+ * no longer reachable.
  */
 public class User {
 
+    // Releases the keys of users that are no longer reachable
+    private static final Cleaner cleaner = Cleaner.create();
+
     // The username of the user
     private String username;
 
@@ -16,8 +26,11 @@ public class User {
     // The role of the user
     private String role;
 
-    // The key of the user
-    private byte[] key;
+    // Handle of the key of the user in the shared KeyVault
+    private KeyHandle keyHandle;
+
+    // Releases the key when the user is no longer reachable
+    private Cleaner.Cleanable keyRelease;
 
     /**
      * Constructs a User object with the specified username, password, and role.
@@ -47,6 +60,18 @@ public class User {
         this.username = username;
     }
 
+    /**
+     * Constructs a copy of the specified user, with its own copy of the key.
+     *
+     * @param user the user to copy
+     */
+    public User(User user) {
+        this(user.username, user.password, user.role);
+        if (user.keyHandle != null) {
+            holdKey(KeyVault.getInstance().store(KeyVault.getInstance().copy(user.keyHandle)));
+        }
+    }
+
     /**
      * Gets the username of the user.
      *
@@ -57,22 +82,46 @@ public class User {
     }
 
     /**
-     * Gets the key of the user.
+     * Gets a copy of the key of the user, read from the KeyVault.
      *
-     * @return the key of the user
+     * @return a copy of the key of the user, or null if the user has no key
      */
     public byte[] getKey() {
-        return key;
+        KeyHandle handle = keyHandle;
+        return handle == null ? null : KeyVault.getInstance().copy(handle);
     }
 
     /**
-     * Sets the key of the user.
+     * Gets the handle of the key of the user in the shared KeyVault.
      *
-     * @param key the new key for the user
+     * @return the key handle, or null if the user has no key
      */
+    public KeyHandle getKeyHandle() {
+        return keyHandle;
+    }
 
+    /**
+     * Sets the key of the user. A copy of the key is stored in the KeyVault, and the previous
+     * key of the user is released.
+     *
+     * @param key the new key for the user, or null to remove it
+     * @throws IllegalArgumentException if the key is empty or longer than 32 bytes
+     */
     public void setKey(byte[] key) {
-        this.key = key;
+        KeyHandle handle = key == null ? null : KeyVault.getInstance().store(key.clone());
+        if (keyRelease != null) {
+            keyRelease.clean();
+            keyRelease = null;
+        }
+        keyHandle = null;
+        if (handle != null) {
+            holdKey(handle);
+        }
+    }
+
+    private void holdKey(KeyHandle handle) {
+        keyHandle = handle;
+        keyRelease = cleaner.register(this, () -> KeyVault.getInstance().release(handle));
     }
 
     /**
@@ -131,7 +180,6 @@ public class User {
         sb.append("username='").append(username).append('\'');
         sb.append(", password='").append(password).append('\'');
         sb.append(", role='").append(role).append('\'');
-        sb.append(", key=").append(Arrays.toString(key));
         sb.append('}');
         return sb.toString();
     }
@@ -4,21 +4,73 @@ import BO.*;
 import Crypt.*;
 import DTO.*;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * AuthenticationManagement class provides methods for user authentication.
  *
  * This class is responsible for authenticating users by interacting with the
- * EncryptService for password encryption, the UserBO for retrieving user information,
- * and the TokenManager for generating authentication tokens.
+ * PasswordHasher for password verification, the UserBO for retrieving user information,
+ * and the TokenManager for generating authentication tokens. Passwords stored before
+ * hashing was introduced are still encrypted, and are checked with the EncryptService.
+ *
+ * authenticateUserAsync runs the same steps without blocking the caller. The user lookup runs
+ * on a virtual thread while the legacy form of the password is computed on another, and the
+ * hash is verified on the pool of the PasswordHasher, so thousands of logins can wait on JDBC
+ * without a platform thread each. A semaphore bounds the lookups in flight, since each of them
+ * opens its own database connection. Virtual threads are a preview feature before Java 21, and
+ * the code targets Java 20; on a Java 20 runtime a bounded pool of platform threads is used
+ * instead, and logins it cannot queue are refused.
+ *
+ * Concurrent logins for the same username, as sent by a client retrying in a loop, share the
+ * lookup made by UserBO; the password is still checked for each login on its own.
  */
 public class AuthenticationManagement {
 
+    // Logger for logging the executor of asynchronous logins
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationManagement.class);
+
+    // Default maximum number of user lookups in flight, overridable with -DManagement.auth.maxConcurrentLogins
+    private static final int DEFAULT_MAX_CONCURRENT_LOGINS = Integer.getInteger("Management.auth.maxConcurrentLogins", 256);
+
+    // Threads of the platform thread pool used without virtual threads, overridable with -DManagement.auth.loginThreads
+    private static final int LOGIN_THREADS = Integer.getInteger("Management.auth.loginThreads", 64);
+
+    // Tasks queued by that pool before logins are refused, overridable with -DManagement.auth.loginQueueSize
+    private static final int LOGIN_QUEUE_SIZE = Integer.getInteger("Management.auth.loginQueueSize", 10_000);
+
     // Service for encryption and decryption operations
     private final EncryptService encryptService;
 
     // Manager for handling authentication tokens
     private final TokenManager tokenManager;
 
+    // Business object used to look up users
+    private final UserBO userBO;
+
+    // Engine verifying password hashes
+    private final PasswordHasher passwordHasher;
+
+    // Maximum number of user lookups of asynchronous logins in flight
+    private final int maxConcurrentLogins;
+
+    // Permits of the user lookups of asynchronous logins
+    private final Semaphore loginPermits;
+
     /**
      * Constructs an AuthenticationManagement object with the specified EncryptService
      * and TokenManager.
@@ -27,8 +79,57 @@ public class AuthenticationManagement {
      * @param tokenManager   the manager for handling authentication tokens
      */
     public AuthenticationManagement(EncryptService encryptService, TokenManager tokenManager) {
+        this(encryptService, tokenManager, new UserBO());
+    }
+
+    /**
+     * Constructs an AuthenticationManagement object with the specified EncryptService,
+     * TokenManager and UserBO.
+     *
+     * @param encryptService the service for encrypting and decrypting data
+     * @param tokenManager   the manager for handling authentication tokens
+     * @param userBO         the business object used to look up users
+     */
+    public AuthenticationManagement(EncryptService encryptService, TokenManager tokenManager, UserBO userBO) {
+        this(encryptService, tokenManager, userBO, PasswordHasher.getInstance());
+    }
+
+    /**
+     * Constructs an AuthenticationManagement object with the specified EncryptService,
+     * TokenManager, UserBO and PasswordHasher.
+     *
+     * @param encryptService the service for checking passwords stored encrypted
+     * @param tokenManager   the manager for handling authentication tokens
+     * @param userBO         the business object used to look up users
+     * @param passwordHasher the engine verifying password hashes
+     */
+    public AuthenticationManagement(EncryptService encryptService, TokenManager tokenManager, UserBO userBO,
+                                    PasswordHasher passwordHasher) {
+        this(encryptService, tokenManager, userBO, passwordHasher, DEFAULT_MAX_CONCURRENT_LOGINS);
+    }
+
+    /**
+     * Constructs an AuthenticationManagement object with the specified EncryptService,
+     * TokenManager, UserBO and PasswordHasher, and limit of asynchronous logins.
+     *
+     * @param encryptService      the service for checking passwords stored encrypted
+     * @param tokenManager        the manager for handling authentication tokens
+     * @param userBO              the business object used to look up users
+     * @param passwordHasher      the engine verifying password hashes
+     * @param maxConcurrentLogins the maximum number of user lookups of asynchronous logins in flight
+     * @throws IllegalArgumentException if maxConcurrentLogins is not positive
+     */
+    public AuthenticationManagement(EncryptService encryptService, TokenManager tokenManager, UserBO userBO,
+                                    PasswordHasher passwordHasher, int maxConcurrentLogins) {
+        if (maxConcurrentLogins <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of concurrent logins: " + maxConcurrentLogins);
+        }
         this.encryptService = encryptService;
         this.tokenManager = tokenManager;
+        this.userBO = userBO;
+        this.passwordHasher = passwordHasher;
+        this.maxConcurrentLogins = maxConcurrentLogins;
+        this.loginPermits = new Semaphore(maxConcurrentLogins);
     }
 
     /**
@@ -40,17 +141,12 @@ public class AuthenticationManagement {
      *         or null if authentication fails
      */
     public Token authenticateUser(String username, String password) {
-        // Create a new instance of UserBO to interact with user data
-        UserBO userBO = new UserBO();
-
-        // Encrypt the provided password for comparison
-        String encryptedPassword = encryptService.encrypt(password);
-
         // Search for the user based on the provided username
         User user = userBO.searchForUser(username);
+        String storedPassword = user == null ? null : user.getPassword();
 
-        // Check if the passwords match
-        if (!encryptedPassword.equals(user.getPassword())) {
+        // Check if the passwords match; unknown users are checked against a dummy hash
+        if (!checkPassword(password, storedPassword)) {
             return null;
         }
 
@@ -60,5 +156,117 @@ public class AuthenticationManagement {
         // Return a Token object with the authentication token and associated user information
         return new Token(tokenValue, user);
     }
+
+    /**
+     * Authenticates a user without blocking the caller. The user is looked up on a virtual
+     * thread, waiting for a permit if too many lookups are in flight, while the legacy
+     * encrypted form of the password is computed alongside.
+     *
+     * @param username the username of the user to be authenticated
+     * @param password the password of the user to be authenticated
+     * @return a future completing with the authentication token, or with null if authentication
+     *         fails or the login executor or password hasher is saturated; it completes
+     *         exceptionally if the lookup fails
+     */
+    public CompletableFuture<Token> authenticateUserAsync(String username, String password) {
+        ExecutorService executor = LoginExecutor.INSTANCE;
+        CompletableFuture<User> lookup;
+        CompletableFuture<String> legacyPassword;
+        try {
+            lookup = CompletableFuture.supplyAsync(() -> lookUp(username), executor);
+            legacyPassword = CompletableFuture.supplyAsync(() -> encryptService.encrypt(password), executor);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Login executor saturated, refusing login of user: " + username);
+            return CompletableFuture.completedFuture(null);
+        }
+        return lookup.thenCompose(user -> {
+            String storedPassword = user == null ? null : user.getPassword();
+            CompletableFuture<Boolean> match = storedPassword == null || PasswordHasher.isHash(storedPassword)
+                    ? passwordHasher.verifyAsync(password, storedPassword).exceptionally(AuthenticationManagement::rejected)
+                    : legacyPassword.thenApply(encrypted -> matches(encrypted, storedPassword));
+            return match.thenApply(matched -> matched ? new Token(tokenManager.createToken(user), user) : null);
+        });
+    }
+
+    /**
+     * Gets the number of user lookups of asynchronous logins in flight.
+     *
+     * @return the active login count
+     */
+    public int getActiveLoginCount() {
+        return maxConcurrentLogins - loginPermits.availablePermits();
+    }
+
+    /**
+     * Looks up a user once a permit is available. Waiting blocks a virtual thread only.
+     */
+    private User lookUp(String username) {
+        try {
+            loginPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        try {
+            return userBO.searchForUser(username);
+        } finally {
+            loginPermits.release();
+        }
+    }
+
+    /**
+     * Fails a verification turned away by a saturated PasswordHasher, as verify does.
+     */
+    private static boolean rejected(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RejectedExecutionException) {
+            return false;
+        }
+        throw e instanceof CompletionException completion ? completion : new CompletionException(e);
+    }
+
+    private boolean checkPassword(String password, String storedPassword) {
+        if (storedPassword == null || PasswordHasher.isHash(storedPassword)) {
+            return passwordHasher.verify(password, storedPassword);
+        }
+        return matches(encryptService.encrypt(password), storedPassword);
+    }
+
+    private static boolean matches(String encryptedPassword, String storedPassword) {
+        return MessageDigest.isEqual(encryptedPassword.getBytes(StandardCharsets.UTF_8),
+                storedPassword.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lazily created executor of the asynchronous logins, shared by every instance.
+     */
+    private static final class LoginExecutor {
+
+        private static final ExecutorService INSTANCE = create();
+
+        /**
+         * Creates an executor starting a virtual thread per task. The factory is looked up
+         * reflectively, since the code targets Java 20, where virtual threads are a preview API
+         * and the lookup fails unless preview features are enabled; it succeeds on Java 21 and
+         * later runtimes. Otherwise, the tasks run on a bounded pool of platform threads.
+         */
+        private static ExecutorService create() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.warn("Virtual threads unavailable, running asynchronous logins on " + LOGIN_THREADS
+                        + " platform threads", e);
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(LOGIN_THREADS, LOGIN_THREADS, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(LOGIN_QUEUE_SIZE), r -> {
+                    Thread thread = new Thread(r, "authentication");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                pool.allowCoreThreadTimeOut(true);
+                return pool;
+            }
+        }
+    }
 }
 
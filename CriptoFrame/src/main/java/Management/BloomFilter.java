@@ -0,0 +1,152 @@
+package Management;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BloomFilter class is a fixed-size set of strings answering "definitely absent" or "maybe present".
+ *
+ * The bits live in a long array updated with atomic ORs, so any number of threads can add and
+ * test values without locking. A value is hashed once into 64 bits and the probe positions are
+ * derived from it by double hashing. Values cannot be removed: a filter is rebuilt from the
+ * current contents of its set once removals or growth make it inaccurate.
+ */
+public final class BloomFilter {
+
+    // Atomic access to the words of the bit array
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Bits of the filter
+    private final long[] words;
+
+    // Number of bits of the filter, a multiple of 64
+    private final long bitCount;
+
+    // Number of bits set per value
+    private final int hashCount;
+
+    // Number of values the filter was sized for
+    private final long expectedInsertions;
+
+    // Number of values added
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * Constructs an empty filter sized for the given number of values and false positive rate.
+     *
+     * @param expectedInsertions the number of values the filter will hold
+     * @param falsePositiveRate  the rate of absent values reported as present at that size, between 0 and 1
+     * @throws IllegalArgumentException if the size or rate is out of range
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid Bloom filter settings");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long wordCount = Math.max(1, (bits + 63) / 64);
+        if (wordCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Bloom filter too large");
+        }
+        this.words = new long[(int) wordCount];
+        this.bitCount = wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value the value to add
+     */
+    public void put(String value) {
+        long hash = hash(value);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if (((long) WORDS.getOpaque(words, word) & mask) == 0) {
+                WORDS.getAndBitwiseOrRelease(words, word, mask);
+            }
+            hash += step;
+        }
+        insertions.increment();
+    }
+
+    /**
+     * Checks if a value may have been added to the filter.
+     *
+     * @param value the value to check
+     * @return false if the value was never added, true if it probably was
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash, bitCount);
+            if (((long) WORDS.getAcquire(words, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if more values were added than the filter was sized for, so its false positive
+     * rate is above the configured one.
+     *
+     * @return true if the filter should be rebuilt larger
+     */
+    public boolean isSaturated() {
+        return insertions.sum() > expectedInsertions;
+    }
+
+    /**
+     * Gets the number of values added to the filter, counting repeated values each time.
+     *
+     * @return the insertion count
+     */
+    public long getInsertionCount() {
+        return insertions.sum();
+    }
+
+    /**
+     * Gets the number of bits of the filter.
+     *
+     * @return the bit count
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Gets the number of bits set per value.
+     *
+     * @return the hash count
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spreads the bits of a hash (the MurmurHash3 finalizer).
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
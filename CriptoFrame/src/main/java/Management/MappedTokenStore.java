@@ -0,0 +1,817 @@
+package Management;
+
+import DTO.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * MappedTokenStore class keeps opaque tokens in a memory-mapped file, so sessions survive a restart.
+ *
+ * The file is an open-addressing hash table of fixed 128-byte records with linear probing. A
+ * record holds the token UUID as two longs, the expiry in epoch milliseconds, and the username
+ * and role of the user. Lookups hash the token to a slot and compare longs in the mapping: no
+ * deserialization, no heap beyond the returned User, and nothing to load at startup since
+ * opening the store only maps the file.
+ *
+ * Reads take no lock. Each record starts with a header word combining its state and a sequence
+ * number; writers mark the record busy, write the body and then publish the header, and readers
+ * retry when the header changed while they read the body. A record never spans two pages and
+ * its header is written last, so a crash leaves every record either old, new or busy; busy
+ * records are treated as free. Writes are serialized by a single lock.
+ *
+ * A background task turns expired records into tombstones. When tombstones fill a quarter of
+ * the table, or the table is over half full, the live records are copied into a new file on the
+ * background thread, which atomically replaces the old one; the table doubles in size when more
+ * than three eighths of it is live. The copy takes the write lock a block at a time, and writes
+ * made meanwhile go to both files, so writers are not held up for the whole copy. Only if the
+ * table reaches 90% before the copy completes do writers wait for it. Only UUID tokens, as
+ * created by TokenManager, can be stored.
+ */
+public class MappedTokenStore implements TokenBackend {
+
+    // Marker at the start of the file
+    private static final int MAGIC = 0x544F4B53;
+
+    // Version of the file format
+    private static final int VERSION = 1;
+
+    // Size of the file header, one page so the records stay page aligned
+    private static final int HEADER_SIZE = 4096;
+
+    // Size of a record
+    private static final int RECORD_SIZE = 128;
+
+    // Records per mapped segment, keeping each mapping at 1 GB
+    private static final int SEGMENT_SHIFT = 23;
+
+    // Longest username, in UTF-8 bytes
+    private static final int MAX_USERNAME = 72;
+
+    // Longest role, in UTF-8 bytes
+    private static final int MAX_ROLE = 22;
+
+    // Record states, in the low byte of the record header
+    private static final long EMPTY = 0;
+    private static final long LIVE = 1;
+    private static final long TOMBSTONE = 2;
+    private static final long BUSY = 3;
+
+    // Offsets within a record
+    private static final int OFFSET_MSB = 8;
+    private static final int OFFSET_LSB = 16;
+    private static final int OFFSET_EXPIRES = 24;
+    private static final int OFFSET_USERNAME_LENGTH = 32;
+    private static final int OFFSET_ROLE_LENGTH = 33;
+    private static final int OFFSET_USERNAME = 34;
+    private static final int OFFSET_ROLE = OFFSET_USERNAME + MAX_USERNAME;
+
+    // Offsets within the file header
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_LIVE = 16;
+    private static final int OFFSET_TOMBSTONES = 24;
+
+    // Atomic access to the longs of a mapping; the file is little-endian on every platform
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Records swept or copied per hold of the write lock
+    private static final int BLOCK = 65_536;
+
+    // Logger for logging failed compactions
+    private static final Logger logger = LoggerFactory.getLogger(MappedTokenStore.class);
+
+    // Placeholder returned by a read that does not need the user
+    private static final User PRESENT = new User("");
+
+    // Path of the file
+    private final Path path;
+
+    // Time to live of tokens stored without an explicit one, in milliseconds
+    private final long defaultTtlMillis;
+
+    // Current table, replaced when the file is rebuilt
+    private volatile Table table;
+
+    // Lock serializing writes, sweeps and rebuilds
+    private final Object writeLock = new Object();
+
+    // Table being filled by a compaction, receiving every write until it replaces the current
+    // one, or null outside of a compaction; guarded by the write lock
+    private Table pending;
+
+    // Whether a compaction was requested and has not started yet
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+
+    // Whether a compaction is running
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    // Whether the store was closed; guarded by the write lock
+    private boolean closed;
+
+    // Thread sweeping expired records and compacting the file
+    private final ScheduledExecutorService compactor;
+
+    // Tokens removed because their time to live passed
+    private final LongAdder expirations = new LongAdder();
+
+    // Number of rebuilds of the file
+    private final LongAdder compactions = new LongAdder();
+
+    /**
+     * Opens the store in the given file, creating it if it does not exist, and starts sweeping
+     * expired tokens in the background.
+     *
+     * @param path               the file of the store
+     * @param initialCapacity    the number of records of a new file, rounded up to a power of two
+     *                           of at least 16
+     * @param defaultTtl         the time to live of tokens stored without an explicit one
+     * @param compactionInterval the time between two sweeps of expired tokens
+     * @throws RuntimeException if the file cannot be opened or is not a token store
+     */
+    public MappedTokenStore(Path path, long initialCapacity, Duration defaultTtl, Duration compactionInterval) {
+        if (initialCapacity <= 0 || defaultTtl.isNegative() || defaultTtl.isZero()
+                || compactionInterval.isNegative() || compactionInterval.isZero()) {
+            throw new IllegalArgumentException("Invalid token store settings");
+        }
+        this.path = path;
+        this.defaultTtlMillis = defaultTtl.toMillis();
+        try {
+            this.table = Files.exists(path) && Files.size(path) > 0
+                    ? Table.open(path)
+                    : Table.create(path, Math.max(16, Long.highestOneBit(initialCapacity - 1) << 1));
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening token store " + path, e);
+        }
+        this.compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "token-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = compactionInterval.toMillis();
+        compactor.scheduleWithFixedDelay(this::expire, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void put(String token, User user) {
+        put(token, user, System.currentTimeMillis() + defaultTtlMillis);
+    }
+
+    @Override
+    public void put(String token, User user, Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Invalid token time to live: " + ttl);
+        }
+        put(token, user, System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    @Override
+    public User get(String token) {
+        return !TokenId.isValid(token) ? null : table.read(TokenId.mostSignificantBits(token), TokenId.leastSignificantBits(token),
+                System.currentTimeMillis(), true);
+    }
+
+    @Override
+    public boolean contains(String token) {
+        return TokenId.isValid(token) && table.read(TokenId.mostSignificantBits(token), TokenId.leastSignificantBits(token),
+                System.currentTimeMillis(), false) != null;
+    }
+
+    @Override
+    public User remove(String token) {
+        if (!TokenId.isValid(token)) {
+            return null;
+        }
+        long msb = TokenId.mostSignificantBits(token);
+        long lsb = TokenId.leastSignificantBits(token);
+        synchronized (writeLock) {
+            User user = table.delete(msb, lsb);
+            if (user != null && pending != null) {
+                pending.delete(msb, lsb);
+            }
+            return user;
+        }
+    }
+
+    @Override
+    public void forEachToken(Consumer<String> action) {
+        table.forEachLive(System.currentTimeMillis(), false, (token, user, expiresAt) -> action.accept(token));
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        table.forEachLive(System.currentTimeMillis(), true, visitor);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, table.count(OFFSET_LIVE));
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * Gets the number of tokens evicted. The store grows instead of evicting, so this is always 0.
+     *
+     * @return 0
+     */
+    @Override
+    public long getEvictionCount() {
+        return 0;
+    }
+
+    /**
+     * Gets the number of records of the table.
+     *
+     * @return the capacity
+     */
+    public long getCapacity() {
+        return table.capacity;
+    }
+
+    /**
+     * Gets the number of removed or expired records not reclaimed yet.
+     *
+     * @return the tombstone count
+     */
+    public long getTombstoneCount() {
+        return table.count(OFFSET_TOMBSTONES);
+    }
+
+    /**
+     * Gets the number of times the file was rebuilt to reclaim tombstones or grow.
+     *
+     * @return the compaction count
+     */
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    /**
+     * Turns expired records into tombstones, and compacts the file if tombstones fill a quarter
+     * of it. The background task calls this every compaction interval. The lock is released
+     * between blocks of records, so writers are never held up for a whole sweep.
+     */
+    public void expire() {
+        long capacity = table.capacity;
+        for (long start = 0; start < capacity; start += BLOCK) {
+            synchronized (writeLock) {
+                Table current = table;
+                if (current.capacity != capacity) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                long expired = 0;
+                long abandoned = 0;
+                for (long slot = start; slot < Math.min(capacity, start + BLOCK); slot++) {
+                    long state = current.state(slot);
+                    if (state == LIVE && current.expiresAt(slot) <= now) {
+                        current.publish(slot, TOMBSTONE);
+                        expired++;
+                    } else if (state == BUSY) {
+                        // Left by a crash in the middle of a write
+                        current.publish(slot, TOMBSTONE);
+                        abandoned++;
+                    }
+                }
+                current.addCounts(-expired, expired + abandoned);
+                expirations.add(expired);
+            }
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Forces the changes of the mapping to the disk, so they survive a crash of the machine
+     * and not only of the process.
+     */
+    public void flush() {
+        table.force();
+    }
+
+    /**
+     * Stops the background sweeps, waits for a running compaction to stop and flushes the file.
+     */
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            closed = true;
+        }
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            table.force();
+            table.close();
+        }
+    }
+
+    private void put(String token, User user, long expiresAt) {
+        if (!TokenId.isValid(token)) {
+            throw new IllegalArgumentException("Mapped token store only holds UUID tokens");
+        }
+        byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] role = user.getRole() == null ? new byte[0] : user.getRole().getBytes(StandardCharsets.UTF_8);
+        if (username.length > MAX_USERNAME || role.length > MAX_ROLE) {
+            throw new IllegalArgumentException("Username or role too long for the mapped token store");
+        }
+        long msb = TokenId.mostSignificantBits(token);
+        long lsb = TokenId.leastSignificantBits(token);
+        synchronized (writeLock) {
+            Table current = table;
+            while (current.occupied() + 1 > current.capacity * 9 / 10) {
+                // Last resort, the background compaction did not keep up
+                if (pending != null) {
+                    awaitCompaction();
+                } else {
+                    rebuild(current.targetCapacity());
+                }
+                current = table;
+            }
+            if (current.occupied() + 1 > current.capacity / 2 && compactionQueued.compareAndSet(false, true)) {
+                compactor.execute(() -> {
+                    compactionQueued.set(false);
+                    compactIfNeeded();
+                });
+            }
+            current.store(msb, lsb, expiresAt, username, role);
+            if (pending != null) {
+                pending.store(msb, lsb, expiresAt, username, role);
+            }
+        }
+    }
+
+    /**
+     * Compacts the file if tombstones fill a quarter of it or it is over half full, unless a
+     * compaction is already running. Failures are logged, since this runs in the background.
+     */
+    private void compactIfNeeded() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long capacity;
+            synchronized (writeLock) {
+                Table current = table;
+                if (closed || current.occupied() <= current.capacity / 2
+                        && current.count(OFFSET_TOMBSTONES) <= current.capacity / 4) {
+                    return;
+                }
+                capacity = current.targetCapacity();
+            }
+            compact(capacity);
+        } catch (RuntimeException e) {
+            logger.error("Failed to compact token store " + path, e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Copies the live records into a new file of the given capacity and atomically replaces
+     * the old file with it. The records are copied a block at a time under the write lock, and
+     * writes made meanwhile are applied to both tables. Must be called without the write lock.
+     */
+    private void compact(long capacity) {
+        Path temporary = temporaryPath();
+        Table old;
+        Table rebuilt;
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            old = table;
+            try {
+                rebuilt = Table.create(temporary, capacity);
+            } catch (IOException e) {
+                throw new RuntimeException("Error compacting token store " + path, e);
+            }
+            pending = rebuilt;
+        }
+        try {
+            long expired = 0;
+            for (long start = 0; start < old.capacity; start += BLOCK) {
+                synchronized (writeLock) {
+                    if (closed) {
+                        abandon(rebuilt, temporary);
+                        return;
+                    }
+                    expired += copyLive(old, rebuilt, start, Math.min(old.capacity, start + BLOCK));
+                }
+            }
+            // Most pages are written back before taking the lock for the swap
+            rebuilt.force();
+            synchronized (writeLock) {
+                if (closed) {
+                    abandon(rebuilt, temporary);
+                    return;
+                }
+                rebuilt.force();
+                swap(old, rebuilt, temporary, expired);
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (writeLock) {
+                if (pending == rebuilt) {
+                    pending = null;
+                    writeLock.notifyAll();
+                }
+            }
+            rebuilt.close();
+            throw new RuntimeException("Error compacting token store " + path, e);
+        }
+    }
+
+    /**
+     * Copies the live records into a new file of the given capacity and atomically replaces
+     * the old file with it, all under the write lock. Must be called with the write lock held.
+     */
+    private void rebuild(long capacity) {
+        Path temporary = temporaryPath();
+        try {
+            Table old = table;
+            Table rebuilt = Table.create(temporary, capacity);
+            long expired = copyLive(old, rebuilt, 0, old.capacity);
+            rebuilt.force();
+            swap(old, rebuilt, temporary, expired);
+        } catch (IOException e) {
+            throw new RuntimeException("Error compacting token store " + path, e);
+        }
+    }
+
+    /**
+     * Copies the live records of a range of slots into the rebuilt table. Must be called with
+     * the write lock held.
+     *
+     * @return the number of expired records left behind
+     */
+    private static long copyLive(Table old, Table rebuilt, long from, long to) {
+        long now = System.currentTimeMillis();
+        long expired = 0;
+        for (long slot = from; slot < to; slot++) {
+            if (old.state(slot) != LIVE) {
+                continue;
+            }
+            if (old.expiresAt(slot) > now) {
+                rebuilt.copyFrom(old, slot);
+            } else {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Replaces the old file with the rebuilt one and wakes the writers waiting for it. Must be
+     * called with the write lock held.
+     */
+    private void swap(Table old, Table rebuilt, Path temporary, long expired) throws IOException {
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        table = rebuilt;
+        pending = null;
+        old.close();
+        expirations.add(expired);
+        compactions.increment();
+        writeLock.notifyAll();
+    }
+
+    /**
+     * Drops the table of a compaction interrupted by close. Must be called with the write lock held.
+     */
+    private void abandon(Table rebuilt, Path temporary) throws IOException {
+        pending = null;
+        writeLock.notifyAll();
+        rebuilt.close();
+        Files.deleteIfExists(temporary);
+    }
+
+    /**
+     * Waits for the running compaction to replace the table. Must be called with the write
+     * lock held, which is released meanwhile.
+     */
+    private void awaitCompaction() {
+        try {
+            writeLock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for the token store compaction", e);
+        }
+    }
+
+    private Path temporaryPath() {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    /**
+     * A mapping of one version of the file.
+     */
+    private static final class Table {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final MappedByteBuffer[] segments;
+        private final long capacity;
+
+        private Table(FileChannel channel, long capacity) throws IOException {
+            this.channel = channel;
+            this.capacity = capacity;
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            int count = (int) ((capacity + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long records = Math.min(1L << SEGMENT_SHIFT, capacity - ((long) i << SEGMENT_SHIFT));
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + ((long) i << SEGMENT_SHIFT) * RECORD_SIZE, records * RECORD_SIZE);
+            }
+        }
+
+        static Table create(Path path, long capacity) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Table table = new Table(channel, capacity);
+            table.header.order(ByteOrder.LITTLE_ENDIAN).putInt(4, VERSION).putLong(OFFSET_CAPACITY, capacity);
+            table.header.putInt(0, MAGIC);
+            return table;
+        }
+
+        static Table open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            long capacity = header.getLong(OFFSET_CAPACITY);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || Long.bitCount(capacity) != 1
+                    || channel.size() < HEADER_SIZE + capacity * RECORD_SIZE) {
+                channel.close();
+                throw new IOException("Not a token store file");
+            }
+            return new Table(channel, capacity);
+        }
+
+        /**
+         * Reads the record of a token without locking, retrying while a writer changes it.
+         *
+         * @return the user of the token, a placeholder if withUser is false, or null if absent or expired
+         */
+        User read(long msb, long lsb, long now, boolean withUser) {
+            long slot = index(msb, lsb);
+            for (long probes = 0; probes < capacity; ) {
+                MappedByteBuffer segment = segment(slot);
+                int offset = offset(slot);
+                long before = (long) LONGS.getAcquire(segment, offset);
+                long state = before & 0xFF;
+                if (state == EMPTY) {
+                    return null;
+                }
+                if (state == LIVE && (long) LONGS.get(segment, offset + OFFSET_MSB) == msb
+                        && (long) LONGS.get(segment, offset + OFFSET_LSB) == lsb) {
+                    long expiresAt = (long) LONGS.get(segment, offset + OFFSET_EXPIRES);
+                    User user = withUser ? user(slot) : PRESENT;
+                    VarHandle.loadLoadFence();
+                    if ((long) LONGS.getVolatile(segment, offset) != before) {
+                        continue;
+                    }
+                    return expiresAt > now ? user : null;
+                }
+                slot = (slot + 1) & (capacity - 1);
+                probes++;
+            }
+            return null;
+        }
+
+        /**
+         * Visits every live record without locking, reading each record again while a writer
+         * changes it. The user is a placeholder if withUser is false.
+         */
+        void forEachLive(long now, boolean withUser, EntryVisitor visitor) {
+            for (long slot = 0; slot < capacity; slot++) {
+                MappedByteBuffer segment = segment(slot);
+                int offset = offset(slot);
+                while (true) {
+                    long before = (long) LONGS.getAcquire(segment, offset);
+                    if ((before & 0xFF) != LIVE) {
+                        break;
+                    }
+                    long msb = (long) LONGS.get(segment, offset + OFFSET_MSB);
+                    long lsb = (long) LONGS.get(segment, offset + OFFSET_LSB);
+                    long expiresAt = (long) LONGS.get(segment, offset + OFFSET_EXPIRES);
+                    User user = withUser ? user(slot) : PRESENT;
+                    VarHandle.loadLoadFence();
+                    if ((long) LONGS.getVolatile(segment, offset) == before) {
+                        if (expiresAt > now) {
+                            visitor.visit(TokenId.toString(msb, lsb), user, expiresAt);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds the live record of a token. Must be called with the write lock held.
+         *
+         * @return the slot, or -1 if the token is not stored
+         */
+        long find(long msb, long lsb) {
+            long slot = index(msb, lsb);
+            for (long probes = 0; probes < capacity; probes++) {
+                long state = state(slot);
+                if (state == EMPTY) {
+                    return -1;
+                }
+                if (state == LIVE && msb(slot) == msb && lsb(slot) == lsb) {
+                    return slot;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the first empty or tombstone slot on the probe sequence of a token.
+         */
+        long freeSlot(long msb, long lsb) {
+            long slot = index(msb, lsb);
+            for (long probes = 0; probes < capacity; probes++) {
+                long state = state(slot);
+                if (state != LIVE) {
+                    return slot;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            throw new IllegalStateException("Token store full");
+        }
+
+        /**
+         * Sets the state of a record and bumps its sequence number, releasing the writes before it.
+         */
+        void publish(long slot, long state) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            long sequence = ((long) LONGS.getVolatile(segment, offset) >>> 8) + 1;
+            LONGS.setVolatile(segment, offset, sequence << 8 | state);
+        }
+
+        void write(long slot, long msb, long lsb, long expiresAt, byte[] username, byte[] role) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            LONGS.set(segment, offset + OFFSET_MSB, msb);
+            LONGS.set(segment, offset + OFFSET_LSB, lsb);
+            LONGS.set(segment, offset + OFFSET_EXPIRES, expiresAt);
+            segment.put(offset + OFFSET_USERNAME_LENGTH, (byte) username.length);
+            segment.put(offset + OFFSET_ROLE_LENGTH, (byte) role.length);
+            segment.put(offset + OFFSET_USERNAME, username);
+            segment.put(offset + OFFSET_ROLE, role);
+        }
+
+        /**
+         * Stores a token, replacing its record if it has one. Must be called with the write lock held.
+         */
+        void store(long msb, long lsb, long expiresAt, byte[] username, byte[] role) {
+            long existing = find(msb, lsb);
+            long slot = existing >= 0 ? existing : freeSlot(msb, lsb);
+            boolean reused = existing < 0 && state(slot) == TOMBSTONE;
+            publish(slot, BUSY);
+            write(slot, msb, lsb, expiresAt, username, role);
+            publish(slot, LIVE);
+            if (existing < 0) {
+                addCounts(1, reused ? -1 : 0);
+            }
+        }
+
+        /**
+         * Turns the record of a token into a tombstone. Must be called with the write lock held.
+         *
+         * @return the user of the token, or null if it is not stored
+         */
+        User delete(long msb, long lsb) {
+            long slot = find(msb, lsb);
+            if (slot < 0) {
+                return null;
+            }
+            User user = user(slot);
+            publish(slot, TOMBSTONE);
+            addCounts(-1, 1);
+            return user;
+        }
+
+        /**
+         * Copies a live record of another table, replacing the record of the same token if this
+         * table has one. The table must not be read yet, and the write lock must be held.
+         */
+        void copyFrom(Table source, long sourceSlot) {
+            long existing = find(source.msb(sourceSlot), source.lsb(sourceSlot));
+            long slot = existing >= 0 ? existing : freeSlot(source.msb(sourceSlot), source.lsb(sourceSlot));
+            boolean reused = existing < 0 && state(slot) == TOMBSTONE;
+            copy(slot, source, sourceSlot);
+            if (existing < 0) {
+                addCounts(1, reused ? -1 : 0);
+            }
+        }
+
+        void copy(long slot, Table source, long sourceSlot) {
+            segment(slot).put(offset(slot), source.segment(sourceSlot), offset(sourceSlot), RECORD_SIZE);
+            MappedByteBuffer segment = segment(slot);
+            LONGS.set(segment, offset(slot), LIVE);
+        }
+
+        User user(long slot) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            byte[] username = new byte[Math.min(MAX_USERNAME, Byte.toUnsignedInt(segment.get(offset + OFFSET_USERNAME_LENGTH)))];
+            byte[] role = new byte[Math.min(MAX_ROLE, Byte.toUnsignedInt(segment.get(offset + OFFSET_ROLE_LENGTH)))];
+            segment.get(offset + OFFSET_USERNAME, username);
+            segment.get(offset + OFFSET_ROLE, role);
+            return new User(new String(username, StandardCharsets.UTF_8),
+                    role.length == 0 ? null : new String(role, StandardCharsets.UTF_8));
+        }
+
+        long state(long slot) {
+            return (long) LONGS.getVolatile(segment(slot), offset(slot)) & 0xFF;
+        }
+
+        long msb(long slot) {
+            return (long) LONGS.get(segment(slot), offset(slot) + OFFSET_MSB);
+        }
+
+        long lsb(long slot) {
+            return (long) LONGS.get(segment(slot), offset(slot) + OFFSET_LSB);
+        }
+
+        long expiresAt(long slot) {
+            return (long) LONGS.get(segment(slot), offset(slot) + OFFSET_EXPIRES);
+        }
+
+        /**
+         * Gets the number of live and tombstone records, which probes walk over.
+         */
+        long occupied() {
+            return count(OFFSET_LIVE) + count(OFFSET_TOMBSTONES);
+        }
+
+        /**
+         * Gets the capacity of a compacted copy, doubled when more than three eighths are live.
+         */
+        long targetCapacity() {
+            return count(OFFSET_LIVE) > capacity * 3 / 8 ? capacity * 2 : capacity;
+        }
+
+        long count(int headerOffset) {
+            return (long) LONGS.getVolatile(header, headerOffset);
+        }
+
+        void addCounts(long live, long tombstones) {
+            LONGS.setVolatile(header, OFFSET_LIVE, count(OFFSET_LIVE) + live);
+            LONGS.setVolatile(header, OFFSET_TOMBSTONES, count(OFFSET_TOMBSTONES) + tombstones);
+        }
+
+        void force() {
+            header.force();
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The mapping stays valid after the channel is closed
+            }
+        }
+
+        private long index(long msb, long lsb) {
+            long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+            return (hash ^ (hash >>> 32)) & (capacity - 1);
+        }
+
+        private MappedByteBuffer segment(long slot) {
+            return segments[(int) (slot >>> SEGMENT_SHIFT)];
+        }
+
+        private static int offset(long slot) {
+            return (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * RECORD_SIZE;
+        }
+    }
+}
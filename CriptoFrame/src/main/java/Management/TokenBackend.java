@@ -0,0 +1,148 @@
+package Management;
+
+import DTO.User;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * TokenBackend interface defines where a TokenManager keeps its opaque tokens.
+ *
+ * TokenStore keeps them on the heap and loses them on restart; MappedTokenStore keeps them in
+ * a memory-mapped file that survives restarts. Expired tokens are never returned.
+ *
+ * Backends may support sliding expiration, where uses of a token recorded by touch push its
+ * expiry back; TokenIndex does. The other backends keep the expiry a token was stored with.
+ */
+public interface TokenBackend extends AutoCloseable {
+
+    /**
+     * Visitor of the stored tokens with their users and expiry.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+
+        /**
+         * Called with one stored token.
+         *
+         * @param token           the token value
+         * @param user            the user the token belongs to
+         * @param expiresAtMillis the expiry of the token, in epoch milliseconds
+         */
+        void visit(String token, User user, long expiresAtMillis);
+    }
+
+    /**
+     * Stores a token with the default time to live, replacing any previous entry for the same value.
+     *
+     * @param token the token value
+     * @param user  the user the token belongs to
+     */
+    void put(String token, User user);
+
+    /**
+     * Stores a token with the given time to live, replacing any previous entry for the same value.
+     *
+     * @param token the token value
+     * @param user  the user the token belongs to
+     * @param ttl   the time to live of the token
+     */
+    void put(String token, User user, Duration ttl);
+
+    /**
+     * Gets the user of a token.
+     *
+     * @param token the token value
+     * @return the user, or null if the token is unknown or has expired
+     */
+    User get(String token);
+
+    /**
+     * Checks if a token is stored and has not expired.
+     *
+     * @param token the token value
+     * @return true if the token is active
+     */
+    boolean contains(String token);
+
+    /**
+     * Checks if a token is stored and has not expired, and records this use of the token for
+     * sliding expiration unless a use was already recorded less than window ago. Recording a use
+     * only sets a field of the token; its expiry is extended later by extendTouched. Backends
+     * without sliding expiration only check the token.
+     *
+     * @param token        the token value
+     * @param seenAtMillis the time of the use, in epoch milliseconds
+     * @param windowMillis the time after a recorded use during which further uses are not recorded
+     * @return true if the token is active
+     */
+    default boolean touch(String token, long seenAtMillis, long windowMillis) {
+        return contains(token);
+    }
+
+    /**
+     * Extends the expiry of the tokens whose uses were recorded since the previous call, to
+     * their last recorded use plus the idle time to live, unless they already expire later.
+     * Tokens that expired before their last recorded use are not extended. Backends without
+     * sliding expiration visit nothing.
+     *
+     * @param idleTtlMillis the time to live of a token after its last use, in milliseconds
+     * @param visitor       the visitor called with each extended token and its new expiry; it
+     *                      must not call back into the backend
+     * @return the number of extended tokens
+     */
+    default int extendTouched(long idleTtlMillis, EntryVisitor visitor) {
+        return 0;
+    }
+
+    /**
+     * Removes a token.
+     *
+     * @param token the token value
+     * @return the user of the token, or null if it was not stored
+     */
+    User remove(String token);
+
+    /**
+     * Visits every stored token that has not expired. Tokens stored or removed during the visit
+     * may or may not be visited.
+     *
+     * @param action the action called with each token value
+     */
+    void forEachToken(Consumer<String> action);
+
+    /**
+     * Visits every stored token that has not expired, with its user and expiry. Tokens stored or
+     * removed during the visit may or may not be visited.
+     *
+     * @param visitor the visitor called with each token
+     */
+    void forEachEntry(EntryVisitor visitor);
+
+    /**
+     * Gets the number of stored tokens, including expired tokens not removed yet.
+     *
+     * @return the live token count
+     */
+    int size();
+
+    /**
+     * Gets the number of tokens removed because their time to live passed.
+     *
+     * @return the expiration count
+     */
+    long getExpirationCount();
+
+    /**
+     * Gets the number of tokens removed because the backend was full.
+     *
+     * @return the eviction count
+     */
+    long getEvictionCount();
+
+    /**
+     * Stops the background work of the backend and releases its resources.
+     */
+    @Override
+    void close();
+}
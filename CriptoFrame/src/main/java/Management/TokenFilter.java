@@ -0,0 +1,180 @@
+package Management;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TokenFilter class keeps a BloomFilter over the tokens of a TokenBackend, so lookups of tokens
+ * that were never stored can be answered without probing the backend.
+ *
+ * The filter is loaded in the background when it is created, so a backend holding many tokens
+ * does not delay startup; until the load completes every token is let through to the backend.
+ * Every token must be added here after it is stored in the backend. A Bloom filter cannot forget
+ * removed and expired tokens, so the filter is rebuilt from the backend periodically, and early
+ * when more tokens were added than it was sized for. While a rebuild scans the backend, new
+ * tokens are added to both the old and the new filter, so no stored token is ever reported
+ * absent.
+ */
+final class TokenFilter {
+
+    // Logger for logging failed rebuilds
+    private static final Logger logger = LoggerFactory.getLogger(TokenFilter.class);
+
+    // Smallest number of tokens a filter is sized for
+    private static final long MIN_EXPECTED_TOKENS = 1024;
+
+    // Thread rebuilding the filters of every TokenManager
+    private static final ScheduledExecutorService rebuildThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "token-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Backend whose tokens are filtered
+    private final TokenBackend backend;
+
+    // False positive rate of the filter at its expected size
+    private final double falsePositiveRate;
+
+    // Filter answering lookups, or null until the first load completes
+    private volatile BloomFilter current;
+
+    // Filter being built from the backend, or null outside of a rebuild
+    private volatile BloomFilter pending;
+
+    // Whether a rebuild is queued or running
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // Number of rebuilds
+    private final LongAdder rebuilds = new LongAdder();
+
+    // Scheduled periodic rebuild
+    private final ScheduledFuture<?> rebuildTask;
+
+    /**
+     * Constructs a TokenFilter and starts loading the current tokens of the backend in the background.
+     *
+     * @param backend           the backend whose tokens are filtered
+     * @param falsePositiveRate the rate of unknown tokens let through to the backend, between 0 and 1
+     * @param rebuildInterval   the time between two rebuilds dropping removed and expired tokens
+     */
+    TokenFilter(TokenBackend backend, double falsePositiveRate, Duration rebuildInterval) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1) || rebuildInterval.isNegative() || rebuildInterval.isZero()) {
+            throw new IllegalArgumentException("Invalid token filter settings");
+        }
+        this.backend = backend;
+        this.falsePositiveRate = falsePositiveRate;
+        RebuildTask task = new RebuildTask(this);
+        this.rebuildTask = rebuildThread.scheduleAtFixedRate(task, 0, rebuildInterval.toNanos(), TimeUnit.NANOSECONDS);
+        task.future = rebuildTask;
+    }
+
+    /**
+     * Adds a token already stored in the backend.
+     *
+     * @param token the token value
+     */
+    void add(String token) {
+        // The pending filter is read before the current one: a rebuild that misses this token in
+        // the backend has published its pending filter before, and swaps it in after
+        BloomFilter building = pending;
+        if (building != null) {
+            building.put(token);
+        }
+        BloomFilter filter = current;
+        if (filter == null) {
+            return;
+        }
+        filter.put(token);
+        if (filter.isSaturated() && rebuilding.compareAndSet(false, true)) {
+            rebuildThread.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Checks if a token may be stored in the backend.
+     *
+     * @param token the token value
+     * @return false if the token is certainly not stored, true if it may be
+     */
+    boolean mightContain(String token) {
+        BloomFilter filter = current;
+        return filter == null || filter.mightContain(token);
+    }
+
+    /**
+     * Builds a new filter from the tokens of the backend and swaps it in. If the scan fails, the
+     * previous filter is kept.
+     */
+    synchronized void rebuild() {
+        try {
+            BloomFilter rebuilt = new BloomFilter(Math.max(MIN_EXPECTED_TOKENS, 2L * backend.size()), falsePositiveRate);
+            pending = rebuilt;
+            backend.forEachToken(rebuilt::put);
+            current = rebuilt;
+            rebuilds.increment();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to scan the tokens, keeping the previous token filter", e);
+        } finally {
+            pending = null;
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Checks if the filter was loaded, so that unknown tokens are refused.
+     *
+     * @return true if a load completed
+     */
+    boolean isLoaded() {
+        return current != null;
+    }
+
+    /**
+     * Gets the number of rebuilds of the filter, including the initial one.
+     *
+     * @return the rebuild count
+     */
+    long getRebuildCount() {
+        return rebuilds.sum();
+    }
+
+    /**
+     * Stops the periodic rebuilds.
+     */
+    void close() {
+        rebuildTask.cancel(false);
+    }
+
+    /**
+     * Periodic rebuild holding its filter weakly, so an unclosed filter can still be collected.
+     */
+    private static final class RebuildTask implements Runnable {
+
+        private final WeakReference<TokenFilter> filter;
+        private volatile ScheduledFuture<?> future;
+
+        RebuildTask(TokenFilter filter) {
+            this.filter = new WeakReference<>(filter);
+        }
+
+        @Override
+        public void run() {
+            TokenFilter target = filter.get();
+            if (target != null) {
+                target.rebuild();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Management;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * TokenId class converts opaque tokens, canonical lowercase UUID strings, to and from their two
+ * 64-bit halves.
+ *
+ * Parsing reads the characters directly, without the substrings and intermediate objects of
+ * UUID.fromString, so looking up an incoming token allocates nothing. Only the canonical form
+ * issued by TokenManager is accepted, so two different strings never map to the same token.
+ */
+public final class TokenId {
+
+    // Length of a canonical UUID string
+    private static final int LENGTH = 36;
+
+    // Value of each ASCII hex digit, or -1 for any other character
+    private static final byte[] HEX = new byte[128];
+
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private TokenId() {
+    }
+
+    /**
+     * Checks if a string is a canonical lowercase UUID, as issued by TokenManager.
+     *
+     * @param token the token value
+     * @return true if the token can be parsed
+     */
+    public static boolean isValid(String token) {
+        if (token == null || token.length() != LENGTH || token.charAt(8) != '-' || token.charAt(13) != '-'
+                || token.charAt(18) != '-' || token.charAt(23) != '-') {
+            return false;
+        }
+        // A character outside ASCII, or any that is not a hex digit, sets bits above the lowest seven
+        int bits = check(token, 0, 8) | check(token, 9, 13) | check(token, 14, 18) | check(token, 19, 23)
+                | check(token, 24, 36);
+        return bits >>> 7 == 0;
+    }
+
+    /**
+     * Gets the most significant 64 bits of a token checked with isValid.
+     *
+     * @param token the token value
+     * @return the first half of the UUID
+     */
+    public static long mostSignificantBits(String token) {
+        return parse(token, 0, 8) << 32 | parse(token, 9, 13) << 16 | parse(token, 14, 18);
+    }
+
+    /**
+     * Gets the least significant 64 bits of a token checked with isValid.
+     *
+     * @param token the token value
+     * @return the second half of the UUID
+     */
+    public static long leastSignificantBits(String token) {
+        return parse(token, 19, 23) << 48 | parse(token, 24, 36);
+    }
+
+    /**
+     * Formats the two halves of a token as its string value.
+     *
+     * @param msb the most significant 64 bits
+     * @param lsb the least significant 64 bits
+     * @return the token value
+     */
+    public static String toString(long msb, long lsb) {
+        return new UUID(msb, lsb).toString();
+    }
+
+    private static int check(String token, int from, int to) {
+        int bits = 0;
+        for (int i = from; i < to; i++) {
+            char c = token.charAt(i);
+            bits |= c | HEX[c & 127];
+        }
+        return bits;
+    }
+
+    private static long parse(String token, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << 4 | HEX[token.charAt(i) & 127];
+        }
+        return value;
+    }
+}
@@ -0,0 +1,708 @@
+package Management;
+
+import DTO.User;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * TokenIndex class keeps opaque tokens in primitive arrays, at a few dozen bytes per session.
+ *
+ * A token is stored as the two longs of its UUID in an open-addressing table with linear
+ * probing, next to its expiry in epoch milliseconds and the int id of its user. Users are
+ * interned by username and role, so all the sessions of a user share one record, which is freed
+ * with the last of them; get returns that shared record, without password or key. Incoming
+ * tokens are parsed straight to longs by TokenId, so a lookup allocates nothing.
+ *
+ * Reads are optimistic: they probe without locking and retry under a read lock only if a write
+ * happened meanwhile. Writes take a write lock. Removed entries are deleted by shifting the
+ * following entries back, so the table never fills with tombstones, and it doubles in size
+ * when it is three quarters full. Expired entries are removed when read and by a periodic sweep.
+ * Once the maximum size is reached, the entry expiring soonest among eight sampled ones is evicted.
+ *
+ * Sliding expiration is supported: touch records the last use of a token in a field of its
+ * slot with a compare-and-set, under the shared read lock so the entry cannot move meanwhile,
+ * and extendTouched later applies the recorded uses to the expiries under the write lock.
+ */
+public class TokenIndex implements TokenBackend {
+
+    // Smallest table capacity
+    private static final int MIN_CAPACITY = 16;
+
+    // Entries sampled to choose one to evict
+    private static final int EVICTION_SAMPLES = 8;
+
+    // Slots swept or visited per hold of the lock
+    private static final int SWEEP_BLOCK = 4096;
+
+    // Atomic access to the recorded uses of the slots
+    private static final VarHandle SEEN = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Thread sweeping the expired entries of every index
+    private static final ScheduledExecutorService expiryThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "token-index-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Key of an interned user.
+     */
+    private record UserKey(String username, String role) {
+    }
+
+    // Time to live of tokens stored without an explicit one, in milliseconds
+    private final long defaultTtlMillis;
+
+    // Maximum number of entries, or 0 for no limit
+    private final int maxSize;
+
+    // Lock of the table and the interned users
+    private final StampedLock lock = new StampedLock();
+
+    // Current table, replaced when it grows
+    private volatile Table table = new Table(MIN_CAPACITY);
+
+    // Number of entries
+    private volatile int size;
+
+    // Interned users by id; guarded by the lock
+    private volatile User[] users = new User[16];
+
+    // Number of entries referencing each interned user; guarded by the lock
+    private int[] userRefs = new int[16];
+
+    // Ids of the interned users; guarded by the lock
+    private final Map<UserKey, Integer> userIds = new HashMap<>();
+
+    // Released user ids, reused before new ones; guarded by the lock
+    private int[] freeUserIds = new int[16];
+    private int freeUserCount;
+    private int nextUserId;
+
+    // Scheduled sweep of expired entries
+    private final ScheduledFuture<?> expiryTask;
+
+    // Tokens removed because their time to live passed
+    private final LongAdder expirations = new LongAdder();
+
+    // Tokens removed because the index was full
+    private final LongAdder evictions = new LongAdder();
+
+    // Uses of tokens recorded for sliding expiration
+    private final LongAdder touches = new LongAdder();
+
+    /**
+     * Constructs a TokenIndex and starts sweeping expired tokens in the background.
+     *
+     * @param defaultTtl the time to live of tokens stored without an explicit one
+     * @param maxSize    the maximum number of tokens, or 0 for no limit
+     * @param sweep      the time between two sweeps of expired tokens
+     */
+    public TokenIndex(Duration defaultTtl, int maxSize, Duration sweep) {
+        if (defaultTtl.isNegative() || defaultTtl.isZero() || sweep.isNegative() || sweep.isZero() || maxSize < 0) {
+            throw new IllegalArgumentException("Invalid token index settings");
+        }
+        this.defaultTtlMillis = defaultTtl.toMillis();
+        this.maxSize = maxSize;
+        SweepTask task = new SweepTask(this);
+        this.expiryTask = expiryThread.scheduleAtFixedRate(task, sweep.toNanos(), sweep.toNanos(), TimeUnit.NANOSECONDS);
+        task.future = expiryTask;
+    }
+
+    @Override
+    public void put(String token, User user) {
+        put(token, user, System.currentTimeMillis() + defaultTtlMillis);
+    }
+
+    @Override
+    public void put(String token, User user, Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Invalid token time to live: " + ttl);
+        }
+        put(token, user, System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    @Override
+    public User get(String token) {
+        return lookup(token, true);
+    }
+
+    @Override
+    public boolean contains(String token) {
+        return lookup(token, false) != null;
+    }
+
+    @Override
+    public boolean touch(String token, long seenAtMillis, long windowMillis) {
+        if (!TokenId.isValid(token)) {
+            return false;
+        }
+        long msb = TokenId.mostSignificantBits(token);
+        long lsb = TokenId.leastSignificantBits(token);
+        long expiresAt = 0;
+        long seen = 0;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table current = table;
+            int slot = current.find(msb, lsb);
+            if (slot >= 0) {
+                expiresAt = current.expires[slot];
+                seen = current.seen[slot];
+            }
+        }
+        if (stamp == 0 || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                Table current = table;
+                int slot = current.find(msb, lsb);
+                expiresAt = slot < 0 ? 0 : current.expires[slot];
+                seen = slot < 0 ? 0 : current.seen[slot];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (expiresAt == 0) {
+            return false;
+        }
+        if (expiresAt <= seenAtMillis) {
+            removeExpired(msb, lsb);
+            return false;
+        }
+        if (seenAtMillis - Math.abs(seen) >= windowMillis) {
+            record(msb, lsb, seenAtMillis, windowMillis);
+        }
+        return true;
+    }
+
+    @Override
+    public int extendTouched(long idleTtlMillis, EntryVisitor visitor) {
+        int extended = 0;
+        for (int start = 0; ; start += SWEEP_BLOCK) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                if (start >= current.capacity) {
+                    return extended;
+                }
+                int end = Math.min(current.capacity, start + SWEEP_BLOCK);
+                for (int slot = start; slot < end; slot++) {
+                    long seen = current.seen[slot];
+                    if (seen > 0) {
+                        // Negated, the use still counts for the window but is not applied again
+                        current.seen[slot] = -seen;
+                        long expiresAt = current.expires[slot];
+                        if (seen < expiresAt && seen + idleTtlMillis > expiresAt) {
+                            current.expires[slot] = seen + idleTtlMillis;
+                            visitor.visit(TokenId.toString(current.keys[2 * slot], current.keys[2 * slot + 1]),
+                                    users[current.userIds[slot]], seen + idleTtlMillis);
+                            extended++;
+                        }
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    @Override
+    public User remove(String token) {
+        if (!TokenId.isValid(token)) {
+            return null;
+        }
+        long msb = TokenId.mostSignificantBits(token);
+        long lsb = TokenId.leastSignificantBits(token);
+        long stamp = lock.writeLock();
+        try {
+            Table current = table;
+            int slot = current.find(msb, lsb);
+            if (slot < 0) {
+                return null;
+            }
+            User user = users[current.userIds[slot]];
+            delete(current, slot);
+            return user;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void forEachToken(Consumer<String> action) {
+        forEachEntry((token, user, expiresAt) -> action.accept(token));
+    }
+
+    /**
+     * Visits every stored token that has not expired, with its user and expiry. The slots are
+     * copied a block at a time under the read lock, and the tokens are visited once it is
+     * released, so writers are never held up for a whole visit.
+     *
+     * @param visitor the visitor called with each token
+     */
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        long now = System.currentTimeMillis();
+        Block block = new Block();
+        Table visited = null;
+        int start = 0;
+        while (true) {
+            long stamp = lock.readLock();
+            try {
+                Table current = table;
+                if (current != visited) {
+                    // The table grew and its entries moved, so the visit starts over
+                    visited = current;
+                    start = 0;
+                }
+                if (start >= current.capacity) {
+                    return;
+                }
+                start = block.copy(current, users, start, now);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            for (int i = 0; i < block.count; i++) {
+                visitor.visit(TokenId.toString(block.keys[2 * i], block.keys[2 * i + 1]), block.users[i], block.expires[i]);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of uses of tokens recorded for sliding expiration.
+     *
+     * @return the touch count
+     */
+    public long getTouchCount() {
+        return touches.sum();
+    }
+
+    /**
+     * Gets the number of slots of the table.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return table.capacity;
+    }
+
+    /**
+     * Removes the expired tokens. The background task calls this every sweep interval. The lock
+     * is released between blocks of slots, so writers are never held up for a whole sweep.
+     */
+    public void expire() {
+        for (int start = 0; ; start += SWEEP_BLOCK) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                if (start >= current.capacity) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                int end = Math.min(current.capacity, start + SWEEP_BLOCK);
+                for (int slot = start; slot < end; ) {
+                    long expiresAt = current.expires[slot];
+                    if (expiresAt != 0 && expiresAt <= now) {
+                        // The next entry may be shifted into this slot
+                        delete(current, slot);
+                        expirations.increment();
+                    } else {
+                        slot++;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Stops the background sweeps.
+     */
+    @Override
+    public void close() {
+        expiryTask.cancel(false);
+    }
+
+    private User lookup(String token, boolean withUser) {
+        if (!TokenId.isValid(token)) {
+            return null;
+        }
+        long msb = TokenId.mostSignificantBits(token);
+        long lsb = TokenId.leastSignificantBits(token);
+        long expiresAt = 0;
+        User user = null;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table current = table;
+            User[] interned = users;
+            int slot = current.find(msb, lsb);
+            if (slot >= 0) {
+                expiresAt = current.expires[slot];
+                int userId = current.userIds[slot];
+                user = userId >= 0 && userId < interned.length ? interned[userId] : null;
+            }
+        }
+        if (stamp == 0 || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                Table current = table;
+                int slot = current.find(msb, lsb);
+                expiresAt = slot < 0 ? 0 : current.expires[slot];
+                user = slot < 0 ? null : users[current.userIds[slot]];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (expiresAt == 0) {
+            return null;
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            removeExpired(msb, lsb);
+            return null;
+        }
+        return withUser ? user : Table.PRESENT;
+    }
+
+    /**
+     * Records a use of a token in its slot. The read lock keeps entries from moving, while
+     * concurrent uses of the same token race on the compare-and-set.
+     */
+    private void record(long msb, long lsb, long seenAtMillis, long windowMillis) {
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            int slot = current.find(msb, lsb);
+            if (slot < 0) {
+                return;
+            }
+            long seen;
+            do {
+                seen = (long) SEEN.getVolatile(current.seen, slot);
+                if (seenAtMillis - Math.abs(seen) < windowMillis) {
+                    return;
+                }
+            } while (!SEEN.compareAndSet(current.seen, slot, seen, seenAtMillis));
+            touches.increment();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void removeExpired(long msb, long lsb) {
+        long stamp = lock.writeLock();
+        try {
+            Table current = table;
+            int slot = current.find(msb, lsb);
+            if (slot >= 0 && current.expires[slot] <= System.currentTimeMillis()) {
+                delete(current, slot);
+                expirations.increment();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void put(String token, User user, long expiresAt) {
+        if (!TokenId.isValid(token)) {
+            throw new IllegalArgumentException("Token index only holds UUID tokens");
+        }
+        long msb = TokenId.mostSignificantBits(token);
+        long lsb = TokenId.leastSignificantBits(token);
+        long stamp = lock.writeLock();
+        try {
+            Table current = table;
+            if ((size + 1) * 4L > current.capacity * 3L) {
+                current = grow(current);
+            }
+            int userId = intern(user);
+            int slot = current.find(msb, lsb);
+            if (slot >= 0) {
+                release(current.userIds[slot]);
+            } else {
+                slot = current.freeSlot(msb, lsb);
+                current.keys[2 * slot] = msb;
+                current.keys[2 * slot + 1] = lsb;
+                size++;
+            }
+            current.expires[slot] = expiresAt;
+            current.userIds[slot] = userId;
+            current.seen[slot] = 0;
+            while (maxSize > 0 && size > maxSize) {
+                evictOne(current);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Evicts the entry expiring soonest among a few sampled ones. Must be called with the write lock held.
+     */
+    private void evictOne(Table current) {
+        int victim = -1;
+        int slot = ThreadLocalRandom.current().nextInt(current.capacity);
+        for (int seen = 0, probes = 0; seen < EVICTION_SAMPLES && probes < current.capacity; probes++) {
+            if (current.expires[slot] != 0) {
+                if (victim < 0 || current.expires[slot] < current.expires[victim]) {
+                    victim = slot;
+                }
+                seen++;
+            }
+            slot = (slot + 1) & (current.capacity - 1);
+        }
+        delete(current, victim);
+        evictions.increment();
+    }
+
+    /**
+     * Clears a slot and shifts back the entries of its probe sequence that follow it, so lookups
+     * still find them without tombstones. Must be called with the write lock held.
+     */
+    private void delete(Table current, int slot) {
+        release(current.userIds[slot]);
+        int mask = current.capacity - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (current.expires[next] != 0) {
+            int home = Table.index(current.keys[2 * next], current.keys[2 * next + 1], mask);
+            // Move the entry back unless its home lies cyclically in (hole, next]
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                current.keys[2 * hole] = current.keys[2 * next];
+                current.keys[2 * hole + 1] = current.keys[2 * next + 1];
+                current.expires[hole] = current.expires[next];
+                current.userIds[hole] = current.userIds[next];
+                current.seen[hole] = current.seen[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        current.keys[2 * hole] = 0;
+        current.keys[2 * hole + 1] = 0;
+        current.expires[hole] = 0;
+        current.userIds[hole] = 0;
+        current.seen[hole] = 0;
+        size--;
+    }
+
+    /**
+     * Copies the entries into a table twice as large. Must be called with the write lock held.
+     */
+    private Table grow(Table current) {
+        Table grown = new Table(current.capacity * 2);
+        for (int slot = 0; slot < current.capacity; slot++) {
+            if (current.expires[slot] != 0) {
+                long msb = current.keys[2 * slot];
+                long lsb = current.keys[2 * slot + 1];
+                int target = grown.freeSlot(msb, lsb);
+                grown.keys[2 * target] = msb;
+                grown.keys[2 * target + 1] = lsb;
+                grown.expires[target] = current.expires[slot];
+                grown.userIds[target] = current.userIds[slot];
+                grown.seen[target] = current.seen[slot];
+            }
+        }
+        table = grown;
+        return grown;
+    }
+
+    /**
+     * Gets the id of the interned record of a user, creating it if needed. Must be called with
+     * the write lock held.
+     */
+    private int intern(User user) {
+        UserKey key = new UserKey(user.getUsername(), user.getRole());
+        Integer existing = userIds.get(key);
+        int id;
+        if (existing != null) {
+            id = existing;
+        } else {
+            id = freeUserCount > 0 ? freeUserIds[--freeUserCount] : nextUserId++;
+            if (id >= users.length) {
+                User[] grown = new User[users.length * 2];
+                System.arraycopy(users, 0, grown, 0, users.length);
+                users = grown;
+                int[] refs = new int[userRefs.length * 2];
+                System.arraycopy(userRefs, 0, refs, 0, userRefs.length);
+                userRefs = refs;
+            }
+            users[id] = new User(user.getUsername(), user.getRole());
+            userIds.put(key, id);
+        }
+        userRefs[id]++;
+        return id;
+    }
+
+    /**
+     * Drops a reference to an interned user, freeing it with its last entry. Must be called with
+     * the write lock held.
+     */
+    private void release(int id) {
+        if (--userRefs[id] == 0) {
+            User user = users[id];
+            userIds.remove(new UserKey(user.getUsername(), user.getRole()));
+            users[id] = null;
+            if (freeUserCount == freeUserIds.length) {
+                int[] grown = new int[freeUserIds.length * 2];
+                System.arraycopy(freeUserIds, 0, grown, 0, freeUserIds.length);
+                freeUserIds = grown;
+            }
+            freeUserIds[freeUserCount++] = id;
+        }
+    }
+
+    /**
+     * The slots of the index. A slot is empty when its expiry is 0. The recorded use of a slot
+     * is 0 until the token is touched, then the time of its last recorded use, negated once
+     * applied to the expiry.
+     */
+    private static final class Table {
+
+        // Placeholder returned by a lookup that does not need the user
+        private static final User PRESENT = new User("");
+
+        private final int capacity;
+        private final long[] keys;
+        private final long[] expires;
+        private final int[] userIds;
+        private final long[] seen;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.keys = new long[2 * capacity];
+            this.expires = new long[capacity];
+            this.userIds = new int[capacity];
+            this.seen = new long[capacity];
+        }
+
+        /**
+         * Finds the slot of a token.
+         *
+         * @return the slot, or -1 if the token is not stored
+         */
+        int find(long msb, long lsb) {
+            int mask = capacity - 1;
+            int slot = index(msb, lsb, mask);
+            for (int probes = 0; probes < capacity; probes++) {
+                if (expires[slot] == 0) {
+                    return -1;
+                }
+                if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the first empty slot on the probe sequence of a token.
+         */
+        int freeSlot(long msb, long lsb) {
+            int mask = capacity - 1;
+            int slot = index(msb, lsb, mask);
+            while (expires[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        static int index(long msb, long lsb, int mask) {
+            long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    /**
+     * Live entries copied from a block of slots, to be visited without the lock.
+     */
+    private static final class Block {
+
+        private long[] keys = new long[2 * SWEEP_BLOCK];
+        private long[] expires = new long[SWEEP_BLOCK];
+        private User[] users = new User[SWEEP_BLOCK];
+        private int count;
+
+        /**
+         * Copies the live entries from a slot up to an empty slot at least a block further.
+         * Removals only shift entries back within a run of occupied slots, so ending blocks at
+         * an empty slot keeps every entry stored throughout the visit from moving into a block
+         * already copied. Must be called with the lock held.
+         *
+         * @return the slot the next block starts at
+         */
+        int copy(Table table, User[] interned, int start, long now) {
+            count = 0;
+            int end = Math.min(table.capacity, start + SWEEP_BLOCK);
+            int slot = start;
+            for (; slot < end || slot < table.capacity && table.expires[slot] != 0; slot++) {
+                long expiresAt = table.expires[slot];
+                if (expiresAt > now) {
+                    if (count == expires.length) {
+                        keys = Arrays.copyOf(keys, 4 * count);
+                        expires = Arrays.copyOf(expires, 2 * count);
+                        users = Arrays.copyOf(users, 2 * count);
+                    }
+                    keys[2 * count] = table.keys[2 * slot];
+                    keys[2 * count + 1] = table.keys[2 * slot + 1];
+                    expires[count] = expiresAt;
+                    users[count] = interned[table.userIds[slot]];
+                    count++;
+                }
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Periodic sweep holding its index weakly, so an unclosed index can still be collected.
+     */
+    private static final class SweepTask implements Runnable {
+
+        private final WeakReference<TokenIndex> index;
+        private volatile ScheduledFuture<?> future;
+
+        SweepTask(TokenIndex index) {
+            this.index = new WeakReference<>(index);
+        }
+
+        @Override
+        public void run() {
+            TokenIndex target = index.get();
+            if (target != null) {
+                target.expire();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package Management;
+
+import DTO.User;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * TokenListener interface is notified by a TokenManager of the opaque tokens it issues and
+ * invalidates, for instance to persist them; see TokenWriteBehind.
+ *
+ * The methods are called on the thread issuing or invalidating the token, or on the thread
+ * extending used tokens, so they must not block for long.
+ */
+public interface TokenListener {
+
+    /**
+     * An opaque token whose expiry was extended because it was used.
+     *
+     * @param token     the token value
+     * @param user      the user the token belongs to
+     * @param lastSeen  the last recorded use of the token
+     * @param expiresAt the new expiry of the token
+     */
+    record Touch(String token, User user, Instant lastSeen, Instant expiresAt) {
+    }
+
+    /**
+     * Called after an opaque token was issued.
+     *
+     * @param token     the token value
+     * @param user      the user the token belongs to
+     * @param expiresAt the expiry of the token
+     */
+    void tokenCreated(String token, User user, Instant expiresAt);
+
+    /**
+     * Called after an active opaque token was invalidated.
+     *
+     * @param token the token value
+     * @param user  the user the token belonged to
+     */
+    void tokenInvalidated(String token, User user);
+
+    /**
+     * Called periodically with the opaque tokens extended by sliding expiration since the
+     * previous call. Does nothing by default.
+     *
+     * @param touches the extended tokens
+     */
+    default void tokensTouched(List<Touch> touches) {
+    }
+}
@@ -1,19 +1,240 @@
 package Management;
 
+import Crypt.TokenSealer;
+import DTO.KeyGenerator;
 import DTO.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * TokenManager class manages authentication tokens for users.
  * This class provides methods for creating, validating, and invalidating authentication tokens.
+ * Tokens expire after their time to live, and the tokens closest to expiry are evicted once the
+ * maximum number of tokens is reached. By default opaque tokens are kept in a TokenIndex, as two
+ * longs per token rather than strings in a map.
+ *
+ * Two token formats are supported. Opaque tokens are random UUIDs looked up in the store.
+ * Sealed tokens carry their user, role and expiry under an HMAC (see TokenSealer), so they are
+ * validated without any lookup; invalidating one adds it to a small revocation set until it
+ * would have expired anyway. TokenManagers sharing a TokenSealer key accept each other's sealed
+ * tokens, but each keeps its own revocation set.
+ *
+ * Bloom filters over the opaque tokens and the revoked token ids sit in front of both lookups:
+ * unknown opaque tokens are rejected, and sealed tokens that were never revoked are accepted,
+ * without probing a store. The filters are loaded in the background, and let every lookup through
+ * until then; see TokenFilter. Opaque tokens must therefore be issued through the
+ * TokenManager, not stored directly in its backend.
+ *
+ * With sliding expiration enabled, an opaque token stays valid as long as it is used: each
+ * validation records the use in the token's entry, at most once per window, and a background
+ * task extends the recorded tokens to their last use plus the time to live once per window,
+ * reporting them to the listeners in one batch. Validation itself never writes the store, and
+ * tokens left unused still expire one time to live after their last recorded use. Sliding
+ * expiration needs a backend that supports it, such as the default TokenIndex; sealed tokens
+ * always keep their sealed expiry.
  */
 public class TokenManager {
 
-    // Map to store active tokens with their corresponding users
-    private final Map<String, User> activeTokens = new HashMap<>();
+    // Logger for logging failures of the sliding expiration task
+    private static final Logger logger = LoggerFactory.getLogger(TokenManager.class);
+
+    // Default time to live of a token, overridable with -DManagement.token.ttlSeconds
+    private static final long DEFAULT_TTL_SECONDS = Long.getLong("Management.token.ttlSeconds", 1800);
+
+    // Default maximum number of active tokens, overridable with -DManagement.token.maxTokens
+    private static final int DEFAULT_MAX_TOKENS = Integer.getInteger("Management.token.maxTokens", 1_000_000);
+
+    // Resolution of token expiry
+    private static final Duration EXPIRY_TICK = Duration.ofSeconds(1);
+
+    // Longest time between two sweeps of expired opaque tokens, which are also removed when read
+    private static final Duration EXPIRY_SWEEP = Duration.ofSeconds(30);
+
+    // False positive rate of the token filters, overridable with -DManagement.token.filterFalsePositiveRate
+    private static final double FILTER_FALSE_POSITIVE_RATE = Double.parseDouble(
+            System.getProperty("Management.token.filterFalsePositiveRate", "0.01"));
+
+    // Time between two rebuilds of the token filters, overridable with -DManagement.token.filterRebuildSeconds
+    private static final long FILTER_REBUILD_SECONDS = Long.getLong("Management.token.filterRebuildSeconds", 300);
+
+    // Window of sliding expiration, or 0 to keep the expiry of tokens fixed; set with -DManagement.token.slidingWindowSeconds
+    private static final long SLIDING_WINDOW_SECONDS = Long.getLong("Management.token.slidingWindowSeconds", 0);
+
+    // Thread extending the used tokens of every TokenManager
+    private static final ScheduledExecutorService touchThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "token-touch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Store of the active tokens with their corresponding users
+    private final TokenBackend activeTokens;
+
+    // Ids of the sealed tokens invalidated before their expiry
+    private final TokenStore revokedTokens;
+
+    // Sealer issuing and validating sealed tokens
+    private final TokenSealer sealer;
+
+    // Time to live of tokens created without an explicit one
+    private final Duration ttl;
+
+    // Filter over the active opaque tokens
+    private final TokenFilter activeFilter;
+
+    // Filter over the ids of the revoked sealed tokens
+    private final TokenFilter revokedFilter;
+
+    // Lookups answered by a filter without probing a store
+    private final LongAdder filterShortCircuits = new LongAdder();
+
+    // Lookups let through by a filter for tokens the store did not hold
+    private final LongAdder filterFalsePositives = new LongAdder();
+
+    // Listeners notified of issued and invalidated opaque tokens
+    private final List<TokenListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Window of sliding expiration in milliseconds, or 0 if it is disabled
+    private volatile long slidingWindowMillis;
+
+    // Scheduled extension of the used tokens, or null if sliding expiration is disabled
+    private ScheduledFuture<?> touchTask;
+
+    // Tokens extended by sliding expiration
+    private final LongAdder slidingExtensions = new LongAdder();
+
+    /**
+     * Constructs a TokenManager with the default time to live and maximum number of tokens.
+     * Sealed tokens use a random key, so they are only accepted by this instance.
+     */
+    public TokenManager() {
+        this(Duration.ofSeconds(DEFAULT_TTL_SECONDS), DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * Constructs a TokenManager with the given time to live and maximum number of tokens.
+     * Sealed tokens use a random key, so they are only accepted by this instance.
+     *
+     * @param ttl       the time to live of tokens created without an explicit one
+     * @param maxTokens the maximum number of active tokens, or 0 for no limit
+     */
+    public TokenManager(Duration ttl, int maxTokens) {
+        this(ttl, maxTokens, new TokenSealer(KeyGenerator.generateAesKey(32)));
+    }
+
+    /**
+     * Constructs a TokenManager with the given time to live, maximum number of tokens and sealer.
+     *
+     * @param ttl       the time to live of tokens created without an explicit one
+     * @param maxTokens the maximum number of active opaque tokens, or 0 for no limit
+     * @param sealer    the sealer issuing and validating sealed tokens
+     */
+    public TokenManager(Duration ttl, int maxTokens, TokenSealer sealer) {
+        this(new TokenIndex(ttl, maxTokens, EXPIRY_SWEEP.compareTo(ttl) < 0 ? EXPIRY_SWEEP : ttl), ttl, sealer);
+    }
+
+    /**
+     * Constructs a TokenManager keeping its opaque tokens in the given backend, such as a
+     * MappedTokenStore that survives restarts.
+     *
+     * @param activeTokens the backend of the opaque tokens
+     * @param ttl          the time to live of tokens created without an explicit one
+     * @param sealer       the sealer issuing and validating sealed tokens
+     */
+    public TokenManager(TokenBackend activeTokens, Duration ttl, TokenSealer sealer) {
+        this(activeTokens, ttl, sealer, FILTER_FALSE_POSITIVE_RATE, Duration.ofSeconds(FILTER_REBUILD_SECONDS));
+    }
+
+    /**
+     * Constructs a TokenManager keeping its opaque tokens in the given backend, with the given
+     * settings for the filters in front of the token lookups.
+     *
+     * @param activeTokens            the backend of the opaque tokens
+     * @param ttl                     the time to live of tokens created without an explicit one
+     * @param sealer                  the sealer issuing and validating sealed tokens
+     * @param filterFalsePositiveRate the rate of unknown tokens the filters let through, between 0 and 1
+     * @param filterRebuildInterval   the time between two rebuilds of the filters
+     */
+    public TokenManager(TokenBackend activeTokens, Duration ttl, TokenSealer sealer,
+                        double filterFalsePositiveRate, Duration filterRebuildInterval) {
+        this.activeTokens = activeTokens;
+        this.revokedTokens = new TokenStore(ttl, 0, tick(ttl));
+        this.sealer = sealer;
+        this.ttl = ttl;
+        this.activeFilter = new TokenFilter(activeTokens, filterFalsePositiveRate, filterRebuildInterval);
+        this.revokedFilter = new TokenFilter(revokedTokens, filterFalsePositiveRate, filterRebuildInterval);
+        if (SLIDING_WINDOW_SECONDS > 0) {
+            enableSlidingExpiration(Duration.ofSeconds(SLIDING_WINDOW_SECONDS));
+        }
+    }
+
+    /**
+     * Enables sliding expiration of the opaque tokens, or changes its window. Uses of a token
+     * less than window apart are recorded once, and used tokens are extended once per window,
+     * so a token in use expires at most one window earlier than one time to live after its last
+     * use.
+     *
+     * @param window the window of sliding expiration, shorter than the time to live
+     * @throws IllegalArgumentException if the window is not positive or not shorter than the time to live
+     */
+    public synchronized void enableSlidingExpiration(Duration window) {
+        if (window.isNegative() || window.isZero() || window.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("Invalid sliding expiration window: " + window);
+        }
+        if (touchTask != null) {
+            touchTask.cancel(false);
+        }
+        slidingWindowMillis = window.toMillis();
+        TouchTask task = new TouchTask(this);
+        touchTask = touchThread.scheduleAtFixedRate(task, window.toNanos(), window.toNanos(), TimeUnit.NANOSECONDS);
+        task.future = touchTask;
+    }
+
+    /**
+     * Disables sliding expiration. Tokens keep the expiry they were last extended to.
+     */
+    public synchronized void disableSlidingExpiration() {
+        if (touchTask != null) {
+            touchTask.cancel(false);
+            touchTask = null;
+        }
+        slidingWindowMillis = 0;
+    }
+
+    /**
+     * Extends the opaque tokens used since the previous extension and reports them to the
+     * listeners. The background task calls this once per window of sliding expiration.
+     *
+     * @return the number of extended tokens
+     */
+    public int extendUsedTokens() {
+        long idleMillis = ttl.toMillis();
+        List<TokenListener.Touch> touches = new ArrayList<>();
+        int extended = activeTokens.extendTouched(idleMillis, (token, user, expiresAt) -> touches.add(new TokenListener.Touch(
+                token, user, Instant.ofEpochMilli(expiresAt - idleMillis), Instant.ofEpochMilli(expiresAt))));
+        slidingExtensions.add(extended);
+        if (!touches.isEmpty()) {
+            List<TokenListener.Touch> batch = Collections.unmodifiableList(touches);
+            for (TokenListener listener : listeners) {
+                listener.tokensTouched(batch);
+            }
+        }
+        return extended;
+    }
 
     /**
      * Creates a new authentication token for the specified user.
@@ -21,26 +242,258 @@ public class TokenManager {
      * @return a string representing the authentication token
      */
     public String createToken(User user) {
+        return createToken(user, ttl);
+    }
+
+    /**
+     * Creates a new authentication token for the specified user, valid for the given time.
+     * @param user the user for whom the authentication token is created
+     * @param ttl  the time to live of the token
+     * @return a string representing the authentication token
+     */
+    public String createToken(User user, Duration ttl) {
         String tokenValue = UUID.randomUUID().toString();
-        activeTokens.put(tokenValue, user);
+        Instant expiresAt = Instant.now().plus(ttl);
+        activeTokens.put(tokenValue, user, ttl);
+        activeFilter.add(tokenValue);
+        for (TokenListener listener : listeners) {
+            listener.tokenCreated(tokenValue, user, expiresAt);
+        }
         return tokenValue;
     }
 
     /**
-     * Validates the provided authentication token.
+     * Creates a new sealed authentication token for the specified user, validated without a lookup.
+     * @param user the user for whom the authentication token is created
+     * @return a string representing the authentication token
+     */
+    public String createSealedToken(User user) {
+        return createSealedToken(user, ttl);
+    }
+
+    /**
+     * Creates a new sealed authentication token for the specified user, valid for the given time.
+     * @param user the user for whom the authentication token is created
+     * @param ttl  the time to live of the token
+     * @return a string representing the authentication token
+     */
+    public String createSealedToken(User user, Duration ttl) {
+        return sealer.seal(user.getUsername(), user.getRole(), Instant.now().plus(ttl));
+    }
+
+    /**
+     * Validates the provided authentication token, opaque or sealed.
      * @param tokenValue the authentication token to be validated
      * @return true if the token is valid, false otherwise
      */
     public boolean validateToken(String tokenValue) {
-        return activeTokens.containsKey(tokenValue);
+        if (TokenSealer.isSealed(tokenValue)) {
+            TokenSealer.Claims claims = sealer.open(tokenValue);
+            if (claims == null) {
+                return false;
+            }
+            if (!revokedFilter.mightContain(claims.id())) {
+                filterShortCircuits.increment();
+                return true;
+            }
+            boolean revoked = revokedTokens.contains(claims.id());
+            if (!revoked) {
+                filterFalsePositives.increment();
+            }
+            return !revoked;
+        }
+        if (tokenValue == null || !activeFilter.mightContain(tokenValue)) {
+            filterShortCircuits.increment();
+            return false;
+        }
+        long window = slidingWindowMillis;
+        boolean active = window > 0 ? activeTokens.touch(tokenValue, System.currentTimeMillis(), window)
+                : activeTokens.contains(tokenValue);
+        if (!active) {
+            filterFalsePositives.increment();
+        }
+        return active;
     }
 
     /**
-     * Invalidates the provided authentication token, removing it from the active tokens.
+     * Invalidates the provided authentication token. Opaque tokens are removed from the active
+     * tokens; sealed tokens are revoked until their expiry.
      * @param tokenValue the authentication token to be invalidated
      */
     public void invalidateToken(String tokenValue) {
+        if (TokenSealer.isSealed(tokenValue)) {
+            TokenSealer.Claims claims = sealer.open(tokenValue);
+            if (claims != null) {
+                Duration remaining = Duration.between(Instant.now(), claims.expiresAt());
+                if (!remaining.isNegative() && !remaining.isZero()) {
+                    revokedTokens.put(claims.id(), null, remaining);
+                    revokedFilter.add(claims.id());
+                }
+            }
+            return;
+        }
+        User user = activeTokens.remove(tokenValue);
+        if (user != null) {
+            for (TokenListener listener : listeners) {
+                listener.tokenInvalidated(tokenValue, user);
+            }
+        }
+    }
+
+    /**
+     * Adds a listener notified of the opaque tokens issued and invalidated from now on, such as
+     * a TokenWriteBehind persisting them. Sealed tokens are not reported.
+     * @param listener the listener to add
+     */
+    public void addListener(TokenListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with addListener.
+     * @param listener the listener to remove
+     */
+    public void removeListener(TokenListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stores an opaque token issued by another node, without notifying the listeners.
+     * @param tokenValue the authentication token
+     * @param user       the user of the token
+     * @param expiresAt  the expiry of the token
+     */
+    void applyReplicatedToken(String tokenValue, User user, Instant expiresAt) {
+        Duration remaining = Duration.between(Instant.now(), expiresAt);
+        if (!remaining.isNegative() && !remaining.isZero()) {
+            activeTokens.put(tokenValue, user, remaining);
+            activeFilter.add(tokenValue);
+        }
+    }
+
+    /**
+     * Removes an opaque token invalidated on another node, without notifying the listeners.
+     * @param tokenValue the authentication token
+     */
+    void applyReplicatedInvalidation(String tokenValue) {
         activeTokens.remove(tokenValue);
     }
-}
 
+    /**
+     * Gets the backend of the opaque tokens.
+     * @return the backend
+     */
+    TokenBackend getActiveTokens() {
+        return activeTokens;
+    }
+
+    /**
+     * Gets the number of sealed tokens revoked before their expiry and not expired yet.
+     * @return the revoked token count
+     */
+    public int getRevokedTokenCount() {
+        return revokedTokens.size();
+    }
+
+    /**
+     * Gets the number of active tokens, including expired tokens not removed yet.
+     * @return the live token count
+     */
+    public int getLiveTokenCount() {
+        return activeTokens.size();
+    }
+
+    /**
+     * Gets the number of tokens removed because their time to live passed.
+     * @return the expiration count
+     */
+    public long getExpirationCount() {
+        return activeTokens.getExpirationCount();
+    }
+
+    /**
+     * Gets the number of tokens evicted because the maximum number of tokens was reached.
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return activeTokens.getEvictionCount();
+    }
+
+    /**
+     * Gets the number of token lookups answered by a filter without probing a store: unknown
+     * opaque tokens rejected, and sealed tokens accepted as never revoked.
+     * @return the short-circuit count
+     */
+    public long getFilterShortCircuitCount() {
+        return filterShortCircuits.sum();
+    }
+
+    /**
+     * Gets the number of token lookups a filter let through for tokens the store did not hold,
+     * including removed and expired tokens not yet dropped by a rebuild.
+     * @return the false positive count
+     */
+    public long getFilterFalsePositiveCount() {
+        return filterFalsePositives.sum();
+    }
+
+    /**
+     * Gets the number of rebuilds of the token filters.
+     * @return the rebuild count
+     */
+    public long getFilterRebuildCount() {
+        return activeFilter.getRebuildCount() + revokedFilter.getRebuildCount();
+    }
+
+    /**
+     * Gets the number of token extensions made by sliding expiration.
+     * @return the sliding extension count
+     */
+    public long getSlidingExtensionCount() {
+        return slidingExtensions.sum();
+    }
+
+    /**
+     * Rebuilds the token filters from the stores, dropping removed and expired tokens. This also
+     * happens periodically in the background.
+     */
+    public void rebuildFilters() {
+        activeFilter.rebuild();
+        revokedFilter.rebuild();
+    }
+
+    private static Duration tick(Duration ttl) {
+        return EXPIRY_TICK.compareTo(ttl) < 0 ? EXPIRY_TICK : ttl;
+    }
+
+    /**
+     * Periodic extension of the used tokens holding its manager weakly, so an unused manager can
+     * still be collected.
+     */
+    private static final class TouchTask implements Runnable {
+
+        private final WeakReference<TokenManager> manager;
+        private volatile ScheduledFuture<?> future;
+
+        TouchTask(TokenManager manager) {
+            this.manager = new WeakReference<>(manager);
+        }
+
+        @Override
+        public void run() {
+            TokenManager target = manager.get();
+            if (target == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                target.extendUsedTokens();
+            } catch (RuntimeException e) {
+                // An exception would cancel the periodic task
+                logger.error("Exception occurred while extending used tokens", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,995 @@
+package Management;
+
+import DTO.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TokenReplicator class copies the opaque tokens issued and invalidated by a TokenManager to the
+ * TokenManagers of peer nodes, so any node validates any token locally, without sticky sessions.
+ *
+ * Every node listens on a TCP port, on the loopback address unless told otherwise, and connects
+ * to each of its peers to subscribe to their tokens. A subscription starts with the sequence number of the last operation received from
+ * the peer: if the peer still has the following operations in its log, only those are sent,
+ * otherwise a snapshot of all its tokens is sent first. Operations then stream as they happen.
+ * Nodes that drop out reconnect every second and catch up the same way.
+ *
+ * Peers share a replication key. A node accepting a connection sends a random challenge, which
+ * the subscriber answers with an HMAC-SHA256 proof of the key, so only peers holding the key
+ * are sent tokens. Both sides then derive a session key from the replication key and their two
+ * nonces, and every following frame is sealed with AES-GCM under it, numbered by a counter, so
+ * tokens can be neither read nor forged on the wire, and frames cannot be replayed or reordered.
+ *
+ * Operations are framed as a 16-bit length, a type byte and a fixed binary body; a token is sent
+ * as its 16-byte UUID. All sockets are served by one selector thread, which encodes queued
+ * operations into every subscriber buffer and writes each buffer with a single call, so bursts
+ * are batched and never wait for acknowledgements. A subscriber whose buffer outgrows the limit
+ * is disconnected, and catches up when it reconnects. Snapshots are read from the token store
+ * by a thread of their own and handed over in blocks as the socket drains, so they take no
+ * more memory than a few blocks; operations published meanwhile are held back until the
+ * snapshot is complete.
+ *
+ * Replication is asynchronous: a token is valid on its issuing node at once and on the others
+ * after a round trip. Invalidations missed while a node was partitioned and no longer in the
+ * peer's log are not part of a snapshot, so such tokens stay valid there until they expire.
+ */
+public class TokenReplicator implements TokenListener, AutoCloseable {
+
+    // Logger for logging replication connections
+    private static final Logger logger = LoggerFactory.getLogger(TokenReplicator.class);
+
+    // Number of operations kept for subscribers catching up, overridable with -DManagement.replication.logSize
+    private static final int DEFAULT_LOG_SIZE = Integer.getInteger("Management.replication.logSize", 100_000);
+
+    // Largest pending output per subscriber, overridable with -DManagement.replication.maxBufferBytes
+    private static final int MAX_BUFFER_BYTES = Integer.getInteger("Management.replication.maxBufferBytes", 256 << 20);
+
+    // Address accepting subscriptions unless one is given, overridable with -DManagement.replication.bindAddress
+    private static final String DEFAULT_BIND_HOST = System.getProperty("Management.replication.bindAddress");
+
+    // Delay between two attempts to connect to a peer
+    private static final long RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Frame types
+    private static final byte SUBSCRIBE = 1;
+    private static final byte HELLO = 2;
+    private static final byte CREATE = 3;
+    private static final byte INVALIDATE = 4;
+    private static final byte CHALLENGE = 5;
+
+    // Largest frame body, bounded by the 16-bit length
+    private static final int MAX_FRAME = 0xFFFF;
+
+    // Length of the authentication tag sealing each frame after the handshake
+    private static final int TAG_LENGTH = 16;
+
+    // Largest frame body before sealing
+    private static final int MAX_BODY = MAX_FRAME - TAG_LENGTH;
+
+    // Length of the random nonces exchanged by the handshake
+    private static final int NONCE_LENGTH = 16;
+
+    // Length of the HMAC-SHA256 proving the replication key
+    private static final int PROOF_LENGTH = 32;
+
+    // Length of a subscription: type, client nonce, epoch, last sequence number and proof
+    private static final int SUBSCRIBE_LENGTH = 1 + NONCE_LENGTH + 16 + PROOF_LENGTH;
+
+    // Labels keeping apart the HMACs computed with the replication key
+    private static final byte PROOF_LABEL = 1;
+    private static final byte SESSION_LABEL = 2;
+
+    // Shortest replication key accepted
+    private static final int MIN_KEY_LENGTH = 16;
+
+    // Size of the blocks a snapshot is handed over in
+    private static final int SNAPSHOT_BLOCK_BYTES = 64 << 10;
+
+    // Blocks of a snapshot read ahead of the socket
+    private static final int SNAPSHOT_QUEUE_BLOCKS = 4;
+
+    /**
+     * A local operation waiting to be sequenced and sent.
+     */
+    private record Operation(byte type, long msb, long lsb, long expiresAtMillis, byte[] username, byte[] role) {
+    }
+
+    // Manager whose tokens are replicated
+    private final TokenManager tokenManager;
+
+    // Selector of every socket
+    private final Selector selector;
+
+    // Socket accepting subscriptions
+    private final ServerSocketChannel server;
+
+    // Random id of this run of the node, so subscribers notice a restart
+    private final long epoch;
+
+    // MAC keyed with the replication key; selector thread only
+    private final Mac mac;
+
+    // Source of the handshake nonces
+    private final SecureRandom random = new SecureRandom();
+
+    // Number of operations kept in the log
+    private final int logSize;
+
+    // Encoded operations, oldest first, sequence numbers up to sequence; selector thread only
+    private final ArrayDeque<byte[]> log = new ArrayDeque<>();
+
+    // Sequence number of the last local operation; selector thread only
+    private long sequence;
+
+    // Local operations queued by the listener callbacks
+    private final ConcurrentLinkedQueue<Operation> outbox = new ConcurrentLinkedQueue<>();
+
+    // Peers added since the last loop of the selector thread
+    private final ConcurrentLinkedQueue<InetSocketAddress> newPeers = new ConcurrentLinkedQueue<>();
+
+    // Whether a wakeup of the selector is already pending
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    // Peers this node subscribes to; selector thread only
+    private final List<Peer> peers = new ArrayList<>();
+
+    // Nodes subscribed to this node; selector thread only
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    // Thread serving the sockets
+    private final Thread thread;
+
+    // Whether close() was called
+    private volatile boolean running = true;
+
+    // Metrics
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder deltas = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+
+    /**
+     * Starts replicating the tokens of a TokenManager, accepting subscriptions on the loopback
+     * address, or the address set with -DManagement.replication.bindAddress.
+     *
+     * @param tokenManager the manager whose tokens are replicated
+     * @param port         the port accepting subscriptions from peers, 0 for any free port
+     * @param key          the replication key shared by the peers, at least 16 bytes long
+     */
+    public TokenReplicator(TokenManager tokenManager, int port, byte[] key) {
+        this(tokenManager, defaultBindAddress(port), key, DEFAULT_LOG_SIZE);
+    }
+
+    /**
+     * Starts replicating the tokens of a TokenManager, accepting subscriptions on the given address.
+     *
+     * @param tokenManager the manager whose tokens are replicated
+     * @param bindAddress  the address accepting subscriptions from peers, port 0 for any free port
+     * @param key          the replication key shared by the peers, at least 16 bytes long
+     */
+    public TokenReplicator(TokenManager tokenManager, InetSocketAddress bindAddress, byte[] key) {
+        this(tokenManager, bindAddress, key, DEFAULT_LOG_SIZE);
+    }
+
+    /**
+     * Starts replicating the tokens of a TokenManager, accepting subscriptions on the given address.
+     *
+     * @param tokenManager the manager whose tokens are replicated
+     * @param bindAddress  the address accepting subscriptions from peers, port 0 for any free port
+     * @param key          the replication key shared by the peers, at least 16 bytes long
+     * @param logSize      the number of operations kept for peers catching up
+     * @throws IllegalArgumentException if the key is shorter than 16 bytes or the log size is negative
+     */
+    public TokenReplicator(TokenManager tokenManager, InetSocketAddress bindAddress, byte[] key, int logSize) {
+        if (logSize < 0) {
+            throw new IllegalArgumentException("Invalid replication log size: " + logSize);
+        }
+        if (key == null || key.length < MIN_KEY_LENGTH) {
+            throw new IllegalArgumentException("Replication key must be at least " + MIN_KEY_LENGTH + " bytes");
+        }
+        this.tokenManager = tokenManager;
+        this.logSize = logSize;
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == 0);
+        this.epoch = id;
+        try {
+            this.mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error initializing token replication", e);
+        }
+        try {
+            this.selector = Selector.open();
+            this.server = ServerSocketChannel.open();
+            server.bind(bindAddress);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening token replication on " + bindAddress, e);
+        }
+        this.thread = new Thread(this::run, "token-replicator");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        tokenManager.addListener(this);
+    }
+
+    /**
+     * Subscribes to the tokens of a peer node, connecting again whenever the connection drops.
+     *
+     * @param address the address the peer accepts subscriptions on
+     */
+    public void addPeer(InetSocketAddress address) {
+        newPeers.add(address);
+        wakeup();
+    }
+
+    /**
+     * Gets the address accepting subscriptions, with the actual port if port 0 was requested.
+     *
+     * @return the local address
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading token replication address", e);
+        }
+    }
+
+    /**
+     * Queues an issued token for the subscribers.
+     *
+     * @param token     the token value
+     * @param user      the user the token belongs to
+     * @param expiresAt the expiry of the token
+     */
+    @Override
+    public void tokenCreated(String token, User user, Instant expiresAt) {
+        UUID id = parse(token);
+        if (id == null) {
+            return;
+        }
+        byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] role = user.getRole() == null ? new byte[0] : user.getRole().getBytes(StandardCharsets.UTF_8);
+        if (41 + username.length + role.length > MAX_BODY) {
+            logger.warn("Username or role too long to replicate token of user: " + user.getUsername());
+            return;
+        }
+        outbox.add(new Operation(CREATE, id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                expiresAt.toEpochMilli(), username, role));
+        wakeup();
+    }
+
+    /**
+     * Queues an invalidated token for the subscribers.
+     *
+     * @param token the token value
+     * @param user  the user the token belonged to
+     */
+    @Override
+    public void tokenInvalidated(String token, User user) {
+        UUID id = parse(token);
+        if (id != null) {
+            outbox.add(new Operation(INVALIDATE, id.getMostSignificantBits(), id.getLeastSignificantBits(), 0, null, null));
+            wakeup();
+        }
+    }
+
+    /**
+     * Queues the tokens extended by sliding expiration for the subscribers, as issued tokens
+     * with their new expiry, so a token in use does not expire on the other nodes.
+     *
+     * @param touches the extended tokens
+     */
+    @Override
+    public void tokensTouched(List<Touch> touches) {
+        for (Touch touch : touches) {
+            tokenCreated(touch.token(), touch.user(), touch.expiresAt());
+        }
+    }
+
+    /**
+     * Gets the number of local operations sent, counted once per operation.
+     * @return the sent count
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * Gets the number of operations received from peers, including snapshot entries.
+     * @return the received count
+     */
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    /**
+     * Gets the number of subscriptions served with a full snapshot.
+     * @return the snapshot count
+     */
+    public long getSnapshotCount() {
+        return snapshots.sum();
+    }
+
+    /**
+     * Gets the number of subscriptions served from the log only.
+     * @return the delta count
+     */
+    public long getDeltaCount() {
+        return deltas.sum();
+    }
+
+    /**
+     * Gets the number of replication connections lost or dropped.
+     * @return the disconnect count
+     */
+    public long getDisconnectCount() {
+        return disconnects.sum();
+    }
+
+    /**
+     * Stops replicating and closes every socket.
+     */
+    @Override
+    public void close() {
+        tokenManager.removeListener(this);
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeup() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(TimeUnit.NANOSECONDS.toMillis(RECONNECT_DELAY_NANOS));
+                wakeupPending.set(false);
+                InetSocketAddress address;
+                while ((address = newPeers.poll()) != null) {
+                    peers.add(new Peer(address));
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        handle(key);
+                    } catch (CancelledKeyException e) {
+                        // The connection was closed while handling another key
+                    }
+                }
+                publish();
+                for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+                    if (subscriber.snapshot != null) {
+                        subscriber.feed();
+                    }
+                }
+                long now = System.nanoTime();
+                for (Peer peer : peers) {
+                    if (peer.channel == null && now - peer.reconnectAt >= 0) {
+                        peer.connect();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.error("Token replication stopped", e);
+        } finally {
+            for (Peer peer : peers) {
+                peer.disconnect(false);
+            }
+            for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+                subscriber.disconnect();
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Exception occurred while closing token replication", e);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            SocketChannel channel = server.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Subscriber subscriber = new Subscriber(channel);
+                channel.register(selector, SelectionKey.OP_READ, subscriber);
+                subscribers.add(subscriber);
+                subscriber.flush();
+            }
+            return;
+        }
+        Object attachment = key.attachment();
+        if (attachment instanceof Peer peer) {
+            peer.handle(key);
+        } else if (attachment instanceof Subscriber subscriber) {
+            subscriber.handle(key);
+        }
+    }
+
+    /**
+     * Sequences the queued local operations, appends them to the log and to every subscriber,
+     * and writes each subscriber once.
+     */
+    private void publish() {
+        Operation operation;
+        boolean any = false;
+        while ((operation = outbox.poll()) != null) {
+            byte[] frame = encode(++sequence, operation);
+            if (logSize > 0) {
+                if (log.size() == logSize) {
+                    log.pollFirst();
+                }
+                log.addLast(frame);
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.subscribed) {
+                    subscriber.append(frame);
+                }
+            }
+            sent.increment();
+            any = true;
+        }
+        if (any) {
+            for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+                subscriber.flush();
+            }
+        }
+    }
+
+    private static byte[] encode(long seq, Operation operation) {
+        if (operation.type() == INVALIDATE) {
+            ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 24);
+            frame.putShort((short) 25).put(INVALIDATE).putLong(seq).putLong(operation.msb()).putLong(operation.lsb());
+            return frame.array();
+        }
+        return encodeCreate(seq, operation.msb(), operation.lsb(), operation.expiresAtMillis(), operation.username(), operation.role());
+    }
+
+    private static byte[] encodeCreate(long seq, long msb, long lsb, long expiresAtMillis, byte[] username, byte[] role) {
+        int length = 1 + 32 + 2 + username.length + 2 + role.length;
+        ByteBuffer frame = ByteBuffer.allocate(2 + length);
+        frame.putShort((short) length).put(CREATE).putLong(seq).putLong(msb).putLong(lsb).putLong(expiresAtMillis)
+                .putShort((short) username.length).put(username)
+                .putShort((short) role.length).put(role);
+        return frame.array();
+    }
+
+    private static InetSocketAddress defaultBindAddress(int port) {
+        try {
+            return new InetSocketAddress(DEFAULT_BIND_HOST == null ? InetAddress.getLoopbackAddress()
+                    : InetAddress.getByName(DEFAULT_BIND_HOST), port);
+        } catch (IOException e) {
+            throw new RuntimeException("Error resolving token replication address " + DEFAULT_BIND_HOST, e);
+        }
+    }
+
+    /**
+     * Computes an HMAC of a nonce and data with the replication key, under a label keeping
+     * the uses of the key apart. Selector thread only.
+     */
+    private byte[] hmac(byte label, byte[] nonce, byte[] data) {
+        mac.update(label);
+        mac.update(nonce);
+        mac.update(data);
+        return mac.doFinal();
+    }
+
+    /**
+     * Derives the key sealing the frames of one connection from the nonces of its handshake.
+     */
+    private SecretKeySpec sessionKey(byte[] serverNonce, byte[] clientNonce) {
+        return new SecretKeySpec(hmac(SESSION_LABEL, serverNonce, clientNonce), "AES");
+    }
+
+    /**
+     * Builds the parameters sealing a frame; the session key is unique to the connection, so
+     * the frame number is a unique nonce.
+     */
+    private static GCMParameterSpec parameters(long frameNumber) {
+        return new GCMParameterSpec(8 * TAG_LENGTH, ByteBuffer.allocate(12).putLong(4, frameNumber).array());
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error initializing token replication", e);
+        }
+    }
+
+    private static UUID parse(String token) {
+        if (token == null || token.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A node subscribing to the tokens of this node.
+     */
+    private final class Subscriber {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(2 + SUBSCRIBE_LENGTH);
+        private ByteBuffer out = ByteBuffer.allocate(64 << 10);
+        private final byte[] serverNonce = new byte[NONCE_LENGTH];
+        private Cipher cipher;
+        private SecretKeySpec sessionKey;
+        private long sealed;
+        private boolean subscribed;
+        private Snapshot snapshot;
+        private final ArrayDeque<byte[]> deferred = new ArrayDeque<>();
+        private long deferredBytes;
+
+        Subscriber(SocketChannel channel) {
+            this.channel = channel;
+            random.nextBytes(serverNonce);
+            reserve(2 + 1 + NONCE_LENGTH);
+            out.putShort((short) (1 + NONCE_LENGTH)).put(CHALLENGE).put(serverNonce);
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (key.isReadable()) {
+                    int read = channel.read(in);
+                    if (read < 0) {
+                        disconnect();
+                        return;
+                    }
+                    if (subscribed && read > 0) {
+                        throw new IOException("Unexpected replication frame after subscription");
+                    }
+                }
+                if (!subscribed && !in.hasRemaining()) {
+                    in.flip();
+                    if (in.getShort() != SUBSCRIBE_LENGTH || in.get() != SUBSCRIBE) {
+                        throw new IOException("Unexpected replication frame");
+                    }
+                    byte[] clientNonce = new byte[NONCE_LENGTH];
+                    in.get(clientNonce);
+                    long knownEpoch = in.getLong();
+                    long lastSequence = in.getLong();
+                    byte[] proof = new byte[PROOF_LENGTH];
+                    in.get(proof);
+                    byte[] expected = hmac(PROOF_LABEL, serverNonce, Arrays.copyOfRange(in.array(), 2, 2 + SUBSCRIBE_LENGTH - PROOF_LENGTH));
+                    if (!MessageDigest.isEqual(proof, expected)) {
+                        throw new IOException("Subscriber does not hold the replication key");
+                    }
+                    in.clear();
+                    sessionKey = sessionKey(serverNonce, clientNonce);
+                    cipher = newCipher();
+                    subscribe(knownEpoch, lastSequence);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush();
+                }
+            } catch (IOException e) {
+                logger.warn("Dropping token replication subscriber: " + e.getMessage());
+                disconnect();
+            }
+        }
+
+        /**
+         * Starts the stream with the operations the subscriber missed, from the log or a snapshot.
+         */
+        private void subscribe(long knownEpoch, long lastSequence) {
+            long firstLogged = sequence - log.size() + 1;
+            boolean delta = knownEpoch == epoch && lastSequence >= firstLogged - 1 && lastSequence <= sequence;
+            seal(ByteBuffer.allocate(1 + 17).put(HELLO).putLong(epoch)
+                    .putLong(delta ? lastSequence : sequence).put((byte) (delta ? 0 : 1)).flip());
+            if (delta) {
+                long seq = firstLogged;
+                for (byte[] frame : log) {
+                    if (seq++ > lastSequence) {
+                        append(frame);
+                    }
+                }
+                deltas.increment();
+            } else {
+                snapshot = new Snapshot();
+                snapshots.increment();
+            }
+            subscribed = true;
+            flush();
+        }
+
+        /**
+         * Appends an operation, or holds it back until the snapshot is streamed.
+         */
+        void append(byte[] frame) {
+            if (snapshot != null) {
+                deferred.addLast(frame);
+                deferredBytes += frame.length;
+                return;
+            }
+            seal(ByteBuffer.wrap(frame, 2, frame.length - 2));
+        }
+
+        /**
+         * Seals the snapshot blocks read so far while less than a block is pending, and the
+         * operations held back once the snapshot is complete.
+         */
+        void feed() {
+            int before = out.position();
+            while (snapshot != null && out.position() < SNAPSHOT_BLOCK_BYTES) {
+                ByteBuffer block = snapshot.blocks.poll();
+                if (block == null) {
+                    if (!snapshot.done) {
+                        break;
+                    }
+                    // Every block is queued before the snapshot is done
+                    block = snapshot.blocks.poll();
+                    if (block == null) {
+                        if (snapshot.failed) {
+                            logger.warn("Dropping token replication subscriber: snapshot failed");
+                            disconnect();
+                            return;
+                        }
+                        snapshot = null;
+                        for (byte[] frame : deferred) {
+                            seal(ByteBuffer.wrap(frame, 2, frame.length - 2));
+                        }
+                        deferred.clear();
+                        deferredBytes = 0;
+                        break;
+                    }
+                }
+                while (block.hasRemaining()) {
+                    int length = Short.toUnsignedInt(block.getShort());
+                    int end = block.position() + length;
+                    seal(block.slice(block.position(), length));
+                    block.position(end);
+                }
+            }
+            if (out.position() != before) {
+                flush();
+            }
+        }
+
+        /**
+         * Appends a frame body sealed with the session key, behind its length.
+         */
+        private void seal(ByteBuffer body) {
+            reserve(2 + body.remaining() + TAG_LENGTH);
+            out.putShort((short) (body.remaining() + TAG_LENGTH));
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, sessionKey, parameters(sealed++));
+                cipher.doFinal(body, out);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("Error sealing token replication frame", e);
+            }
+        }
+
+        private void reserve(int length) {
+            if (out.remaining() < length) {
+                int needed = out.position() + length;
+                int capacity = out.capacity();
+                while (capacity < needed) {
+                    capacity *= 2;
+                }
+                ByteBuffer grown = ByteBuffer.allocate(capacity);
+                out.flip();
+                grown.put(out);
+                out = grown;
+            }
+        }
+
+        void flush() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                out.flip();
+                channel.write(out);
+                out.compact();
+                SelectionKey key = channel.keyFor(selector);
+                if (out.position() + deferredBytes > MAX_BUFFER_BYTES) {
+                    throw new IOException("Subscriber too slow, " + (out.position() + deferredBytes) + " bytes pending");
+                }
+                if (key != null && key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+                }
+            } catch (IOException e) {
+                logger.warn("Dropping token replication subscriber: " + e.getMessage());
+                disconnect();
+            }
+        }
+
+        void disconnect() {
+            subscribers.remove(this);
+            disconnects.increment();
+            if (snapshot != null) {
+                snapshot.thread.interrupt();
+                snapshot = null;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the active tokens, read by a thread of its own and queued in blocks of
+     * encoded frames, so the selector thread never waits for the token store.
+     */
+    private final class Snapshot implements Runnable {
+
+        private final BlockingQueue<ByteBuffer> blocks = new ArrayBlockingQueue<>(SNAPSHOT_QUEUE_BLOCKS);
+        private final Thread thread = new Thread(this, "token-replication-snapshot");
+        private ByteBuffer block = ByteBuffer.allocate(SNAPSHOT_BLOCK_BYTES);
+        private volatile boolean done;
+        private volatile boolean failed;
+
+        Snapshot() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                tokenManager.getActiveTokens().forEachEntry((token, user, expiresAt) -> {
+                    UUID id = parse(token);
+                    if (id != null && user != null && user.getUsername() != null) {
+                        byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+                        byte[] role = user.getRole() == null ? new byte[0] : user.getRole().getBytes(StandardCharsets.UTF_8);
+                        if (41 + username.length + role.length <= MAX_BODY) {
+                            byte[] frame = encodeCreate(0, id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                                    expiresAt, username, role);
+                            if (block.remaining() < frame.length) {
+                                hand();
+                            }
+                            block.put(frame);
+                        }
+                    }
+                });
+                hand();
+            } catch (RuntimeException e) {
+                failed = true;
+                if (!thread.isInterrupted()) {
+                    logger.error("Exception occurred while reading a token replication snapshot", e);
+                }
+            } finally {
+                done = true;
+                wakeup();
+            }
+        }
+
+        /**
+         * Queues the current block, waiting while the subscriber is behind.
+         */
+        private void hand() {
+            block.flip();
+            try {
+                blocks.put(block);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Snapshot cancelled", e);
+            }
+            wakeup();
+            block = ByteBuffer.allocate(SNAPSHOT_BLOCK_BYTES);
+        }
+    }
+
+    /**
+     * A node whose tokens this node subscribes to.
+     */
+    private final class Peer {
+
+        private final InetSocketAddress address;
+        private final ByteBuffer in = ByteBuffer.allocate(2 * (2 + MAX_FRAME));
+        private final ByteBuffer plain = ByteBuffer.allocate(MAX_FRAME);
+        private final Cipher cipher = newCipher();
+        private SocketChannel channel;
+        private boolean established;
+        private SecretKeySpec sessionKey;
+        private long opened;
+        private long reconnectAt = System.nanoTime();
+        private long peerEpoch;
+        private long lastSequence;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void connect() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                if (channel.connect(address)) {
+                    connected();
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException e) {
+                disconnect(true);
+            }
+        }
+
+        private void connected() throws IOException {
+            in.clear();
+            sessionKey = null;
+            channel.register(selector, SelectionKey.OP_READ, this);
+            established = true;
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    connected();
+                    return;
+                }
+                if (key.isReadable()) {
+                    if (channel.read(in) < 0) {
+                        throw new IOException("Connection closed by peer");
+                    }
+                    in.flip();
+                    while (in.remaining() >= 2 && in.remaining() >= 2 + Short.toUnsignedInt(in.getShort(in.position()))) {
+                        int length = Short.toUnsignedInt(in.getShort());
+                        int end = in.position() + length;
+                        if (sessionKey == null) {
+                            answer(in.slice(in.position(), length));
+                        } else {
+                            apply(open(in.slice(in.position(), length)));
+                        }
+                        in.position(end);
+                    }
+                    in.compact();
+                }
+            } catch (IOException | BufferUnderflowException e) {
+                if (running) {
+                    logger.warn("Lost token replication peer " + address + ": " + e.getMessage());
+                }
+                disconnect(true);
+            }
+        }
+
+        /**
+         * Answers the challenge of the peer with a subscription proving the replication key.
+         */
+        private void answer(ByteBuffer frame) throws IOException {
+            if (frame.remaining() != 1 + NONCE_LENGTH || frame.get() != CHALLENGE) {
+                throw new IOException("Unexpected replication frame");
+            }
+            byte[] serverNonce = new byte[NONCE_LENGTH];
+            frame.get(serverNonce);
+            byte[] clientNonce = new byte[NONCE_LENGTH];
+            random.nextBytes(clientNonce);
+            ByteBuffer subscribe = ByteBuffer.allocate(2 + SUBSCRIBE_LENGTH);
+            subscribe.putShort((short) SUBSCRIBE_LENGTH).put(SUBSCRIBE).put(clientNonce).putLong(peerEpoch).putLong(lastSequence);
+            subscribe.put(hmac(PROOF_LABEL, serverNonce, Arrays.copyOfRange(subscribe.array(), 2, subscribe.position()))).flip();
+            while (subscribe.hasRemaining()) {
+                channel.write(subscribe);
+            }
+            sessionKey = sessionKey(serverNonce, clientNonce);
+            opened = 0;
+        }
+
+        /**
+         * Opens a frame sealed by the peer, which proves the peer holds the replication key.
+         */
+        private ByteBuffer open(ByteBuffer frame) throws IOException {
+            if (frame.remaining() <= TAG_LENGTH) {
+                throw new IOException("Truncated replication frame");
+            }
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, sessionKey, parameters(opened++));
+                plain.clear();
+                cipher.doFinal(frame, plain);
+                return plain.flip();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Peer does not hold the replication key");
+            }
+        }
+
+        private void apply(ByteBuffer frame) throws IOException {
+            byte type = frame.get();
+            if (type == HELLO) {
+                peerEpoch = frame.getLong();
+                lastSequence = frame.getLong();
+                return;
+            }
+            long seq = frame.getLong();
+            String token = new UUID(frame.getLong(), frame.getLong()).toString();
+            if (type == CREATE) {
+                long expiresAt = frame.getLong();
+                String username = readString(frame);
+                String role = readString(frame);
+                tokenManager.applyReplicatedToken(token, new User(username, role.isEmpty() ? null : role),
+                        Instant.ofEpochMilli(expiresAt));
+            } else if (type == INVALIDATE) {
+                tokenManager.applyReplicatedInvalidation(token);
+            } else {
+                throw new IOException("Unexpected replication frame type " + type);
+            }
+            if (seq != 0) {
+                lastSequence = seq;
+            }
+            received.increment();
+        }
+
+        void disconnect(boolean reconnect) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+                channel = null;
+                if (reconnect && established) {
+                    disconnects.increment();
+                }
+                established = false;
+            }
+            reconnectAt = System.nanoTime() + RECONNECT_DELAY_NANOS;
+        }
+    }
+
+    private static String readString(ByteBuffer frame) {
+        byte[] bytes = new byte[Short.toUnsignedInt(frame.getShort())];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
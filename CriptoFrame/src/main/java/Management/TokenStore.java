@@ -0,0 +1,420 @@
+package Management;
+
+import DTO.User;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * TokenStore class keeps the active tokens of a TokenManager, each with its own time to live.
+ *
+ * Tokens are held in a ConcurrentHashMap, so validations never take a lock. Expiry is driven by
+ * a hashed timing wheel: every token is also linked into the bucket of the tick at which it
+ * expires, and a shared background thread empties the buckets whose tick has passed. Expiring
+ * tokens never scans the whole store, only the buckets of the passed ticks; when the time to
+ * live spans several turns of the wheel, those buckets also hold the tokens of later turns,
+ * which are walked over and left in place. A token read after its deadline but before its
+ * bucket is emptied is expired on the spot.
+ *
+ * When the store holds more than its maximum size, the tokens closest to their expiry are evicted.
+ */
+public class TokenStore implements TokenBackend {
+
+    // Number of buckets in the wheel, a power of two
+    private static final int WHEEL_SIZE = 512;
+
+    // Shared thread emptying the expired buckets of every store
+    private static final ScheduledExecutorService expiryThread = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "token-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Active tokens by value
+    private final ConcurrentHashMap<String, Entry> tokens = new ConcurrentHashMap<>();
+
+    // Buckets of the timing wheel, indexed by expiry tick
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+
+    // Length of a wheel tick in nanoseconds
+    private final long tickNanos;
+
+    // Time to live of tokens stored without an explicit one, in nanoseconds
+    private final long defaultTtlNanos;
+
+    // Maximum number of tokens, or 0 for no limit
+    private final int maxSize;
+
+    // Last tick whose bucket was emptied, guarded by this
+    private volatile long lastTick;
+
+    // Periodic task emptying the expired buckets
+    private final ScheduledFuture<?> expiryTask;
+
+    // Tokens removed because their time to live passed
+    private final LongAdder expirations = new LongAdder();
+
+    // Tokens removed because the store was full
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a TokenStore and starts expiring its tokens in the background.
+     *
+     * @param defaultTtl the time to live of tokens stored without an explicit one
+     * @param maxSize    the maximum number of tokens, or 0 for no limit
+     * @param tick       the resolution of the timing wheel
+     * @throws IllegalArgumentException if the time to live or tick is not positive, or maxSize is negative
+     */
+    public TokenStore(Duration defaultTtl, int maxSize, Duration tick) {
+        if (defaultTtl.isNegative() || defaultTtl.isZero() || tick.isNegative() || tick.isZero() || maxSize < 0) {
+            throw new IllegalArgumentException("Invalid token store settings");
+        }
+        this.defaultTtlNanos = defaultTtl.toNanos();
+        this.maxSize = maxSize;
+        this.tickNanos = tick.toNanos();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.lastTick = Math.floorDiv(System.nanoTime(), tickNanos);
+        ExpiryTask task = new ExpiryTask(this);
+        this.expiryTask = expiryThread.scheduleAtFixedRate(task, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        task.future = expiryTask;
+    }
+
+    /**
+     * Stores a token with the default time to live, replacing any previous entry for the same value.
+     *
+     * @param token the token value
+     * @param user  the user the token belongs to
+     */
+    @Override
+    public void put(String token, User user) {
+        put(token, user, defaultTtlNanos);
+    }
+
+    /**
+     * Stores a token with the given time to live, replacing any previous entry for the same value.
+     *
+     * @param token the token value
+     * @param user  the user the token belongs to
+     * @param ttl   the time to live of the token
+     * @throws IllegalArgumentException if the time to live is not positive
+     */
+    @Override
+    public void put(String token, User user, Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Invalid token time to live: " + ttl);
+        }
+        put(token, user, ttl.toNanos());
+    }
+
+    /**
+     * Gets the user of a token.
+     *
+     * @param token the token value
+     * @return the user, or null if the token is unknown or has expired
+     */
+    @Override
+    public User get(String token) {
+        Entry entry = live(token);
+        return entry == null ? null : entry.user;
+    }
+
+    /**
+     * Checks if a token is stored and has not expired.
+     *
+     * @param token the token value
+     * @return true if the token is active
+     */
+    @Override
+    public boolean contains(String token) {
+        return live(token) != null;
+    }
+
+    /**
+     * Removes a token.
+     *
+     * @param token the token value
+     * @return the user of the token, or null if it was not stored
+     */
+    @Override
+    public User remove(String token) {
+        Entry entry = token == null ? null : tokens.remove(token);
+        if (entry == null) {
+            return null;
+        }
+        entry.bucket.unlink(entry);
+        return entry.user;
+    }
+
+    /**
+     * Visits every stored token that has not expired.
+     *
+     * @param action the action called with each token value
+     */
+    @Override
+    public void forEachToken(Consumer<String> action) {
+        long now = System.nanoTime();
+        tokens.forEach((token, entry) -> {
+            if (entry.deadline - now > 0) {
+                action.accept(token);
+            }
+        });
+    }
+
+    /**
+     * Visits every stored token that has not expired, with its user and expiry.
+     *
+     * @param visitor the visitor called with each token
+     */
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        long now = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        tokens.forEach((token, entry) -> {
+            long remaining = entry.deadline - now;
+            if (remaining > 0) {
+                visitor.visit(token, entry.user, nowMillis + TimeUnit.NANOSECONDS.toMillis(remaining));
+            }
+        });
+    }
+
+    /**
+     * Gets the number of stored tokens, including expired tokens not removed yet.
+     *
+     * @return the live token count
+     */
+    @Override
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Gets the number of tokens removed because their time to live passed.
+     *
+     * @return the expiration count
+     */
+    @Override
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * Gets the number of tokens removed because the store was full.
+     *
+     * @return the eviction count
+     */
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Removes the tokens whose time to live has passed. The background thread calls this every tick.
+     */
+    public synchronized void expire() {
+        long now = System.nanoTime();
+        long currentTick = Math.floorDiv(now, tickNanos);
+        // The last tick is scanned again: tokens due later in that tick were not expired yet
+        long first = Math.max(lastTick, currentTick - WHEEL_SIZE + 1);
+        List<Entry> expired = new ArrayList<>();
+        for (long tick = first; tick <= currentTick; tick++) {
+            wheel[index(tick)].drainExpired(now, expired);
+        }
+        lastTick = currentTick;
+        for (Entry entry : expired) {
+            if (tokens.remove(entry.token, entry)) {
+                expirations.increment();
+            }
+        }
+    }
+
+    /**
+     * Stops expiring tokens in the background. Expired tokens are still rejected when read.
+     */
+    @Override
+    public void close() {
+        expiryTask.cancel(false);
+    }
+
+    /**
+     * Gets the entry of a token, expiring it on the spot if its deadline has passed.
+     */
+    private Entry live(String token) {
+        Entry entry = token == null ? null : tokens.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.deadline - System.nanoTime() <= 0) {
+            if (tokens.remove(token, entry)) {
+                entry.bucket.unlink(entry);
+                expirations.increment();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(String token, User user, long ttlNanos) {
+        long deadline = System.nanoTime() + ttlNanos;
+        Entry entry = new Entry(token, user, deadline, wheel[index(Math.floorDiv(deadline, tickNanos))]);
+        // The entry is linked once it is in the map, so an eviction popping it from its bucket can
+        // always remove it; an entry removed in between is unlinked again
+        Entry previous = tokens.put(token, entry);
+        if (previous != null) {
+            previous.bucket.unlink(previous);
+        }
+        entry.bucket.link(entry);
+        if (tokens.get(token) != entry) {
+            entry.bucket.unlink(entry);
+        }
+        while (maxSize > 0 && tokens.size() > maxSize && evictOne()) {
+            // Keep evicting until the store fits again
+        }
+    }
+
+    /**
+     * Evicts the oldest token of the first non-empty bucket from the current tick on, which holds
+     * the tokens expiring soonest.
+     *
+     * @return true if a token was evicted
+     */
+    private boolean evictOne() {
+        long start = lastTick;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            Bucket bucket = wheel[index(start + i)];
+            Entry entry = bucket.pollFirst();
+            if (entry != null && tokens.remove(entry.token, entry)) {
+                evictions.increment();
+                return true;
+            }
+            if (entry != null && tokens.get(entry.token) == entry) {
+                // Still stored, so it must stay linked to be expired later
+                bucket.link(entry);
+            }
+        }
+        return false;
+    }
+
+    private static int index(long tick) {
+        return (int) (tick & (WHEEL_SIZE - 1));
+    }
+
+    /**
+     * A stored token, linked into the bucket of its expiry tick.
+     */
+    private static final class Entry {
+
+        private final String token;
+        private final User user;
+        private final long deadline;
+        private final Bucket bucket;
+
+        // Neighbours in the bucket, guarded by the bucket
+        private Entry prev;
+        private Entry next;
+        private boolean linked;
+
+        Entry(String token, User user, long deadline, Bucket bucket) {
+            this.token = token;
+            this.user = user;
+            this.deadline = deadline;
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * A slot of the wheel: a doubly linked list of the tokens expiring at the ticks mapping to it.
+     */
+    private static final class Bucket {
+
+        private Entry head;
+        private Entry tail;
+
+        synchronized void link(Entry entry) {
+            entry.prev = tail;
+            if (tail == null) {
+                head = entry;
+            } else {
+                tail.next = entry;
+            }
+            tail = entry;
+            entry.linked = true;
+        }
+
+        synchronized void unlink(Entry entry) {
+            if (!entry.linked) {
+                return;
+            }
+            if (entry.prev == null) {
+                head = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next == null) {
+                tail = entry.prev;
+            } else {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.linked = false;
+        }
+
+        synchronized Entry pollFirst() {
+            Entry entry = head;
+            if (entry != null) {
+                unlink(entry);
+            }
+            return entry;
+        }
+
+        /**
+         * Unlinks the entries whose deadline has passed; entries of later rounds stay linked.
+         */
+        synchronized void drainExpired(long now, List<Entry> expired) {
+            Entry entry = head;
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.deadline - now <= 0) {
+                    unlink(entry);
+                    expired.add(entry);
+                }
+                entry = next;
+            }
+        }
+    }
+
+    /**
+     * Periodic expiry of one store. It only keeps a weak reference, so a store that is no longer
+     * used can be collected without being closed; the task then cancels itself.
+     */
+    private static final class ExpiryTask implements Runnable {
+
+        private final WeakReference<TokenStore> store;
+        private volatile ScheduledFuture<?> future;
+
+        ExpiryTask(TokenStore store) {
+            this.store = new WeakReference<>(store);
+        }
+
+        @Override
+        public void run() {
+            TokenStore target = store.get();
+            if (target != null) {
+                target.expire();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,607 @@
+package Management;
+
+import BO.TokenBO;
+import Crypt.EncryptServiceFactory;
+import DAO.TokenDAO;
+import DTO.Token;
+import DTO.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TokenWriteBehind class persists the tokens issued and invalidated by a TokenManager in the
+ * background, so issuing a token does not wait for the database.
+ *
+ * Events are queued per user, since the Token table holds one token per user: a newer event
+ * replaces the queued one, so a token issued and invalidated before a flush is never written.
+ * A background thread writes the queue to TokenDAO in one batched transaction once batchSize
+ * users are queued, or once the oldest event waited for the flush interval. A failed batch is
+ * queued again and retried with a growing delay.
+ *
+ * The queue is bounded: when it is full, callers wait up to the offer timeout for a flush to
+ * make room, and the event is rejected and counted if none does. close() writes everything
+ * still queued, and is also called by a shutdown hook. Tokens are encrypted with the key of
+ * their user, or with the storage key for users loaded without one, which every login is; a
+ * storage key that cannot encrypt is refused up front. A token that still cannot be encrypted
+ * is dropped and counted on its own, leaving the stored token of its user in place; the other
+ * changes of its batch are written.
+ *
+ * The last token issued to each user is remembered until it expires, so an older token
+ * invalidated meanwhile does not delete it. Expired entries are swept once the map has doubled
+ * since the last sweep, so tokens that expire or are evicted without being invalidated are not
+ * kept forever.
+ *
+ * Tokens extended by sliding expiration arrive in batches from the TokenManager; the last use
+ * of each user's token is written at the next flush with one batched UPDATE. These writes are
+ * best effort: a failed one is not retried, since the next batch of uses supersedes it. They
+ * need the lastSeen column added by schema/token_last_seen.sql.
+ */
+public class TokenWriteBehind implements TokenListener, AutoCloseable {
+
+    // Logger for logging write-behind failures
+    private static final Logger logger = LoggerFactory.getLogger(TokenWriteBehind.class);
+
+    // Default maximum number of queued users, overridable with -DManagement.token.writeBehind.capacity
+    private static final int DEFAULT_CAPACITY = Integer.getInteger("Management.token.writeBehind.capacity", 10_000);
+
+    // Default number of users written per batch, overridable with -DManagement.token.writeBehind.batchSize
+    private static final int DEFAULT_BATCH_SIZE = Integer.getInteger("Management.token.writeBehind.batchSize", 500);
+
+    // Default longest wait of an event before a flush, overridable with -DManagement.token.writeBehind.flushMillis
+    private static final long DEFAULT_FLUSH_MILLIS = Long.getLong("Management.token.writeBehind.flushMillis", 200);
+
+    // Default longest wait of a caller for room in the queue, overridable with -DManagement.token.writeBehind.offerTimeoutMillis
+    private static final long DEFAULT_OFFER_TIMEOUT_MILLIS = Long.getLong("Management.token.writeBehind.offerTimeoutMillis", 50);
+
+    // Delay before the first retry of a failed batch, doubled on each further failure
+    private static final long RETRY_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // Longest delay between two retries of a failed batch
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // Longest wait of close() for the queue to be written
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * A queued change of the token of a user.
+     *
+     * @param username   the user whose token changes
+     * @param token      the token to write, or null to delete the user's token
+     * @param enqueuedAt the time the first queued event of the user arrived, in System.nanoTime()
+     */
+    private record Write(String username, Token token, long enqueuedAt) {
+    }
+
+    /**
+     * The last token issued to a user.
+     *
+     * @param token     the token value
+     * @param expiresAt the expiry of the token, pushed back when sliding expiration extends it
+     */
+    private record Latest(String token, Instant expiresAt) {
+    }
+
+    // DAO the batches are written to
+    private final TokenDAO tokenDAO;
+
+    // Encryption type used for storing the tokens
+    private final String encryptionType;
+
+    // Key encrypting the tokens of users without a key of their own
+    private final byte[] storageKey;
+
+    // Maximum number of queued users
+    private final int capacity;
+
+    // Number of users written per batch
+    private final int batchSize;
+
+    // Longest wait of an event before a flush, in nanoseconds
+    private final long flushIntervalNanos;
+
+    // Longest wait of a caller for room in the queue, in nanoseconds
+    private final long offerTimeoutNanos;
+
+    // Lock guarding the queue
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Signalled when a flush made room in the queue
+    private final Condition notFull = lock.newCondition();
+
+    // Signalled when a batch is full or the writer is closed
+    private final Condition flushNeeded = lock.newCondition();
+
+    // Queued writes by username, oldest first
+    private final LinkedHashMap<String, Write> pending = new LinkedHashMap<>();
+
+    // Last token issued to each user, so invalidating an older token does not delete a newer one
+    private final Map<String, Latest> latestTokens = new HashMap<>();
+
+    // Size of latestTokens above which its expired entries are swept
+    private int latestTokensSweepSize;
+
+    // Queued last uses of the users' tokens, by username
+    private final Map<String, Instant> lastSeen = new HashMap<>();
+
+    // Whether close() was called
+    private boolean closed;
+
+    // Thread writing the batches
+    private final Thread flusher;
+
+    // Hook closing the writer when the JVM exits
+    private final Thread shutdownHook;
+
+    // Metrics
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder touchesWritten = new LongAdder();
+    private volatile long lastBatchLagNanos;
+
+    /**
+     * Constructs a TokenWriteBehind with the default queue settings and starts its thread.
+     *
+     * @param tokenDAO       the DAO the tokens are written to
+     * @param encryptionType the encryption type used for storing the tokens
+     * @param storageKey     the key encrypting the tokens of users without a key of their own
+     */
+    public TokenWriteBehind(TokenDAO tokenDAO, String encryptionType, byte[] storageKey) {
+        this(tokenDAO, encryptionType, storageKey, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, Duration.ofMillis(DEFAULT_FLUSH_MILLIS),
+                Duration.ofMillis(DEFAULT_OFFER_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Constructs a TokenWriteBehind and starts its thread.
+     *
+     * @param tokenDAO       the DAO the tokens are written to
+     * @param encryptionType the encryption type used for storing the tokens
+     * @param storageKey     the key encrypting the tokens of users without a key of their own
+     * @param capacity       the maximum number of queued users
+     * @param batchSize      the number of users written per batch
+     * @param flushInterval  the longest wait of an event before a flush
+     * @param offerTimeout   the longest wait of a caller for room in a full queue
+     * @throws IllegalArgumentException if the settings are out of range, or the storage key
+     *                                  cannot encrypt with the encryption type
+     */
+    public TokenWriteBehind(TokenDAO tokenDAO, String encryptionType, byte[] storageKey, int capacity, int batchSize,
+                            Duration flushInterval, Duration offerTimeout) {
+        if (capacity <= 0 || batchSize <= 0 || flushInterval.isNegative() || flushInterval.isZero()
+                || offerTimeout.isNegative() || storageKey == null) {
+            throw new IllegalArgumentException("Invalid token write-behind settings");
+        }
+        try {
+            EncryptServiceFactory.getInstance().get(encryptionType, storageKey).encrypt("write-behind");
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Token write-behind cannot encrypt with the storage key", e);
+        }
+        this.tokenDAO = tokenDAO;
+        this.encryptionType = encryptionType;
+        this.storageKey = storageKey.clone();
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.latestTokensSweepSize = capacity;
+        this.flusher = new Thread(this::run, "token-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        this.shutdownHook = new Thread(this::close, "token-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues the writing of an issued token, replacing any queued change of the same user.
+     *
+     * @param token     the token value
+     * @param user      the user the token belongs to
+     * @param expiresAt the expiry of the token, not stored in the Token table
+     */
+    @Override
+    public void tokenCreated(String token, User user, Instant expiresAt) {
+        lock.lock();
+        try {
+            if (enqueue(user.getUsername(), new Token(token, user))) {
+                latestTokens.put(user.getUsername(), new Latest(token, expiresAt));
+                if (latestTokens.size() > latestTokensSweepSize) {
+                    sweepLatestTokens();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the deletion of an invalidated token, unless a newer token was issued to the same user.
+     *
+     * @param token the token value
+     * @param user  the user the token belonged to
+     */
+    @Override
+    public void tokenInvalidated(String token, User user) {
+        lock.lock();
+        try {
+            Latest latest = latestTokens.get(user.getUsername());
+            if (latest != null && !latest.token().equals(token)) {
+                return;
+            }
+            if (enqueue(user.getUsername(), null)) {
+                latestTokens.remove(user.getUsername());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the last use of the extended tokens, keeping the latest use of each user. Uses
+     * of users not queued yet are dropped while the queue is full.
+     *
+     * @param touches the extended tokens
+     */
+    @Override
+    public void tokensTouched(List<Touch> touches) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (Touch touch : touches) {
+                String username = touch.user().getUsername();
+                latestTokens.computeIfPresent(username, (key, latest) -> latest.token().equals(touch.token())
+                        ? new Latest(latest.token(), touch.expiresAt()) : latest);
+                if (lastSeen.containsKey(username) || lastSeen.size() < capacity) {
+                    lastSeen.merge(username, touch.lastSeen(), (a, b) -> a.isAfter(b) ? a : b);
+                } else {
+                    rejected.increment();
+                }
+            }
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of users whose last issued token is remembered.
+     * @return the tracked token count
+     */
+    public int getTrackedTokenCount() {
+        lock.lock();
+        try {
+            return latestTokens.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of users with a queued change.
+     * @return the pending count
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets how long the oldest queued change has been waiting.
+     * @return the lag in milliseconds, or 0 if nothing is queued
+     */
+    public long getLagMillis() {
+        lock.lock();
+        try {
+            return pending.isEmpty() ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest().enqueuedAt());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets how long the oldest change of the last written batch waited before it was committed.
+     * @return the lag in milliseconds
+     */
+    public long getLastBatchLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastBatchLagNanos);
+    }
+
+    /**
+     * Gets the number of events that replaced a queued change of the same user.
+     * @return the coalesced count
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Gets the number of events rejected because the queue stayed full or the writer was closed.
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets the number of user changes committed to the database.
+     * @return the written count
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Gets the number of user changes dropped because they could not be written at all, such as
+     * tokens whose key cannot encrypt.
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of batches committed to the database.
+     * @return the batch count
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Gets the number of batches that failed and were queued again.
+     * @return the failed batch count
+     */
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    /**
+     * Gets the number of last uses of tokens committed to the database.
+     * @return the written touch count
+     */
+    public long getTouchWrittenCount() {
+        return touchesWritten.sum();
+    }
+
+    /**
+     * Stops accepting events, writes everything still queued and closes the batch connection
+     * of the DAO. Waits up to ten seconds; changes still queued after that are lost.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushNeeded.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down
+            }
+        }
+        try {
+            flusher.join(CLOSE_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int lost = getPendingCount();
+        if (lost > 0) {
+            logger.error("Token write-behind closed with " + lost + " unwritten token changes");
+        }
+        tokenDAO.close();
+    }
+
+    /**
+     * Queues a change, waiting for room if the queue is full. Must be called with the lock held.
+     *
+     * @return true if the change was queued
+     */
+    private boolean enqueue(String username, Token token) {
+        long remaining = offerTimeoutNanos;
+        while (true) {
+            if (closed) {
+                rejected.increment();
+                return false;
+            }
+            Write previous = pending.get(username);
+            if (previous != null) {
+                pending.put(username, new Write(username, token, previous.enqueuedAt()));
+                coalesced.increment();
+                return true;
+            }
+            if (pending.size() < capacity) {
+                pending.put(username, new Write(username, token, System.nanoTime()));
+                if (pending.size() >= batchSize) {
+                    flushNeeded.signal();
+                }
+                return true;
+            }
+            if (remaining <= 0) {
+                rejected.increment();
+                logger.warn("Token write-behind queue full, dropping token change of user: " + username);
+                return false;
+            }
+            flushNeeded.signal();
+            try {
+                remaining = notFull.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.increment();
+                return false;
+            }
+        }
+    }
+
+    private void run() {
+        int failures = 0;
+        while (true) {
+            List<Write> batch;
+            Map<String, Instant> touches;
+            lock.lock();
+            try {
+                long waitNanos = failures == 0 ? 0 : Math.min(MAX_RETRY_DELAY_NANOS, RETRY_DELAY_NANOS << Math.min(failures - 1, 20));
+                long retryAt = System.nanoTime() + waitNanos;
+                // Closing flushes without waiting for a full batch, but failed batches still wait to be retried
+                while (!(closed || isDue() || !lastSeen.isEmpty()) || System.nanoTime() - retryAt < 0) {
+                    long wait;
+                    if (closed || !pending.isEmpty() || !lastSeen.isEmpty()) {
+                        long dueAt = closed || pending.size() >= batchSize || !lastSeen.isEmpty() ? retryAt
+                                : Math.max(oldest().enqueuedAt() + flushIntervalNanos, retryAt);
+                        wait = dueAt - System.nanoTime();
+                    } else {
+                        wait = flushIntervalNanos;
+                    }
+                    flushNeeded.awaitNanos(Math.max(wait, 1));
+                }
+                if (pending.isEmpty() && lastSeen.isEmpty()) {
+                    return;
+                }
+                // Touches are written after the queued changes, so the rows they update exist
+                batch = closed || isDue() || !lastSeen.isEmpty() ? drain() : List.of();
+                touches = lastSeen.isEmpty() ? Map.of() : new HashMap<>(lastSeen);
+                lastSeen.clear();
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (!batch.isEmpty()) {
+                failures = write(batch) ? 0 : failures + 1;
+            }
+            if (!touches.isEmpty()) {
+                writeTouches(touches);
+            }
+        }
+    }
+
+    /**
+     * Checks if a batch is full or the oldest change waited long enough. Must be called with the lock held.
+     */
+    private boolean isDue() {
+        return pending.size() >= batchSize
+                || (!pending.isEmpty() && System.nanoTime() - oldest().enqueuedAt() >= flushIntervalNanos);
+    }
+
+    private Write oldest() {
+        return pending.values().iterator().next();
+    }
+
+    /**
+     * Removes the oldest batchSize changes from the queue. Must be called with the lock held.
+     */
+    private List<Write> drain() {
+        List<Write> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<Write> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    /**
+     * Removes the expired tokens from latestTokens, and lets the map double before the next
+     * sweep. Must be called with the lock held.
+     */
+    private void sweepLatestTokens() {
+        Instant now = Instant.now();
+        latestTokens.values().removeIf(latest -> !latest.expiresAt().isAfter(now));
+        latestTokensSweepSize = Math.max(capacity, 2 * latestTokens.size());
+    }
+
+    /**
+     * Writes a batch, queueing it again if the database failed.
+     *
+     * @return false if the batch must be retried
+     */
+    private boolean write(List<Write> batch) {
+        List<String> usernames = new ArrayList<>(batch.size());
+        List<Token> tokens = new ArrayList<>(batch.size());
+        long oldest = Long.MAX_VALUE;
+        for (Write write : batch) {
+            usernames.add(write.username());
+            if (write.token() != null) {
+                tokens.add(write.token());
+            }
+            oldest = Math.min(oldest, write.enqueuedAt());
+        }
+        try {
+            List<String> stored = tokenDAO.writeBatch(usernames, tokens, encryptionType, storageKey);
+            TokenBO.tokensChanged(usernames, stored);
+            int skipped = tokens.size() - stored.size();
+            if (skipped > 0) {
+                dropped.add(skipped);
+                logger.warn("Dropped " + skipped + " tokens that could not be encrypted");
+            }
+            written.add(batch.size() - skipped);
+            batches.increment();
+            lastBatchLagNanos = System.nanoTime() - oldest;
+            return true;
+        } catch (SQLException e) {
+            failedBatches.increment();
+            logger.error("Exception occurred while writing a batch of " + batch.size() + " token changes, retrying", e);
+            requeue(batch);
+            return false;
+        } catch (RuntimeException e) {
+            dropped.add(batch.size());
+            logger.error("Dropping a batch of " + batch.size() + " token changes that cannot be written", e);
+            return true;
+        }
+    }
+
+    /**
+     * Writes the last uses of tokens, dropping them if the database failed.
+     */
+    private void writeTouches(Map<String, Instant> touches) {
+        try {
+            tokenDAO.touchBatch(touches);
+            touchesWritten.add(touches.size());
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Dropping the last use of " + touches.size() + " tokens", e);
+        }
+    }
+
+    /**
+     * Queues a failed batch again, unless newer changes of the same users arrived meanwhile.
+     */
+    private void requeue(List<Write> batch) {
+        lock.lock();
+        try {
+            for (Write write : batch) {
+                pending.putIfAbsent(write.username(), write);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
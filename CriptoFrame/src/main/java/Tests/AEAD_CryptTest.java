@@ -0,0 +1,187 @@
+/**
+ * This class contains unit tests for the authenticated encryption engines and the AUTO type.
+ */
+package Tests;
+
+import Crypt.AES_GCM_Crypt;
+import Crypt.AutoCrypt;
+import Crypt.ChaCha20_Crypt;
+import Crypt.CryptRegistry;
+import Crypt.EncryptService;
+import Crypt.StreamCrypt;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AEAD_CryptTest {
+
+    private byte[] key;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        key = KeyGenerator.generateAesKey(32);
+    }
+
+    /**
+     * Tests that every authenticated type round-trips and uses a fresh nonce per message.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"AES-GCM", "ChaCha20-Poly1305", "auto"})
+    void encrypt_ShouldRoundTripWithFreshNonce(String encryptionType) {
+        EncryptService encryptService = new EncryptService(encryptionType, key);
+        String first = encryptService.encrypt("testToken");
+        String second = encryptService.encrypt("testToken");
+        assertNotEquals(first, second);
+        assertEquals("testToken", encryptService.decrypt(first));
+        assertEquals("testToken", encryptService.decrypt(second));
+    }
+
+    /**
+     * Tests that a modified ciphertext fails authentication.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"AES-GCM", "ChaCha20-Poly1305", "AUTO"})
+    void decrypt_WithTamperedData_ShouldThrow(String encryptionType) {
+        EncryptService encryptService = new EncryptService(encryptionType, key);
+        byte[] encrypted = encryptService.encrypt("testToken".getBytes(StandardCharsets.UTF_8));
+        encrypted[encrypted.length - 1] ^= 1;
+        assertThrows(RuntimeException.class, () -> encryptService.decrypt(encrypted));
+        assertArrayEquals("ok".getBytes(StandardCharsets.UTF_8),
+                encryptService.decrypt(encryptService.encrypt("ok".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Tests that direct buffers larger than a scratch chunk round-trip, although authenticated
+     * decryption releases the whole plaintext at the end.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"AES-GCM", "ChaCha20-Poly1305", "AUTO"})
+    void decrypt_WithLargeDirectBuffers_ShouldRoundTrip(String encryptionType) {
+        EncryptService encryptService = new EncryptService(encryptionType, key);
+        byte[] data = new byte[20_000];
+        new Random(42).nextBytes(data);
+        ByteBuffer plain = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(data.length + 64);
+        encryptService.encrypt(plain, encrypted);
+        encrypted.flip();
+
+        ByteBuffer decrypted = ByteBuffer.allocateDirect(data.length);
+        assertEquals(data.length, encryptService.decrypt(encrypted, decrypted));
+        byte[] result = new byte[data.length];
+        decrypted.flip().get(result);
+        assertArrayEquals(data, result);
+    }
+
+    /**
+     * Tests that AUTO decrypts messages from either engine, whichever one this host selected.
+     */
+    @Test
+    void autoDecrypt_ShouldAcceptEitherEngine() {
+        byte[] data = "testToken".getBytes(StandardCharsets.UTF_8);
+        AutoCrypt autoCrypt = new AutoCrypt(key);
+        assertNotNull(autoCrypt.getSelectedEngine());
+
+        byte[] gcm = new AES_GCM_Crypt(key).encrypt(data);
+        byte[] chacha = new ChaCha20_Crypt(key).encrypt(data);
+        assertArrayEquals(data, autoCrypt.decrypt(prefix((byte) 1, gcm)));
+        assertArrayEquals(data, autoCrypt.decrypt(prefix((byte) 2, chacha)));
+    }
+
+    /**
+     * Tests that AUTO falls back to AES-GCM for keys ChaCha20 cannot use.
+     */
+    @Test
+    void auto_WithShortKey_ShouldUseAesGcm() {
+        AutoCrypt autoCrypt = new AutoCrypt(KeyGenerator.generateAesKey(16));
+        assertEquals("AES-GCM", autoCrypt.getSelectedEngine());
+        assertEquals("testToken", autoCrypt.decrypt(autoCrypt.encrypt("testToken")));
+    }
+
+    /**
+     * Tests that streams of several chunks decrypt through streams and files, and that
+     * tampered, reordered and truncated streams are rejected.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"AES-GCM", "ChaCha20-Poly1305", "AUTO"})
+    void stream_ShouldDecryptPayloadsOfSeveralChunks(String encryptionType, @TempDir Path tempDir) throws Exception {
+        StreamCrypt streamCrypt = new EncryptService(encryptionType, key).getStreamCrypt();
+        for (int size : new int[]{0, 2 * 64 * 1024, 200_000}) {
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            byte[] encrypted = streamEncrypt(streamCrypt, data);
+            assertArrayEquals(data, streamDecrypt(streamCrypt, encrypted));
+        }
+
+        byte[] data = new byte[200_000];
+        new Random(1).nextBytes(data);
+        Path plain = Files.write(tempDir.resolve("plain"), data);
+        streamCrypt.encrypt(plain, tempDir.resolve("encrypted"));
+        streamCrypt.decrypt(tempDir.resolve("encrypted"), tempDir.resolve("decrypted"));
+        assertArrayEquals(data, Files.readAllBytes(tempDir.resolve("decrypted")));
+
+        // Four segments of 64 KB plus a tag each, the last one partial
+        byte[] encrypted = streamEncrypt(streamCrypt, data);
+        int segment = 64 * 1024 + 16;
+        int header = encrypted.length - data.length - 4 * 16;
+        byte[] tampered = encrypted.clone();
+        tampered[header + segment + 100] ^= 1;
+        assertThrows(RuntimeException.class, () -> streamDecrypt(streamCrypt, tampered));
+
+        byte[] reordered = encrypted.clone();
+        System.arraycopy(encrypted, header, reordered, header + segment, segment);
+        System.arraycopy(encrypted, header + segment, reordered, header, segment);
+        assertThrows(RuntimeException.class, () -> streamDecrypt(streamCrypt, reordered));
+
+        byte[] truncated = Arrays.copyOf(encrypted, header + 3 * segment);
+        assertThrows(IOException.class, () -> streamDecrypt(streamCrypt, truncated));
+        byte[] dropped = Arrays.copyOf(encrypted, encrypted.length - segment);
+        System.arraycopy(encrypted, header + 3 * segment, dropped, header + 2 * segment, encrypted.length - header - 3 * segment);
+        assertThrows(RuntimeException.class, () -> streamDecrypt(streamCrypt, dropped));
+    }
+
+    /**
+     * Tests that unknown types are rejected by the registry.
+     */
+    @Test
+    void resolve_WithUnknownType_ShouldThrow() {
+        assertTrue(CryptRegistry.isRegistered("aes-gcm"));
+        assertThrows(IllegalArgumentException.class, () -> new EncryptService("RSA", key));
+    }
+
+    private static byte[] streamEncrypt(StreamCrypt streamCrypt, byte[] data) throws IOException {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        streamCrypt.encrypt(new ByteArrayInputStream(data), encrypted);
+        return encrypted.toByteArray();
+    }
+
+    private static byte[] streamDecrypt(StreamCrypt streamCrypt, byte[] data) throws IOException {
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        streamCrypt.decrypt(new ByteArrayInputStream(data), decrypted);
+        return decrypted.toByteArray();
+    }
+
+    private static byte[] prefix(byte id, byte[] data) {
+        byte[] result = new byte[data.length + 1];
+        result[0] = id;
+        System.arraycopy(data, 0, result, 1, data.length);
+        return result;
+    }
+}
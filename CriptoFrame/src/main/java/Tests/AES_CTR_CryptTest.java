@@ -0,0 +1,100 @@
+/**
+ * This class contains unit tests for the AES_CTR_Crypt class.
+ */
+package Tests;
+
+import Crypt.AES_CTR_Crypt;
+import Crypt.EncryptService;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AES_CTR_CryptTest {
+
+    private byte[] key;
+    private byte[] data;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        key = KeyGenerator.generateAesKey(32);
+        data = new byte[5 * 1024 * 1024 + 13];
+        new Random(7).nextBytes(data);
+    }
+
+    /**
+     * Tests that the parallel segments produce the same ciphertext as a single sequential cipher.
+     * <p>
+     * This test encrypts a payload large enough to be split across the pool and decrypts it
+     * with a plain AES/CTR cipher initialized with the stored IV.
+     * </p>
+     */
+    @Test
+    void encrypt_InParallel_ShouldMatchSequentialCipher() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            byte[] encrypted = new AES_CTR_Crypt(key, pool).encrypt(data);
+
+            Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"),
+                    new IvParameterSpec(Arrays.copyOf(encrypted, 16)));
+            byte[] expected = cipher.doFinal(data);
+
+            assertArrayEquals(expected, Arrays.copyOfRange(encrypted, 16, encrypted.length));
+            assertArrayEquals(data, new AES_CTR_Crypt(key, pool).decrypt(encrypted));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a counter crossing a byte boundary is carried like the sequential cipher does.
+     */
+    @Test
+    void decrypt_WithCounterNearOverflow_ShouldMatchSequentialCipher() throws Exception {
+        byte[] iv = new byte[16];
+        Arrays.fill(iv, 8, 16, (byte) 0xFF);
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        byte[] encrypted = new byte[16 + data.length];
+        System.arraycopy(iv, 0, encrypted, 0, 16);
+        cipher.doFinal(data, 0, data.length, encrypted, 16);
+
+        assertArrayEquals(data, new AES_CTR_Crypt(key).decrypt(encrypted));
+    }
+
+    /**
+     * Tests the String, buffer and stream forms through EncryptService.
+     */
+    @Test
+    void encryptService_WithCtrType_ShouldRoundTrip() throws Exception {
+        EncryptService encryptService = new EncryptService("AES-CTR", key);
+        assertEquals("testToken", encryptService.decrypt(encryptService.encrypt("testToken")));
+
+        ByteBuffer input = ByteBuffer.allocateDirect(data.length);
+        input.put(data).flip();
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(encryptService.getOutputSize(data.length));
+        encryptService.encrypt(input, encrypted);
+        byte[] encryptedBytes = new byte[encrypted.flip().remaining()];
+        encrypted.get(encryptedBytes);
+        assertArrayEquals(data, encryptService.decrypt(encryptedBytes));
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        encryptService.getStreamCrypt().decrypt(new ByteArrayInputStream(encryptedBytes), streamed);
+        assertArrayEquals(data, streamed.toByteArray());
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * This class contains unit tests for the AES_Crypt class.
+ */
+package Tests;
+
+import Crypt.AES_Crypt;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AES_CryptTest {
+
+    private AES_Crypt crypt;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        crypt = new AES_Crypt(KeyGenerator.generateAesKey(32));
+    }
+
+    /**
+     * Tests that encrypted data decrypts back to the original value.
+     * <p>
+     * This test encrypts a value twice with the same instance, verifies that the cached
+     * cipher produces the same output both times, and decrypts it back.
+     * </p>
+     */
+    @Test
+    void encryptDecrypt_ShouldRoundTrip() {
+        String encrypted = crypt.encrypt("testToken");
+        assertEquals(encrypted, crypt.encrypt("testToken"));
+        assertEquals("testToken", crypt.decrypt(encrypted));
+    }
+
+    /**
+     * Tests that the byte array variants match the String methods.
+     * <p>
+     * This test encrypts the same value through both forms and verifies that the
+     * String result is the Base64 form of the byte array result.
+     * </p>
+     */
+    @Test
+    void encryptBytes_ShouldMatchStringEncryption() {
+        byte[] encrypted = crypt.encrypt("testToken".getBytes(StandardCharsets.UTF_8));
+        assertEquals(crypt.encrypt("testToken"), Base64.getEncoder().encodeToString(encrypted));
+        assertArrayEquals("testToken".getBytes(StandardCharsets.UTF_8), crypt.decrypt(encrypted));
+    }
+
+    /**
+     * Tests encryption and decryption between direct buffers.
+     * <p>
+     * This test uses a payload larger than the internal chunk size so that the chunked
+     * copy path is exercised, and compares the result with the byte array variant.
+     * </p>
+     */
+    @Test
+    void encryptDirectBuffers_ShouldMatchByteArrays() {
+        byte[] data = new byte[20000];
+        Arrays.fill(data, (byte) 7);
+        ByteBuffer input = ByteBuffer.allocateDirect(data.length);
+        input.put(data).flip();
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(crypt.getOutputSize(data.length));
+        int written = crypt.encrypt(input, encrypted);
+        encrypted.flip();
+
+        byte[] expected = crypt.encrypt(data);
+        assertEquals(expected.length, written);
+        byte[] actual = new byte[written];
+        encrypted.duplicate().get(actual);
+        assertArrayEquals(expected, actual);
+
+        ByteBuffer decrypted = ByteBuffer.allocate(crypt.getOutputSize(written));
+        assertEquals(data.length, crypt.decrypt(encrypted, decrypted));
+        assertArrayEquals(data, Arrays.copyOf(decrypted.array(), data.length));
+    }
+
+    /**
+     * Tests that an output buffer that is too small is rejected.
+     */
+    @Test
+    void encryptBuffer_WithSmallOutput_ShouldThrow() {
+        ByteBuffer input = ByteBuffer.wrap(new byte[32]);
+        assertThrows(RuntimeException.class, () -> crypt.encrypt(input, ByteBuffer.allocate(32)));
+    }
+
+    /**
+     * Tests that a failed decryption does not break later calls on the same thread.
+     */
+    @Test
+    void decrypt_AfterFailure_ShouldStillWork() {
+        assertThrows(RuntimeException.class, () -> crypt.decrypt("bm90IGEgY2lwaGVydGV4dA=="));
+        assertEquals("testToken", crypt.decrypt(crypt.encrypt("testToken")));
+    }
+
+    /**
+     * Tests that one instance can be shared by many threads.
+     * <p>
+     * This test encrypts and decrypts distinct values concurrently through the same
+     * AES_Crypt and verifies that every thread gets its own value back.
+     * </p>
+     */
+    @Test
+    void encryptDecrypt_FromManyThreads_ShouldRoundTrip() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String value = "token-" + i;
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        if (!value.equals(crypt.decrypt(crypt.encrypt(value)))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -5,10 +5,23 @@ package Tests;
 
 import BO.UserBO;
 import Crypt.EncryptService;
+import Crypt.PasswordHasher;
 import DTO.*;
 import Management.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class AuthenticationTest {
@@ -58,4 +71,133 @@ public class AuthenticationTest {
         // Assert that authentication fails and no token is returned
         assertNull(token);
     }
+
+    /**
+     * Tests authentication against hashed and legacy encrypted passwords without a database.
+     * <p>
+     * This test looks users up in memory, verifies that a hashed password and a password
+     * stored encrypted by earlier versions both authenticate, and that a wrong password or
+     * an unknown user is rejected.
+     * </p>
+     */
+    @Test
+    void testAuthenticateUser_HashedAndLegacyPasswords() {
+        EncryptService encryptService = new EncryptService("AES", KeyGenerator.generateAesKey(32));
+        try (PasswordHasher passwordHasher = new PasswordHasher(1000, 1, 16)) {
+            User hashed = new User("hashedUser", passwordHasher.hash("passwor24d3"), "admin");
+            User legacy = new User("legacyUser", encryptService.encrypt("passwor24d3"), "admin");
+            UserBO userBO = new UserBO() {
+                @Override
+                public User searchForUser(String username) {
+                    return hashed.getUsername().equals(username) ? hashed
+                            : legacy.getUsername().equals(username) ? legacy : null;
+                }
+            };
+            AuthenticationManagement authenticationManagement =
+                    new AuthenticationManagement(encryptService, new TokenManager(), userBO, passwordHasher);
+
+            assertNotNull(authenticationManagement.authenticateUser("hashedUser", "passwor24d3"));
+            assertNotNull(authenticationManagement.authenticateUser("legacyUser", "passwor24d3"));
+            assertNull(authenticationManagement.authenticateUser("hashedUser", "wrongPassword"));
+            assertNull(authenticationManagement.authenticateUser("legacyUser", "wrongPassword"));
+            assertNull(authenticationManagement.authenticateUser("nonexistentUser", "passwor24d3"));
+        }
+    }
+
+    /**
+     * Tests concurrent asynchronous logins without a database.
+     * <p>
+     * This test looks users up in memory with a delay standing in for JDBC, starts many logins
+     * at once, and verifies that they all complete while no more lookups than the limit run
+     * concurrently, and that wrong passwords and unknown users are rejected.
+     * </p>
+     */
+    @Test
+    void testAuthenticateUserAsync_ConcurrentLogins() {
+        EncryptService encryptService = new EncryptService("AES", KeyGenerator.generateAesKey(32));
+        try (PasswordHasher passwordHasher = new PasswordHasher(1000, 1, 16)) {
+            User hashed = new User("hashedUser", passwordHasher.hash("passwor24d3"), "admin");
+            User legacy = new User("legacyUser", encryptService.encrypt("passwor24d3"), "admin");
+            AtomicInteger active = new AtomicInteger();
+            AtomicInteger maxActive = new AtomicInteger();
+            UserBO userBO = new UserBO() {
+                @Override
+                public User searchForUser(String username) {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                    return hashed.getUsername().equals(username) ? hashed
+                            : legacy.getUsername().equals(username) ? legacy : null;
+                }
+            };
+            AuthenticationManagement authenticationManagement =
+                    new AuthenticationManagement(encryptService, new TokenManager(), userBO, passwordHasher, 50);
+
+            List<CompletableFuture<Token>> logins = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                logins.add(authenticationManagement.authenticateUserAsync("legacyUser", "passwor24d3"));
+            }
+            for (CompletableFuture<Token> login : logins) {
+                assertEquals("legacyUser", login.join().getUser().getUsername());
+            }
+            assertTrue(maxActive.get() <= 50);
+            assertEquals(0, authenticationManagement.getActiveLoginCount());
+
+            assertNotNull(authenticationManagement.authenticateUserAsync("hashedUser", "passwor24d3").join());
+            assertNull(authenticationManagement.authenticateUserAsync("hashedUser", "wrongPassword").join());
+            assertNull(authenticationManagement.authenticateUserAsync("legacyUser", "wrongPassword").join());
+            assertNull(authenticationManagement.authenticateUserAsync("nonexistentUser", "passwor24d3").join());
+        }
+    }
+
+    /**
+     * Tests that concurrent logins for the same user check each password on its own, so a
+     * wrong password is refused while the right one arriving at the same time is accepted,
+     * and that each accepted login gets its own token.
+     */
+    @Test
+    void testAuthenticateUser_ChecksEachConcurrentLogin() throws Exception {
+        EncryptService encryptService = new EncryptService("AES", KeyGenerator.generateAesKey(32));
+        User legacy = new User("legacyUser", encryptService.encrypt("passwor24d3"), "admin");
+        CountDownLatch gate = new CountDownLatch(1);
+        UserBO userBO = new UserBO() {
+            @Override
+            public User searchForUser(String username) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return legacy.getUsername().equals(username) ? new User(legacy) : null;
+            }
+        };
+        AuthenticationManagement authenticationManagement =
+                new AuthenticationManagement(encryptService, new TokenManager(), userBO);
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+
+        List<Future<Token>> logins = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String password = i % 2 == 0 ? "passwor24d3" : "wrongPassword";
+            logins.add(executor.submit(() -> authenticationManagement.authenticateUser("legacyUser", password)));
+        }
+        gate.countDown();
+
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < logins.size(); i++) {
+            Token token = logins.get(i).get(10, TimeUnit.SECONDS);
+            if (i % 2 == 0) {
+                assertEquals("legacyUser", token.getUser().getUsername());
+                values.add(token.getValue());
+            } else {
+                assertNull(token);
+            }
+        }
+        executor.shutdown();
+        assertEquals(10, values.size());
+    }
 }
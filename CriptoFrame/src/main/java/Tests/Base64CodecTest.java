@@ -0,0 +1,148 @@
+/**
+ * This class contains unit tests for the Base64Codec class.
+ */
+package Tests;
+
+import Crypt.Base64Codec;
+import Crypt.EncryptService;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Base64CodecTest {
+
+    /**
+     * Tests that encoding matches java.util.Base64 for every length up to a few vectors,
+     * and for large payloads, and that decoding returns the original bytes.
+     * <p>
+     * Lengths cover the scalar tail after the vector kernels as well as every padding case,
+     * and payloads larger than the per-thread scratch arrays.
+     */
+    @Test
+    void encodeDecode_ShouldMatchJdkBase64() {
+        Random random = new Random(42);
+        for (int length = 0; length <= 100_000; length = length < 300 ? length + 1 : length * 2) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String expected = Base64.getEncoder().encodeToString(data);
+
+            byte[] chars = new byte[Base64Codec.encodedLength(length) + 3];
+            int written = Base64Codec.encode(data, 0, length, chars, 3);
+            assertEquals(expected, new String(chars, 3, written, StandardCharsets.US_ASCII));
+            assertEquals(expected, Base64Codec.encodeToString(data, 0, length));
+
+            byte[] decoded = new byte[Base64Codec.maxDecodedLength(written)];
+            int count = Base64Codec.decode(chars, 3, written, decoded, 0);
+            assertArrayEquals(data, Arrays.copyOf(decoded, count));
+            count = Base64Codec.decode(expected, decoded, 0);
+            assertArrayEquals(data, Arrays.copyOf(decoded, count));
+        }
+    }
+
+    /**
+     * Tests the char array and direct ByteBuffer variants, which do not go through the vector kernels.
+     */
+    @Test
+    void encodeDecode_ShouldSupportCharArraysAndDirectBuffers() {
+        byte[] data = new byte[1001];
+        new Random(7).nextBytes(data);
+        String expected = Base64.getEncoder().encodeToString(data);
+
+        char[] chars = new char[Base64Codec.encodedLength(data.length)];
+        Base64Codec.encode(data, 0, data.length, chars, 0);
+        assertEquals(expected, new String(chars));
+        byte[] decoded = new byte[Base64Codec.maxDecodedLength(chars.length)];
+        int count = Base64Codec.decode(chars, 0, chars.length, decoded, 0);
+        assertArrayEquals(data, Arrays.copyOf(decoded, count));
+
+        ByteBuffer plain = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        ByteBuffer encoded = ByteBuffer.allocateDirect(Base64Codec.encodedLength(data.length));
+        Base64Codec.encode(plain, encoded);
+        encoded.flip();
+        assertEquals(expected, StandardCharsets.US_ASCII.decode(encoded.duplicate()).toString());
+
+        ByteBuffer output = ByteBuffer.allocateDirect(Base64Codec.maxDecodedLength(encoded.remaining()));
+        Base64Codec.decode(encoded, output);
+        output.flip();
+        assertEquals(ByteBuffer.wrap(data), output);
+    }
+
+    /**
+     * Tests that malformed input is rejected exactly where java.util.Base64 rejects it.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"A", "AB=", "A===", "AB=C", "AB==A", "ABCD=", "ABCDE", "AB#D", "ABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABC*",
+            "ABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDABCDAB=D", "ABéD", "ABCD\nABCD"})
+    void decode_ShouldRejectMalformedInput(String input) {
+        assertThrows(IllegalArgumentException.class, () -> Base64.getDecoder().decode(input));
+        byte[] output = new byte[Base64Codec.maxDecodedLength(input.length())];
+        assertThrows(IllegalArgumentException.class, () -> Base64Codec.decode(input, output, 0));
+        byte[] chars = input.getBytes(StandardCharsets.ISO_8859_1);
+        assertThrows(IllegalArgumentException.class, () -> Base64Codec.decode(chars, 0, chars.length, output, 0));
+    }
+
+    /**
+     * Tests every byte value at a position handled by the vector kernels, so the lookup tables
+     * accept exactly the characters java.util.Base64 accepts.
+     */
+    @Test
+    void decode_ShouldValidateEveryByteValue() {
+        byte[] output = new byte[256];
+        for (int c = 0; c < 256; c++) {
+            byte[] chars = new byte[128];
+            Arrays.fill(chars, (byte) 'A');
+            chars[37] = (byte) c;
+            boolean valid;
+            byte[] expected = null;
+            try {
+                expected = Base64.getDecoder().decode(chars);
+                valid = true;
+            } catch (IllegalArgumentException e) {
+                valid = false;
+            }
+            if (valid) {
+                int count = Base64Codec.decode(chars, 0, chars.length, output, 0);
+                assertArrayEquals(expected, Arrays.copyOf(output, count), "character " + c);
+            } else {
+                assertThrows(IllegalArgumentException.class, () -> Base64Codec.decode(chars, 0, chars.length, output, 0),
+                        "character " + c);
+            }
+        }
+    }
+
+    /**
+     * Tests that accepted inputs with unusual padding decode to the same bytes as java.util.Base64.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"", "AB", "ABC", "AB==", "ABC=", "QUJD", "QUJDRA"})
+    void decode_ShouldAcceptUnpaddedInput(String input) {
+        byte[] output = new byte[Base64Codec.maxDecodedLength(input.length())];
+        int count = Base64Codec.decode(input, output, 0);
+        assertArrayEquals(Base64.getDecoder().decode(input), Arrays.copyOf(output, count));
+    }
+
+    /**
+     * Tests that String encryption still produces standard Base64 readable by java.util.Base64,
+     * for messages smaller and larger than the per-thread scratch arrays.
+     */
+    @Test
+    void encryptString_ShouldProduceStandardBase64() {
+        EncryptService encryptService = new EncryptService("AES", KeyGenerator.generateAesKey(16));
+        String large = "olá, mundo ".repeat(20_000);
+        for (String message : new String[]{"olá, mundo", large, "olá, mundo"}) {
+            String encrypted = encryptService.encrypt(message);
+            assertArrayEquals(encryptService.encrypt(message.getBytes(StandardCharsets.UTF_8)),
+                    Base64.getDecoder().decode(encrypted));
+            assertEquals(message, encryptService.decrypt(encrypted));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This class contains unit tests for the BloomFilter class.
+ */
+package Tests;
+
+import Management.BloomFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    /**
+     * Tests that every added value is reported present, and that absent values are reported
+     * present at about the configured rate.
+     */
+    @Test
+    void mightContain_ShouldMatchConfiguredFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String value = UUID.randomUUID().toString();
+            filter.put(value);
+            values.add(value);
+        }
+        for (String value : values) {
+            assertTrue(filter.mightContain(value));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 2_000, "False positives: " + falsePositives);
+        assertEquals(7, filter.getHashCount());
+        assertFalse(filter.isSaturated());
+        filter.put("one more");
+        assertTrue(filter.isSaturated());
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1.0));
+    }
+
+    /**
+     * Tests that values added concurrently are all reported present.
+     */
+    @Test
+    void put_ShouldNotLoseConcurrentValues() throws Exception {
+        BloomFilter filter = new BloomFilter(80_000, 0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    filter.put(thread + "-" + i);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (int t = 0; t < 8; t++) {
+            for (int i = 0; i < 10_000; i++) {
+                assertTrue(filter.mightContain(t + "-" + i));
+            }
+        }
+        assertEquals(80_000, filter.getInsertionCount());
+    }
+}
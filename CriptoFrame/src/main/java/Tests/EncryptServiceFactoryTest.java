@@ -0,0 +1,92 @@
+/**
+ * This class contains unit tests for the EncryptServiceFactory class.
+ */
+package Tests;
+
+import Crypt.EncryptService;
+import Crypt.EncryptServiceFactory;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptServiceFactoryTest {
+
+    private EncryptServiceFactory factory;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        factory = new EncryptServiceFactory(2);
+    }
+
+    /**
+     * Tests that the same type and key return the same service, and that an equal key in a
+     * different array or a differently cased type name still hits the cache.
+     */
+    @Test
+    void get_ShouldReuseServiceForSameTypeAndKey() {
+        byte[] key = KeyGenerator.generateAesKey(16);
+        EncryptService first = factory.get("AES", key);
+
+        assertSame(first, factory.get("aes", key.clone()));
+        assertNotSame(first, factory.get("AES-CTR", key));
+        assertNotSame(first, factory.get("AES", KeyGenerator.generateAesKey(16)));
+        assertEquals(1, factory.getHitCount());
+        assertEquals(3, factory.getMissCount());
+    }
+
+    /**
+     * Tests that the least recently used service is evicted when the cache is full.
+     */
+    @Test
+    void get_ShouldEvictLeastRecentlyUsed() {
+        byte[] a = KeyGenerator.generateAesKey(16);
+        byte[] b = KeyGenerator.generateAesKey(16);
+        byte[] c = KeyGenerator.generateAesKey(16);
+        EncryptService serviceA = factory.get("AES", a);
+        EncryptService serviceB = factory.get("AES", b);
+        factory.get("AES", a);
+        factory.get("AES", c);
+
+        assertEquals(2, factory.size());
+        assertEquals(1, factory.getEvictionCount());
+        assertSame(serviceA, factory.get("AES", a));
+        assertNotSame(serviceB, factory.get("AES", b));
+    }
+
+    /**
+     * Tests that invalidating a key removes its services of every type and leaves other keys alone.
+     */
+    @Test
+    void invalidate_ShouldRemoveServicesOfKey() {
+        factory = new EncryptServiceFactory(10);
+        byte[] oldKey = KeyGenerator.generateAesKey(16);
+        byte[] otherKey = KeyGenerator.generateAesKey(16);
+        EncryptService aes = factory.get("AES", oldKey);
+        factory.get("AES-GCM", oldKey);
+        EncryptService other = factory.get("AES", otherKey);
+
+        factory.invalidate(oldKey);
+
+        assertEquals(1, factory.size());
+        assertSame(other, factory.get("AES", otherKey));
+        assertNotSame(aes, factory.get("AES", oldKey));
+
+        factory.invalidate("aes", otherKey);
+        assertNotSame(other, factory.get("AES", otherKey));
+    }
+
+    /**
+     * Tests that an unknown type is rejected like EncryptService rejects it.
+     */
+    @Test
+    void get_ShouldRejectInvalidType() {
+        assertThrows(IllegalArgumentException.class, () -> factory.get("ROT13", KeyGenerator.generateAesKey(16)));
+        assertThrows(IllegalArgumentException.class, () -> factory.get(null, KeyGenerator.generateAesKey(16)));
+        assertEquals(0, factory.size());
+    }
+}
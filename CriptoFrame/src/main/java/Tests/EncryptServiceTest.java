@@ -0,0 +1,65 @@
+/**
+ * This class contains unit tests for the EncryptService class.
+ */
+package Tests;
+
+import Crypt.EncryptService;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptServiceTest {
+
+    private EncryptService encryptService;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        encryptService = new EncryptService("AES", KeyGenerator.generateAesKey(32));
+    }
+
+    /**
+     * Tests that a batch is encrypted in input order.
+     * <p>
+     * This test encrypts a batch large enough to run in parallel and verifies that every
+     * result matches the single-value encryption at the same index.
+     * </p>
+     */
+    @Test
+    void encryptAll_ShouldKeepInputOrder() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add("token-" + i);
+        }
+        List<String> encrypted = encryptService.encryptAll(values);
+        assertEquals(values.size(), encrypted.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(encryptService.encrypt(values.get(i)), encrypted.get(i));
+        }
+        assertEquals(values, encryptService.decryptAll(encrypted));
+    }
+
+    /**
+     * Tests the array form of the batch methods with a small batch.
+     */
+    @Test
+    void decryptAll_WithArray_ShouldRoundTrip() {
+        String[] values = {"first", "second", "third"};
+        assertArrayEquals(values, encryptService.decryptAll(encryptService.encryptAll(values)));
+    }
+
+    /**
+     * Tests that an empty batch returns an empty result.
+     */
+    @Test
+    void encryptAll_WhenEmpty_ShouldReturnEmpty() {
+        assertEquals(0, encryptService.encryptAll(new String[0]).length);
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * This class contains unit tests for the KeyRotationJob class, with the database replaced by maps.
+ */
+package Tests;
+
+import BO.KeyRotationJob;
+import Crypt.EncryptService;
+import Crypt.PasswordHasher;
+import DAO.KeyRotationDAO;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyRotationJobTest {
+
+    private Map<String, EncryptService> oldServices;
+    private Map<String, EncryptService> newServices;
+    private InMemoryRotationDAO dao;
+
+    /**
+     * Sets up the necessary objects before each test. Every user has keys of its own.
+     */
+    @BeforeEach
+    void setUp() {
+        oldServices = new HashMap<>();
+        newServices = new HashMap<>();
+        dao = new InMemoryRotationDAO();
+        for (int i = 0; i < 25; i++) {
+            addUser("user" + i);
+            dao.rows.get(KeyRotationDAO.Table.TOKEN).put("user" + i, oldServices.get("user" + i).encrypt("token" + i));
+            dao.rows.get(KeyRotationDAO.Table.USER).put("user" + i, oldServices.get("user" + i).encrypt("password" + i));
+        }
+    }
+
+    /**
+     * Tests that every encrypted row is re-encrypted with the new key of its user, while password
+     * hashes and values that do not decrypt with the old key of their user are left alone.
+     */
+    @Test
+    void run_ShouldReencryptEveryRow() {
+        String hash;
+        try (PasswordHasher passwordHasher = new PasswordHasher(1000, 1, 1)) {
+            hash = passwordHasher.hash("password");
+        }
+        dao.rows.get(KeyRotationDAO.Table.USER).put("hashed", hash);
+        addUser("foreign");
+        dao.rows.get(KeyRotationDAO.Table.TOKEN).put("foreign", newServices.get("foreign").encrypt("foreign"));
+
+        KeyRotationJob job = job("rotate-all", 10, 2, 0);
+        job.run();
+
+        assertTrue(job.isFinished());
+        assertEquals(1.0, job.getProgress());
+        assertEquals(50, job.getRotatedCount());
+        assertEquals(1, job.getSkippedCount());
+        assertEquals(1, job.getFailedCount());
+        assertEquals(52, job.getProcessedCount());
+        assertEquals(6, job.getChunkCount());
+        assertEquals(hash, dao.rows.get(KeyRotationDAO.Table.USER).get("hashed"));
+        for (int i = 0; i < 25; i++) {
+            assertEquals("token" + i, newServices.get("user" + i).decrypt(dao.rows.get(KeyRotationDAO.Table.TOKEN).get("user" + i)));
+            assertEquals("password" + i, newServices.get("user" + i).decrypt(dao.rows.get(KeyRotationDAO.Table.USER).get("user" + i)));
+        }
+    }
+
+    /**
+     * Tests that rows encrypted under the AES keys of other users are never decrypted with a
+     * key they were not stored with: each is rotated with the keys of its own user, and the rows
+     * of a user the job has no keys for are left exactly as they were.
+     */
+    @Test
+    void run_ShouldRotateEachUserWithItsOwnKey() {
+        EncryptService strangerService = new EncryptService("AES", KeyGenerator.generateAesKey(32));
+        String stranger = strangerService.encrypt("stranger");
+        dao.rows.get(KeyRotationDAO.Table.TOKEN).put("stranger", stranger);
+
+        KeyRotationJob job = job("per-user", 10, 2, 0);
+        job.run();
+
+        assertTrue(job.isFinished());
+        assertEquals(50, job.getRotatedCount());
+        assertEquals(1, job.getSkippedCount());
+        assertEquals(0, job.getFailedCount());
+        assertEquals(stranger, dao.rows.get(KeyRotationDAO.Table.TOKEN).get("stranger"));
+        for (int i = 0; i < 25; i++) {
+            String token = dao.rows.get(KeyRotationDAO.Table.TOKEN).get("user" + i);
+            assertEquals("token" + i, newServices.get("user" + i).decrypt(token));
+            EncryptService other = newServices.get("user" + (i + 1) % 25);
+            assertThrows(RuntimeException.class, () -> other.decrypt(token));
+        }
+    }
+
+    /**
+     * Tests that a job failing part way resumes after its last committed chunk, rotating every row exactly once.
+     */
+    @Test
+    void run_ShouldResumeFromCheckpoint() {
+        dao.failOnChunk = 2;
+        KeyRotationJob first = job("resume", 10, 1, 0);
+        assertThrows(RuntimeException.class, first::run);
+        assertFalse(first.isFinished());
+        assertEquals(20, first.getRotatedCount());
+
+        KeyRotationJob second = job("resume", 10, 1, 0);
+        second.run();
+
+        assertTrue(second.isFinished());
+        assertEquals(30, second.getRotatedCount());
+        assertEquals(0, second.getFailedCount());
+        assertEquals(50, second.getProcessedCount());
+        for (int i = 0; i < 25; i++) {
+            assertEquals("password" + i, newServices.get("user" + i).decrypt(dao.rows.get(KeyRotationDAO.Table.USER).get("user" + i)));
+        }
+    }
+
+    /**
+     * Tests that the throttle keeps the job under its row rate.
+     */
+    @Test
+    void run_ShouldRespectThrottle() {
+        KeyRotationJob job = job("throttled", 10, 1, 200);
+        long start = System.nanoTime();
+        job.run();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Four full chunks of 10 rows are each held to 50 ms; the partial last chunks are not throttled
+        assertTrue(elapsedMillis >= 200, "Rotation finished in " + elapsedMillis + " ms");
+        assertTrue(job.isFinished());
+    }
+
+    private void addUser(String username) {
+        oldServices.put(username, new EncryptService("AES", KeyGenerator.generateAesKey(32)));
+        newServices.put(username, new EncryptService("AES-GCM", KeyGenerator.generateAesKey(32)));
+    }
+
+    private KeyRotationJob job(String jobId, int chunkSize, int threads, int maxRowsPerSecond) {
+        return new KeyRotationJob(dao, jobId, oldServices::get, newServices::get, chunkSize, threads, maxRowsPerSecond);
+    }
+
+    /**
+     * KeyRotationDAO keeping the tables and checkpoints in memory, failing the given chunk once.
+     */
+    private static final class InMemoryRotationDAO extends KeyRotationDAO {
+
+        private final Map<Table, TreeMap<String, String>> rows = new EnumMap<>(Table.class);
+        private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+        private int failOnChunk = -1;
+        private int writes;
+
+        InMemoryRotationDAO() {
+            for (Table table : Table.values()) {
+                rows.put(table, new TreeMap<>());
+            }
+        }
+
+        @Override
+        public void createCheckpointTable() {
+        }
+
+        @Override
+        public Checkpoint loadCheckpoint(String job, Table table) {
+            return checkpoints.getOrDefault(job + table, new Checkpoint(null, 0, false));
+        }
+
+        @Override
+        public long count(Table table) {
+            return rows.get(table).size();
+        }
+
+        @Override
+        public List<Row> fetchChunk(Table table, String afterUsername, int limit) {
+            TreeMap<String, String> data = rows.get(table);
+            List<Row> chunk = new ArrayList<>();
+            for (Map.Entry<String, String> entry : (afterUsername == null ? data : data.tailMap(afterUsername, false)).entrySet()) {
+                if (chunk.size() == limit) {
+                    break;
+                }
+                chunk.add(new Row(entry.getKey(), entry.getValue()));
+            }
+            return chunk;
+        }
+
+        @Override
+        public int writeChunk(String job, Table table, List<Row> read, String[] rotated, Checkpoint checkpoint) throws SQLException {
+            if (writes++ == failOnChunk) {
+                throw new SQLException("Connection lost");
+            }
+            int updated = 0;
+            for (int i = 0; i < read.size(); i++) {
+                if (rotated[i] != null && rows.get(table).replace(read.get(i).username(), read.get(i).value(), rotated[i])) {
+                    updated++;
+                }
+            }
+            checkpoints.put(job + table, checkpoint);
+            return updated;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
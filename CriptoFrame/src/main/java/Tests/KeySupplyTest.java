@@ -0,0 +1,92 @@
+/**
+ * This class contains unit tests for the KeySupply class.
+ */
+package Tests;
+
+import DTO.KeyGenerator;
+import DTO.KeySupply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeySupplyTest {
+
+    private KeySupply keySupply;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        keySupply = new KeySupply(8);
+    }
+
+    /**
+     * Stops the refill thread after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        keySupply.close();
+    }
+
+    /**
+     * Tests that keys have the requested length and are never handed out twice,
+     * including when the pools run dry and keys are generated inline.
+     */
+    @Test
+    void take_ShouldReturnDistinctKeysOfRequestedLength() {
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            for (int length : new int[]{16, 24, 32}) {
+                byte[] key = keySupply.take(length);
+                assertEquals(length, key.length);
+                assertTrue(seen.add(HexFormat.of().formatHex(key)));
+            }
+        }
+        assertEquals(300, keySupply.getPoolHitCount() + keySupply.getPoolMissCount());
+    }
+
+    /**
+     * Tests that the background thread fills the pools, tops them up once they drop to half,
+     * and records its latency.
+     */
+    @Test
+    void take_ShouldRefillPoolsInBackground() throws InterruptedException {
+        awaitFull();
+        long refills = keySupply.getRefillCount();
+        for (int i = 0; i < 6; i++) {
+            keySupply.take(32);
+        }
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (keySupply.getRefillCount() == refills || keySupply.getDepth(32) <= 4) {
+            assertTrue(System.nanoTime() < deadline, "pool not refilled");
+            Thread.sleep(5);
+        }
+        assertTrue(keySupply.getLastRefillLatencyNanos() > 0);
+        assertTrue(keySupply.getMaxRefillLatencyNanos() >= keySupply.getAverageRefillLatencyNanos());
+    }
+
+    /**
+     * Tests that invalid key lengths are rejected, through KeySupply and KeyGenerator.
+     */
+    @Test
+    void take_ShouldRejectInvalidLength() {
+        assertThrows(IllegalArgumentException.class, () -> keySupply.take(20));
+        assertThrows(IllegalArgumentException.class, () -> KeyGenerator.generateAesKey(8));
+        assertEquals(16, KeyGenerator.generateAesKey(16).length);
+    }
+
+    private void awaitFull() throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (keySupply.getDepth(16) < 8 || keySupply.getDepth(24) < 8 || keySupply.getDepth(32) < 8) {
+            assertTrue(System.nanoTime() < deadline, "pools not refilled");
+            Thread.sleep(5);
+        }
+    }
+}
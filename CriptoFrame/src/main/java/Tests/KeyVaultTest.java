@@ -0,0 +1,149 @@
+/**
+ * This class contains unit tests for the KeyVault class.
+ */
+package Tests;
+
+import Crypt.AES_Crypt;
+import Crypt.EncryptService;
+import Crypt.KeyHandle;
+import Crypt.KeyVault;
+import DTO.KeyGenerator;
+import DTO.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyVaultTest {
+
+    private KeyVault vault;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        vault = new KeyVault();
+    }
+
+    /**
+     * Tests that storing a key zeroes the given array and that the vault returns the original bytes.
+     */
+    @Test
+    void store_ShouldZeroSourceArray() {
+        byte[] key = KeyGenerator.generateAesKey(32);
+        byte[] original = key.clone();
+
+        KeyHandle handle = vault.store(key);
+
+        assertArrayEquals(new byte[32], key);
+        assertArrayEquals(original, vault.copy(handle));
+        assertEquals(32, handle.length());
+        assertEquals(1, vault.getLiveKeyCount());
+        assertFalse(handle.toString().contains("key="));
+    }
+
+    /**
+     * Tests that services built from a handle interoperate with services built from the same key array.
+     */
+    @Test
+    void encryptService_ShouldMatchArrayKeyedService() {
+        for (String type : new String[]{"AES", "AES-CTR", "AES-GCM", "CHACHA20-POLY1305", "AUTO"}) {
+            byte[] key = KeyGenerator.generateAesKey(32);
+            EncryptService arrayService = new EncryptService(type, key.clone());
+            EncryptService vaultService = new EncryptService(type, vault.store(key));
+
+            assertEquals("secret data", arrayService.decrypt(vaultService.encrypt("secret data")), type);
+            assertEquals("secret data", vaultService.decrypt(arrayService.encrypt("secret data")), type);
+        }
+    }
+
+    /**
+     * Tests that a released key is zeroed, its handle stops working and its slot is reused
+     * without the old handle reaching the new key.
+     */
+    @Test
+    void release_ShouldInvalidateHandle() throws Exception {
+        KeyHandle handle = vault.store(KeyGenerator.generateAesKey(16));
+        SecretKey view = vault.secretKey(handle, "AES");
+
+        view.destroy();
+
+        assertFalse(handle.isLive());
+        assertTrue(view.isDestroyed());
+        assertEquals(0, vault.getLiveKeyCount());
+        assertThrows(IllegalStateException.class, () -> vault.copy(handle));
+        assertThrows(RuntimeException.class, () -> new AES_Crypt(handle).encrypt("data"));
+
+        KeyHandle next = vault.store(KeyGenerator.generateAesKey(16));
+        assertTrue(next.isLive());
+        assertFalse(handle.isLive());
+        assertEquals(256L * 32, vault.getReservedBytes());
+    }
+
+    /**
+     * Tests that keys copied without the monitor stay intact while other keys are stored and
+     * released, and the vault grows.
+     */
+    @Test
+    void copy_ShouldReadStableKeysWhileOthersChange() throws Exception {
+        byte[] key = KeyGenerator.generateAesKey(32);
+        KeyHandle handle = vault.store(key.clone());
+        Thread writer = new Thread(() -> {
+            List<KeyHandle> others = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                others.add(vault.store(KeyGenerator.generateAesKey(16)));
+                if (i % 3 == 0) {
+                    vault.release(others.remove(0));
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            assertArrayEquals(key, vault.copy(handle));
+        }
+        writer.join();
+        assertArrayEquals(key, vault.copy(handle));
+        assertTrue(vault.getReservedBytes() > 256L * 32);
+    }
+
+    /**
+     * Tests that invalid keys and handles of another vault are rejected.
+     */
+    @Test
+    void store_ShouldRejectInvalidKeys() {
+        assertThrows(IllegalArgumentException.class, () -> vault.store(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> vault.store(new byte[33]));
+        KeyHandle foreign = new KeyVault().store(KeyGenerator.generateAesKey(16));
+        assertThrows(IllegalArgumentException.class, () -> vault.copy(foreign));
+    }
+
+    /**
+     * Tests that users keep their keys in the shared vault and release them when they change.
+     */
+    @Test
+    void userKey_ShouldBeKeptInSharedVault() {
+        byte[] key = KeyGenerator.generateAesKey(32);
+        User user = new User("alice", "password", "user");
+        user.setKey(key);
+
+        KeyHandle handle = user.getKeyHandle();
+        assertNotNull(handle);
+        assertArrayEquals(key, KeyVault.getInstance().copy(handle));
+        assertArrayEquals(key, user.getKey());
+        assertNotSame(user.getKey(), user.getKey());
+
+        User copy = new User(user);
+        assertNotSame(handle, copy.getKeyHandle());
+        assertArrayEquals(key, copy.getKey());
+
+        user.setKey(null);
+        assertNull(user.getKey());
+        assertThrows(IllegalStateException.class, () -> KeyVault.getInstance().copy(handle));
+        assertArrayEquals(key, copy.getKey());
+    }
+}
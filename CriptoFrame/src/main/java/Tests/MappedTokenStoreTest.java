@@ -0,0 +1,217 @@
+/**
+ * This class contains unit tests for the MappedTokenStore class.
+ */
+package Tests;
+
+import Crypt.TokenSealer;
+import DTO.KeyGenerator;
+import DTO.User;
+import Management.MappedTokenStore;
+import Management.TokenManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedTokenStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final User user = new User("testUser", "password", "admin");
+
+    /**
+     * Tests that stored tokens are found with their user, removed tokens are not, and that
+     * tokens that are not UUIDs are rejected.
+     */
+    @Test
+    void put_ShouldStoreAndRemoveTokens() {
+        try (MappedTokenStore store = open(16)) {
+            String token = UUID.randomUUID().toString();
+            store.put(token, user);
+
+            User found = store.get(token);
+            assertEquals("testUser", found.getUsername());
+            assertEquals("admin", found.getRole());
+            assertTrue(store.contains(token));
+            assertFalse(store.contains(UUID.randomUUID().toString()));
+            assertFalse(store.contains("not-a-token"));
+            assertEquals(1, store.size());
+
+            assertEquals("testUser", store.remove(token).getUsername());
+            assertFalse(store.contains(token));
+            assertNull(store.remove(token));
+            assertEquals(0, store.size());
+            assertEquals(1, store.getTombstoneCount());
+            assertThrows(IllegalArgumentException.class, () -> store.put("not-a-token", user));
+        }
+    }
+
+    /**
+     * Tests that tokens survive closing and reopening the file, as after a restart.
+     */
+    @Test
+    void open_ShouldKeepTokensAcrossRestarts() {
+        List<String> tokens = new ArrayList<>();
+        try (MappedTokenStore store = open(1024)) {
+            for (int i = 0; i < 500; i++) {
+                String token = UUID.randomUUID().toString();
+                store.put(token, new User("user" + i, "user"));
+                tokens.add(token);
+            }
+        }
+        try (MappedTokenStore store = open(16)) {
+            assertEquals(1024, store.getCapacity());
+            assertEquals(500, store.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                assertEquals("user" + i, store.get(tokens.get(i)).getUsername());
+            }
+        }
+    }
+
+    /**
+     * Tests that the table grows when it fills up, and that expired tokens are swept and
+     * reclaimed by a compaction.
+     */
+    @Test
+    void expire_ShouldGrowAndCompact() throws InterruptedException {
+        try (MappedTokenStore store = open(16)) {
+            List<String> tokens = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String token = UUID.randomUUID().toString();
+                store.put(token, user, i < 150 ? Duration.ofMillis(300) : Duration.ofMinutes(5));
+                tokens.add(token);
+            }
+            assertTrue(store.getCapacity() >= 256);
+
+            Thread.sleep(400);
+            assertFalse(store.contains(tokens.get(0)));
+            long compactions = store.getCompactionCount();
+            store.expire();
+
+            assertEquals(150, store.getExpirationCount());
+            assertEquals(50, store.size());
+            assertEquals(compactions + 1, store.getCompactionCount());
+            assertEquals(0, store.getTombstoneCount());
+            for (String token : tokens.subList(150, 200)) {
+                assertTrue(store.contains(token));
+            }
+        }
+    }
+
+    /**
+     * Tests that tokens stored and removed while the table grows in the background are all
+     * kept in the compacted file, and found again after a restart.
+     */
+    @Test
+    void put_ShouldGrowInTheBackground() {
+        List<String> kept = new ArrayList<>();
+        try (MappedTokenStore store = open(16)) {
+            for (int i = 0; i < 20_000; i++) {
+                String token = UUID.randomUUID().toString();
+                store.put(token, user);
+                assertTrue(store.contains(token));
+                if (i % 5 == 0) {
+                    assertNotNull(store.remove(token));
+                } else {
+                    kept.add(token);
+                }
+            }
+            assertTrue(store.getCompactionCount() > 0);
+            assertEquals(kept.size(), store.size());
+        }
+        try (MappedTokenStore store = open(16)) {
+            assertEquals(kept.size(), store.size());
+            for (String token : kept) {
+                assertTrue(store.contains(token));
+            }
+        }
+    }
+
+    /**
+     * Tests that lock-free readers always see tokens that stay stored while writers add and
+     * remove other tokens.
+     */
+    @Test
+    void concurrentAccess_ShouldNotLoseStableTokens() throws Exception {
+        try (MappedTokenStore store = open(64)) {
+            List<String> stable = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String token = UUID.randomUUID().toString();
+                store.put(token, user);
+                stable.add(token);
+            }
+            AtomicBoolean running = new AtomicBoolean(true);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(executor.submit(() -> {
+                    while (running.get()) {
+                        for (String token : stable) {
+                            assertTrue(store.contains(token));
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < 5_000; i++) {
+                String token = UUID.randomUUID().toString();
+                store.put(token, user);
+                if (i % 4 != 0) {
+                    store.remove(token);
+                }
+            }
+            running.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            executor.shutdown();
+            assertEquals(100 + 1_250, store.size());
+        }
+    }
+
+    /**
+     * Tests that a TokenManager backed by the mapped store validates tokens issued before a restart.
+     */
+    @Test
+    void tokenManager_ShouldValidateTokensAfterRestart() {
+        TokenSealer sealer = new TokenSealer(KeyGenerator.generateAesKey(32));
+        String token;
+        try (MappedTokenStore store = open(16)) {
+            token = new TokenManager(store, Duration.ofMinutes(5), sealer).createToken(user);
+        }
+        try (MappedTokenStore store = open(16)) {
+            TokenManager tokenManager = new TokenManager(store, Duration.ofMinutes(5), sealer);
+            assertTrue(tokenManager.validateToken(token));
+            tokenManager.invalidateToken(token);
+            assertFalse(tokenManager.validateToken(token));
+        }
+    }
+
+    /**
+     * Tests that the requested capacity of a new file is rounded up to a power of two of at least 16.
+     */
+    @Test
+    void open_ShouldRoundCapacityUp() {
+        long[][] capacities = {{1, 16}, {16, 16}, {17, 32}, {100, 128}};
+        for (long[] capacity : capacities) {
+            try (MappedTokenStore store = new MappedTokenStore(tempDir.resolve("tokens-" + capacity[0] + ".db"),
+                    capacity[0], Duration.ofMinutes(30), Duration.ofHours(1))) {
+                assertEquals(capacity[1], store.getCapacity());
+            }
+        }
+    }
+
+    private MappedTokenStore open(long capacity) {
+        return new MappedTokenStore(tempDir.resolve("tokens.db"), capacity, Duration.ofMinutes(30), Duration.ofHours(1));
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * This class contains unit tests for the PasswordHasher class.
+ */
+package Tests;
+
+import Crypt.PasswordHasher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    private PasswordHasher hasher;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        hasher = new PasswordHasher(1000, 2, 16);
+    }
+
+    /**
+     * Stops the verification threads after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        hasher.close();
+    }
+
+    /**
+     * Tests that a hashed password verifies, a wrong one does not, and every hash gets its own salt.
+     */
+    @Test
+    void verify_ShouldAcceptOnlyMatchingPassword() {
+        String hash = hasher.hash("passwor24d3");
+
+        assertTrue(PasswordHasher.isHash(hash));
+        assertTrue(hash.startsWith("$pbkdf2-sha256$1000$"));
+        assertNotEquals(hash, hasher.hash("passwor24d3"));
+        assertTrue(hasher.verify("passwor24d3", hash));
+        assertFalse(hasher.verify("wrongPassword", hash));
+        assertEquals(2, hasher.getVerificationCount());
+    }
+
+    /**
+     * Tests that missing and malformed hashes fail verification and are marked for rehashing,
+     * as are hashes with fewer iterations than the current work factor.
+     */
+    @Test
+    void verify_ShouldRejectMissingOrMalformedHash() {
+        assertFalse(hasher.verify("password", null));
+        assertFalse(hasher.verify("password", "$pbkdf2-sha256$abc$x$y"));
+        assertFalse(PasswordHasher.isHash("c2VjcmV0IGRhdGE="));
+        assertTrue(hasher.needsRehash(null));
+
+        String weak;
+        try (PasswordHasher old = new PasswordHasher(500, 1, 1)) {
+            weak = old.hash("password");
+        }
+        assertTrue(hasher.verify("password", weak));
+        assertTrue(hasher.needsRehash(weak));
+        assertFalse(hasher.needsRehash(hasher.hash("password")));
+    }
+
+    /**
+     * Tests that verifications beyond the pool and its queue are rejected instead of waiting.
+     */
+    @Test
+    void verifyAsync_ShouldRejectWhenSaturated() {
+        try (PasswordHasher slow = new PasswordHasher(2_000_000, 1, 1)) {
+            String hash = slow.hash("password");
+            CompletableFuture<Boolean> running = slow.verifyAsync("password", hash);
+            CompletableFuture<Boolean> queued = slow.verifyAsync("password", hash);
+            CompletableFuture<Boolean> rejected = slow.verifyAsync("password", hash);
+
+            CompletionException e = assertThrows(CompletionException.class, rejected::join);
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+            assertFalse(slow.verify("password", hash));
+            assertEquals(2, slow.getRejectionCount());
+            assertTrue(running.join());
+            assertTrue(queued.join());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * This class contains unit tests for the SingleFlight class.
+ */
+package Tests;
+
+import BO.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    /**
+     * Tests that concurrent calls for the same key run once and share the result, while calls
+     * for other keys and calls made afterwards run on their own.
+     */
+    @Test
+    void execute_ShouldShareCallInFlight() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(9);
+
+        Future<String> leader = executor.submit(() -> flight.execute("alice", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(gate);
+            return "result";
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        List<Future<String>> waiters = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            waiters.add(executor.submit(() -> flight.execute("alice", () -> "result" + runs.incrementAndGet())));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (flight.getCoalescedCount() < 8 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("other", flight.execute("bob", () -> "other"));
+        assertEquals(1, flight.getInFlightCount());
+        gate.countDown();
+
+        assertEquals("result", leader.get());
+        for (Future<String> waiter : waiters) {
+            assertEquals("result", waiter.get());
+        }
+        executor.shutdown();
+        assertEquals(1, runs.get());
+        assertEquals(8, flight.getCoalescedCount());
+        assertEquals(2, flight.getCallCount());
+        assertEquals(0, flight.getInFlightCount());
+        assertEquals("result2", flight.execute("alice", () -> "result" + runs.incrementAndGet()));
+    }
+
+    /**
+     * Tests that the failure of a call is thrown to every caller waiting for it, and that the
+     * key is dropped so the next call runs again.
+     */
+    @Test
+    void execute_ShouldShareFailureAndDropKey() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<String> leader = executor.submit(() -> flight.execute("alice", () -> {
+            started.countDown();
+            await(gate);
+            throw new IllegalStateException("Connection lost");
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<String> waiter = executor.submit(() -> flight.execute("alice", () -> "unused"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (flight.getCoalescedCount() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        gate.countDown();
+
+        assertInstanceOf(IllegalStateException.class, assertThrows(Exception.class, leader::get).getCause());
+        assertInstanceOf(IllegalStateException.class, assertThrows(Exception.class, waiter::get).getCause());
+        executor.shutdown();
+        assertEquals(0, flight.getInFlightCount());
+        assertEquals("recovered", flight.execute("alice", () -> "recovered"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * This class contains unit tests for the StreamCrypt class.
+ */
+package Tests;
+
+import Crypt.EncryptService;
+import Crypt.StreamCrypt;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamCryptTest {
+
+    private EncryptService encryptService;
+    private byte[] data;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        encryptService = new EncryptService("AES", KeyGenerator.generateAesKey(32));
+        data = new byte[300_001];
+        new Random(42).nextBytes(data);
+    }
+
+    /**
+     * Tests that streamed encryption produces the same bytes as the byte array method
+     * and decrypts back to the original data.
+     */
+    @Test
+    void encryptStream_ShouldMatchByteArrayEncryption() throws Exception {
+        StreamCrypt streamCrypt = encryptService.getStreamCrypt();
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        streamCrypt.encrypt(new ByteArrayInputStream(data), encrypted);
+        assertArrayEquals(encryptService.encrypt(data), encrypted.toByteArray());
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        streamCrypt.decrypt(new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+        assertArrayEquals(data, decrypted.toByteArray());
+    }
+
+    /**
+     * Tests encryption and decryption of files through memory-mapped channels.
+     */
+    @Test
+    void encryptFile_ShouldRoundTrip() throws Exception {
+        StreamCrypt streamCrypt = encryptService.getStreamCrypt();
+        Path source = Files.write(tempDir.resolve("export.bin"), data);
+        Path encrypted = tempDir.resolve("export.enc");
+        Path decrypted = tempDir.resolve("export.out");
+
+        long written = streamCrypt.encrypt(source, encrypted);
+        assertEquals(Files.size(encrypted), written);
+        assertArrayEquals(encryptService.encrypt(data), Files.readAllBytes(encrypted));
+
+        streamCrypt.decrypt(encrypted, decrypted);
+        assertArrayEquals(data, Files.readAllBytes(decrypted));
+    }
+
+    /**
+     * Tests encryption of an empty file.
+     */
+    @Test
+    void encryptFile_WhenEmpty_ShouldRoundTrip() throws Exception {
+        StreamCrypt streamCrypt = encryptService.getStreamCrypt();
+        Path source = Files.write(tempDir.resolve("empty.bin"), new byte[0]);
+        Path encrypted = tempDir.resolve("empty.enc");
+        Path decrypted = tempDir.resolve("empty.out");
+
+        streamCrypt.encrypt(source, encrypted);
+        streamCrypt.decrypt(encrypted, decrypted);
+        assertEquals(0, Files.size(decrypted));
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * This class contains unit tests for the TokenIndex and TokenId classes.
+ */
+package Tests;
+
+import DTO.User;
+import Management.TokenId;
+import Management.TokenIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenIndexTest {
+
+    private TokenIndex index;
+    private User user;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        index = new TokenIndex(Duration.ofMinutes(30), 0, Duration.ofHours(1));
+        user = new User("testUser", "password", "admin");
+    }
+
+    /**
+     * Stops the background sweep after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        index.close();
+    }
+
+    /**
+     * Tests that tokens are parsed to the same halves as UUID, and that only the canonical
+     * lowercase form is accepted.
+     */
+    @Test
+    void tokenId_ShouldMatchUuidAndRejectOtherForms() {
+        for (int i = 0; i < 1_000; i++) {
+            UUID id = UUID.randomUUID();
+            String token = id.toString();
+            assertTrue(TokenId.isValid(token));
+            assertEquals(id.getMostSignificantBits(), TokenId.mostSignificantBits(token));
+            assertEquals(id.getLeastSignificantBits(), TokenId.leastSignificantBits(token));
+            assertEquals(token, TokenId.toString(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        }
+        String token = UUID.randomUUID().toString();
+        assertFalse(TokenId.isValid(null));
+        assertFalse(TokenId.isValid(token.toUpperCase()));
+        assertFalse(TokenId.isValid(token.replace('-', 'a')));
+        assertFalse(TokenId.isValid(token.substring(1)));
+        assertFalse(TokenId.isValid("g" + token.substring(1)));
+    }
+
+    /**
+     * Tests that a token is stored, replaced and removed, that users are returned without
+     * their password, and that tokens that are not UUIDs are refused.
+     */
+    @Test
+    void put_ShouldStoreReplaceAndRemoveTokens() {
+        String token = UUID.randomUUID().toString();
+        User other = new User("otherUser", "password", "user");
+        index.put(token, user);
+
+        User stored = index.get(token);
+        assertEquals("testUser", stored.getUsername());
+        assertEquals("admin", stored.getRole());
+        assertNull(stored.getPassword());
+        assertSame(stored, index.get(token));
+
+        index.put(token, other);
+        assertEquals(1, index.size());
+        assertEquals("otherUser", index.get(token).getUsername());
+        assertEquals("otherUser", index.remove(token).getUsername());
+        assertNull(index.remove(token));
+        assertFalse(index.contains(token));
+        assertEquals(0, index.size());
+
+        assertThrows(IllegalArgumentException.class, () -> index.put("not-a-uuid", user));
+        assertFalse(index.contains("not-a-uuid"));
+        assertNull(index.get(null));
+    }
+
+    /**
+     * Tests that expired tokens are rejected when read and removed by the sweep, while tokens
+     * with a longer time to live stay.
+     */
+    @Test
+    void expire_ShouldRemoveTokensPastTheirTtl() throws InterruptedException {
+        String read = UUID.randomUUID().toString();
+        String swept = UUID.randomUUID().toString();
+        String kept = UUID.randomUUID().toString();
+        index.put(read, user, Duration.ofMillis(30));
+        index.put(swept, user, Duration.ofMillis(30));
+        index.put(kept, user);
+
+        Thread.sleep(100);
+        assertFalse(index.contains(read));
+        assertEquals(2, index.size());
+        index.expire();
+
+        assertEquals(1, index.size());
+        assertEquals(2, index.getExpirationCount());
+        assertNull(index.get(swept));
+        assertTrue(index.contains(kept));
+    }
+
+    /**
+     * Tests that the index grows past its initial capacity, keeps every token findable while
+     * entries are removed, and evicts tokens once full.
+     */
+    @Test
+    void put_ShouldGrowAndEvictWhenFull() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String token = UUID.randomUUID().toString();
+            tokens.add(token);
+            index.put(token, new User("user" + (i % 10), "user"));
+        }
+        for (int i = 0; i < tokens.size(); i += 3) {
+            assertNotNull(index.remove(tokens.get(i)));
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(i % 3 != 0, index.contains(tokens.get(i)));
+        }
+        assertTrue(index.getCapacity() >= 4 * index.size() / 3);
+
+        index.close();
+        index = new TokenIndex(Duration.ofMinutes(30), 100, Duration.ofHours(1));
+        for (int i = 0; i < 150; i++) {
+            index.put(UUID.randomUUID().toString(), user);
+        }
+        assertEquals(100, index.size());
+        assertEquals(50, index.getEvictionCount());
+    }
+
+    /**
+     * Tests that a second use inside the window is not recorded, that recorded uses extend the
+     * expiry once, and that unused tokens are not extended.
+     */
+    @Test
+    void extendTouched_ShouldExtendRecordedUsesOnly() throws InterruptedException {
+        String used = UUID.randomUUID().toString();
+        String idle = UUID.randomUUID().toString();
+        index.put(used, user, Duration.ofMillis(200));
+        index.put(idle, user, Duration.ofMillis(200));
+        long now = System.currentTimeMillis();
+
+        assertTrue(index.touch(used, now, 1_000));
+        assertTrue(index.touch(used, now + 10, 1_000));
+        assertFalse(index.touch(UUID.randomUUID().toString(), now, 1_000));
+        assertEquals(1, index.getTouchCount());
+        List<String> extended = new ArrayList<>();
+        assertEquals(1, index.extendTouched(60_000, (token, owner, expiresAt) -> {
+            extended.add(token);
+            assertEquals(now + 60_000, expiresAt);
+        }));
+        assertEquals(List.of(used), extended);
+        assertEquals(0, index.extendTouched(60_000, (token, owner, expiresAt) -> fail()));
+        assertTrue(index.touch(used, now + 20, 1_000));
+        assertEquals(1, index.getTouchCount());
+
+        Thread.sleep(300);
+        assertTrue(index.contains(used));
+        assertFalse(index.contains(idle));
+    }
+
+    /**
+     * Tests that concurrent creation, validation and removal keep the index consistent, and
+     * that a full visit sees every remaining token.
+     */
+    @Test
+    void concurrentAccess_ShouldKeepIndexConsistent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                List<String> kept = new ArrayList<>();
+                for (int i = 0; i < 5_000; i++) {
+                    String token = UUID.randomUUID().toString();
+                    index.put(token, user);
+                    assertTrue(index.contains(token));
+                    if (i % 2 == 0) {
+                        index.remove(token);
+                        assertFalse(index.contains(token));
+                    } else {
+                        kept.add(token);
+                    }
+                }
+                return kept;
+            }));
+        }
+        Set<String> kept = new HashSet<>();
+        for (Future<List<String>> future : futures) {
+            kept.addAll(future.get());
+        }
+        executor.shutdown();
+
+        Set<String> visited = new HashSet<>();
+        index.forEachToken(visited::add);
+        assertEquals(8 * 2_500, index.size());
+        assertEquals(kept, visited);
+    }
+
+    /**
+     * Tests that a visit does not hold up writers, which here run from the visitor itself, and
+     * still sees every token stored throughout it while others are removed and stored.
+     */
+    @Test
+    void forEachEntry_ShouldVisitStableTokensWhileWritersRun() {
+        Set<String> stable = new HashSet<>();
+        Set<String> churn = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            String token = UUID.randomUUID().toString();
+            index.put(token, user);
+            (i % 2 == 0 ? stable : churn).add(token);
+        }
+
+        Set<String> visited = new HashSet<>();
+        index.forEachEntry((token, owner, expiresAt) -> {
+            visited.add(token);
+            if (churn.contains(token)) {
+                index.remove(token);
+                index.put(UUID.randomUUID().toString(), user);
+            }
+        });
+
+        assertTrue(visited.containsAll(stable));
+        assertEquals(20_000, index.size());
+    }
+}
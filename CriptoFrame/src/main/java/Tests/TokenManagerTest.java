@@ -3,10 +3,21 @@
  */
 package Tests;
 
+import Crypt.TokenSealer;
+import DTO.KeyGenerator;
 import DTO.User;
+import Management.TokenListener;
 import Management.TokenManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class TokenManagerTest {
@@ -85,4 +96,136 @@ class TokenManagerTest {
     void invalidateToken_WithInvalidToken_ShouldNotThrowException() {
         assertDoesNotThrow(() -> tokenManager.invalidateToken("invalidToken"));
     }
+
+    /**
+     * Tests that a token is no longer valid once its time to live has passed.
+     * <p>
+     * This test creates a short-lived token and a default token, waits past the
+     * short time to live, and ensures only the default token is still valid.
+     * </p>
+     */
+    @Test
+    void validateToken_WithExpiredToken_ShouldReturnFalse() throws InterruptedException {
+        String shortLived = tokenManager.createToken(testUser, Duration.ofMillis(20));
+        String token = tokenManager.createToken(testUser);
+
+        Thread.sleep(50);
+
+        assertFalse(tokenManager.validateToken(shortLived));
+        assertTrue(tokenManager.validateToken(token));
+        assertEquals(1, tokenManager.getLiveTokenCount());
+        assertEquals(1, tokenManager.getExpirationCount());
+    }
+
+    /**
+     * Tests sealed tokens across two managers sharing a key.
+     * <p>
+     * This test creates a sealed token on one manager, validates it on another manager
+     * sharing the sealing key without any shared store, and ensures that invalidating it
+     * revokes it while opaque tokens keep working.
+     * </p>
+     */
+    @Test
+    void validateToken_WithSealedToken_ShouldValidateWithoutLookup() {
+        TokenSealer sealer = new TokenSealer(KeyGenerator.generateAesKey(32));
+        TokenManager issuer = new TokenManager(Duration.ofMinutes(5), 0, sealer);
+        TokenManager validator = new TokenManager(Duration.ofMinutes(5), 0, sealer);
+
+        String sealed = issuer.createSealedToken(testUser);
+        String opaque = issuer.createToken(testUser);
+
+        assertTrue(validator.validateToken(sealed));
+        assertFalse(validator.validateToken(opaque));
+        assertFalse(tokenManager.validateToken(sealed));
+        assertEquals(0, validator.getLiveTokenCount());
+
+        validator.invalidateToken(sealed);
+        assertFalse(validator.validateToken(sealed));
+        assertEquals(1, validator.getRevokedTokenCount());
+        assertTrue(issuer.validateToken(opaque));
+    }
+
+    /**
+     * Tests the filters in front of the token lookups.
+     * <p>
+     * This test ensures that unknown opaque tokens and never-revoked sealed tokens are answered
+     * by the filters, that no issued token is rejected, and that a rebuild drops invalidated tokens.
+     * </p>
+     */
+    @Test
+    void validateToken_WithUnknownTokens_ShouldShortCircuit() throws InterruptedException {
+        // The filters are loaded in the background
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (tokenManager.getFilterRebuildCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, tokenManager.getFilterRebuildCount());
+
+        String[] tokens = new String[3_000];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = tokenManager.createToken(testUser);
+        }
+        for (String token : tokens) {
+            assertTrue(tokenManager.validateToken(token));
+        }
+        assertEquals(0, tokenManager.getFilterShortCircuitCount());
+
+        for (int i = 0; i < 1_000; i++) {
+            assertFalse(tokenManager.validateToken(UUID.randomUUID().toString()));
+        }
+        assertTrue(tokenManager.getFilterShortCircuitCount() > 900);
+        assertEquals(1_000, tokenManager.getFilterShortCircuitCount() + tokenManager.getFilterFalsePositiveCount());
+
+        String sealed = tokenManager.createSealedToken(testUser);
+        long shortCircuits = tokenManager.getFilterShortCircuitCount();
+        assertTrue(tokenManager.validateToken(sealed));
+        assertEquals(shortCircuits + 1, tokenManager.getFilterShortCircuitCount());
+
+        tokenManager.invalidateToken(tokens[0]);
+        tokenManager.rebuildFilters();
+        assertFalse(tokenManager.validateToken(tokens[0]));
+        assertTrue(tokenManager.validateToken(tokens[1]));
+        assertTrue(tokenManager.getFilterRebuildCount() >= 4);
+    }
+
+    /**
+     * Tests that with sliding expiration a token in use outlives its time to live, while an
+     * idle token still expires, and that the extended tokens are reported to the listeners.
+     */
+    @Test
+    void validateToken_WithSlidingExpiration_ShouldKeepUsedTokensAlive() throws InterruptedException {
+        tokenManager = new TokenManager(Duration.ofMillis(600), 0);
+        tokenManager.enableSlidingExpiration(Duration.ofMillis(100));
+        List<TokenListener.Touch> touches = new CopyOnWriteArrayList<>();
+        tokenManager.addListener(new TokenListener() {
+            @Override
+            public void tokenCreated(String token, User user, Instant expiresAt) {
+            }
+
+            @Override
+            public void tokenInvalidated(String token, User user) {
+            }
+
+            @Override
+            public void tokensTouched(List<Touch> batch) {
+                touches.addAll(batch);
+            }
+        });
+        String used = tokenManager.createToken(testUser);
+        String idle = tokenManager.createToken(testUser);
+
+        long end = System.nanoTime() + Duration.ofMillis(1_200).toNanos();
+        while (System.nanoTime() < end) {
+            assertTrue(tokenManager.validateToken(used));
+            Thread.sleep(20);
+        }
+
+        assertTrue(tokenManager.validateToken(used));
+        assertFalse(tokenManager.validateToken(idle));
+        assertTrue(tokenManager.getSlidingExtensionCount() > 0);
+        assertFalse(touches.isEmpty());
+        assertTrue(touches.stream().allMatch(touch -> touch.token().equals(used)
+                && touch.expiresAt().isAfter(touch.lastSeen())));
+        assertThrows(IllegalArgumentException.class, () -> tokenManager.enableSlidingExpiration(Duration.ofSeconds(1)));
+    }
 }
@@ -0,0 +1,238 @@
+/**
+ * This class contains unit tests for the TokenReplicator class.
+ */
+package Tests;
+
+import DTO.User;
+import Management.TokenManager;
+import Management.TokenReplicator;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenReplicatorTest {
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    private static final byte[] KEY = "test-replication-key".getBytes(StandardCharsets.UTF_8);
+
+    private final User user = new User("testUser", "password", "admin");
+
+    /**
+     * Tests that tokens issued on one node are valid on the other, and that invalidating them on
+     * either node invalidates them everywhere.
+     */
+    @Test
+    void validateToken_ShouldAcceptTokensIssuedOnPeers() throws InterruptedException {
+        TokenManager first = new TokenManager();
+        TokenManager second = new TokenManager();
+        try (TokenReplicator firstReplicator = new TokenReplicator(first, 0, KEY);
+             TokenReplicator secondReplicator = new TokenReplicator(second, 0, KEY)) {
+            assertTrue(firstReplicator.getLocalAddress().getAddress().isLoopbackAddress());
+            firstReplicator.addPeer(secondReplicator.getLocalAddress());
+            secondReplicator.addPeer(firstReplicator.getLocalAddress());
+
+            String token = first.createToken(user);
+            awaitTrue(() -> second.validateToken(token));
+            String other = second.createToken(new User("otherUser", null));
+            awaitTrue(() -> first.validateToken(other));
+
+            second.invalidateToken(token);
+            awaitTrue(() -> !first.validateToken(token));
+            assertTrue(first.validateToken(other));
+            assertEquals(1, firstReplicator.getSentCount());
+            // A snapshot may also send back the token first issued, if it was taken after the token arrived
+            assertTrue(firstReplicator.getReceivedCount() >= 2);
+        }
+    }
+
+    /**
+     * Tests that a node joining late catches up with a snapshot, and that a node reconnecting
+     * catches up with the operations it missed from the log.
+     */
+    @Test
+    void addPeer_ShouldCatchUpWithSnapshotAndDelta() throws Exception {
+        TokenManager origin = new TokenManager();
+        TokenManager late = new TokenManager();
+        String before = origin.createToken(user);
+        String removed = origin.createToken(user);
+        origin.invalidateToken(removed);
+
+        try (TokenReplicator originReplicator = new TokenReplicator(origin, LOOPBACK, KEY);
+             TokenReplicator lateReplicator = new TokenReplicator(late, LOOPBACK, KEY);
+             Proxy proxy = new Proxy(originReplicator.getLocalAddress())) {
+            lateReplicator.addPeer(proxy.getAddress());
+            awaitTrue(() -> late.validateToken(before));
+            assertFalse(late.validateToken(removed));
+            assertEquals(1, originReplicator.getSnapshotCount());
+
+            String live = origin.createToken(user);
+            awaitTrue(() -> late.validateToken(live));
+
+            proxy.dropConnections();
+            String missed = origin.createToken(user);
+            origin.invalidateToken(live);
+            awaitTrue(() -> late.validateToken(missed));
+            awaitTrue(() -> !late.validateToken(live));
+            assertEquals(1, originReplicator.getSnapshotCount());
+            assertEquals(1, originReplicator.getDeltaCount());
+            assertEquals(1, lateReplicator.getDisconnectCount());
+        }
+    }
+
+    /**
+     * Tests that a snapshot larger than a block is streamed whole, and that operations published
+     * while it streams are replicated after it.
+     */
+    @Test
+    void addPeer_ShouldStreamLargeSnapshotInBlocks() throws InterruptedException {
+        TokenManager origin = new TokenManager();
+        TokenManager late = new TokenManager();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            tokens.add(origin.createToken(user));
+        }
+
+        try (TokenReplicator originReplicator = new TokenReplicator(origin, LOOPBACK, KEY);
+             TokenReplicator lateReplicator = new TokenReplicator(late, LOOPBACK, KEY)) {
+            lateReplicator.addPeer(originReplicator.getLocalAddress());
+            awaitTrue(() -> originReplicator.getSnapshotCount() == 1);
+            String live = origin.createToken(user);
+            origin.invalidateToken(tokens.get(0));
+
+            // The snapshot may already send the live token, but holds back the invalidation
+            awaitTrue(() -> tokens.subList(1, tokens.size()).stream().allMatch(late::validateToken));
+            awaitTrue(() -> !late.validateToken(tokens.get(0)));
+            assertTrue(late.validateToken(live));
+            assertEquals(0, originReplicator.getDisconnectCount());
+        }
+    }
+
+    /**
+     * Tests that a client without the replication key is sent nothing but the challenge, and
+     * that a node with another key can neither read nor inject tokens.
+     */
+    @Test
+    void subscribe_ShouldRequireReplicationKey() throws Exception {
+        TokenManager origin = new TokenManager();
+        TokenManager intruder = new TokenManager();
+        String token = origin.createToken(user);
+        String injected = intruder.createToken(new User("intruder", "admin"));
+
+        try (TokenReplicator originReplicator = new TokenReplicator(origin, LOOPBACK, KEY)) {
+            try (Socket socket = new Socket(originReplicator.getLocalAddress().getAddress(),
+                    originReplicator.getLocalAddress().getPort())) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                byte[] challenge = new byte[2 + 1 + 16];
+                in.readFully(challenge);
+                // A subscription with the right layout and a forged proof
+                byte[] subscribe = new byte[2 + 65];
+                subscribe[1] = 65;
+                subscribe[2] = 1;
+                socket.getOutputStream().write(subscribe);
+                assertEquals(-1, in.read());
+            }
+
+            try (TokenReplicator intruderReplicator = new TokenReplicator(intruder, LOOPBACK,
+                    "another-replication-key".getBytes(StandardCharsets.UTF_8))) {
+                intruderReplicator.addPeer(originReplicator.getLocalAddress());
+                originReplicator.addPeer(intruderReplicator.getLocalAddress());
+                awaitTrue(() -> originReplicator.getDisconnectCount() >= 3 && intruderReplicator.getDisconnectCount() >= 2);
+
+                assertFalse(intruder.validateToken(token));
+                assertFalse(origin.validateToken(injected));
+                assertEquals(0, originReplicator.getSnapshotCount());
+                assertEquals(0, intruderReplicator.getSnapshotCount());
+                assertEquals(0, originReplicator.getReceivedCount());
+            }
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * TCP proxy whose connections can be cut, to simulate a network failure between two nodes.
+     */
+    private static class Proxy implements AutoCloseable {
+
+        private final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        Proxy(InetSocketAddress target) throws IOException {
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket client = server.accept();
+                        Socket upstream = new Socket(target.getAddress(), target.getPort());
+                        sockets.add(client);
+                        sockets.add(upstream);
+                        pump(client, upstream);
+                        pump(upstream, client);
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        InetSocketAddress getAddress() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        }
+
+        void dropConnections() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            sockets.clear();
+        }
+
+        private void pump(Socket from, Socket to) {
+            Thread thread = new Thread(() -> {
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    in.transferTo(out);
+                } catch (IOException e) {
+                    // Connection dropped
+                }
+                try {
+                    from.close();
+                    to.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            dropConnections();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * This class contains unit tests for the TokenSealer class.
+ */
+package Tests;
+
+import Crypt.TokenSealer;
+import DTO.KeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenSealerTest {
+
+    private TokenSealer sealer;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        sealer = new TokenSealer(KeyGenerator.generateAesKey(32));
+    }
+
+    /**
+     * Tests that a sealed token opens to the claims it was issued with, and that every token gets its own id.
+     */
+    @Test
+    void open_ShouldReturnSealedClaims() {
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(5));
+        String token = sealer.seal("testUser", "admin", expiresAt);
+
+        TokenSealer.Claims claims = sealer.open(token);
+
+        assertTrue(TokenSealer.isSealed(token));
+        assertNotNull(claims);
+        assertEquals("testUser", claims.username());
+        assertEquals("admin", claims.role());
+        assertEquals(expiresAt.getEpochSecond(), claims.expiresAt().getEpochSecond());
+        assertNotEquals(claims.id(), sealer.open(sealer.seal("testUser", "admin", expiresAt)).id());
+    }
+
+    /**
+     * Tests that tampered, truncated, foreign and expired tokens are rejected.
+     */
+    @Test
+    void open_ShouldRejectInvalidTokens() {
+        String token = sealer.seal("testUser", "user", Instant.now().plus(Duration.ofMinutes(5)));
+        int dot = token.lastIndexOf('.');
+        char flipped = token.charAt(dot - 2) == 'A' ? 'B' : 'A';
+        String tampered = token.substring(0, dot - 2) + flipped + token.substring(dot - 1);
+
+        assertNull(sealer.open(tampered));
+        assertNull(sealer.open(token.substring(0, dot)));
+        assertNull(sealer.open("st1.!!!.???"));
+        assertNull(sealer.open(UUID.randomUUID().toString()));
+        assertNull(sealer.open(new TokenSealer(KeyGenerator.generateAesKey(32)).seal("testUser", "user",
+                Instant.now().plus(Duration.ofMinutes(5)))));
+        assertNull(sealer.open(sealer.seal("testUser", "user", Instant.now().minusSeconds(1))));
+        assertThrows(IllegalArgumentException.class, () -> new TokenSealer(new byte[8]));
+    }
+}
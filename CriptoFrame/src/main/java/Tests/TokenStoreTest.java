@@ -0,0 +1,161 @@
+/**
+ * This class contains unit tests for the TokenStore class.
+ */
+package Tests;
+
+import DTO.User;
+import Management.TokenStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenStoreTest {
+
+    private TokenStore store;
+    private User user;
+
+    /**
+     * Sets up the necessary objects before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        store = new TokenStore(Duration.ofMinutes(30), 0, Duration.ofMillis(10));
+        user = new User("testUser", "password", "admin");
+    }
+
+    /**
+     * Stops the background expiry after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    /**
+     * Tests that tokens are removed by the timing wheel once their time to live has passed,
+     * while tokens with a longer time to live stay.
+     */
+    @Test
+    void expire_ShouldRemoveTokensPastTheirTtl() throws InterruptedException {
+        store.put("short", user, Duration.ofMillis(30));
+        store.put("long", user);
+        assertSame(user, store.get("short"));
+
+        Thread.sleep(100);
+        store.expire();
+
+        assertEquals(1, store.size());
+        assertEquals(1, store.getExpirationCount());
+        assertNull(store.get("short"));
+        assertSame(user, store.get("long"));
+    }
+
+    /**
+     * Tests that a token read after its deadline is rejected even before the wheel reaches it.
+     */
+    @Test
+    void get_ShouldRejectExpiredTokenBeforeWheelRuns() throws InterruptedException {
+        store.close();
+        store = new TokenStore(Duration.ofMinutes(30), 0, Duration.ofHours(1));
+        store.put("short", user, Duration.ofMillis(10));
+
+        Thread.sleep(30);
+
+        assertFalse(store.contains("short"));
+        assertEquals(0, store.size());
+        assertEquals(1, store.getExpirationCount());
+    }
+
+    /**
+     * Tests that the store evicts the tokens closest to expiry once it is full, and that removed
+     * and replaced tokens are not evicted or expired again.
+     */
+    @Test
+    void put_ShouldEvictSoonestExpiringWhenFull() {
+        store.close();
+        store = new TokenStore(Duration.ofMinutes(30), 3, Duration.ofMillis(10));
+        store.put("removed", user, Duration.ofMillis(500));
+        store.put("soon", user, Duration.ofSeconds(1));
+        assertNotNull(store.remove("removed"));
+        store.put("a", user);
+        store.put("b", user);
+        store.put("b", user);
+        store.put("c", user);
+
+        assertEquals(3, store.size());
+        assertEquals(1, store.getEvictionCount());
+        assertFalse(store.contains("soon"));
+        assertTrue(store.contains("a") && store.contains("b") && store.contains("c"));
+        assertNull(store.remove("removed"));
+        assertFalse(store.contains(null));
+    }
+
+    /**
+     * Tests that concurrent creation, validation and removal keep the store consistent.
+     */
+    @Test
+    void concurrentAccess_ShouldKeepStoreConsistent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    String token = thread + "-" + i;
+                    store.put(token, user);
+                    assertTrue(store.contains(token));
+                    if (i % 2 == 0) {
+                        store.remove(token);
+                        assertFalse(store.contains(token));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(8 * 2_500, store.size());
+    }
+
+    /**
+     * Tests that tokens stored while others are evicted concurrently are still expired, so
+     * none of them is left in the store unlinked from the timing wheel.
+     */
+    @Test
+    void concurrentEviction_ShouldStillExpireEveryToken() throws Exception {
+        TokenStore bounded = new TokenStore(Duration.ofMillis(50), 64, Duration.ofMillis(10));
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        bounded.put(thread + "-" + i, user);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            Thread.sleep(100);
+            bounded.expire();
+            assertEquals(0, bounded.size());
+        } finally {
+            bounded.close();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * This class contains unit tests for the TokenValidationCache class.
+ */
+package Tests;
+
+import BO.TokenValidationCache;
+import DTO.Token;
+import DTO.User;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenValidationCacheTest {
+
+    /**
+     * Loader keeping the Token table in memory and counting its queries.
+     */
+    private static class InMemoryLoader implements TokenValidationCache.Loader {
+
+        private final Map<String, Token> rows = new ConcurrentHashMap<>();
+        private final AtomicInteger queries = new AtomicInteger();
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+        private volatile CountDownLatch started;
+        private volatile CountDownLatch gate;
+
+        void insert(String value, String username) {
+            rows.put(value, new Token(value, new User(username)));
+        }
+
+        @Override
+        public Token load(String value) throws SQLException {
+            queries.incrementAndGet();
+            Token token = rows.get(value);
+            if (started != null) {
+                started.countDown();
+            }
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new SQLException("Connection lost");
+            }
+            return token;
+        }
+    }
+
+    /**
+     * Tests that found tokens and unknown values are both cached until their time to live
+     * passes, and that failed lookups are not cached.
+     */
+    @Test
+    void get_ShouldCacheFoundAndUnknownValues() throws InterruptedException {
+        InMemoryLoader loader = new InMemoryLoader();
+        loader.insert("value1", "alice");
+        TokenValidationCache cache = new TokenValidationCache(loader, 100, Duration.ofMinutes(1),
+                Duration.ofMillis(100), Duration.ZERO);
+
+        assertEquals("alice", cache.get("value1").getUser().getUsername());
+        assertEquals("alice", cache.get("value1").getUser().getUsername());
+        assertNull(cache.get("unknown"));
+        loader.insert("unknown", "bob");
+        assertNull(cache.get("unknown"));
+        assertEquals(2, loader.queries.get());
+        assertEquals(0.5, cache.getHitRatio());
+
+        Thread.sleep(150);
+        assertEquals("bob", cache.get("unknown").getUser().getUsername());
+        assertEquals(3, cache.getLoadCount());
+        assertTrue(cache.getAverageLoadMillis() >= 0);
+
+        loader.failuresLeft.set(1);
+        assertNull(cache.get("failing"));
+        assertNull(cache.get("failing"));
+        assertEquals(1, cache.getLoadFailureCount());
+        assertEquals(5, loader.queries.get());
+        assertNull(cache.get(null));
+    }
+
+    /**
+     * Tests that a token read near the end of its time to live is reloaded in the background
+     * while the cached token keeps being served.
+     */
+    @Test
+    void get_ShouldRefreshPopularTokensBeforeTheyExpire() throws InterruptedException {
+        InMemoryLoader loader = new InMemoryLoader();
+        loader.insert("value1", "alice");
+        TokenValidationCache cache = new TokenValidationCache(loader, 100, Duration.ofMillis(400),
+                Duration.ofMillis(100), Duration.ofMillis(200));
+
+        assertNotNull(cache.get("value1"));
+        Thread.sleep(250);
+        assertNotNull(cache.get("value1"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cache.getRefreshCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+
+        // Past the time to live of the first load, the token is still served from the cache
+        assertNotNull(cache.get("value1"));
+        assertTrue(cache.getRefreshCount() >= 1);
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Tests that invalidating a user or a value removes the cached lookups, and that a load
+     * running meanwhile does not cache its outdated result.
+     */
+    @Test
+    void invalidate_ShouldDropAffectedEntries() throws Exception {
+        InMemoryLoader loader = new InMemoryLoader();
+        loader.insert("value1", "alice");
+        TokenValidationCache cache = new TokenValidationCache(loader, 100, Duration.ofMinutes(1),
+                Duration.ofMinutes(1), Duration.ZERO);
+        assertNotNull(cache.get("value1"));
+        assertNull(cache.get("value2"));
+
+        loader.rows.clear();
+        loader.insert("value2", "alice");
+        cache.invalidateUser("alice");
+        cache.invalidate("value2");
+        assertNull(cache.get("value1"));
+        assertEquals("alice", cache.get("value2").getUser().getUsername());
+        assertEquals(4, loader.queries.get());
+
+        loader.started = new CountDownLatch(1);
+        loader.gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Token> pending = executor.submit(() -> cache.get("value3"));
+        assertTrue(loader.started.await(10, TimeUnit.SECONDS));
+        loader.insert("value3", "bob");
+        cache.invalidate("value3");
+        loader.gate.countDown();
+        assertNull(pending.get());
+        executor.shutdown();
+        loader.started = null;
+        loader.gate = null;
+
+        assertEquals("bob", cache.get("value3").getUser().getUsername());
+    }
+
+    /**
+     * Tests that the cache never holds more than its maximum number of values.
+     */
+    @Test
+    void get_ShouldEvictWhenFull() {
+        InMemoryLoader loader = new InMemoryLoader();
+        TokenValidationCache cache = new TokenValidationCache(loader, 10, Duration.ofMinutes(1),
+                Duration.ofMinutes(1), Duration.ZERO);
+        for (int i = 0; i < 100; i++) {
+            loader.insert("value" + i, "user" + i);
+            assertNotNull(cache.get("value" + i));
+        }
+
+        assertEquals(10, cache.size());
+        assertEquals(90, cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * This class contains unit tests for the TokenWriteBehind class.
+ */
+package Tests;
+
+import Crypt.EncryptService;
+import DAO.TokenDAO;
+import DTO.KeyGenerator;
+import DTO.Token;
+import DTO.User;
+import Management.TokenListener.Touch;
+import Management.TokenManager;
+import Management.TokenWriteBehind;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenWriteBehindTest {
+
+    private static final Instant EXPIRY = Instant.now().plus(Duration.ofMinutes(30));
+
+    private static final byte[] STORAGE_KEY = KeyGenerator.generateAesKey(32);
+
+    /**
+     * TokenDAO keeping the Token table in memory and recording the batches written to it.
+     */
+    private static class InMemoryTokenDAO extends TokenDAO {
+
+        private final Map<String, String> rows = new HashMap<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private final Map<String, Instant> lastSeen = new HashMap<>();
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+        private volatile CountDownLatch gate;
+
+        @Override
+        public synchronized List<String> writeBatch(Collection<String> usernames, Collection<Token> tokens,
+                                                    String encryptionType, byte[] storageKey) throws SQLException {
+            CountDownLatch current = gate;
+            if (current != null) {
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new SQLException("Connection lost");
+            }
+            usernames.forEach(rows::remove);
+            tokens.forEach(token -> rows.put(token.getUser().getUsername(), token.getValue()));
+            batchSizes.add(usernames.size());
+            return tokens.stream().map(Token::getValue).toList();
+        }
+
+        @Override
+        public synchronized void touchBatch(Map<String, Instant> touches) {
+            touches.forEach((username, seen) -> {
+                if (rows.containsKey(username)) {
+                    lastSeen.merge(username, seen, (a, b) -> a.isAfter(b) ? a : b);
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * TokenDAO keeping the Token table in memory below the encryption of writeBatch, so the
+     * values are encrypted as they are in production.
+     */
+    private static class EncryptingTokenDAO extends TokenDAO {
+
+        private final Map<String, String> rows = new HashMap<>();
+
+        @Override
+        protected synchronized void writeRows(Collection<String> usernames, List<Token> encryptedTokens) {
+            usernames.forEach(rows::remove);
+            encryptedTokens.forEach(token -> rows.put(token.getUser().getUsername(), token.getValue()));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Tests that changes of the same user are coalesced, and that closing writes every queued change.
+     */
+    @Test
+    void close_ShouldWriteCoalescedChanges() {
+        InMemoryTokenDAO dao = new InMemoryTokenDAO();
+        TokenWriteBehind writeBehind = new TokenWriteBehind(dao, "AES", STORAGE_KEY, 100, 100, Duration.ofHours(1), Duration.ZERO);
+        User alice = new User("alice", "user");
+        User bob = new User("bob", "user");
+
+        writeBehind.tokenCreated("a1", alice, EXPIRY);
+        writeBehind.tokenCreated("a2", alice, EXPIRY);
+        writeBehind.tokenCreated("b1", bob, EXPIRY);
+        writeBehind.tokenInvalidated("b1", bob);
+        writeBehind.tokenInvalidated("a1", alice);
+        assertEquals(2, writeBehind.getPendingCount());
+        assertEquals(2, writeBehind.getCoalescedCount());
+        assertTrue(dao.rows.isEmpty());
+
+        writeBehind.close();
+
+        assertEquals(Map.of("alice", "a2"), dao.rows);
+        assertEquals(List.of(2), dao.batchSizes);
+        assertEquals(2, writeBehind.getWrittenCount());
+        assertEquals(0, writeBehind.getPendingCount());
+        writeBehind.tokenCreated("a3", alice, EXPIRY);
+        assertEquals(1, writeBehind.getRejectedCount());
+    }
+
+    /**
+     * Tests that a full batch is written without waiting for the flush interval, and that a
+     * failed batch is retried.
+     */
+    @Test
+    void tokenCreated_ShouldFlushFullBatchesAndRetryFailures() throws InterruptedException {
+        InMemoryTokenDAO dao = new InMemoryTokenDAO();
+        dao.failuresLeft.set(1);
+        TokenWriteBehind writeBehind = new TokenWriteBehind(dao, "AES", STORAGE_KEY, 1_000, 10, Duration.ofHours(1), Duration.ZERO);
+        for (int i = 0; i < 25; i++) {
+            writeBehind.tokenCreated("token" + i, new User("user" + i, "user"), EXPIRY);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (writeBehind.getWrittenCount() < 20 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(20, writeBehind.getWrittenCount());
+        assertEquals(1, writeBehind.getFailedBatchCount());
+        assertEquals(5, writeBehind.getPendingCount());
+        writeBehind.close();
+        assertEquals(25, dao.rows.size());
+    }
+
+    /**
+     * Tests that callers are turned away once the queue stays full while the database is slow.
+     */
+    @Test
+    void tokenCreated_ShouldRejectWhenQueueStaysFull() throws InterruptedException {
+        InMemoryTokenDAO dao = new InMemoryTokenDAO();
+        CountDownLatch gate = new CountDownLatch(1);
+        dao.gate = gate;
+        TokenWriteBehind writeBehind = new TokenWriteBehind(dao, "AES", STORAGE_KEY, 2, 1, Duration.ofMillis(1), Duration.ofMillis(20));
+
+        writeBehind.tokenCreated("t0", new User("user0", "user"), EXPIRY);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (writeBehind.getPendingCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        writeBehind.tokenCreated("t1", new User("user1", "user"), EXPIRY);
+        writeBehind.tokenCreated("t2", new User("user2", "user"), EXPIRY);
+        writeBehind.tokenCreated("t3", new User("user3", "user"), EXPIRY);
+
+        assertEquals(1, writeBehind.getRejectedCount());
+        assertTrue(writeBehind.getLagMillis() >= 0);
+        gate.countDown();
+        writeBehind.close();
+        assertEquals(3, dao.rows.size());
+        assertFalse(dao.rows.containsKey("user3"));
+    }
+
+    /**
+     * Tests that the last uses of extended tokens are written after the token changes of the
+     * same flush, keeping the latest use of each user.
+     */
+    @Test
+    void tokensTouched_ShouldWriteLatestUseOfEachUser() {
+        InMemoryTokenDAO dao = new InMemoryTokenDAO();
+        TokenWriteBehind writeBehind = new TokenWriteBehind(dao, "AES", STORAGE_KEY, 100, 100, Duration.ofHours(1), Duration.ZERO);
+        User alice = new User("alice", "user");
+        Instant first = Instant.now();
+        Instant second = first.plusSeconds(1);
+
+        writeBehind.tokenCreated("a1", alice, EXPIRY);
+        writeBehind.tokensTouched(List.of(new Touch("a1", alice, second, EXPIRY)));
+        writeBehind.tokensTouched(List.of(new Touch("a1", alice, first, EXPIRY),
+                new Touch("b1", new User("bob", "user"), first, EXPIRY)));
+        writeBehind.close();
+
+        // The flusher may write the first use of alice on its own before the second batch arrives
+        assertEquals(Map.of("alice", second), dao.lastSeen);
+        assertTrue(writeBehind.getTouchWrittenCount() >= 2);
+    }
+
+    /**
+     * Tests that a TokenManager reports its opaque tokens to the write-behind.
+     */
+    @Test
+    void tokenManager_ShouldReportIssuedAndInvalidatedTokens() {
+        InMemoryTokenDAO dao = new InMemoryTokenDAO();
+        TokenWriteBehind writeBehind = new TokenWriteBehind(dao, "AES", STORAGE_KEY, 100, 100, Duration.ofHours(1), Duration.ZERO);
+        TokenManager tokenManager = new TokenManager();
+        tokenManager.addListener(writeBehind);
+
+        String kept = tokenManager.createToken(new User("alice", "user"));
+        String removed = tokenManager.createToken(new User("bob", "user"));
+        tokenManager.invalidateToken(removed);
+        tokenManager.createSealedToken(new User("carol", "user"));
+        writeBehind.close();
+
+        assertEquals(Map.of("alice", kept), dao.rows);
+    }
+
+    /**
+     * Tests that tokens are encrypted with the key of their user, or with the storage key for
+     * users loaded without one, and that a token that cannot be encrypted is dropped on its own,
+     * keeping the stored token of its user, while the rest of the batch is written.
+     */
+    @Test
+    void writeBatch_ShouldDropOnlyTokensThatCannotBeEncrypted() {
+        EncryptingTokenDAO dao = new EncryptingTokenDAO();
+        dao.rows.put("carol", "old");
+        dao.rows.put("dave", "stored");
+        TokenWriteBehind writeBehind = new TokenWriteBehind(dao, "AES", STORAGE_KEY, 100, 100, Duration.ofHours(1), Duration.ZERO);
+        byte[] key = KeyGenerator.generateAesKey(32);
+        User alice = new User("alice", "user");
+        alice.setKey(key);
+        User dave = new User("dave", "user");
+        dave.setKey(new byte[5]);
+
+        writeBehind.tokenCreated("a1", alice, EXPIRY);
+        writeBehind.tokenCreated("b1", new User("bob", "user"), EXPIRY);
+        writeBehind.tokenInvalidated("c1", new User("carol", "user"));
+        writeBehind.tokenCreated("d1", dave, EXPIRY);
+        writeBehind.close();
+
+        assertEquals(Set.of("alice", "bob", "dave"), dao.rows.keySet());
+        assertEquals("a1", new EncryptService("AES", key).decrypt(dao.rows.get("alice")));
+        assertEquals("b1", new EncryptService("AES", STORAGE_KEY).decrypt(dao.rows.get("bob")));
+        assertEquals("stored", dao.rows.get("dave"));
+        assertEquals(1, writeBehind.getDroppedCount());
+        assertEquals(3, writeBehind.getWrittenCount());
+    }
+
+    /**
+     * Tests that a storage key that cannot encrypt is refused when the write-behind is created.
+     */
+    @Test
+    void constructor_WithUnusableStorageKey_ShouldThrow() {
+        EncryptingTokenDAO dao = new EncryptingTokenDAO();
+        assertThrows(IllegalArgumentException.class, () -> new TokenWriteBehind(dao, "AES", new byte[5]));
+        assertThrows(IllegalArgumentException.class, () -> new TokenWriteBehind(dao, "AES", null));
+    }
+
+    /**
+     * Tests that the last tokens of users are forgotten once they expire, although they are
+     * never invalidated.
+     */
+    @Test
+    void tokenCreated_ShouldForgetExpiredTokens() {
+        InMemoryTokenDAO dao = new InMemoryTokenDAO();
+        TokenWriteBehind writeBehind = new TokenWriteBehind(dao, "AES", STORAGE_KEY, 100, 100, Duration.ofMillis(1), Duration.ofSeconds(10));
+        Instant expired = Instant.now().minusSeconds(1);
+        for (int i = 0; i < 1_000; i++) {
+            writeBehind.tokenCreated("token" + i, new User("user" + i, "user"), expired);
+        }
+        writeBehind.tokenCreated("kept", new User("kept", "user"), EXPIRY);
+
+        assertTrue(writeBehind.getTrackedTokenCount() <= 101);
+        assertEquals(0, writeBehind.getRejectedCount());
+        writeBehind.close();
+    }
+}
@@ -25,7 +25,7 @@ public class UserTests {
         UserBO userBO = new UserBO();
         User user = new User("testUser1334", "passwor24d3", "32role33");
         user.setKey(KeyGenerator.generateAesKey(32));
-        assertTrue(userBO.insert(user, "aes"));
+        assertTrue(userBO.insert(user));
         assertTrue(userBO.exists("testUser1334"));
     }
 
@@ -87,7 +87,7 @@ public class UserTests {
     void testUpdateUser() {
         UserBO userBO = new UserBO();
         User user = new User("testUser", "passwor2d3", "32role3");
-        assertTrue(userBO.update(user, "aes"));
+        assertTrue(userBO.update(user));
         assertTrue(userBO.exists("testUser"));
     }
 
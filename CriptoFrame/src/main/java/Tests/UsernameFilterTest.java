@@ -0,0 +1,194 @@
+/**
+ * This class contains unit tests for the UsernameFilter class.
+ */
+package Tests;
+
+import BO.UsernameFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsernameFilterTest {
+
+    private UsernameFilter filter;
+
+    /**
+     * Source keeping the User table in memory.
+     */
+    private static class InMemorySource implements UsernameFilter.Source {
+
+        private final List<String> usernames = new CopyOnWriteArrayList<>();
+        private volatile boolean failing;
+        private volatile CountDownLatch started;
+        private volatile CountDownLatch gate;
+
+        @Override
+        public long count() throws SQLException {
+            if (failing) {
+                throw new SQLException("Connection refused");
+            }
+            return usernames.size();
+        }
+
+        @Override
+        public void forEachUsername(Consumer<String> action) throws SQLException {
+            // Iterates over a snapshot, as a query does
+            for (String username : usernames) {
+                action.accept(username);
+            }
+            if (started != null) {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic rebuilds after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        if (filter != null) {
+            filter.close();
+        }
+    }
+
+    /**
+     * Tests that every username is let through until a load succeeds, that unknown usernames
+     * are refused afterwards, and that a failed rebuild keeps the loaded filter.
+     */
+    @Test
+    void mightContain_ShouldRefuseUnknownUsernamesOnceLoaded() throws InterruptedException {
+        InMemorySource source = new InMemorySource();
+        source.failing = true;
+        for (int i = 0; i < 1_000; i++) {
+            source.usernames.add("user" + i);
+        }
+        filter = new UsernameFilter(source, 0.01, Duration.ofHours(1));
+        waitFor(() -> filter.getRebuildFailureCount() == 1);
+
+        assertFalse(filter.isLoaded());
+        assertTrue(filter.mightContain("unknown"));
+        assertFalse(filter.mightContain(null));
+
+        source.failing = false;
+        filter.rebuild();
+        assertTrue(filter.isLoaded());
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+        int refused = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (!filter.mightContain("unknown" + i)) {
+                refused++;
+            }
+        }
+        assertTrue(refused > 950);
+        assertEquals(refused, filter.getRejectionCount());
+
+        filter.add("newUser");
+        source.failing = true;
+        filter.rebuild();
+        assertTrue(filter.mightContain("newUser"));
+        assertEquals(1, filter.getRebuildCount());
+        assertEquals(2, filter.getRebuildFailureCount());
+    }
+
+    /**
+     * Tests that a username added while a rebuild streams the usernames is kept by the new
+     * filter, although the stream missed it.
+     */
+    @Test
+    void add_ShouldNotBeLostDuringRebuild() throws Exception {
+        InMemorySource source = new InMemorySource();
+        source.usernames.add("alice");
+        filter = new UsernameFilter(source, 0.01, Duration.ofHours(1));
+        waitFor(filter::isLoaded);
+
+        source.started = new CountDownLatch(1);
+        source.gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> rebuild = executor.submit(filter::rebuild);
+        assertTrue(source.started.await(10, TimeUnit.SECONDS));
+        source.usernames.add("bob");
+        filter.add("bob");
+        source.gate.countDown();
+        rebuild.get();
+        executor.shutdown();
+
+        assertEquals(2, filter.getRebuildCount());
+        assertTrue(filter.mightContain("alice"));
+        assertTrue(filter.mightContain("bob"));
+    }
+
+    /**
+     * Tests that deleting a quarter of the usernames rebuilds the filter early, so deleted
+     * usernames are refused again.
+     */
+    @Test
+    void remove_ShouldRebuildAfterManyDeletions() throws InterruptedException {
+        InMemorySource source = new InMemorySource();
+        for (int i = 0; i < 8; i++) {
+            source.usernames.add("user" + i);
+        }
+        filter = new UsernameFilter(source, 0.01, Duration.ofHours(1));
+        waitFor(filter::isLoaded);
+
+        for (int i = 0; i < 3; i++) {
+            source.usernames.remove("user" + i);
+            filter.remove("user" + i);
+        }
+        waitFor(() -> filter.getRebuildCount() == 2);
+
+        assertFalse(filter.mightContain("user0"));
+        assertTrue(filter.mightContain("user7"));
+    }
+
+    /**
+     * Tests that refused lookups are let through to the database at the configured rate only.
+     */
+    @Test
+    void allowMissCheck_ShouldLimitChecksPerSecond() throws InterruptedException {
+        filter = new UsernameFilter(new InMemorySource(), 0.01, Duration.ofHours(1), 3);
+        waitFor(filter::isLoaded);
+
+        // The checks are made early in a second, so they all fall in the same window
+        while (System.nanoTime() % 1_000_000_000L > 500_000_000L) {
+            Thread.sleep(5);
+        }
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (filter.allowMissCheck()) {
+                allowed++;
+            }
+        }
+        assertEquals(3, allowed);
+        waitFor(filter::allowMissCheck);
+        assertTrue(filter.getMissCheckCount() >= 4);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
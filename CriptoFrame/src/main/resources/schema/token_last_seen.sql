@@ -0,0 +1,6 @@
+-- Adds the column holding the last use of each token, written by TokenWriteBehind when
+-- sliding expiration is enabled (-DManagement.token.slidingWindowSeconds).
+--
+-- Apply once, with a user allowed to alter the Token table, before enabling sliding
+-- expiration. TokenDAO.touchBatch fails without it and never alters the table itself.
+ALTER TABLE Token ADD COLUMN lastSeen TIMESTAMP NULL;